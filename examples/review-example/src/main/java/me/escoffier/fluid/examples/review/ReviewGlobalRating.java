@@ -18,17 +18,8 @@ public class ReviewGlobalRating {
   @Transformation
   public void computeStatistics() {
     reviews
-      .composeFlowable(flow ->
-        flow
-          .groupBy(data -> data.payload().getString("course"))
-          .flatMap(group ->
-            group.map(Message::payload)
-              .map(i -> i.getInteger("rating"))
-              .scan(Tuple.tuple(0L, 0.0, 0.0), average())
-              .map(tuple -> Pair.pair(group.getKey(), (double) tuple.nth(2)))
-              .map(Message::new)
-          )
-      )
+      .aggregateByKey(data -> data.payload().getString("course"),
+        Aggregator.average(json -> json.getInteger("rating")))
       .to(Sink.forEachPayload(pair -> System.out.println("Rating of " + pair.left() + " : " + pair.right())));
   }
 
@@ -0,0 +1,43 @@
+package me.escoffier.fluid.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configures the handling of the failures of a mediator method annotated with {@link Function} or
+ * {@link Transformation}. Without this annotation, a failure terminates the stream.
+ * <p>
+ * For {@link Function} methods, the invocation of the method for a message and the dispatch of its result are retried
+ * up to {@link #retries()} times, with an exponential backoff. For {@link Transformation} methods, only the dispatch to
+ * the outbound sink is retried. Once the retries are exhausted, the message is sent to the {@link #deadLetter()} sink
+ * if set, or skipped otherwise, and the stream continues with the next message.
+ * <p>
+ * The failures are counted in the {@link me.escoffier.fluid.models.FailureMetrics} available from
+ * {@link me.escoffier.fluid.registry.FluidRegistry#failures(String)}, using {@code class-name#method-name} as name.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OnError {
+
+  /**
+   * The maximum number of retries, 0 to disable retries.
+   */
+  int retries() default 0;
+
+  /**
+   * The delay in milliseconds before the first retry, doubled after each retry.
+   */
+  long delay() default 100;
+
+  /**
+   * The maximum delay in milliseconds between two retries.
+   */
+  long maxDelay() default 10000;
+
+  /**
+   * The name of the sink receiving the failed messages. If not set, the failed messages are skipped.
+   */
+  String deadLetter() default "";
+}
@@ -0,0 +1,351 @@
+package me.escoffier.fluid.codec;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.escoffier.fluid.spi.Codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A compact binary encoding of {@link JsonObject}s.
+ * <p>
+ * An encoded object starts with the id of its {@link Schema}, registered in a {@link SchemaRegistry}, followed by the
+ * values of its fields, in the order of the schema. So the names of the fields are not repeated in every payload.
+ * Numbers are encoded as (zig-zag) variable-length integers or IEEE 754 values, strings as UTF-8, and nested objects
+ * with their own schema. The elements of the arrays are prefixed by their type.
+ * <p>
+ * The decoded objects contain {@code Integer}, {@code Long}, {@code Float}, {@code Double}, {@code Boolean},
+ * {@code String}, {@code byte[]}, {@link JsonObject} and {@link JsonArray} values. {@link Instant}s and enums are
+ * encoded as strings, as they are in JSON.
+ */
+public class BinaryCodec implements Codec {
+
+  /**
+   * The first byte of the encoded payloads, identifying the format.
+   */
+  private static final byte MAGIC = 0x0B;
+
+  static final byte NULL = 0;
+  static final byte BOOLEAN = 1;
+  static final byte INT = 2;
+  static final byte LONG = 3;
+  static final byte FLOAT = 4;
+  static final byte DOUBLE = 5;
+  static final byte STRING = 6;
+  static final byte BINARY = 7;
+  static final byte OBJECT = 8;
+  static final byte ARRAY = 9;
+
+  private final SchemaRegistry registry;
+
+  /**
+   * Creates a new {@link BinaryCodec}.
+   *
+   * @param registry the registry storing the schemas, must not be {@code null}
+   */
+  public BinaryCodec(SchemaRegistry registry) {
+    this.registry = Objects.requireNonNull(registry, "The `registry` must not be `null`");
+  }
+
+  /**
+   * Encodes a payload. {@link JsonObject}s are encoded as they are, {@link Map}s and other objects are first mapped
+   * to a {@link JsonObject}.
+   *
+   * @param payload the payload, must not be {@code null}
+   * @return the bytes
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public byte[] encode(Object payload) {
+    Objects.requireNonNull(payload, "The `payload` must not be `null`");
+    JsonObject json;
+    if (payload instanceof JsonObject) {
+      json = (JsonObject) payload;
+    } else if (payload instanceof Map) {
+      json = new JsonObject((Map<String, Object>) payload);
+    } else {
+      json = JsonObject.mapFrom(payload);
+    }
+    Output output = new Output();
+    output.writeByte(MAGIC);
+    writeObject(json, output);
+    return output.toByteArray();
+  }
+
+  /**
+   * Decodes a payload.
+   *
+   * @param bytes the bytes, must not be {@code null}
+   * @return the decoded {@link JsonObject}
+   */
+  @Override
+  public Object decode(byte[] bytes) {
+    Input input = new Input(Objects.requireNonNull(bytes, "The `bytes` must not be `null`"));
+    try {
+      if (input.readByte() != MAGIC) {
+        throw new IllegalArgumentException("The payload has not been encoded by the binary codec");
+      }
+      return readObject(input);
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("The payload is truncated", e);
+    }
+  }
+
+  private void writeObject(JsonObject object, Output output) {
+    int size = object.size();
+    String[] names = new String[size];
+    byte[] types = new byte[size];
+    Object[] values = new Object[size];
+    int index = 0;
+    // The iterator wraps the nested maps and lists into JsonObject and JsonArray.
+    for (Map.Entry<String, Object> entry : object) {
+      names[index] = entry.getKey();
+      values[index] = entry.getValue();
+      types[index] = type(entry.getValue());
+      index++;
+    }
+    Schema schema = registry.register(names, types, size);
+    output.writeInt(schema.id());
+    for (int i = 0; i < size; i++) {
+      writeValue(types[i], values[i], output);
+    }
+  }
+
+  private static byte type(Object value) {
+    if (value == null) {
+      return NULL;
+    } else if (value instanceof Boolean) {
+      return BOOLEAN;
+    } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return INT;
+    } else if (value instanceof Long) {
+      return LONG;
+    } else if (value instanceof Float) {
+      return FLOAT;
+    } else if (value instanceof Double) {
+      return DOUBLE;
+    } else if (value instanceof CharSequence || value instanceof Instant || value instanceof Enum) {
+      return STRING;
+    } else if (value instanceof byte[]) {
+      return BINARY;
+    } else if (value instanceof JsonObject) {
+      return OBJECT;
+    } else if (value instanceof JsonArray) {
+      return ARRAY;
+    }
+    throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getName());
+  }
+
+  private void writeValue(byte type, Object value, Output output) {
+    switch (type) {
+      case NULL:
+        break;
+      case BOOLEAN:
+        output.writeByte((Boolean) value ? 1 : 0);
+        break;
+      case INT:
+        output.writeVarLong(zigZag(((Number) value).intValue()));
+        break;
+      case LONG:
+        output.writeVarLong(zigZag((Long) value));
+        break;
+      case FLOAT:
+        output.writeInt(Float.floatToIntBits((Float) value));
+        break;
+      case DOUBLE:
+        output.writeLong(Double.doubleToLongBits((Double) value));
+        break;
+      case STRING:
+        output.writeBytes((value instanceof Enum ? ((Enum<?>) value).name() : value.toString())
+          .getBytes(StandardCharsets.UTF_8));
+        break;
+      case BINARY:
+        output.writeBytes((byte[]) value);
+        break;
+      case OBJECT:
+        writeObject((JsonObject) value, output);
+        break;
+      case ARRAY:
+        JsonArray array = (JsonArray) value;
+        output.writeVarLong(array.size());
+        for (Object element : array) {
+          byte elementType = type(element);
+          output.writeByte(elementType);
+          writeValue(elementType, element, output);
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unknown type: " + type);
+    }
+  }
+
+  private JsonObject readObject(Input input) {
+    Schema schema = registry.lookup(input.readInt());
+    Map<String, Object> map = new LinkedHashMap<>(schema.size() * 2);
+    for (int i = 0; i < schema.size(); i++) {
+      map.put(schema.name(i), readValue(schema.type(i), input));
+    }
+    return new JsonObject(map);
+  }
+
+  private Object readValue(byte type, Input input) {
+    switch (type) {
+      case NULL:
+        return null;
+      case BOOLEAN:
+        return input.readByte() != 0;
+      case INT:
+        return (int) unZigZag(input.readVarLong());
+      case LONG:
+        return unZigZag(input.readVarLong());
+      case FLOAT:
+        return Float.intBitsToFloat(input.readInt());
+      case DOUBLE:
+        return Double.longBitsToDouble(input.readLong());
+      case STRING:
+        return input.readString();
+      case BINARY:
+        return input.readBytes();
+      case OBJECT:
+        return readObject(input);
+      case ARRAY:
+        int size = (int) input.readVarLong();
+        List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          list.add(readValue(input.readByte(), input));
+        }
+        return new JsonArray(list);
+      default:
+        throw new IllegalArgumentException("Unknown type: " + type);
+    }
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * A growable byte array.
+   */
+  private static final class Output {
+    private byte[] buffer = new byte[128];
+    private int position;
+
+    private void ensure(int length) {
+      if (position + length > buffer.length) {
+        byte[] bigger = new byte[Math.max(buffer.length * 2, position + length)];
+        System.arraycopy(buffer, 0, bigger, 0, position);
+        buffer = bigger;
+      }
+    }
+
+    void writeByte(int value) {
+      ensure(1);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeInt(int value) {
+      ensure(4);
+      buffer[position++] = (byte) (value >>> 24);
+      buffer[position++] = (byte) (value >>> 16);
+      buffer[position++] = (byte) (value >>> 8);
+      buffer[position++] = (byte) value;
+    }
+
+    void writeLong(long value) {
+      writeInt((int) (value >>> 32));
+      writeInt((int) value);
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeVarLong(bytes.length);
+      ensure(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    byte[] toByteArray() {
+      byte[] bytes = new byte[position];
+      System.arraycopy(buffer, 0, bytes, 0, position);
+      return bytes;
+    }
+  }
+
+  private static final class Input {
+    private final byte[] buffer;
+    private int position;
+
+    Input(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    byte readByte() {
+      return buffer[position++];
+    }
+
+    int readInt() {
+      return (buffer[position++] & 0xFF) << 24
+        | (buffer[position++] & 0xFF) << 16
+        | (buffer[position++] & 0xFF) << 8
+        | (buffer[position++] & 0xFF);
+    }
+
+    long readLong() {
+      return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    long readVarLong() {
+      long value = 0;
+      int shift = 0;
+      byte current;
+      do {
+        current = buffer[position++];
+        value |= (long) (current & 0x7F) << shift;
+        shift += 7;
+      } while ((current & 0x80) != 0);
+      return value;
+    }
+
+    private int readLength() {
+      int length = (int) readVarLong();
+      if (length < 0 || position + length > buffer.length) {
+        throw new ArrayIndexOutOfBoundsException(position + length);
+      }
+      return length;
+    }
+
+    String readString() {
+      int length = readLength();
+      String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+
+    byte[] readBytes() {
+      int length = readLength();
+      byte[] value = new byte[length];
+      System.arraycopy(buffer, position, value, 0, length);
+      position += length;
+      return value;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package me.escoffier.fluid.codec;
+
+import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.spi.Codec;
+import me.escoffier.fluid.spi.CodecFactory;
+
+/**
+ * The {@code binary} codec (see {@link BinaryCodec}). The schemas are stored in the in-memory
+ * {@linkplain SchemaRegistry#local() local registry}, or, if {@code codec.registry} is set, in the
+ * {@linkplain SchemaRegistry#directory(String) registry backed by this directory}.
+ */
+public class BinaryCodecFactory implements CodecFactory {
+
+  @Override
+  public String name() {
+    return "binary";
+  }
+
+  @Override
+  public Codec create(Config config) {
+    return new BinaryCodec(config.getString("codec.registry")
+      .map(SchemaRegistry::directory)
+      .orElse(SchemaRegistry.local()));
+  }
+}
@@ -0,0 +1,45 @@
+package me.escoffier.fluid.codec;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.spi.Codec;
+import me.escoffier.fluid.spi.CodecFactory;
+
+/**
+ * The {@code json} codec, encoding the payloads in JSON (UTF-8). {@link JsonObject} and {@link JsonArray} are encoded
+ * as they are, the other payloads are mapped by Jackson. The payloads are decoded as {@link JsonObject} or
+ * {@link JsonArray}.
+ */
+public class JsonCodecFactory implements CodecFactory {
+
+  private static final Codec CODEC = new Codec() {
+    @Override
+    public byte[] encode(Object payload) {
+      if (payload instanceof JsonObject) {
+        return ((JsonObject) payload).toBuffer().getBytes();
+      } else if (payload instanceof JsonArray) {
+        return ((JsonArray) payload).toBuffer().getBytes();
+      }
+      return Json.encodeToBuffer(payload).getBytes();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+      Buffer buffer = Buffer.buffer(bytes);
+      return buffer.length() > 0 && buffer.getByte(0) == '[' ? new JsonArray(buffer) : new JsonObject(buffer);
+    }
+  };
+
+  @Override
+  public String name() {
+    return "json";
+  }
+
+  @Override
+  public Codec create(Config config) {
+    return CODEC;
+  }
+}
@@ -0,0 +1,132 @@
+package me.escoffier.fluid.codec;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The schema of a {@link JsonObject} encoded by the {@code binary} codec: the ordered names and types of its fields.
+ * The encoded objects only carry the {@link #id()} of their schema, followed by the values of the fields.
+ * <p>
+ * The id is a fingerprint of the names and types, so the same schema gets the same id in every process, without
+ * coordination between the producers.
+ */
+public final class Schema {
+
+  private final String[] names;
+
+  private final byte[] types;
+
+  private final int id;
+
+  Schema(String[] names, byte[] types) {
+    if (names.length != types.length) {
+      throw new IllegalArgumentException("The names and the types of the fields must have the same length");
+    }
+    this.names = names;
+    this.types = types;
+    this.id = fingerprint(names, types, names.length);
+  }
+
+  /**
+   * Computes the fingerprint of a schema, without creating it.
+   *
+   * @param names the names of the fields
+   * @param types the types of the fields
+   * @param count the number of fields
+   * @return the fingerprint
+   */
+  static int fingerprint(String[] names, byte[] types, int count) {
+    // String.hashCode is specified, so the fingerprint does not depend on the JVM.
+    int hash = count;
+    for (int i = 0; i < count; i++) {
+      hash = 31 * hash + names[i].hashCode();
+      hash = 31 * hash + types[i];
+    }
+    // Spreads the bits (murmur3 finalizer).
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+
+  /**
+   * @return the id of the schema, written at the beginning of the encoded objects.
+   */
+  public int id() {
+    return id;
+  }
+
+  /**
+   * @return the number of fields.
+   */
+  public int size() {
+    return names.length;
+  }
+
+  /**
+   * @param index the index of the field
+   * @return the name of the field
+   */
+  public String name(int index) {
+    return names[index];
+  }
+
+  byte type(int index) {
+    return types[index];
+  }
+
+  /**
+   * @return whether this schema has the given fields.
+   */
+  boolean matches(String[] names, byte[] types, int count) {
+    if (count != this.names.length) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (types[i] != this.types[i] || !names[i].equals(this.names[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  JsonObject toJson() {
+    JsonArray fields = new JsonArray();
+    for (int i = 0; i < names.length; i++) {
+      fields.add(new JsonObject().put("name", names[i]).put("type", types[i]));
+    }
+    return new JsonObject().put("id", id).put("fields", fields);
+  }
+
+  static Schema fromJson(JsonObject json) {
+    JsonArray fields = Objects.requireNonNull(json.getJsonArray("fields"), "The `fields` must be set");
+    String[] names = new String[fields.size()];
+    byte[] types = new byte[fields.size()];
+    for (int i = 0; i < fields.size(); i++) {
+      names[i] = fields.getJsonObject(i).getString("name");
+      types[i] = fields.getJsonObject(i).getInteger("type").byteValue();
+    }
+    return new Schema(names, types);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Schema && Arrays.equals(names, ((Schema) obj).names)
+      && Arrays.equals(types, ((Schema) obj).types);
+  }
+
+  @Override
+  public int hashCode() {
+    return id;
+  }
+
+  @Override
+  public String toString() {
+    return toJson().encode();
+  }
+}
@@ -0,0 +1,155 @@
+package me.escoffier.fluid.codec;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local stand-in for a schema registry, storing the {@link Schema}s used by the {@code binary} codec.
+ * <p>
+ * The {@linkplain #local() local} registry keeps the schemas in memory, so it is shared by the connectors of the
+ * process. A registry backed by a {@linkplain #directory(String) directory} also stores each schema in a file named
+ * after its id, so processes sharing the directory can decode the payloads encoded by the others.
+ */
+public final class SchemaRegistry {
+
+  private static final SchemaRegistry LOCAL = new SchemaRegistry(null);
+
+  private static final Map<String, SchemaRegistry> DIRECTORIES = new ConcurrentHashMap<>();
+
+  private final Map<Integer, Schema> schemas = new ConcurrentHashMap<>();
+
+  /**
+   * The directory storing the schemas, {@code null} if the schemas are only kept in memory.
+   */
+  private final File directory;
+
+  private SchemaRegistry(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * @return the in-memory registry of the process.
+   */
+  public static SchemaRegistry local() {
+    return LOCAL;
+  }
+
+  /**
+   * Gets the registry storing the schemas in the given directory. The directory is created if needed.
+   *
+   * @param path the path of the directory, must not be {@code null}
+   * @return the registry, shared by the codecs using the same directory
+   */
+  public static SchemaRegistry directory(String path) {
+    File directory = new File(Objects.requireNonNull(path, "The `path` must not be `null`")).getAbsoluteFile();
+    return DIRECTORIES.computeIfAbsent(directory.getPath(), p -> {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IllegalArgumentException("Unable to create the schema registry directory " + directory);
+      }
+      return new SchemaRegistry(directory);
+    });
+  }
+
+  /**
+   * Gets the registered schema with the given fields, registering it if needed.
+   */
+  Schema register(String[] names, byte[] types, int count) {
+    int id = Schema.fingerprint(names, types, count);
+    Schema schema = schemas.get(id);
+    if (schema != null && schema.matches(names, types, count)) {
+      return schema;
+    }
+    return register(new Schema(Arrays.copyOf(names, count), Arrays.copyOf(types, count)));
+  }
+
+  /**
+   * Registers a schema.
+   *
+   * @param schema the schema, must not be {@code null}
+   * @return the registered schema
+   * @throws IllegalStateException if another schema with the same id is registered
+   */
+  public Schema register(Schema schema) {
+    Objects.requireNonNull(schema, "The `schema` must not be `null`");
+    Schema existing = schemas.putIfAbsent(schema.id(), schema);
+    if (existing != null) {
+      if (!existing.equals(schema)) {
+        throw new IllegalStateException("The schemas " + existing + " and " + schema + " have the same id");
+      }
+      return existing;
+    }
+    if (directory != null) {
+      store(schema);
+    }
+    return schema;
+  }
+
+  /**
+   * Gets a schema.
+   *
+   * @param id the id of the schema
+   * @return the schema
+   * @throws IllegalArgumentException if the schema is unknown
+   */
+  public Schema lookup(int id) {
+    Schema schema = schemas.get(id);
+    if (schema == null && directory != null) {
+      schema = load(id);
+    }
+    if (schema == null) {
+      throw new IllegalArgumentException("Unknown schema: " + id);
+    }
+    return schema;
+  }
+
+  /**
+   * @return the number of registered schemas.
+   */
+  public int size() {
+    return schemas.size();
+  }
+
+  private File file(int id) {
+    return new File(directory, Integer.toHexString(id) + ".json");
+  }
+
+  private void store(Schema schema) {
+    File file = file(schema.id());
+    if (file.isFile()) {
+      return;
+    }
+    try {
+      // Written atomically, as other processes may read it concurrently.
+      File temporary = File.createTempFile("schema-", ".tmp", directory);
+      Files.write(temporary.toPath(), schema.toJson().toBuffer().getBytes());
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to store the schema " + schema.id() + " in " + directory, e);
+    }
+  }
+
+  private Schema load(int id) {
+    File file = file(id);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      Schema schema = Schema.fromJson(new JsonObject(Buffer.buffer(Files.readAllBytes(file.toPath()))));
+      Schema existing = schemas.putIfAbsent(schema.id(), schema);
+      return existing == null ? schema : existing;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to load the schema " + id + " from " + directory, e);
+    }
+  }
+}
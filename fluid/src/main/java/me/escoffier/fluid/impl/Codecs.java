@@ -0,0 +1,44 @@
+package me.escoffier.fluid.impl;
+
+import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.spi.Codec;
+import me.escoffier.fluid.spi.CodecFactory;
+
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.stream.StreamSupport;
+
+public final class Codecs {
+
+  private Codecs() {
+  }
+
+  /**
+   * Creates the codec selected by the {@code codec} option of a connector.
+   *
+   * @param config the configuration of the connector
+   * @return the codec, empty if the {@code codec} option is not set
+   * @throws IllegalArgumentException if the codec is unknown
+   */
+  public static Optional<Codec> codec(Config config) {
+    return config.getString("codec").map(name -> codec(name, config));
+  }
+
+  /**
+   * Creates a codec.
+   *
+   * @param name   the name of the codec
+   * @param config the configuration of the connector using the codec
+   * @return the codec
+   * @throws IllegalArgumentException if the codec is unknown
+   */
+  public static Codec codec(String name, Config config) {
+    ServiceLoader<CodecFactory> loader = ServiceLoader.load(CodecFactory.class);
+    return StreamSupport.stream(loader.spliterator(), false)
+      .filter(factory -> name.equalsIgnoreCase(factory.name()))
+      .findFirst()
+      .orElseThrow(() -> new IllegalArgumentException("Unknown codec: " + name))
+      .create(config);
+  }
+
+}
@@ -0,0 +1,60 @@
+package me.escoffier.fluid.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Callback notified when the processing of a {@link Message} has completed. Connectors attach an acknowledgement to
+ * the messages they create (see {@link Message#withAcknowledgement(Acknowledgement)}) to know when the records can be
+ * committed. The acknowledgement is propagated to the messages derived from the original message, and is called when
+ * the last of them has been dispatched to a {@link Sink}.
+ * <p>
+ * Implementations must be thread-safe, and ignore the calls made after the first one.
+ */
+public interface Acknowledgement {
+
+  /**
+   * Notifies that the message has been processed successfully.
+   */
+  void ack();
+
+  /**
+   * Notifies that the processing of the message has failed.
+   *
+   * @param reason the failure
+   */
+  void nack(Throwable reason);
+
+  /**
+   * Creates an acknowledgement forwarding the calls to all the given acknowledgements. {@code null} entries are
+   * ignored.
+   *
+   * @param acknowledgements the acknowledgements
+   * @return the composite acknowledgement, {@code null} if all the given acknowledgements are {@code null}
+   */
+  static Acknowledgement all(Acknowledgement... acknowledgements) {
+    List<Acknowledgement> list = new ArrayList<>(acknowledgements.length);
+    for (Acknowledgement acknowledgement : acknowledgements) {
+      if (acknowledgement != null) {
+        list.add(acknowledgement);
+      }
+    }
+    if (list.isEmpty()) {
+      return null;
+    }
+    if (list.size() == 1) {
+      return list.get(0);
+    }
+    return new Acknowledgement() {
+      @Override
+      public void ack() {
+        list.forEach(Acknowledgement::ack);
+      }
+
+      @Override
+      public void nack(Throwable reason) {
+        list.forEach(a -> a.nack(reason));
+      }
+    };
+  }
+}
@@ -0,0 +1,155 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Propagates the {@link Acknowledgement} of the messages through the operators of {@link Source}.
+ * <ul>
+ * <li>a message computed from another message inherits its acknowledgement, unless it already has one,</li>
+ * <li>a message computed from an accumulator and a message (such as the output of {@code scan}) gets the
+ * acknowledgement of the message, and a message combining several messages (such as the output of {@code zipWith})
+ * acknowledges all of them,</li>
+ * <li>the messages emitted by a {@code flatMap} for a message get their own acknowledgement, and the original message
+ * is acknowledged once the publisher has completed and all these messages have been acknowledged,</li>
+ * <li>a message broadcast to several branches is copied for each branch, and is acknowledged once all the copies have
+ * been acknowledged,</li>
+ * <li>the messages discarded by a filter are acknowledged immediately.</li>
+ * </ul>
+ */
+final class Acknowledgements {
+
+  private Acknowledgements() {
+    // Avoid direct instantiation.
+  }
+
+  /**
+   * Attaches the acknowledgement of {@code from} to {@code to} if {@code to} does not have one.
+   */
+  static <X> Message<X> propagate(Message<?> from, Message<X> to) {
+    Acknowledgement acknowledgement = from.acknowledgement();
+    if (acknowledgement == null || to.acknowledgement() != null) {
+      return to;
+    }
+    return to.withAcknowledgement(acknowledgement);
+  }
+
+  /**
+   * Replaces the acknowledgement of {@code to} with the acknowledgement of {@code from}. Used by the operators whose
+   * output message is computed from an accumulator, such as {@code scan}.
+   */
+  static <X> Message<X> replace(Message<?> from, Message<X> to) {
+    Acknowledgement acknowledgement = from.acknowledgement();
+    if (to.acknowledgement() == acknowledgement) {
+      return to;
+    }
+    return to.withAcknowledgement(acknowledgement);
+  }
+
+  /**
+   * Acknowledges the message if it is not retained by a filter.
+   *
+   * @return {@code retained}
+   */
+  static boolean retain(Message<?> message, boolean retained) {
+    if (!retained) {
+      message.ack();
+    }
+    return retained;
+  }
+
+  /**
+   * Gives an acknowledgement to each message emitted by {@code children}, such that {@code parent} is acknowledged
+   * when {@code children} has completed and all the emitted messages have been acknowledged. If {@code children}
+   * fails, the parent is not acknowledged, the failure is handled by the caller.
+   */
+  static <X> Flowable<Message<X>> fork(Message<?> parent, Publisher<Message<X>> children) {
+    Acknowledgement acknowledgement = parent.acknowledgement();
+    if (acknowledgement == null) {
+      return Flowable.fromPublisher(children);
+    }
+    return Flowable.defer(() -> {
+      Fork fork = new Fork(acknowledgement);
+      return Flowable.fromPublisher(children)
+        .map(child -> child.withAcknowledgement(fork.child()))
+        .doOnComplete(fork::release);
+    });
+  }
+
+  /**
+   * Copies the message for each of the {@code count} branches of a broadcast, such that {@code parent} is
+   * acknowledged when all the copies have been acknowledged, and nacked as soon as one of them is nacked.
+   */
+  static <X> List<Message<X>> fork(Message<X> parent, int count) {
+    Acknowledgement acknowledgement = parent.acknowledgement();
+    if (acknowledgement == null) {
+      return Collections.nCopies(count, parent);
+    }
+    List<Message<X>> copies = new ArrayList<>(count);
+    for (Acknowledgement child : split(acknowledgement, count)) {
+      copies.add(parent.withAcknowledgement(child));
+    }
+    return copies;
+  }
+
+  /**
+   * Creates {@code count} acknowledgements such that {@code parent} is acknowledged when all of them have been
+   * acknowledged, and nacked as soon as one of them is nacked.
+   */
+  static List<Acknowledgement> split(Acknowledgement parent, int count) {
+    Fork fork = new Fork(parent);
+    List<Acknowledgement> children = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      children.add(fork.child());
+    }
+    fork.release();
+    return children;
+  }
+
+  private static final class Fork {
+    private final Acknowledgement parent;
+
+    /**
+     * The number of children not yet acknowledged, plus one until the completion of the publisher.
+     */
+    private final AtomicInteger pending = new AtomicInteger(1);
+
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    private Fork(Acknowledgement parent) {
+      this.parent = parent;
+    }
+
+    private Acknowledgement child() {
+      pending.incrementAndGet();
+      AtomicBoolean called = new AtomicBoolean();
+      return new Acknowledgement() {
+        @Override
+        public void ack() {
+          if (called.compareAndSet(false, true)) {
+            release();
+          }
+        }
+
+        @Override
+        public void nack(Throwable reason) {
+          if (called.compareAndSet(false, true) && done.compareAndSet(false, true)) {
+            parent.nack(reason);
+          }
+        }
+      };
+    }
+
+    private void release() {
+      if (pending.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+        parent.ack();
+      }
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package me.escoffier.fluid.models;
+
+import java.util.Objects;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * An incremental aggregation used by {@link Source#aggregateByKey(java.util.function.Function, Aggregator)}.
+ * <p>
+ * To avoid allocating an object per key and per message, the state of each key is stored in a shared {@code long}
+ * array. Each key owns {@link #width()} consecutive cells starting at the given {@code offset}. Floating-point values
+ * are stored using {@link Double#doubleToRawLongBits(double)}. The cells of a new key are set to 0 before
+ * {@link #initialize(long[], int)} is called.
+ *
+ * @param <T> the type of payload
+ * @param <R> the type of result
+ */
+public interface Aggregator<T, R> {
+
+  /**
+   * @return the number of {@code long} cells used to store the state of a key.
+   */
+  int width();
+
+  /**
+   * Initializes the state of a new key.
+   *
+   * @param state  the state array
+   * @param offset the offset of the first cell of the key
+   */
+  default void initialize(long[] state, int offset) {
+    // Cells are set to 0 by default.
+  }
+
+  /**
+   * Updates the state of a key with the given payload.
+   *
+   * @param state   the state array
+   * @param offset  the offset of the first cell of the key
+   * @param payload the payload
+   */
+  void accumulate(long[] state, int offset, T payload);
+
+  /**
+   * Computes the result of a key from its state.
+   *
+   * @param state  the state array
+   * @param offset the offset of the first cell of the key
+   * @return the result
+   */
+  R result(long[] state, int offset);
+
+  /**
+   * @param <T> the type of payload
+   * @return an aggregator counting the payloads
+   */
+  static <T> Aggregator<T, Long> count() {
+    return new Aggregators.Count<>();
+  }
+
+  /**
+   * @param value the function extracting the value to sum from the payload, must not be {@code null}
+   * @param <T>   the type of payload
+   * @return an aggregator computing the sum of the values
+   */
+  static <T> Aggregator<T, Double> sum(ToDoubleFunction<T> value) {
+    return new Aggregators.Sum<>(Objects.requireNonNull(value, Aggregators.VALUE_CANNOT_BE_NULL_MESSAGE));
+  }
+
+  /**
+   * @param value the function extracting the value to sum from the payload, must not be {@code null}
+   * @param <T>   the type of payload
+   * @return an aggregator computing the sum of the values, using {@code long} arithmetic
+   */
+  static <T> Aggregator<T, Long> sumAsLong(ToLongFunction<T> value) {
+    return new Aggregators.LongSum<>(Objects.requireNonNull(value, Aggregators.VALUE_CANNOT_BE_NULL_MESSAGE));
+  }
+
+  /**
+   * @param value the function extracting the value from the payload, must not be {@code null}
+   * @param <T>   the type of payload
+   * @return an aggregator computing the average of the values
+   */
+  static <T> Aggregator<T, Double> average(ToDoubleFunction<T> value) {
+    return new Aggregators.Average<>(Objects.requireNonNull(value, Aggregators.VALUE_CANNOT_BE_NULL_MESSAGE));
+  }
+
+  /**
+   * @param value the function extracting the value from the payload, must not be {@code null}
+   * @param <T>   the type of payload
+   * @return an aggregator computing the minimum of the values
+   */
+  static <T> Aggregator<T, Double> min(ToDoubleFunction<T> value) {
+    return new Aggregators.Min<>(Objects.requireNonNull(value, Aggregators.VALUE_CANNOT_BE_NULL_MESSAGE));
+  }
+
+  /**
+   * @param value the function extracting the value from the payload, must not be {@code null}
+   * @param <T>   the type of payload
+   * @return an aggregator computing the maximum of the values
+   */
+  static <T> Aggregator<T, Double> max(ToDoubleFunction<T> value) {
+    return new Aggregators.Max<>(Objects.requireNonNull(value, Aggregators.VALUE_CANNOT_BE_NULL_MESSAGE));
+  }
+}
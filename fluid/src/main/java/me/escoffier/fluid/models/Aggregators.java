@@ -0,0 +1,165 @@
+package me.escoffier.fluid.models;
+
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import static java.lang.Double.doubleToRawLongBits;
+import static java.lang.Double.longBitsToDouble;
+
+/**
+ * The built-in {@link Aggregator} implementations.
+ */
+final class Aggregators {
+
+  static final String VALUE_CANNOT_BE_NULL_MESSAGE = "The `value` function cannot be `null`";
+
+  private Aggregators() {
+    // Avoid direct instantiation.
+  }
+
+  static final class Count<T> implements Aggregator<T, Long> {
+    @Override
+    public int width() {
+      return 1;
+    }
+
+    @Override
+    public void accumulate(long[] state, int offset, T payload) {
+      state[offset]++;
+    }
+
+    @Override
+    public Long result(long[] state, int offset) {
+      return state[offset];
+    }
+  }
+
+  static final class Sum<T> implements Aggregator<T, Double> {
+    private final ToDoubleFunction<T> value;
+
+    Sum(ToDoubleFunction<T> value) {
+      this.value = value;
+    }
+
+    @Override
+    public int width() {
+      return 1;
+    }
+
+    @Override
+    public void accumulate(long[] state, int offset, T payload) {
+      state[offset] = doubleToRawLongBits(longBitsToDouble(state[offset]) + value.applyAsDouble(payload));
+    }
+
+    @Override
+    public Double result(long[] state, int offset) {
+      return longBitsToDouble(state[offset]);
+    }
+  }
+
+  static final class LongSum<T> implements Aggregator<T, Long> {
+    private final ToLongFunction<T> value;
+
+    LongSum(ToLongFunction<T> value) {
+      this.value = value;
+    }
+
+    @Override
+    public int width() {
+      return 1;
+    }
+
+    @Override
+    public void accumulate(long[] state, int offset, T payload) {
+      state[offset] += value.applyAsLong(payload);
+    }
+
+    @Override
+    public Long result(long[] state, int offset) {
+      return state[offset];
+    }
+  }
+
+  /**
+   * Stores the count in the first cell and the sum in the second one.
+   */
+  static final class Average<T> implements Aggregator<T, Double> {
+    private final ToDoubleFunction<T> value;
+
+    Average(ToDoubleFunction<T> value) {
+      this.value = value;
+    }
+
+    @Override
+    public int width() {
+      return 2;
+    }
+
+    @Override
+    public void accumulate(long[] state, int offset, T payload) {
+      state[offset]++;
+      state[offset + 1] = doubleToRawLongBits(longBitsToDouble(state[offset + 1]) + value.applyAsDouble(payload));
+    }
+
+    @Override
+    public Double result(long[] state, int offset) {
+      return longBitsToDouble(state[offset + 1]) / state[offset];
+    }
+  }
+
+  static final class Min<T> implements Aggregator<T, Double> {
+    private final ToDoubleFunction<T> value;
+
+    Min(ToDoubleFunction<T> value) {
+      this.value = value;
+    }
+
+    @Override
+    public int width() {
+      return 1;
+    }
+
+    @Override
+    public void initialize(long[] state, int offset) {
+      state[offset] = doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    }
+
+    @Override
+    public void accumulate(long[] state, int offset, T payload) {
+      state[offset] = doubleToRawLongBits(Math.min(longBitsToDouble(state[offset]), value.applyAsDouble(payload)));
+    }
+
+    @Override
+    public Double result(long[] state, int offset) {
+      return longBitsToDouble(state[offset]);
+    }
+  }
+
+  static final class Max<T> implements Aggregator<T, Double> {
+    private final ToDoubleFunction<T> value;
+
+    Max(ToDoubleFunction<T> value) {
+      this.value = value;
+    }
+
+    @Override
+    public int width() {
+      return 1;
+    }
+
+    @Override
+    public void initialize(long[] state, int offset) {
+      state[offset] = doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+    }
+
+    @Override
+    public void accumulate(long[] state, int offset, T payload) {
+      state[offset] = doubleToRawLongBits(Math.max(longBitsToDouble(state[offset]), value.applyAsDouble(payload)));
+    }
+
+    @Override
+    public Double result(long[] state, int offset) {
+      return longBitsToDouble(state[offset]);
+    }
+  }
+}
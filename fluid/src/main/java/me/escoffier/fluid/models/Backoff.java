@@ -0,0 +1,81 @@
+package me.escoffier.fluid.models;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures the retries of a failed per-message action, see {@link Source#onErrorRetry(Backoff)}. Instances are
+ * immutable.
+ */
+public final class Backoff {
+
+  private final long initialDelay;
+
+  private final long maxDelay;
+
+  private final int maxRetries;
+
+  private Backoff(long initialDelay, long maxDelay, int maxRetries) {
+    this.initialDelay = initialDelay;
+    this.maxDelay = maxDelay;
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * Retries at most {@code maxRetries} times, waiting the same delay before each retry.
+   *
+   * @param delay      the delay, must be positive or zero
+   * @param unit       the time unit, must not be {@code null}
+   * @param maxRetries the maximum number of retries, must be strictly positive
+   * @return the backoff
+   */
+  public static Backoff fixed(long delay, TimeUnit unit, int maxRetries) {
+    Objects.requireNonNull(unit, "The `unit` must not be `null`");
+    return create(unit.toMillis(delay), unit.toMillis(delay), maxRetries);
+  }
+
+  /**
+   * Retries at most {@code maxRetries} times, doubling the delay after each retry, up to {@code maxDelay}.
+   *
+   * @param initialDelay the delay before the first retry, must be positive or zero
+   * @param maxDelay     the maximum delay, must be greater or equal to {@code initialDelay}
+   * @param unit         the time unit, must not be {@code null}
+   * @param maxRetries   the maximum number of retries, must be strictly positive
+   * @return the backoff
+   */
+  public static Backoff exponential(long initialDelay, long maxDelay, TimeUnit unit, int maxRetries) {
+    Objects.requireNonNull(unit, "The `unit` must not be `null`");
+    return create(unit.toMillis(initialDelay), unit.toMillis(maxDelay), maxRetries);
+  }
+
+  private static Backoff create(long initialDelay, long maxDelay, int maxRetries) {
+    if (initialDelay < 0) {
+      throw new IllegalArgumentException("The delay must be positive or zero");
+    }
+    if (maxDelay < initialDelay) {
+      throw new IllegalArgumentException("The maximum delay must be greater or equal to the initial delay");
+    }
+    if (maxRetries <= 0) {
+      throw new IllegalArgumentException("The maximum number of retries must be strictly positive");
+    }
+    return new Backoff(initialDelay, maxDelay, maxRetries);
+  }
+
+  int maxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Computes the delay before the given retry.
+   *
+   * @param retry the retry, starting from 1
+   * @return the delay in milliseconds
+   */
+  long delay(int retry) {
+    long delay = initialDelay;
+    for (int i = 1; i < retry && delay < maxDelay; i++) {
+      delay = delay * 2;
+    }
+    return Math.min(delay, maxDelay);
+  }
+}
@@ -0,0 +1,276 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.FlowableOperator;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operator grouping messages into batches according to a {@link BatchPolicy}, used by
+ * {@link Source#to(Sink, BatchPolicy)}.
+ * <p>
+ * The linger time is enforced by a timer armed on the shared {@link TimerWheel} when the first message of a batch is
+ * received. As for {@link WindowOperator}, the emissions triggered by a timer are dispatched on the computation
+ * scheduler, and the upstream is not requested while too many batches are waiting for downstream requests.
+ *
+ * @param <T> the type of payload
+ */
+final class BatchOperator<T> implements FlowableOperator<List<Message<T>>, Message<T>> {
+
+  private static final int PREFETCH = 128;
+
+  private static final int LIMIT = PREFETCH - (PREFETCH >> 2);
+
+  /**
+   * The maximum number of complete batches waiting for downstream requests before the upstream stops being requested.
+   */
+  private static final int MAX_PENDING_BATCHES = 4;
+
+  private final BatchPolicy policy;
+  private final TimerWheel timers;
+  private final Scheduler scheduler;
+
+  BatchOperator(BatchPolicy policy) {
+    this(policy, TimerWheel.SHARED, Schedulers.computation());
+  }
+
+  BatchOperator(BatchPolicy policy, TimerWheel timers, Scheduler scheduler) {
+    this.policy = policy;
+    this.timers = timers;
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public Subscriber<? super Message<T>> apply(Subscriber<? super List<Message<T>>> downstream) {
+    return new BatchSubscriber<>(downstream, policy, timers, scheduler);
+  }
+
+  private static final class BatchSubscriber<T> implements FlowableSubscriber<Message<T>>, Subscription {
+    private final Subscriber<? super List<Message<T>>> downstream;
+    private final BatchPolicy policy;
+    private final TimerWheel timers;
+    private final Scheduler scheduler;
+
+    /**
+     * The complete batches waiting to be emitted.
+     */
+    private final Queue<List<Message<T>>> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingBatches = new AtomicInteger();
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong consumed = new AtomicLong();
+
+    private Subscription upstream;
+
+    /**
+     * The batch being filled. Guarded by {@code this}.
+     */
+    private List<Message<T>> current = new ArrayList<>();
+
+    /**
+     * The size of the current batch in bytes. Guarded by {@code this}.
+     */
+    private long bytes;
+
+    /**
+     * Identifies the current batch, so a linger timer does not flush a later batch. Guarded by {@code this}.
+     */
+    private long generation;
+
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+
+    private BatchSubscriber(Subscriber<? super List<Message<T>>> downstream, BatchPolicy policy, TimerWheel timers,
+                            Scheduler scheduler) {
+      this.downstream = downstream;
+      this.policy = policy;
+      this.timers = timers;
+      this.scheduler = scheduler;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      this.upstream = s;
+      downstream.onSubscribe(this);
+      s.request(PREFETCH);
+    }
+
+    @Override
+    public void onNext(Message<T> message) {
+      if (done) {
+        return;
+      }
+      synchronized (this) {
+        if (current.isEmpty() && policy.linger() > 0) {
+          long batch = generation;
+          timers.schedule(() -> onTimer(batch), policy.linger());
+        }
+        current.add(message);
+        bytes += policy.weigh(message);
+        if (current.size() >= policy.maxMessages() || (policy.maxBytes() > 0 && bytes >= policy.maxBytes())) {
+          flush();
+        }
+      }
+      consumed.incrementAndGet();
+      replenish();
+      drain();
+    }
+
+    private void flush() {
+      ready.add(current);
+      pendingBatches.incrementAndGet();
+      current = new ArrayList<>();
+      bytes = 0;
+      generation++;
+    }
+
+    private void onTimer(long batch) {
+      if (done || cancelled) {
+        return;
+      }
+      synchronized (this) {
+        if (batch != generation || current.isEmpty()) {
+          return;
+        }
+        flush();
+      }
+      scheduler.scheduleDirect(this::drain);
+    }
+
+    private void replenish() {
+      if (consumed.get() >= LIMIT && pendingBatches.get() < MAX_PENDING_BATCHES) {
+        long count = consumed.getAndSet(0);
+        if (count > 0) {
+          upstream.request(count);
+        }
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (done) {
+        RxJavaPlugins.onError(t);
+        return;
+      }
+      synchronized (this) {
+        current = new ArrayList<>();
+        generation++;
+      }
+      error = t;
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void onComplete() {
+      if (done) {
+        return;
+      }
+      synchronized (this) {
+        if (!current.isEmpty()) {
+          flush();
+        }
+      }
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        RxJavaPlugins.onError(new IllegalArgumentException("The number of requested items must be positive, got " + n));
+        return;
+      }
+      long current;
+      long next;
+      do {
+        current = requested.get();
+        next = current + n < 0 ? Long.MAX_VALUE : current + n;
+      } while (!requested.compareAndSet(current, next));
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        upstream.cancel();
+        synchronized (this) {
+          current = new ArrayList<>();
+          generation++;
+        }
+        if (wip.getAndIncrement() == 0) {
+          ready.clear();
+        }
+      }
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      for (; ; ) {
+        long r = requested.get();
+        long e = 0;
+        while (e != r) {
+          if (terminated()) {
+            return;
+          }
+          List<Message<T>> next = ready.poll();
+          if (next == null) {
+            break;
+          }
+          downstream.onNext(next);
+          e++;
+        }
+        if (terminated()) {
+          return;
+        }
+        if (e != 0) {
+          pendingBatches.addAndGet((int) -e);
+          if (r != Long.MAX_VALUE) {
+            requested.addAndGet(-e);
+          }
+          replenish();
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          break;
+        }
+      }
+    }
+
+    private boolean terminated() {
+      if (cancelled) {
+        ready.clear();
+        return true;
+      }
+      Throwable failure = error;
+      if (failure != null) {
+        ready.clear();
+        cancelled = true;
+        downstream.onError(failure);
+        return true;
+      }
+      if (done && ready.isEmpty()) {
+        cancelled = true;
+        downstream.onComplete();
+        return true;
+      }
+      return false;
+    }
+  }
+}
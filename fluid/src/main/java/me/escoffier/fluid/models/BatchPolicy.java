@@ -0,0 +1,160 @@
+package me.escoffier.fluid.models;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Configures how {@link Source#to(Sink, BatchPolicy)} groups the messages into batches passed to
+ * {@link Sink#dispatchBatch(java.util.List)}. A batch is dispatched as soon as one of the configured limits is
+ * reached: the number of messages, the number of bytes, or the time elapsed since the first message of the batch was
+ * received (the <em>linger</em> time). Pending messages are dispatched when the source completes.
+ * <p>
+ * Instances are immutable.
+ */
+public final class BatchPolicy {
+
+  private final int maxMessages;
+
+  private final long maxBytes;
+
+  private final ToLongFunction<Message<?>> weigher;
+
+  private final long linger;
+
+  private BatchPolicy(int maxMessages, long maxBytes, ToLongFunction<Message<?>> weigher, long linger) {
+    this.maxMessages = maxMessages;
+    this.maxBytes = maxBytes;
+    this.weigher = weigher;
+    this.linger = linger;
+  }
+
+  /**
+   * Creates a policy dispatching batches of {@code maxMessages} messages.
+   *
+   * @param maxMessages the maximum number of messages per batch, must be strictly positive
+   * @return the policy
+   */
+  public static BatchPolicy ofSize(int maxMessages) {
+    return new BatchPolicy(Integer.MAX_VALUE, 0, null, 0).withMaxMessages(maxMessages);
+  }
+
+  /**
+   * Creates a policy dispatching a batch once its size reaches {@code maxBytes} bytes. The size of a message is
+   * computed by {@link #sizeOf(Message)}.
+   *
+   * @param maxBytes the maximum number of bytes per batch, must be strictly positive
+   * @return the policy
+   */
+  public static BatchPolicy ofBytes(long maxBytes) {
+    return ofBytes(maxBytes, BatchPolicy::sizeOf);
+  }
+
+  /**
+   * Creates a policy dispatching a batch once its size reaches {@code maxBytes} bytes. The size of a message is
+   * computed by the given function.
+   *
+   * @param maxBytes the maximum number of bytes per batch, must be strictly positive
+   * @param weigher  the function computing the size of a message, must not be {@code null}
+   * @return the policy
+   */
+  public static BatchPolicy ofBytes(long maxBytes, ToLongFunction<Message<?>> weigher) {
+    return new BatchPolicy(Integer.MAX_VALUE, 0, null, 0).withMaxBytes(maxBytes, weigher);
+  }
+
+  /**
+   * Creates a policy dispatching the messages received during the given duration, starting from the reception of the
+   * first message of the batch.
+   *
+   * @param duration the linger time, must be at least 1 millisecond
+   * @param unit     the time unit, must not be {@code null}
+   * @return the policy
+   */
+  public static BatchPolicy ofLinger(long duration, TimeUnit unit) {
+    return new BatchPolicy(Integer.MAX_VALUE, 0, null, 0).withLinger(duration, unit);
+  }
+
+  /**
+   * @param maxMessages the maximum number of messages per batch, must be strictly positive
+   * @return a new policy with the given limit
+   */
+  public BatchPolicy withMaxMessages(int maxMessages) {
+    if (maxMessages <= 0) {
+      throw new IllegalArgumentException("The maximum number of messages must be strictly positive");
+    }
+    return new BatchPolicy(maxMessages, maxBytes, weigher, linger);
+  }
+
+  /**
+   * @param maxBytes the maximum number of bytes per batch, must be strictly positive
+   * @return a new policy with the given limit, the size of the messages is computed by {@link #sizeOf(Message)}
+   */
+  public BatchPolicy withMaxBytes(long maxBytes) {
+    return withMaxBytes(maxBytes, BatchPolicy::sizeOf);
+  }
+
+  /**
+   * @param maxBytes the maximum number of bytes per batch, must be strictly positive
+   * @param weigher  the function computing the size of a message, must not be {@code null}
+   * @return a new policy with the given limit
+   */
+  public BatchPolicy withMaxBytes(long maxBytes, ToLongFunction<Message<?>> weigher) {
+    Objects.requireNonNull(weigher, "The `weigher` must not be `null`");
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("The maximum number of bytes must be strictly positive");
+    }
+    return new BatchPolicy(maxMessages, maxBytes, weigher, linger);
+  }
+
+  /**
+   * @param duration the linger time, must be at least 1 millisecond
+   * @param unit     the time unit, must not be {@code null}
+   * @return a new policy with the given linger time
+   */
+  public BatchPolicy withLinger(long duration, TimeUnit unit) {
+    Objects.requireNonNull(unit, "The `unit` must not be `null`");
+    long millis = unit.toMillis(duration);
+    if (millis <= 0) {
+      throw new IllegalArgumentException("The linger time must be at least 1 millisecond");
+    }
+    return new BatchPolicy(maxMessages, maxBytes, weigher, millis);
+  }
+
+  /**
+   * The default estimation of the size of a message: the length of {@code byte[]} payloads, the remaining bytes of
+   * {@link ByteBuffer} payloads, and the length of {@link CharSequence} payloads. Other payloads count for 1 byte.
+   *
+   * @param message the message
+   * @return the estimated size in bytes
+   */
+  public static long sizeOf(Message<?> message) {
+    Object payload = message.payload();
+    if (payload instanceof byte[]) {
+      return ((byte[]) payload).length;
+    }
+    if (payload instanceof ByteBuffer) {
+      return ((ByteBuffer) payload).remaining();
+    }
+    if (payload instanceof CharSequence) {
+      return ((CharSequence) payload).length();
+    }
+    return 1;
+  }
+
+  int maxMessages() {
+    return maxMessages;
+  }
+
+  long maxBytes() {
+    return maxBytes;
+  }
+
+  long weigh(Message<?> message) {
+    return weigher == null ? 0 : weigher.applyAsLong(message);
+  }
+
+  long linger() {
+    return linger;
+  }
+}
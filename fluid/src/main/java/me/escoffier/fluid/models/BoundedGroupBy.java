@@ -0,0 +1,300 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.processors.UnicastProcessor;
+import io.reactivex.schedulers.Schedulers;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Implements {@link Source#groupBy(Function, GroupByOptions)}. Unlike the RxJava {@code groupBy} operator, groups can
+ * be evicted before the completion of the upstream, either because they are idle or because the maximum number of
+ * groups is reached. Evicted groups complete.
+ * <p>
+ * The open groups are stored in a {@link LinkedHashMap} in access order, so the least recently used group is the
+ * first one. Each group buffers its messages in a {@link UnicastProcessor} until they are consumed. The upstream is
+ * requested in batches as the messages are consumed by the groups. Idle groups are detected using one timer per group
+ * on the shared {@link TimerWheel}, re-armed lazily.
+ *
+ * @param <K> the type of key
+ * @param <T> the type of payload
+ */
+final class BoundedGroupBy<K, T> implements FlowableSubscriber<Message<T>> {
+
+  private static final int PREFETCH = 256;
+
+  private static final int LIMIT = PREFETCH - (PREFETCH >> 2);
+
+  private final UnicastProcessor<GroupedDataStream<K, T>> main = UnicastProcessor.create();
+
+  private final Function<Message<T>, K> keySupplier;
+
+  private final GroupByOptions options;
+
+  private final GroupMetrics metrics;
+
+  private final TimerWheel timers;
+
+  private final Scheduler scheduler;
+
+  /**
+   * The open groups, in access order. Guarded by {@code this}.
+   */
+  private final LinkedHashMap<K, Group<K, T>> groups = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final AtomicLong consumed = new AtomicLong();
+
+  private volatile Subscription upstream;
+
+  /**
+   * Guarded by {@code this}.
+   */
+  private boolean mainCancelled;
+
+  private boolean done;
+
+  private BoundedGroupBy(Function<Message<T>, K> keySupplier, GroupByOptions options, TimerWheel timers,
+                         Scheduler scheduler) {
+    this.keySupplier = keySupplier;
+    this.options = options;
+    this.metrics = options.metrics();
+    this.timers = timers;
+    this.scheduler = scheduler;
+  }
+
+  static <K, T> Flowable<GroupedDataStream<K, T>> apply(Publisher<Message<T>> upstream,
+                                                        Function<Message<T>, K> keySupplier, GroupByOptions options) {
+    return Flowable.defer(() -> {
+      BoundedGroupBy<K, T> operator = new BoundedGroupBy<>(keySupplier, options, TimerWheel.SHARED,
+        Schedulers.computation());
+      // The upstream is subscribed once the downstream is subscribed, so the groups are not buffered in `main`.
+      return Flowable.<GroupedDataStream<K, T>>unsafeCreate(subscriber -> {
+        operator.main.doOnCancel(operator::onMainCancelled).subscribe(subscriber);
+        upstream.subscribe(operator);
+      });
+    });
+  }
+
+  @Override
+  public void onSubscribe(Subscription s) {
+    this.upstream = s;
+    s.request(PREFETCH);
+  }
+
+  @Override
+  public void onNext(Message<T> message) {
+    if (done) {
+      return;
+    }
+    K key;
+    try {
+      key = Objects.requireNonNull(keySupplier.apply(message), "The key of a message must not be `null`");
+    } catch (Throwable e) {
+      Exceptions.throwIfFatal(e);
+      upstream.cancel();
+      onError(e);
+      return;
+    }
+
+    Group<K, T> evicted = null;
+    Group<K, T> created = null;
+    boolean dropped = false;
+    boolean overflow = false;
+    synchronized (this) {
+      Group<K, T> group = groups.get(key);
+      if (group == null) {
+        if (mainCancelled) {
+          dropped = true;
+        } else if (groups.size() >= options.getMaxGroups()
+          && options.getOverflow() == GroupByOptions.Overflow.FAIL) {
+          overflow = true;
+        } else {
+          if (groups.size() >= options.getMaxGroups()) {
+            Iterator<Group<K, T>> iterator = groups.values().iterator();
+            evicted = iterator.next();
+            iterator.remove();
+            evicted.removed = true;
+            metrics.onOverflowEviction();
+          }
+          Group<K, T> fresh = new Group<>(key);
+          groups.put(key, fresh);
+          metrics.onCreated();
+          main.onNext(new GroupedDataStream<>(key, fresh.processor
+            .doOnNext(m -> delivered(fresh))
+            .doOnCancel(() -> onGroupCancelled(fresh))));
+          group = fresh;
+          created = fresh;
+        }
+      }
+      if (group != null) {
+        group.lastAccess = System.currentTimeMillis();
+        group.buffered.offer(message);
+        group.processor.onNext(message);
+      }
+    }
+
+    if (evicted != null) {
+      evicted.processor.onComplete();
+    }
+    if (created != null && options.getIdleTimeout() > 0) {
+      arm(created, options.getIdleTimeout());
+    }
+    if (dropped) {
+      // No group consumes the message anymore, it is discarded.
+      message.ack();
+      consumed(1);
+    }
+    if (overflow) {
+      upstream.cancel();
+      onError(new IllegalStateException("Unable to create a group for the key `" + key + "`, the maximum number of "
+        + "groups (" + options.getMaxGroups() + ") is reached"));
+    }
+  }
+
+  private void arm(Group<K, T> group, long delay) {
+    timers.schedule(() -> scheduler.scheduleDirect(() -> checkIdle(group)), delay);
+  }
+
+  private void checkIdle(Group<K, T> group) {
+    long remaining;
+    synchronized (this) {
+      if (group.removed) {
+        return;
+      }
+      remaining = group.lastAccess + options.getIdleTimeout() - System.currentTimeMillis();
+      if (remaining <= 0) {
+        groups.remove(group.key);
+        group.removed = true;
+        metrics.onIdleEviction();
+      }
+    }
+    if (remaining > 0) {
+      arm(group, remaining);
+    } else {
+      group.processor.onComplete();
+    }
+  }
+
+  private void delivered(Group<K, T> group) {
+    group.buffered.poll();
+    consumed(1);
+  }
+
+  private void consumed(long count) {
+    if (consumed.addAndGet(count) >= LIMIT) {
+      long requests = consumed.getAndSet(0);
+      if (requests > 0) {
+        upstream.request(requests);
+      }
+    }
+  }
+
+  private void onGroupCancelled(Group<K, T> group) {
+    boolean cancel;
+    synchronized (this) {
+      if (!group.removed) {
+        groups.remove(group.key);
+        group.removed = true;
+        metrics.onRemoved();
+      }
+      cancel = mainCancelled && groups.isEmpty();
+    }
+    // The messages buffered by the group are discarded.
+    long dropped = 0;
+    Message<T> message;
+    while ((message = group.buffered.poll()) != null) {
+      message.ack();
+      dropped++;
+    }
+    if (cancel) {
+      upstream.cancel();
+    } else if (dropped > 0) {
+      consumed(dropped);
+    }
+  }
+
+  private void onMainCancelled() {
+    boolean cancel;
+    synchronized (this) {
+      mainCancelled = true;
+      cancel = groups.isEmpty();
+    }
+    if (cancel) {
+      upstream.cancel();
+    }
+  }
+
+  private List<Group<K, T>> terminate() {
+    synchronized (this) {
+      done = true;
+      List<Group<K, T>> list = new ArrayList<>(groups.values());
+      for (Group<K, T> group : list) {
+        group.removed = true;
+        metrics.onRemoved();
+      }
+      groups.clear();
+      return list;
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (done) {
+      RxJavaPlugins.onError(t);
+      return;
+    }
+    for (Group<K, T> group : terminate()) {
+      group.processor.onError(t);
+    }
+    main.onError(t);
+  }
+
+  @Override
+  public void onComplete() {
+    if (done) {
+      return;
+    }
+    for (Group<K, T> group : terminate()) {
+      group.processor.onComplete();
+    }
+    main.onComplete();
+  }
+
+  private static final class Group<K, T> {
+    private final K key;
+    private final UnicastProcessor<Message<T>> processor = UnicastProcessor.create();
+
+    /**
+     * The messages buffered in the processor, in order, so they can be acknowledged if the group is cancelled.
+     */
+    private final Queue<Message<T>> buffered = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Guarded by the operator.
+     */
+    private long lastAccess;
+
+    /**
+     * Whether the group has been removed from the map. Guarded by the operator.
+     */
+    private boolean removed;
+
+    private Group(K key) {
+      this.key = key;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package me.escoffier.fluid.models;
+
+/**
+ * Metrics about the branches created by {@link Source#broadcast(int, BroadcastOptions)}. Branches are identified by
+ * their index.
+ */
+public class BroadcastMetrics {
+
+  private volatile FanOut<?> fanOut;
+
+  /**
+   * @return the number of branches, 0 if the broadcast has not been created yet.
+   */
+  public int branches() {
+    FanOut<?> current = fanOut;
+    return current == null ? 0 : current.size();
+  }
+
+  /**
+   * Gets the lag of a branch, i.e. the number of messages received by the broadcast but not yet consumed by the branch.
+   *
+   * @param branch the index of the branch
+   * @return the lag
+   */
+  public long lag(int branch) {
+    return branch(branch).lag();
+  }
+
+  /**
+   * @return the highest lag among the branches.
+   */
+  public long maxLag() {
+    long max = 0;
+    for (int i = 0; i < branches(); i++) {
+      max = Math.max(max, lag(i));
+    }
+    return max;
+  }
+
+  /**
+   * Gets the number of messages discarded for a branch because its buffer was full.
+   *
+   * @param branch the index of the branch
+   * @return the number of discarded messages
+   */
+  public long dropped(int branch) {
+    return branch(branch).dropped();
+  }
+
+  private FanOut.Branch<?> branch(int index) {
+    FanOut<?> current = fanOut;
+    if (current == null || index < 0 || index >= current.size()) {
+      throw new IllegalArgumentException("Invalid branch index " + index);
+    }
+    return current.branch(index);
+  }
+
+  void bind(FanOut<?> fanOut) {
+    this.fanOut = fanOut;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("BroadcastMetrics{");
+    for (int i = 0; i < branches(); i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(i).append("={lag=").append(lag(i)).append(", dropped=").append(dropped(i)).append("}");
+    }
+    return builder.append("}").toString();
+  }
+}
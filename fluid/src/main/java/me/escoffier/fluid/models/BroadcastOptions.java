@@ -0,0 +1,84 @@
+package me.escoffier.fluid.models;
+
+import java.util.Objects;
+
+/**
+ * Options configuring the buffering of the branches created by {@link Source#broadcast(int, BroadcastOptions)}.
+ * <p>
+ * Each branch buffers the messages it has not consumed yet in a bounded ring buffer. The {@link Overflow} policy
+ * indicates what happens when the buffer of a branch is full. By default, buffers contain 128 messages and the
+ * policy is {@link Overflow#BLOCK}.
+ * <p>
+ * The options hold the {@link BroadcastMetrics} updated by the broadcast using them.
+ */
+public class BroadcastOptions {
+
+  /**
+   * The policy applied when a message is broadcast while the buffer of a branch is full.
+   */
+  public enum Overflow {
+    /**
+     * Stops consuming the upstream source until the branch consumes messages, so the slowest branch dictates the pace
+     * of all the branches.
+     */
+    BLOCK,
+    /**
+     * Discards the oldest message of the buffer of the branch.
+     */
+    DROP_OLDEST,
+    /**
+     * Discards the new message for the branch.
+     */
+    DROP_NEWEST,
+    /**
+     * Fails the branch with an {@link IllegalStateException}. The other branches are not impacted.
+     */
+    FAIL
+  }
+
+  private int bufferSize = 128;
+
+  private Overflow overflow = Overflow.BLOCK;
+
+  private final BroadcastMetrics metrics = new BroadcastMetrics();
+
+  /**
+   * Sets the number of messages buffered by each branch.
+   *
+   * @param bufferSize the size, must be strictly positive
+   * @return the current {@link BroadcastOptions}
+   */
+  public BroadcastOptions setBufferSize(int bufferSize) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("The buffer size must be strictly positive");
+    }
+    this.bufferSize = bufferSize;
+    return this;
+  }
+
+  /**
+   * Sets the policy applied when the buffer of a branch is full. Defaults to {@link Overflow#BLOCK}.
+   *
+   * @param overflow the policy, must not be {@code null}
+   * @return the current {@link BroadcastOptions}
+   */
+  public BroadcastOptions setOverflow(Overflow overflow) {
+    this.overflow = Objects.requireNonNull(overflow, "The `overflow` policy must not be `null`");
+    return this;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public Overflow getOverflow() {
+    return overflow;
+  }
+
+  /**
+   * @return the metrics of the branches of the last broadcast created with these options.
+   */
+  public BroadcastMetrics metrics() {
+    return metrics;
+  }
+}
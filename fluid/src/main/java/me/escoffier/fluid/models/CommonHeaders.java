@@ -2,6 +2,10 @@ package me.escoffier.fluid.models;
 
 import java.util.Optional;
 
+/**
+ * Well-known headers. These headers are set on almost every message, so they are not stored in the header map of the
+ * {@link Message} but in a fixed slot. The accessors provided by this class read the slot directly.
+ */
 public final class CommonHeaders {
 
   public static final String ORIGINAL = "fluid.original";
@@ -14,46 +18,155 @@ public final class CommonHeaders {
 
   public static final String GROUP_KEY = "fluid-group-key";
 
+  /**
+   * The partition of the record from which the message has been created (Kafka).
+   */
+  public static final String PARTITION = "partition";
+
+  /**
+   * The timestamp of the record from which the message has been created (Kafka).
+   */
+  public static final String TIMESTAMP = "timestamp";
+
+  /**
+   * The checksum of the record from which the message has been created (Kafka).
+   */
+  public static final String CHECKSUM = "checksum";
+
+  private static final int ORIGINAL_SLOT = 0;
+  private static final int ADDRESS_SLOT = 1;
+  private static final int KEY_SLOT = 2;
+  private static final int RESPONSE_CALLBACK_SLOT = 3;
+  private static final int GROUP_KEY_SLOT = 4;
+  private static final int PARTITION_SLOT = 5;
+  private static final int TIMESTAMP_SLOT = 6;
+  private static final int CHECKSUM_SLOT = 7;
+
+  private static final String[] SLOT_NAMES = {
+    ORIGINAL, ADDRESS, KEY, RESPONSE_CALLBACK, GROUP_KEY, PARTITION, TIMESTAMP, CHECKSUM
+  };
+
+  /**
+   * The number of well-known headers.
+   */
+  static final int SLOT_COUNT = SLOT_NAMES.length;
 
   private CommonHeaders() {
     // Avoid direct instantiation.
   }
 
+  /**
+   * Gets the slot associated with the given header key.
+   *
+   * @param key the key, must not be {@code null}
+   * @return the slot, -1 if the key is not a well-known header.
+   */
+  static int slot(String key) {
+    switch (key) {
+      case ORIGINAL:
+        return ORIGINAL_SLOT;
+      case ADDRESS:
+        return ADDRESS_SLOT;
+      case KEY:
+        return KEY_SLOT;
+      case RESPONSE_CALLBACK:
+        return RESPONSE_CALLBACK_SLOT;
+      case GROUP_KEY:
+        return GROUP_KEY_SLOT;
+      case PARTITION:
+        return PARTITION_SLOT;
+      case TIMESTAMP:
+        return TIMESTAMP_SLOT;
+      case CHECKSUM:
+        return CHECKSUM_SLOT;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Gets the header key associated with the given slot.
+   *
+   * @param slot the slot
+   * @return the key
+   */
+  static String slotName(int slot) {
+    return SLOT_NAMES[slot];
+  }
 
   @SuppressWarnings("unchecked")
   public static <T> T original(Message message) {
-    return (T) message.get(ORIGINAL);
+    return (T) message.slot(ORIGINAL_SLOT);
   }
 
   @SuppressWarnings("unchecked")
   public static <T> Optional<T> originalOpt(Message message) {
-    return message.getOpt(ORIGINAL);
+    return Optional.ofNullable((T) message.slot(ORIGINAL_SLOT));
   }
 
   public static String address(Message message) {
-    return (String) message.get(ADDRESS);
+    return (String) message.slot(ADDRESS_SLOT);
   }
 
-  @SuppressWarnings("unchecked")
   public static Optional<String> addressOpt(Message message) {
-    return message.getOpt(ADDRESS);
+    return Optional.ofNullable(address(message));
   }
 
   public static String key(Message message) {
-    return (String) message.get(KEY);
+    return (String) message.slot(KEY_SLOT);
   }
 
-  @SuppressWarnings("unchecked")
   public static Optional<String> keyOpt(Message message) {
-    return message.getOpt(KEY);
+    return Optional.ofNullable(key(message));
   }
 
   public static ResponseCallback responseCallback(Message message) {
-    return (ResponseCallback) message.get(RESPONSE_CALLBACK);
+    return (ResponseCallback) message.slot(RESPONSE_CALLBACK_SLOT);
   }
 
   public static Optional<ResponseCallback> responseCallbackOpt(Message message) {
-    return (Optional<ResponseCallback>) message.getOpt(RESPONSE_CALLBACK);
+    return Optional.ofNullable(responseCallback(message));
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <K> K groupKey(Message message) {
+    return (K) message.slot(GROUP_KEY_SLOT);
+  }
+
+  /**
+   * Gets the {@link #PARTITION} header. The header can be set by the user with any type, so numbers are converted and
+   * other values are ignored.
+   *
+   * @param message the message
+   * @return the partition, {@code null} if the message has no partition or if the header is not a number
+   */
+  public static Integer partition(Message message) {
+    Object value = message.slot(PARTITION_SLOT);
+    return value instanceof Number ? ((Number) value).intValue() : null;
+  }
+
+  /**
+   * Gets the {@link #TIMESTAMP} header. Numbers are converted and other values are ignored.
+   *
+   * @param message the message
+   * @return the timestamp, {@code null} if the message has no timestamp or if the header is not a number
+   */
+  public static Long timestamp(Message message) {
+    return asLong(message.slot(TIMESTAMP_SLOT));
+  }
+
+  /**
+   * Gets the {@link #CHECKSUM} header. Numbers are converted and other values are ignored.
+   *
+   * @param message the message
+   * @return the checksum, {@code null} if the message has no checksum or if the header is not a number
+   */
+  public static Long checksum(Message message) {
+    return asLong(message.slot(CHECKSUM_SLOT));
+  }
+
+  private static Long asLong(Object value) {
+    return value instanceof Number ? ((Number) value).longValue() : null;
   }
 
 }
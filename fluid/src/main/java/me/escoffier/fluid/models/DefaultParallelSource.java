@@ -0,0 +1,74 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import io.reactivex.parallel.ParallelFlowable;
+import org.reactivestreams.Publisher;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static me.escoffier.fluid.models.DefaultSource.FILTER_CANNOT_BE_NULL_MESSAGE;
+import static me.escoffier.fluid.models.DefaultSource.FUNCTION_CANNOT_BE_NULL_MESSAGE;
+
+/**
+ * Default implementation of {@link ParallelSource}, based on the RxJava {@link ParallelFlowable}.
+ *
+ * @param <T> the type of payload
+ */
+public class DefaultParallelSource<T> implements ParallelSource<T> {
+
+  private final ParallelFlowable<Message<T>> rails;
+  private final String name;
+  private final Map<String, Object> attributes;
+
+  DefaultParallelSource(ParallelFlowable<Message<T>> rails, String name, Map<String, Object> attributes) {
+    this.rails = rails;
+    this.name = name;
+    this.attributes = attributes;
+  }
+
+  @Override
+  public int parallelism() {
+    return rails.parallelism();
+  }
+
+  @Override
+  public <X> ParallelSource<X> map(Function<Message<T>, Message<X>> mapper) {
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultParallelSource<>(rails.map(m -> Acknowledgements.propagate(m, mapper.apply(m))), name,
+      attributes);
+  }
+
+  @Override
+  public <X> ParallelSource<X> mapPayload(Function<T, X> mapper) {
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultParallelSource<>(rails.map(m -> m.with(mapper.apply(m.payload()))), name, attributes);
+  }
+
+  @Override
+  public ParallelSource<T> filter(Predicate<Message<T>> filter) {
+    Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultParallelSource<>(rails.filter(m -> Acknowledgements.retain(m, filter.test(m))), name, attributes);
+  }
+
+  @Override
+  public ParallelSource<T> filterPayload(Predicate<T> filter) {
+    Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultParallelSource<>(rails.filter(m -> Acknowledgements.retain(m, filter.test(m.payload()))), name,
+      attributes);
+  }
+
+  @Override
+  public <X> ParallelSource<X> flatMap(Function<Message<T>, Publisher<Message<X>>> mapper) {
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultParallelSource<>(rails.flatMap(m -> Acknowledgements.fork(m, mapper.apply(m))), name, attributes);
+  }
+
+  @Override
+  public Source<T> sequential() {
+    Flowable<Message<T>> merged = rails.sequential();
+    return new DefaultSource<>(merged, name, attributes);
+  }
+}
@@ -1,8 +1,14 @@
 package me.escoffier.fluid.models;
 
+import io.reactivex.Completable;
 import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+import me.escoffier.fluid.registry.FluidRegistry;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.util.Strings;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
@@ -24,6 +30,21 @@ public class DefaultSource<T> implements Source<T> {
 
   public static final String FUNCTION_CANNOT_BE_NULL_MESSAGE = "The `mapper` function cannot be `null`";
   public static final String FILTER_CANNOT_BE_NULL_MESSAGE = "The `filter` function cannot be `null`";
+  public static final String SCHEDULER_CANNOT_BE_NULL_MESSAGE = "The `scheduler` cannot be `null`";
+
+  /**
+   * Attribute enabling the fused execution mode, see {@link Source#fused()}.
+   */
+  public static final String FUSED_ATTRIBUTE = "fluid.fused";
+
+  /**
+   * Attribute storing the {@link FailurePolicy} applied to the per-message actions, see
+   * {@link Source#onErrorRetry(Backoff)}.
+   */
+  public static final String FAILURE_POLICY_ATTRIBUTE = "fluid.failure-policy";
+
+  private static final Logger logger = LogManager.getLogger(DefaultSource.class);
+
   private final Publisher<Message<T>> flow;
 
   private final String name;
@@ -91,17 +112,159 @@ public class DefaultSource<T> implements Source<T> {
     return Optional.ofNullable((T) attributes.get(Objects.requireNonNull(key, "The key must not be `null`")));
   }
 
-  // TODO dispatchOn to select on which thread pool the source emit the data
+  Map<String, Object> attributes() {
+    return attributes;
+  }
+
+  @Override
+  public Source<T> fused() {
+    return withAttribute(FUSED_ATTRIBUTE, true);
+  }
+
+  private boolean isFused() {
+    return Boolean.TRUE.equals(attributes.get(FUSED_ATTRIBUTE));
+  }
+
+  private FusedSource<T, T> plan() {
+    return FusedSource.start(flow, name, attributes);
+  }
+
+  @Override
+  public Source<T> onErrorRetry(Backoff backoff) {
+    return withAttribute(FAILURE_POLICY_ATTRIBUTE, policyOrDefault().withRetry(backoff));
+  }
+
+  @Override
+  public Source<T> onErrorSkip() {
+    return withAttribute(FAILURE_POLICY_ATTRIBUTE, policyOrDefault().withSkip());
+  }
+
+  @Override
+  public Source<T> onErrorDeadLetter(String sink) {
+    return withAttribute(FAILURE_POLICY_ATTRIBUTE, policyOrDefault().withDeadLetter(sink));
+  }
+
+  @Override
+  public FailureMetrics failures() {
+    return policyOrDefault().metrics();
+  }
+
+  FailurePolicy policy() {
+    return (FailurePolicy) attributes.get(FAILURE_POLICY_ATTRIBUTE);
+  }
+
+  private FailurePolicy policyOrDefault() {
+    FailurePolicy policy = policy();
+    return policy == null ? FailurePolicy.failFast() : policy;
+  }
+
+  /**
+   * Applies the action on each message sequentially, guarded by the given failure policy.
+   */
+  private <X> Flowable<Message<X>> guardedConcatMap(FailurePolicy policy,
+                                                    Function<Message<T>, Publisher<Message<X>>> action) {
+    return Flowable.fromPublisher(flow)
+      .concatMap(message -> policy.apply(message,
+        Flowable.defer(() -> Acknowledgements.fork(message, action.apply(message)))));
+  }
+
+  /**
+   * Applies the action on each message concurrently, guarded by the given failure policy.
+   */
+  private <X> Flowable<Message<X>> guardedFlatMap(FailurePolicy policy,
+                                                  Function<Message<T>, Publisher<Message<X>>> action,
+                                                  int maxConcurrency) {
+    return Flowable.fromPublisher(flow)
+      .flatMap(message -> policy.apply(message,
+        Flowable.defer(() -> Acknowledgements.fork(message, action.apply(message)))), maxConcurrency);
+  }
+
+  @Override
+  public Source<T> dispatchOn(Scheduler scheduler) {
+    Objects.requireNonNull(scheduler, SCHEDULER_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultSource<>(Flowable.fromPublisher(flow).observeOn(scheduler), name, attributes);
+  }
+
+  @Override
+  public Source<T> dispatchOn(String executor) {
+    return dispatchOn(lookup(executor));
+  }
+
+  @Override
+  public Source<T> emitOn(Scheduler scheduler) {
+    Objects.requireNonNull(scheduler, SCHEDULER_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultSource<>(Flowable.fromPublisher(flow).subscribeOn(scheduler), name, attributes);
+  }
+
+  @Override
+  public Source<T> emitOn(String executor) {
+    return emitOn(lookup(executor));
+  }
+
+  @Override
+  public ParallelSource<T> parallel(int rails) {
+    return parallel(rails, Schedulers.computation());
+  }
+
+  @Override
+  public ParallelSource<T> parallel(int rails, Scheduler scheduler) {
+    checkRails(rails);
+    Objects.requireNonNull(scheduler, SCHEDULER_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultParallelSource<>(Flowable.fromPublisher(flow).parallel(rails).runOn(scheduler), name, attributes);
+  }
+
+  @Override
+  public ParallelSource<T> parallelByKey(int rails) {
+    return parallelByKey(rails, Schedulers.computation());
+  }
+
+  @Override
+  public ParallelSource<T> parallelByKey(int rails, Scheduler scheduler) {
+    checkRails(rails);
+    Objects.requireNonNull(scheduler, SCHEDULER_CANNOT_BE_NULL_MESSAGE);
+    return new DefaultParallelSource<>(new KeyedRails<>(flow, rails).runOn(scheduler), name, attributes);
+  }
+
+  private static void checkRails(int rails) {
+    if (rails <= 0) {
+      throw new IllegalArgumentException("The number of rails must be strictly positive");
+    }
+  }
+
+  private static Scheduler lookup(String executor) {
+    Scheduler scheduler = FluidRegistry.scheduler(
+      Objects.requireNonNull(executor, "The executor name cannot be `null`"));
+    if (scheduler == null) {
+      throw new IllegalArgumentException("Unknown executor `" + executor + "`");
+    }
+    return scheduler;
+  }
 
   @Override
   public <X> Source<X> map(Function<Message<T>, Message<X>> mapper) {
     Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
-    return new DefaultSource<>(Flowable.fromPublisher(flow).map(mapper::apply), name, attributes);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedConcatMap(policy, m -> Flowable.just(mapper.apply(m))), name, attributes);
+    }
+    if (isFused()) {
+      return plan().map(mapper);
+    }
+    return new DefaultSource<>(Flowable.fromPublisher(flow).map(m -> Acknowledgements.propagate(m, mapper.apply(m))),
+      name, attributes);
   }
 
   @Override
   public <X> Source<X> mapPayload(Function<T, X> mapper) {
     Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedConcatMap(policy, m -> Flowable.just(m.with(mapper.apply(m.payload())))),
+        name, attributes);
+    }
+    if (isFused()) {
+      return plan().mapPayload(mapper);
+    }
     Flowable<Message<X>> flowable = Flowable.fromPublisher(flow).map(d -> d.with(mapper.apply(d.payload())));
     return new DefaultSource<>(flowable, name, attributes);
   }
@@ -109,39 +272,91 @@ public class DefaultSource<T> implements Source<T> {
   @Override
   public Source<T> filter(Predicate<Message<T>> filter) {
     Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
-    return new DefaultSource<>(Flowable.fromPublisher(flow).filter(filter::test), name, attributes);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedConcatMap(policy, m -> filter.test(m) ? Flowable.just(m) : Flowable.empty()),
+        name, attributes);
+    }
+    if (isFused()) {
+      return plan().filter(filter);
+    }
+    return new DefaultSource<>(Flowable.fromPublisher(flow).filter(d -> Acknowledgements.retain(d, filter.test(d))),
+      name, attributes);
   }
 
   @Override
   public Source<T> filterPayload(Predicate<T> filter) {
     Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
-    Flowable<Message<T>> flowable = Flowable.fromPublisher(flow).filter(d -> filter.test(d.payload()));
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedConcatMap(policy,
+        m -> filter.test(m.payload()) ? Flowable.just(m) : Flowable.empty()), name, attributes);
+    }
+    if (isFused()) {
+      return plan().filterPayload(filter);
+    }
+    Flowable<Message<T>> flowable = Flowable.fromPublisher(flow)
+      .filter(d -> Acknowledgements.retain(d, filter.test(d.payload())));
     return new DefaultSource<>(flowable, name, attributes);
   }
 
   @Override
   public Source<T> filterNot(Predicate<Message<T>> filter) {
     Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
-    return new DefaultSource<>(Flowable.fromPublisher(flow).filter(d -> !filter.test(d)), name, attributes);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedConcatMap(policy, m -> !filter.test(m) ? Flowable.just(m) : Flowable.empty()),
+        name, attributes);
+    }
+    if (isFused()) {
+      return plan().filterNot(filter);
+    }
+    return new DefaultSource<>(Flowable.fromPublisher(flow).filter(d -> Acknowledgements.retain(d, !filter.test(d))),
+      name, attributes);
   }
 
   @Override
   public Source<T> filterNotPayload(Predicate<T> filter) {
     Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
-    Flowable<Message<T>> flowable = Flowable.fromPublisher(flow).filter(d -> !filter.test(d.payload()));
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedConcatMap(policy,
+        m -> !filter.test(m.payload()) ? Flowable.just(m) : Flowable.empty()), name, attributes);
+    }
+    if (isFused()) {
+      return plan().filterNotPayload(filter);
+    }
+    Flowable<Message<T>> flowable = Flowable.fromPublisher(flow)
+      .filter(d -> Acknowledgements.retain(d, !filter.test(d.payload())));
     return new DefaultSource<>(flowable, name, attributes);
   }
 
   @Override
   public <X> Source<X> flatMap(Function<Message<T>, Publisher<Message<X>>> mapper) {
     Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
-    return new DefaultSource<>(Flowable.fromPublisher(flow).flatMap(mapper::apply), name, attributes);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedFlatMap(policy, mapper, Flowable.bufferSize()), name, attributes);
+    }
+    if (isFused()) {
+      return plan().flatMap(mapper);
+    }
+    return new DefaultSource<>(Flowable.fromPublisher(flow).flatMap(m -> Acknowledgements.fork(m, mapper.apply(m))),
+      name, attributes);
   }
 
   @Override
   public <X> Source<X> concatMap(Function<Message<T>, Publisher<Message<X>>> mapper) {
     Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
-    return new DefaultSource<>(Flowable.fromPublisher(flow).concatMap(mapper::apply), name, attributes);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedConcatMap(policy, mapper), name, attributes);
+    }
+    if (isFused()) {
+      return plan().concatMap(mapper);
+    }
+    return new DefaultSource<>(Flowable.fromPublisher(flow).concatMap(m -> Acknowledgements.fork(m, mapper.apply(m))),
+      name, attributes);
   }
 
   @Override
@@ -150,17 +365,33 @@ public class DefaultSource<T> implements Source<T> {
     if (maxConcurrency < 1) {
       throw new IllegalArgumentException("The `maxConcurrency` cannot be less than 1");
     }
-    return new DefaultSource<>(Flowable.fromPublisher(flow).flatMap(mapper::apply, maxConcurrency), name, attributes);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedFlatMap(policy, mapper, maxConcurrency), name, attributes);
+    }
+    if (isFused()) {
+      return plan().flatMap(mapper, maxConcurrency);
+    }
+    return new DefaultSource<>(Flowable.fromPublisher(flow)
+      .flatMap(m -> Acknowledgements.fork(m, mapper.apply(m)), maxConcurrency), name, attributes);
   }
 
   @Override
   public <X> Source<X> flatMapPayload(Function<T, Publisher<X>> mapper) {
     Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedFlatMap(policy,
+        m -> Flowable.fromPublisher(mapper.apply(m.payload())).map(m::with), Flowable.bufferSize()), name, attributes);
+    }
+    if (isFused()) {
+      return plan().flatMapPayload(mapper);
+    }
 
     Flowable<Message<X>> flowable = Flowable.fromPublisher(flow)
       .flatMap(data -> {
         Publisher<X> publisher = mapper.apply(data.payload());
-        return Flowable.fromPublisher(publisher).map(data::with);
+        return Acknowledgements.fork(data, Flowable.fromPublisher(publisher).map(data::with));
       });
 
     return new DefaultSource<>(flowable, name, attributes);
@@ -169,11 +400,19 @@ public class DefaultSource<T> implements Source<T> {
   @Override
   public <X> Source<X> concatMapPayload(Function<T, Publisher<X>> mapper) {
     Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedConcatMap(policy,
+        m -> Flowable.fromPublisher(mapper.apply(m.payload())).map(m::with)), name, attributes);
+    }
+    if (isFused()) {
+      return plan().concatMapPayload(mapper);
+    }
 
     Flowable<Message<X>> flowable = Flowable.fromPublisher(flow)
       .concatMap(data -> {
         Publisher<X> publisher = mapper.apply(data.payload());
-        return Flowable.fromPublisher(publisher).map(data::with);
+        return Acknowledgements.fork(data, Flowable.fromPublisher(publisher).map(data::with));
       });
 
     return new DefaultSource<>(flowable, name, attributes);
@@ -182,11 +421,19 @@ public class DefaultSource<T> implements Source<T> {
   @Override
   public <X> Source<X> flatMapPayload(Function<T, Publisher<X>> mapper, int maxConcurrency) {
     Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      return new DefaultSource<>(guardedFlatMap(policy,
+        m -> Flowable.fromPublisher(mapper.apply(m.payload())).map(m::with), maxConcurrency), name, attributes);
+    }
+    if (isFused()) {
+      return plan().flatMapPayload(mapper, maxConcurrency);
+    }
 
     Flowable<Message<X>> flowable = Flowable.fromPublisher(flow)
       .flatMap(data -> {
         Publisher<X> publisher = mapper.apply(data.payload());
-        return Flowable.fromPublisher(publisher).map(data::with);
+        return Acknowledgements.fork(data, Flowable.fromPublisher(publisher).map(data::with));
       }, maxConcurrency);
 
     return new DefaultSource<>(flowable, name, attributes);
@@ -196,17 +443,48 @@ public class DefaultSource<T> implements Source<T> {
   public <X> Source<X> scan(Message<X> zero, BiFunction<Message<X>, Message<T>, Message<X>> function) {
     Objects.requireNonNull(function, "The `function` cannot be `null`");
     Objects.requireNonNull(zero, "The `zero` item (seed) cannot be `null`");
-    Flowable<Message<X>> reduced = Flowable.fromPublisher(flow).scan(zero, function::apply);
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      // A failed message leaves the accumulated value unchanged.
+      Flowable<Message<X>> reduced = Flowable.defer(() -> {
+        AtomicReference<Message<X>> acc = new AtomicReference<>(zero);
+        return Flowable.just(zero).concatWith(guardedConcatMap(policy, m -> {
+          Message<X> result = function.apply(acc.get(), m);
+          acc.set(result);
+          return Flowable.just(result);
+        }));
+      });
+      return new DefaultSource<>(reduced, name, attributes);
+    }
+    if (isFused()) {
+      return plan().scan(zero, function);
+    }
+    Flowable<Message<X>> reduced = Flowable.fromPublisher(flow)
+      .scan(zero, (acc, m) -> Acknowledgements.replace(m, function.apply(acc, m)));
     return new DefaultSource<>(reduced, name, attributes);
   }
 
   @Override
   public <X> Source<X> scanPayloads(X zero, BiFunction<X, T, X> function) {
     Objects.requireNonNull(function, "The `function` cannot be `null`");
+    FailurePolicy policy = policy();
+    if (policy != null) {
+      // A failed message leaves the accumulated value unchanged.
+      Flowable<Message<X>> reduced = Flowable.defer(() -> {
+        AtomicReference<X> acc = new AtomicReference<>(zero);
+        return Flowable.just(new Message<>(zero)).concatWith(guardedConcatMap(policy, m -> {
+          X result = function.apply(acc.get(), m.payload());
+          acc.set(result);
+          return Flowable.just(m.with(result));
+        }));
+      });
+      return new DefaultSource<>(reduced, name, attributes);
+    }
+    if (isFused()) {
+      return plan().scanPayloads(zero, function);
+    }
     Flowable<Message<X>> reduced = Flowable.fromPublisher(flow)
-      .map(Message::payload)
-      .scan(zero, function::apply)
-      .map(Message::new); // TODO We are loosing the headers
+      .scan(new Message<>(zero), (acc, m) -> m.with(function.apply(acc.payload(), m.payload())));
     return new DefaultSource<>(reduced, name, attributes);
   }
 
@@ -221,7 +499,60 @@ public class DefaultSource<T> implements Source<T> {
       });
   }
 
-  // TODO Windowing here
+  @Override
+  public <K> Publisher<GroupedDataStream<K, T>> groupBy(Function<Message<T>, K> keySupplier, GroupByOptions options) {
+    Objects.requireNonNull(keySupplier, "The function computing the key must not be `null`");
+    Objects.requireNonNull(options, "The `options` must not be `null`");
+    return BoundedGroupBy.apply(flow, keySupplier, options);
+  }
+
+  @Override
+  public <K, R> Source<Pair<K, R>> aggregateByKey(Function<Message<T>, K> key, Aggregator<T, R> aggregator) {
+    return aggregateByKey(key, aggregator, Emission.everyElement());
+  }
+
+  @Override
+  public <K, R> Source<Pair<K, R>> aggregateByKey(Function<Message<T>, K> key, Aggregator<T, R> aggregator,
+                                                   Emission emission) {
+    Objects.requireNonNull(key, "The function computing the key must not be `null`");
+    Objects.requireNonNull(aggregator, "The `aggregator` must not be `null`");
+    Objects.requireNonNull(emission, "The `emission` policy must not be `null`");
+    return new DefaultSource<>(KeyedAggregation.apply(flow, key, aggregator, emission), name, attributes);
+  }
+
+  @Override
+  public Source<List<T>> window(Window window) {
+    Objects.requireNonNull(window, "The `window` must not be `null`");
+    Flowable<Message<List<T>>> windows = Flowable.fromPublisher(flow).lift(new WindowOperator<T>(window));
+    return new DefaultSource<>(windows, name, attributes);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Pair<Source<List<T>>, Source<T>> window(Window window, EventTime<T> eventTime) {
+    Objects.requireNonNull(window, "The `window` must not be `null`");
+    Objects.requireNonNull(eventTime, "The `eventTime` must not be `null`");
+    // The late messages are a side output: the windows do not wait for the late messages to be consumed.
+    PublishProcessor<Message<T>> late = PublishProcessor.create();
+    Flowable<Message<List<T>>> windows = EventTimeWindows.apply(flow, window, eventTime)
+      .filter(item -> {
+        if (item instanceof EventTimeWindows.Late) {
+          Message<T> message = ((EventTimeWindows.Late<T>) item).message;
+          if (late.hasSubscribers()) {
+            late.onNext(message);
+          } else {
+            message.ack();
+          }
+          return false;
+        }
+        return true;
+      })
+      .map(item -> (Message<List<T>>) item)
+      .doOnComplete(late::onComplete)
+      .doOnError(late::onError);
+    return pair(new DefaultSource<>(windows, name, attributes),
+      new DefaultSource<>(late.onBackpressureBuffer(), name, attributes));
+  }
 
   @Override
   public Source<T> log(String loggerName) {
@@ -257,10 +588,14 @@ public class DefaultSource<T> implements Source<T> {
     }
 
     List<Source<T>> streams = new ArrayList<>(numberOfBranches);
-    Flowable<Message<T>> publish = Flowable.fromPublisher(flow).publish().autoConnect(numberOfBranches);
+    // Each branch gets its own copy of the messages, acknowledging the message once all the branches have processed it.
+    Flowable<List<Message<T>>> publish = Flowable.fromPublisher(flow)
+      .map(m -> Acknowledgements.fork(m, numberOfBranches))
+      .publish().autoConnect(numberOfBranches);
 
     for (int i = 0; i < numberOfBranches; i++) {
-      Source<T> stream = new DefaultSource<>(publish, name, attributes);
+      int index = i;
+      Source<T> stream = new DefaultSource<>(publish.map(copies -> copies.get(index)), name, attributes);
       streams.add(stream);
     }
 
@@ -274,44 +609,189 @@ public class DefaultSource<T> implements Source<T> {
     }
 
     Map<String, Source<T>> streams = new LinkedHashMap<>();
-    Flowable<Message<T>> publish = Flowable.fromPublisher(flow).publish().autoConnect(names.length);
+    Flowable<List<Message<T>>> publish = Flowable.fromPublisher(flow)
+      .map(m -> Acknowledgements.fork(m, names.length))
+      .publish().autoConnect(names.length);
 
-    for (String n : names) {
+    for (int i = 0; i < names.length; i++) {
+      String n = names[i];
       if (Strings.isBlank(n)) {
         throw new IllegalArgumentException("Illegal name for source. The name must not be `null` or blank");
       }
-      Source<T> stream = new DefaultSource<>(publish, n, attributes);
+      int index = i;
+      Source<T> stream = new DefaultSource<>(publish.map(copies -> copies.get(index)), n, attributes);
       streams.put(n, stream);
     }
 
     return streams;
   }
 
+  @Override
+  public List<Source<T>> broadcast(int numberOfBranches, BroadcastOptions options) {
+    if (numberOfBranches <= 1) {
+      throw new IllegalArgumentException("The number of branch must be at least 2");
+    }
+    Objects.requireNonNull(options, "The `options` must not be `null`");
+
+    FanOut<T> fanOut = new FanOut<>(flow, numberOfBranches, options, Schedulers.computation());
+    List<Source<T>> streams = new ArrayList<>(numberOfBranches);
+    for (int i = 0; i < numberOfBranches; i++) {
+      streams.add(new DefaultSource<>(fanOut.output(i), name, attributes));
+    }
+    return streams;
+  }
+
+  @Override
+  public Map<String, Source<T>> broadcast(BroadcastOptions options, String... names) {
+    if (names == null || names.length <= 1) {
+      throw new IllegalArgumentException("The number of branch must be at least 2");
+    }
+    Objects.requireNonNull(options, "The `options` must not be `null`");
+    for (String n : names) {
+      if (Strings.isBlank(n)) {
+        throw new IllegalArgumentException("Illegal name for source. The name must not be `null` or blank");
+      }
+    }
+
+    FanOut<T> fanOut = new FanOut<>(flow, names.length, options, Schedulers.computation());
+    Map<String, Source<T>> streams = new LinkedHashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      streams.put(names[i], new DefaultSource<>(fanOut.output(i), names[i], attributes));
+    }
+    return streams;
+  }
+
   @Override
   public Pair<Source<T>, Source<T>> branch(Predicate<Message<T>> condition) {
-    List<Source<T>> sources = broadcast(2);
-    Source<T> left = sources.get(0).filter(condition);
-    Source<T> right = sources.get(0).filterNot(condition);
-    return pair(left, right);
+    Objects.requireNonNull(condition, "The condition must not be `null`");
+    List<Source<T>> sources = route(m -> condition.test(m) ? 0 : 1, 2);
+    return pair(sources.get(0), sources.get(1));
   }
 
   @Override
   public Pair<Source<T>, Source<T>> branchOnPayload(Predicate<T> condition) {
-    List<Source<T>> sources = broadcast(2);
-    Source<T> left = sources.get(0).filterPayload(condition);
-    Source<T> right = sources.get(0).filterNotPayload(condition);
-    return pair(left, right);
+    Objects.requireNonNull(condition, "The condition must not be `null`");
+    List<Source<T>> sources = route(m -> condition.test(m.payload()) ? 0 : 1, 2);
+    return pair(sources.get(0), sources.get(1));
   }
 
-  // TODO Multi-branch
+  @Override
+  public List<Source<T>> route(Function<Message<T>, Integer> classifier, int numberOfBranches) {
+    Objects.requireNonNull(classifier, "The classifier must not be `null`");
+    if (numberOfBranches <= 0) {
+      throw new IllegalArgumentException("The number of branch must be strictly positive");
+    }
+    Router<T> router = new Router<>(flow, m -> {
+      Integer index = classifier.apply(m);
+      return index == null ? -1 : index;
+    }, numberOfBranches, Router.DEFAULT_CAPACITY);
+
+    List<Source<T>> streams = new ArrayList<>(numberOfBranches);
+    for (int i = 0; i < numberOfBranches; i++) {
+      streams.add(new DefaultSource<>(router.output(i), name, attributes));
+    }
+    return streams;
+  }
+
+  @Override
+  public Map<String, Source<T>> route(Map<String, Predicate<Message<T>>> routes) {
+    if (routes == null || routes.isEmpty()) {
+      throw new IllegalArgumentException("At least one route must be given");
+    }
+    List<String> names = new ArrayList<>(routes.keySet());
+    @SuppressWarnings("unchecked")
+    Predicate<Message<T>>[] predicates = new Predicate[names.size()];
+    for (int i = 0; i < predicates.length; i++) {
+      String n = names.get(i);
+      if (Strings.isBlank(n)) {
+        throw new IllegalArgumentException("Illegal name for source. The name must not be `null` or blank");
+      }
+      predicates[i] = Objects.requireNonNull(routes.get(n),
+        "The predicate of the route `" + n + "` must not be `null`");
+    }
+    Router<T> router = new Router<>(flow, m -> {
+      for (int i = 0; i < predicates.length; i++) {
+        if (predicates[i].test(m)) {
+          return i;
+        }
+      }
+      return -1;
+    }, predicates.length, Router.DEFAULT_CAPACITY);
+
+    Map<String, Source<T>> streams = new LinkedHashMap<>();
+    for (int i = 0; i < predicates.length; i++) {
+      streams.put(names.get(i), new DefaultSource<>(router.output(i), names.get(i), attributes));
+    }
+    return streams;
+  }
 
   @Override
   public Sink<T> to(Sink<T> sink) {
     Objects.requireNonNull(sink, "The sink must not be `null`");
+    return to(sink, new DispatchOptions().setMaxInFlight(sink.maxInFlight()));
+  }
+
+  @Override
+  public Sink<T> to(Sink<T> sink, int maxInFlight) {
+    return to(sink, new DispatchOptions().setMaxInFlight(maxInFlight));
+  }
+
+  @Override
+  public Sink<T> to(Sink<T> sink, DispatchOptions options) {
+    Objects.requireNonNull(sink, "The sink must not be `null`");
+    Objects.requireNonNull(options, "The `options` must not be `null`");
+    DispatchMetrics metrics = options.metrics();
+    Completable completion;
+    if (options.isOrdered()) {
+      // The completed messages are emitted in order, and stay in-flight until then.
+      completion = Flowable.fromPublisher(flow)
+        .concatMapEager(message -> dispatch(sink, message, metrics).andThen(Flowable.just(message)),
+          options.getMaxInFlight(), 1)
+        .doOnNext(message -> metrics.onCompleted())
+        .ignoreElements();
+    } else {
+      completion = Flowable.fromPublisher(flow)
+        .flatMapCompletable(message -> dispatch(sink, message, metrics).doOnComplete(metrics::onCompleted), false,
+          options.getMaxInFlight());
+    }
+    completion.subscribe(() -> {
+    }, failure -> onDispatchFailure(sink, failure));
+    return sink;
+  }
+
+  private Completable dispatch(Sink<T> sink, Message<T> message, DispatchMetrics metrics) {
+    Completable attempt = Completable.defer(() -> sink.dispatch(message)).doOnComplete(message::ack);
+    FailurePolicy policy = policy();
+    Completable guarded = policy == null ? attempt.doOnError(message::nack) : policy.apply(message, attempt);
+    return Completable.defer(() -> {
+      metrics.onDispatch();
+      return guarded;
+    }).doOnError(failure -> metrics.onFailed());
+  }
+
+  private void onDispatchFailure(Sink<T> sink, Throwable failure) {
+    logger.error("The dispatch of the messages from " + (name == null ? "an unnamed source" : "the source `" + name
+      + "`") + " to " + (sink.name() == null ? "an unnamed sink" : "the sink `" + sink.name() + "`")
+      + " has failed, the stream is terminated", failure);
+  }
+
+  @Override
+  public Sink<T> to(Sink<T> sink, BatchPolicy policy) {
+    Objects.requireNonNull(sink, "The sink must not be `null`");
+    Objects.requireNonNull(policy, "The `policy` must not be `null`");
     Flowable.fromPublisher(flow)
-      .flatMapCompletable(sink::dispatch)
-      .doOnError(Throwable::printStackTrace) // TODO error reporting
-      .subscribe();
+      .lift(new BatchOperator<T>(policy))
+      .flatMapCompletable(batch -> {
+        Completable attempt = Completable.defer(() -> sink.dispatchBatch(batch))
+          .doOnComplete(() -> batch.forEach(Message::ack));
+        FailurePolicy failurePolicy = policy();
+        if (failurePolicy == null) {
+          return attempt.doOnError(failure -> batch.forEach(message -> message.nack(failure)));
+        }
+        return failurePolicy.apply(batch, attempt.toFlowable()).ignoreElements();
+      }, false, 1)
+      .subscribe(() -> {
+      }, failure -> onDispatchFailure(sink, failure));
     return sink;
   }
 
@@ -322,13 +802,15 @@ public class DefaultSource<T> implements Source<T> {
 
   @Override
   public <O> Source<Pair<T, O>> zipWith(Publisher<Message<O>> source) {
-    return new DefaultSource<>(asFlowable().zipWith(source, (a, b) -> a.with(Pair.pair(a.payload(), b.payload()))),
-      name, attributes);
+    return new DefaultSource<>(asFlowable().zipWith(source, (a, b) -> a.with(Pair.pair(a.payload(), b.payload()))
+      .withAcknowledgement(Acknowledgement.all(a.acknowledgement(), b.acknowledgement()))), name, attributes);
   }
 
   @Override
   public Source<Tuple> zipWith(Source... sources) {
-    Publisher[] publishers = Arrays.stream(sources).map((Function<Source, Flowable>) Source::asFlowable).toArray(Publisher[]::new);
+    Publisher[] publishers = Arrays.stream(sources)
+      .map((Function<Source, Flowable>) Source::asFlowable)
+      .toArray(Publisher[]::new);
     return zipWith(publishers);
   }
 
@@ -343,22 +825,27 @@ public class DefaultSource<T> implements Source<T> {
 
     Flowable<Message<Tuple>> stream = Flowable.zip(toBeZipped, objects -> {
       List<Object> payloads = new ArrayList<>();
+      List<Acknowledgement> acknowledgements = new ArrayList<>();
       Message<?> first = null;
       for (Object o : objects) {
         if (!(o instanceof Message)) {
-          throw new IllegalArgumentException("Invalid incoming item - " + Message.class.getName() + " expected, received " +
-            o.getClass().getName());
+          throw new IllegalArgumentException("Invalid incoming item - " + Message.class.getName()
+            + " expected, received " + o.getClass().getName());
         } else {
           if (first == null) {
             first = ((Message) o);
           }
           payloads.add(((Message) o).payload());
+          acknowledgements.add(((Message) o).acknowledgement());
         }
       }
       if (first == null) {
         throw new IllegalStateException("Invalid set of stream");
       }
-      return first.with(Tuple.tuple(payloads.toArray(new Object[payloads.size()])));
+      Acknowledgement acknowledgement = Acknowledgement.all(
+        acknowledgements.toArray(new Acknowledgement[acknowledgements.size()]));
+      return first.with(Tuple.tuple(payloads.toArray(new Object[payloads.size()])))
+        .withAcknowledgement(acknowledgement);
     });
 
     return new DefaultSource<>(stream, name, attributes);
@@ -0,0 +1,65 @@
+package me.escoffier.fluid.models;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics about the messages dispatched by {@link Source#to(Sink, DispatchOptions)}.
+ */
+public class DispatchMetrics {
+
+  private final AtomicLong inFlight = new AtomicLong();
+  private final AtomicLong peak = new AtomicLong();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  /**
+   * @return the number of messages currently dispatched and not yet completed.
+   */
+  public long inFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the highest number of in-flight messages observed so far.
+   */
+  public long peakInFlight() {
+    return peak.get();
+  }
+
+  /**
+   * @return the number of messages successfully dispatched, including the messages skipped or sent to a dead letter
+   * sink by a {@link FailurePolicy}.
+   */
+  public long completed() {
+    return completed.sum();
+  }
+
+  /**
+   * @return the number of messages whose dispatch failed.
+   */
+  public long failed() {
+    return failed.sum();
+  }
+
+  void onDispatch() {
+    long current = inFlight.incrementAndGet();
+    peak.accumulateAndGet(current, Math::max);
+  }
+
+  void onCompleted() {
+    inFlight.decrementAndGet();
+    completed.increment();
+  }
+
+  void onFailed() {
+    inFlight.decrementAndGet();
+    failed.increment();
+  }
+
+  @Override
+  public String toString() {
+    return "DispatchMetrics{inFlight=" + inFlight() + ", peakInFlight=" + peakInFlight() + ", completed=" + completed()
+      + ", failed=" + failed() + "}";
+  }
+}
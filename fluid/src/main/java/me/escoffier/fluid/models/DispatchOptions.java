@@ -0,0 +1,60 @@
+package me.escoffier.fluid.models;
+
+/**
+ * Options controlling how {@link Source#to(Sink, DispatchOptions)} dispatches the messages to the sink.
+ * <p>
+ * By default, the number of messages being dispatched concurrently is not bounded, and completions are processed as
+ * they happen. Bounding the number of in-flight messages bounds the memory used when the sink slows down: the source
+ * is not consumed until a dispatch completes.
+ * <p>
+ * The options hold the {@link DispatchMetrics} updated by the sources using them.
+ */
+public class DispatchOptions {
+
+  private int maxInFlight = Integer.MAX_VALUE;
+
+  private boolean ordered;
+
+  private final DispatchMetrics metrics = new DispatchMetrics();
+
+  /**
+   * Sets the maximum number of messages dispatched to the sink and not yet completed.
+   *
+   * @param maxInFlight the maximum number of in-flight messages, must be strictly positive
+   * @return the current {@link DispatchOptions}
+   */
+  public DispatchOptions setMaxInFlight(int maxInFlight) {
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("The maximum number of in-flight messages must be strictly positive");
+    }
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
+  /**
+   * Sets whether the completions are processed in the order of the messages. When enabled, a message whose dispatch
+   * completed stays in-flight until the dispatch of all the previous messages completed. Defaults to {@code false}.
+   *
+   * @param ordered whether the completions are processed in order
+   * @return the current {@link DispatchOptions}
+   */
+  public DispatchOptions setOrdered(boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public boolean isOrdered() {
+    return ordered;
+  }
+
+  /**
+   * @return the metrics of the dispatches made with these options.
+   */
+  public DispatchMetrics metrics() {
+    return metrics;
+  }
+}
@@ -0,0 +1,76 @@
+package me.escoffier.fluid.models;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures when {@link Source#aggregateByKey(java.util.function.Function, Aggregator, Emission)} emits the updated
+ * aggregation results.
+ */
+public final class Emission {
+
+  private static final Emission EVERY_ELEMENT = new Emission(1, 0);
+
+  private final int count;
+
+  private final long period;
+
+  private Emission(int count, long period) {
+    this.count = count;
+    this.period = period;
+  }
+
+  /**
+   * Emits the updated result of the key every time a message is received.
+   *
+   * @return the emission policy
+   */
+  public static Emission everyElement() {
+    return EVERY_ELEMENT;
+  }
+
+  /**
+   * Emits the results of the keys updated since the last emission every {@code count} messages.
+   *
+   * @param count the number of messages, must be strictly positive
+   * @return the emission policy
+   */
+  public static Emission every(int count) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("The `count` must be strictly positive");
+    }
+    return new Emission(count, 0);
+  }
+
+  /**
+   * Emits the results of the keys updated since the last emission periodically.
+   *
+   * @param period the period, must be strictly positive
+   * @param unit   the time unit, must not be {@code null}
+   * @return the emission policy
+   */
+  public static Emission every(long period, TimeUnit unit) {
+    Objects.requireNonNull(unit, "The `unit` must not be `null`");
+    long millis = unit.toMillis(period);
+    if (millis <= 0) {
+      throw new IllegalArgumentException("The `period` must be at least 1 millisecond");
+    }
+    return new Emission(0, millis);
+  }
+
+  boolean isEveryElement() {
+    return count == 1;
+  }
+
+  boolean isPeriodic() {
+    return period > 0;
+  }
+
+  int count() {
+    return count;
+  }
+
+  long period() {
+    return period;
+  }
+}
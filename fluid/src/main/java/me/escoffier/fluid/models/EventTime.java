@@ -0,0 +1,125 @@
+package me.escoffier.fluid.models;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Configures the event-time processing of {@link Source#window(Window, EventTime)}.
+ * <p>
+ * The time of a message is computed by the <em>timestamp extractor</em>. The progress of the event time is tracked by a
+ * <em>watermark</em>: each partition of the source (as returned by the partition function, the
+ * {@link CommonHeaders#PARTITION} header by default) has its own watermark, equal to the greatest timestamp received on
+ * this partition minus the <em>maximum out-of-orderness</em>. The watermark of the source is the smallest watermark of
+ * its partitions. A window is emitted when the watermark passes its end.
+ * <p>
+ * Messages received after the emission of their window, but before the watermark passes the end of the window plus the
+ * <em>allowed lateness</em>, are added to the window, which is emitted again. Messages received later are late and are
+ * not added to any window.
+ *
+ * @param <T> the type of payload
+ */
+public final class EventTime<T> {
+
+  private final Function<Message<T>, Long> timestamp;
+
+  private final Function<Message<T>, ?> partition;
+
+  private final long maxOutOfOrderness;
+
+  private final long allowedLateness;
+
+  private EventTime(Function<Message<T>, Long> timestamp, Function<Message<T>, ?> partition,
+                    long maxOutOfOrderness, long allowedLateness) {
+    this.timestamp = timestamp;
+    this.partition = partition;
+    this.maxOutOfOrderness = maxOutOfOrderness;
+    this.allowedLateness = allowedLateness;
+  }
+
+  /**
+   * Creates a new {@link EventTime} using the given timestamp extractor.
+   *
+   * @param timestamp the function returning the timestamp of a message in milliseconds, must not be {@code null}, must
+   *                  not return {@code null}
+   * @param <T>       the type of payload
+   * @return the new instance
+   */
+  public static <T> EventTime<T> of(Function<Message<T>, Long> timestamp) {
+    Objects.requireNonNull(timestamp, "The `timestamp` extractor must not be `null`");
+    return new EventTime<>(timestamp, CommonHeaders::partition, 0, 0);
+  }
+
+  /**
+   * Creates a new {@link EventTime} using the {@link CommonHeaders#TIMESTAMP} header, such as the timestamp of the
+   * Kafka records.
+   *
+   * @param <T> the type of payload
+   * @return the new instance
+   */
+  public static <T> EventTime<T> fromTimestampHeader() {
+    return of(CommonHeaders::timestamp);
+  }
+
+  /**
+   * Sets the function returning the partition of a message. Watermarks are tracked per partition.
+   *
+   * @param partition the function, must not be {@code null}. It may return {@code null} when the message has no
+   *                  partition.
+   * @return a new {@link EventTime}
+   */
+  public EventTime<T> partitionedBy(Function<Message<T>, ?> partition) {
+    Objects.requireNonNull(partition, "The `partition` function must not be `null`");
+    return new EventTime<>(timestamp, partition, maxOutOfOrderness, allowedLateness);
+  }
+
+  /**
+   * Sets how much a message can be out of order in its partition. Defaults to 0.
+   *
+   * @param duration the duration, must be positive or zero
+   * @param unit     the unit, must not be {@code null}
+   * @return a new {@link EventTime}
+   */
+  public EventTime<T> withMaxOutOfOrderness(long duration, TimeUnit unit) {
+    return new EventTime<>(timestamp, partition, toMillis(duration, unit), allowedLateness);
+  }
+
+  /**
+   * Sets for how long a window keeps accepting messages after its emission. Defaults to 0.
+   *
+   * @param duration the duration, must be positive or zero
+   * @param unit     the unit, must not be {@code null}
+   * @return a new {@link EventTime}
+   */
+  public EventTime<T> withAllowedLateness(long duration, TimeUnit unit) {
+    return new EventTime<>(timestamp, partition, maxOutOfOrderness, toMillis(duration, unit));
+  }
+
+  private static long toMillis(long duration, TimeUnit unit) {
+    Objects.requireNonNull(unit, "The `unit` must not be `null`");
+    if (duration < 0) {
+      throw new IllegalArgumentException("The `duration` must be positive or zero");
+    }
+    return unit.toMillis(duration);
+  }
+
+  long timestamp(Message<T> message) {
+    Long time = timestamp.apply(message);
+    if (time == null) {
+      throw new IllegalArgumentException("Unable to extract the timestamp from " + message);
+    }
+    return time;
+  }
+
+  Object partition(Message<T> message) {
+    return partition.apply(message);
+  }
+
+  long maxOutOfOrderness() {
+    return maxOutOfOrderness;
+  }
+
+  long allowedLateness() {
+    return allowedLateness;
+  }
+}
@@ -0,0 +1,170 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import org.reactivestreams.Publisher;
+
+import java.util.*;
+
+/**
+ * Implements {@link Source#window(Window, EventTime)}. The windowing is driven by the messages only (no timers), so
+ * replaying a backlog produces the same windows whatever the processing speed.
+ * <p>
+ * The state is created for each subscription. For each incoming message, {@link #process(Message)} returns the
+ * elements to emit: the windows ({@link Message} of {@link List}) and the late messages (wrapped into {@link Late}).
+ *
+ * @param <T> the type of payload
+ */
+final class EventTimeWindows<T> {
+
+  private static final Object NO_PARTITION = new Object();
+
+  private final long size;
+  private final long step;
+  private final EventTime<T> eventTime;
+
+  /**
+   * The windows, indexed by start.
+   */
+  private final TreeMap<Long, Pane<T>> panes = new TreeMap<>();
+
+  /**
+   * The greatest timestamp received for each partition.
+   */
+  private final Map<Object, Long> partitions = new HashMap<>();
+
+  private long watermark = Long.MIN_VALUE;
+
+  private EventTimeWindows(Window window, EventTime<T> eventTime) {
+    if (window.type() != Window.Type.TIME) {
+      throw new IllegalArgumentException("Only time-based tumbling and sliding windows support event time, got "
+        + window);
+    }
+    this.size = window.size();
+    this.step = window.step();
+    this.eventTime = eventTime;
+  }
+
+  /**
+   * Applies the event-time windowing on the given stream.
+   *
+   * @return a stream emitting windows and {@link Late} messages
+   */
+  static <T> Flowable<Object> apply(Publisher<Message<T>> upstream, Window window, EventTime<T> eventTime) {
+    // Fail early on invalid windows.
+    new EventTimeWindows<>(window, eventTime);
+    return Flowable.defer(() -> {
+      EventTimeWindows<T> windows = new EventTimeWindows<>(window, eventTime);
+      return Flowable.fromPublisher(upstream)
+        .concatMapIterable(windows::process)
+        .concatWith(Flowable.defer(() -> Flowable.fromIterable(windows.flush())));
+    });
+  }
+
+  List<Object> process(Message<T> message) {
+    long timestamp = eventTime.timestamp(message);
+    List<Object> output = new ArrayList<>(1);
+
+    List<Pane<T>> assigned = new ArrayList<>();
+    long latest = timestamp - Math.floorMod(timestamp, step);
+    for (long start = latest; start > timestamp - size; start -= step) {
+      if (start + size + eventTime.allowedLateness() <= watermark) {
+        // The window has been discarded.
+        break;
+      }
+      assigned.add(panes.computeIfAbsent(start, s -> new Pane<>()));
+    }
+    if (!assigned.isEmpty()) {
+      // Each window gets its own copy, so the message is acknowledged once all its windows have been acknowledged.
+      List<Message<T>> copies = Acknowledgements.fork(message, assigned.size());
+      for (int i = 0; i < assigned.size(); i++) {
+        Pane<T> pane = assigned.get(i);
+        pane.add(copies.get(i));
+        if (pane.emitted) {
+          // Late message within the allowed lateness, the window is emitted again.
+          output.add(pane.toMessage());
+        }
+      }
+    } else if (latest + size > timestamp) {
+      output.add(new Late<>(message));
+    } else {
+      // When the step is greater than the size, the message may not belong to any window.
+      message.ack();
+    }
+
+    advance(message, timestamp, output);
+    return output;
+  }
+
+  private void advance(Message<T> message, long timestamp, List<Object> output) {
+    Object partition = eventTime.partition(message);
+    partitions.merge(partition == null ? NO_PARTITION : partition, timestamp, Long::max);
+    long min = Long.MAX_VALUE;
+    for (Long time : partitions.values()) {
+      min = Math.min(min, time);
+    }
+    long candidate = min - eventTime.maxOutOfOrderness();
+    if (candidate <= watermark) {
+      return;
+    }
+    watermark = candidate;
+
+    // Emit the windows whose end is before the watermark.
+    for (Pane<T> pane : panes.headMap(watermark - size, true).values()) {
+      if (!pane.emitted) {
+        pane.emitted = true;
+        output.add(pane.toMessage());
+      }
+    }
+    // Discard the windows that can no longer receive messages.
+    panes.headMap(watermark - size - eventTime.allowedLateness(), true).clear();
+  }
+
+  List<Object> flush() {
+    List<Object> output = new ArrayList<>();
+    for (Pane<T> pane : panes.values()) {
+      if (!pane.emitted) {
+        output.add(pane.toMessage());
+      }
+    }
+    panes.clear();
+    return output;
+  }
+
+  /**
+   * The messages accumulated in a window.
+   */
+  private static final class Pane<T> {
+    private final List<T> payloads = new ArrayList<>();
+    private final List<Acknowledgement> acknowledgements = new ArrayList<>();
+    private Message<T> last;
+    private boolean emitted;
+
+    private void add(Message<T> message) {
+      payloads.add(message.payload());
+      if (message.acknowledgement() != null) {
+        acknowledgements.add(message.acknowledgement());
+      }
+      last = message;
+    }
+
+    /**
+     * Acknowledging the window acknowledges all its messages. A window emitted again contains the messages already
+     * acknowledged, the repeated calls are ignored.
+     */
+    private Message<List<T>> toMessage() {
+      return last.with(Collections.unmodifiableList(new ArrayList<>(payloads)))
+        .withAcknowledgement(Acknowledgement.all(acknowledgements.toArray(new Acknowledgement[0])));
+    }
+  }
+
+  /**
+   * Wraps a message received after the discarding of its windows.
+   */
+  static final class Late<T> {
+    final Message<T> message;
+
+    private Late(Message<T> message) {
+      this.message = message;
+    }
+  }
+}
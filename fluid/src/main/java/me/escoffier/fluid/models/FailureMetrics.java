@@ -0,0 +1,64 @@
+package me.escoffier.fluid.models;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics about the failures handled by a {@link FailurePolicy}.
+ */
+public class FailureMetrics {
+
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder deadLettered = new LongAdder();
+
+  /**
+   * @return the number of failed attempts, including the attempts that have been retried.
+   */
+  public long failures() {
+    return failures.sum();
+  }
+
+  /**
+   * @return the number of retries.
+   */
+  public long retries() {
+    return retries.sum();
+  }
+
+  /**
+   * @return the number of messages skipped after a failure.
+   */
+  public long skipped() {
+    return skipped.sum();
+  }
+
+  /**
+   * @return the number of messages sent to the dead letter sink after a failure.
+   */
+  public long deadLettered() {
+    return deadLettered.sum();
+  }
+
+  void onFailure() {
+    failures.increment();
+  }
+
+  void onRetry() {
+    retries.increment();
+  }
+
+  void onSkipped() {
+    skipped.increment();
+  }
+
+  void onDeadLettered(int count) {
+    deadLettered.add(count);
+  }
+
+  @Override
+  public String toString() {
+    return "FailureMetrics{failures=" + failures() + ", retries=" + retries() + ", skipped=" + skipped()
+      + ", deadLettered=" + deadLettered() + "}";
+  }
+}
@@ -0,0 +1,183 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import me.escoffier.fluid.registry.FluidRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Describes how the failure of a per-message action (a function applied on a message, or the dispatch of a message to
+ * a sink) is handled. The action can be retried according to a {@link Backoff}. Once the retries are exhausted, the
+ * failure is either propagated (the default, terminating the stream), or the message is skipped, or the message is
+ * sent to a <em>dead letter</em> sink, with the {@link #FAILURE_HEADER} header containing the failure. In the last two
+ * cases, the stream continues with the next message.
+ * <p>
+ * Instances are immutable. The policies derived from a policy share its {@link FailureMetrics}.
+ *
+ * @see Source#onErrorRetry(Backoff)
+ * @see Source#onErrorSkip()
+ * @see Source#onErrorDeadLetter(String)
+ */
+public final class FailurePolicy {
+
+  /**
+   * The header containing the failure, set on the messages sent to the dead letter sink.
+   */
+  public static final String FAILURE_HEADER = "fluid.failure";
+
+  private static final Logger logger = LogManager.getLogger(FailurePolicy.class);
+
+  private enum Outcome {
+    FAIL, SKIP, DEAD_LETTER
+  }
+
+  private final Backoff backoff;
+
+  private final Outcome outcome;
+
+  private final String deadLetter;
+
+  private final FailureMetrics metrics;
+
+  private FailurePolicy(Backoff backoff, Outcome outcome, String deadLetter, FailureMetrics metrics) {
+    this.backoff = backoff;
+    this.outcome = outcome;
+    this.deadLetter = deadLetter;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return a new policy propagating the failures, without retry.
+   */
+  public static FailurePolicy failFast() {
+    return new FailurePolicy(null, Outcome.FAIL, null, new FailureMetrics());
+  }
+
+  /**
+   * @param backoff the backoff, must not be {@code null}
+   * @return a policy retrying the failed actions, and then handling the failure as the current policy does
+   */
+  public FailurePolicy withRetry(Backoff backoff) {
+    return new FailurePolicy(Objects.requireNonNull(backoff, "The `backoff` must not be `null`"), outcome, deadLetter,
+      metrics);
+  }
+
+  /**
+   * @return a policy skipping the messages whose action failed, after the retries configured by the current policy
+   */
+  public FailurePolicy withSkip() {
+    return new FailurePolicy(backoff, Outcome.SKIP, null, metrics);
+  }
+
+  /**
+   * @param sink the name of the sink receiving the failed messages, must not be {@code null}. The sink is looked up
+   *             from the {@link FluidRegistry} when a failure happens.
+   * @return a policy sending the messages whose action failed to the given sink, after the retries configured by the
+   * current policy
+   */
+  public FailurePolicy withDeadLetter(String sink) {
+    return new FailurePolicy(backoff, Outcome.DEAD_LETTER,
+      Objects.requireNonNull(sink, "The dead letter `sink` must not be `null`"), metrics);
+  }
+
+  /**
+   * @return the metrics of the failures handled by this policy and the policies derived from it.
+   */
+  public FailureMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Applies the policy to the action processing the given message.
+   *
+   * @param message the message processed by the action
+   * @param action  the action, re-subscribed on retry
+   * @param <X>     the type of items produced by the action
+   * @return the guarded action
+   */
+  public <X> Flowable<X> apply(Message<?> message, Flowable<X> action) {
+    return apply(Collections.singletonList(message), action);
+  }
+
+  /**
+   * Applies the policy to the action processing the given message.
+   *
+   * @param message the message processed by the action
+   * @param action  the action, re-subscribed on retry
+   * @return the guarded action
+   */
+  public Completable apply(Message<?> message, Completable action) {
+    return apply(Collections.singletonList(message), action.toFlowable()).ignoreElements();
+  }
+
+  /**
+   * Applies the policy to the action processing the given messages. If the action ends up failing, all the messages
+   * are skipped or sent to the dead letter sink. Skipped and dead-lettered messages are acknowledged, the messages are
+   * nacked if the failure is propagated.
+   *
+   * @param messages the messages processed by the action
+   * @param action   the action, re-subscribed on retry
+   * @param <X>      the type of items produced by the action
+   * @return the guarded action
+   */
+  public <X> Flowable<X> apply(List<? extends Message<?>> messages, Flowable<X> action) {
+    Flowable<X> attempts = action.doOnError(failure -> metrics.onFailure());
+    if (backoff != null) {
+      attempts = attempts.retryWhen(failures -> {
+        AtomicInteger retries = new AtomicInteger();
+        return failures.flatMap(failure -> {
+          int retry = retries.incrementAndGet();
+          if (retry > backoff.maxRetries()) {
+            return Flowable.error(failure);
+          }
+          metrics.onRetry();
+          return Flowable.timer(backoff.delay(retry), TimeUnit.MILLISECONDS);
+        });
+      });
+    }
+    return attempts.onErrorResumeNext((Throwable failure) -> {
+      switch (outcome) {
+        case SKIP:
+          logger.warn("Skipping " + messages.size() + " message(s) after a failure", failure);
+          metrics.onSkipped();
+          messages.forEach(Message::ack);
+          return Flowable.empty();
+        case DEAD_LETTER:
+          logger.warn("Sending " + messages.size() + " message(s) to the dead letter sink `" + deadLetter + "`",
+            failure);
+          return sendToDeadLetter(messages, failure)
+            .doOnComplete(() -> messages.forEach(Message::ack))
+            .andThen(Flowable.<X>empty());
+        default:
+          messages.forEach(message -> message.nack(failure));
+          return Flowable.error(failure);
+      }
+    });
+  }
+
+  private Completable sendToDeadLetter(List<? extends Message<?>> messages, Throwable failure) {
+    return Completable.defer(() -> {
+      Sink<Object> sink = FluidRegistry.sink(deadLetter);
+      if (sink == null) {
+        return Completable.error(new IllegalStateException("Unable to find the dead letter sink `" + deadLetter + "`",
+          failure));
+      }
+      return Flowable.fromIterable(messages)
+        .flatMapCompletable(message -> sink.dispatch(toDeadLetter(message, failure)), false, 1)
+        .doOnComplete(() -> metrics.onDeadLettered(messages.size()));
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Message<Object> toDeadLetter(Message<?> message, Throwable failure) {
+    // The original message is acknowledged once the dead letter has been sent.
+    return (Message<Object>) message.with(FAILURE_HEADER, failure).withAcknowledgement(null);
+  }
+}
@@ -0,0 +1,407 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
+import io.reactivex.internal.subscriptions.EmptySubscription;
+import io.reactivex.plugins.RxJavaPlugins;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Implements {@link Source#broadcast(int, BroadcastOptions)}. Every message is written to the ring buffer of each
+ * branch. Each ring buffer has a single producer (the upstream) and a single consumer (the branch), so writing and
+ * reading are lock-free. The only contention happens with {@link BroadcastOptions.Overflow#DROP_OLDEST}, where the
+ * producer and the consumer both compete to move the head of the buffer using a CAS.
+ * <p>
+ * Each branch is drained on its own worker, so a slow branch does not delay the delivery to the other branches. The
+ * upstream is requested according to the overflow policy: with {@link BroadcastOptions.Overflow#BLOCK}, only when every
+ * branch has room for the requested messages; with the other policies, as soon as one of the branches has room.
+ * <p>
+ * The upstream is subscribed as soon as a branch is subscribed. Messages are buffered for the branches not yet
+ * subscribed, according to the same policy. Each branch accepts a single subscriber.
+ * <p>
+ * Each branch receives its own copy of the messages (see {@link Acknowledgements#fork(Message, int)}), so a message
+ * is only acknowledged once every branch has processed it. The copies dropped by the overflow policy, or discarded
+ * when a branch is cancelled, are acknowledged.
+ *
+ * @param <T> the type of payload
+ */
+final class FanOut<T> implements FlowableSubscriber<Message<T>> {
+
+  private final Publisher<Message<T>> upstream;
+
+  private final Branch<T>[] branches;
+
+  private final int capacity;
+
+  private final BroadcastOptions.Overflow overflow;
+
+  private final AtomicBoolean connected = new AtomicBoolean();
+
+  private final AtomicLong outstanding = new AtomicLong();
+
+  private final AtomicInteger active;
+
+  private volatile Subscription subscription;
+
+  private boolean done;
+
+  @SuppressWarnings("unchecked")
+  FanOut(Publisher<Message<T>> upstream, int size, BroadcastOptions options, Scheduler scheduler) {
+    this.upstream = upstream;
+    this.capacity = options.getBufferSize();
+    this.overflow = options.getOverflow();
+    this.branches = new Branch[size];
+    for (int i = 0; i < size; i++) {
+      branches[i] = new Branch<>(this, i, scheduler);
+    }
+    this.active = new AtomicInteger(size);
+    options.metrics().bind(this);
+  }
+
+  int size() {
+    return branches.length;
+  }
+
+  Branch<T> branch(int index) {
+    return branches[index];
+  }
+
+  /**
+   * Gets the publisher emitting the messages of the given branch.
+   *
+   * @param index the index of the branch
+   * @return the publisher
+   */
+  Publisher<Message<T>> output(int index) {
+    return branches[index];
+  }
+
+  @Override
+  public void onSubscribe(Subscription s) {
+    this.subscription = s;
+    if (active.get() == 0) {
+      s.cancel();
+      return;
+    }
+    outstanding.set(capacity);
+    s.request(capacity);
+  }
+
+  @Override
+  public void onNext(Message<T> message) {
+    if (done) {
+      return;
+    }
+    List<Message<T>> copies = Acknowledgements.fork(message, branches.length);
+    for (int i = 0; i < branches.length; i++) {
+      if (branches[i].terminated) {
+        copies.get(i).ack();
+      } else {
+        branches[i].offer(copies.get(i));
+      }
+    }
+    // Decremented once the message is in the buffers, so the computed room is never overestimated.
+    outstanding.decrementAndGet();
+    replenish();
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (done) {
+      RxJavaPlugins.onError(t);
+      return;
+    }
+    done = true;
+    for (Branch<T> branch : branches) {
+      branch.error = t;
+      branch.done = true;
+      branch.signal();
+    }
+  }
+
+  @Override
+  public void onComplete() {
+    if (done) {
+      return;
+    }
+    done = true;
+    for (Branch<T> branch : branches) {
+      branch.done = true;
+      branch.signal();
+    }
+  }
+
+  /**
+   * Requests more messages from the upstream if the branches have room for them.
+   */
+  private void replenish() {
+    if (subscription == null || outstanding.get() > capacity / 2) {
+      return;
+    }
+    synchronized (this) {
+      long room = -1;
+      for (Branch<T> branch : branches) {
+        if (!branch.terminated) {
+          long free = capacity - branch.lag();
+          if (room < 0) {
+            room = free;
+          } else if (overflow == BroadcastOptions.Overflow.BLOCK) {
+            room = Math.min(room, free);
+          } else {
+            room = Math.max(room, free);
+          }
+        }
+      }
+      long requests = room - outstanding.get();
+      if (requests > 0) {
+        outstanding.addAndGet(requests);
+        subscription.request(requests);
+      }
+    }
+  }
+
+  private void onBranchTerminated() {
+    if (active.decrementAndGet() == 0) {
+      if (subscription != null) {
+        subscription.cancel();
+      }
+    } else {
+      replenish();
+    }
+  }
+
+  private void connect() {
+    if (connected.compareAndSet(false, true)) {
+      upstream.subscribe(this);
+    }
+  }
+
+  static final class Branch<T> implements Publisher<Message<T>>, Subscription, Runnable {
+    private final FanOut<T> parent;
+    private final int index;
+    private final Scheduler scheduler;
+    private final AtomicReferenceArray<Message<T>> buffer;
+    private final int mask;
+
+    /**
+     * The position of the next message to read, moved by the consumer, and by the producer when dropping the oldest
+     * message.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The position of the next message to write, only moved by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile Scheduler.Worker worker;
+    private volatile Subscriber<? super Message<T>> downstream;
+
+    /**
+     * Whether the branch no longer receives messages, because it has been cancelled or failed.
+     */
+    private volatile boolean terminated;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    private Branch(FanOut<T> parent, int index, Scheduler scheduler) {
+      this.parent = parent;
+      this.index = index;
+      this.scheduler = scheduler;
+      int length = 1;
+      while (length < parent.capacity) {
+        length <<= 1;
+      }
+      this.buffer = new AtomicReferenceArray<>(length);
+      this.mask = length - 1;
+    }
+
+    long lag() {
+      return tail.get() - head.get();
+    }
+
+    long dropped() {
+      return dropped.get();
+    }
+
+    /**
+     * Writes a message in the buffer. Only called by the producer.
+     */
+    private void offer(Message<T> message) {
+      long t = tail.get();
+      for (; ; ) {
+        long h = head.get();
+        if (t - h < parent.capacity) {
+          break;
+        }
+        switch (parent.overflow) {
+          case DROP_NEWEST:
+            dropped.incrementAndGet();
+            message.ack();
+            return;
+          case DROP_OLDEST:
+            Message<T> oldest = buffer.get((int) (h & mask));
+            // Fails if the consumer read the message in the meantime.
+            if (head.compareAndSet(h, h + 1)) {
+              dropped.incrementAndGet();
+              oldest.ack();
+            }
+            break;
+          default:
+            fail(new IllegalStateException("The buffer of the branch " + index + " is full ("
+              + parent.capacity + " messages)"));
+            return;
+        }
+      }
+      buffer.lazySet((int) (t & mask), message);
+      tail.lazySet(t + 1);
+      signal();
+    }
+
+    /**
+     * Reads a message from the buffer. Only called by the consumer, or when the branch is cancelled.
+     */
+    private Message<T> poll() {
+      for (; ; ) {
+        long h = head.get();
+        if (h == tail.get()) {
+          return null;
+        }
+        Message<T> message = buffer.get((int) (h & mask));
+        // Fails if the producer dropped the message in the meantime.
+        if (head.compareAndSet(h, h + 1)) {
+          return message;
+        }
+      }
+    }
+
+    private void fail(Throwable failure) {
+      error = failure;
+      done = true;
+      terminate();
+      signal();
+    }
+
+    private void terminate() {
+      if (!terminated) {
+        terminated = true;
+        parent.onBranchTerminated();
+      }
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Message<T>> subscriber) {
+      if (downstream != null) {
+        EmptySubscription.error(new IllegalStateException("The branch " + index + " accepts a single subscriber"),
+          subscriber);
+        return;
+      }
+      worker = scheduler.createWorker();
+      downstream = subscriber;
+      subscriber.onSubscribe(this);
+      signal();
+      parent.connect();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        RxJavaPlugins.onError(new IllegalArgumentException("The number of requested items must be positive, got " + n));
+        return;
+      }
+      long current;
+      long next;
+      do {
+        current = requested.get();
+        next = current + n < 0 ? Long.MAX_VALUE : current + n;
+      } while (!requested.compareAndSet(current, next));
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        terminate();
+        worker.dispose();
+        Message<T> message;
+        while ((message = poll()) != null) {
+          message.ack();
+        }
+      }
+    }
+
+    private void signal() {
+      if (downstream != null && wip.getAndIncrement() == 0) {
+        worker.schedule(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      Subscriber<? super Message<T>> subscriber = downstream;
+      int missed = 1;
+      for (; ; ) {
+        long r = requested.get();
+        long e = 0;
+        while (e != r) {
+          if (cancelled) {
+            return;
+          }
+          boolean d = done;
+          Message<T> message = poll();
+          if (message == null) {
+            if (d) {
+              complete(subscriber);
+              return;
+            }
+            break;
+          }
+          subscriber.onNext(message);
+          e++;
+        }
+        if (cancelled) {
+          return;
+        }
+        if (done && lag() == 0) {
+          complete(subscriber);
+          return;
+        }
+        if (e != 0) {
+          if (r != Long.MAX_VALUE) {
+            requested.addAndGet(-e);
+          }
+          parent.replenish();
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          break;
+        }
+      }
+    }
+
+    private void complete(Subscriber<? super Message<T>> subscriber) {
+      cancelled = true;
+      terminate();
+      worker.dispose();
+      Throwable failure = error;
+      if (failure != null) {
+        subscriber.onError(failure);
+      } else {
+        subscriber.onComplete();
+      }
+    }
+  }
+}
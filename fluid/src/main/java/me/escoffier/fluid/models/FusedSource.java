@@ -0,0 +1,408 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.plugins.RxJavaPlugins;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A {@link Source} used in the <em>fused</em> execution mode (see {@link Source#fused()}).
+ * <p>
+ * Instead of adding a RxJava stage for each operator, this source records a logical plan of the {@code map},
+ * {@code filter}, {@code flatMap}, {@code concatMap} and {@code scan} calls (and their payload variants). The plan is
+ * compiled when the source is subscribed for the first time:
+ * <ul>
+ * <li>each run of consecutive stateless operators ({@code map}, {@code filter}, {@code filterNot} and their payload
+ * variants) is executed by a single hand-written subscriber. Along the run, the incoming message envelope is reused, so
+ * payload operators do not create intermediate {@link Message} instances,</li>
+ * <li>{@code flatMap}, {@code concatMap} and {@code scan} are compiled into the corresponding RxJava operator.</li>
+ * </ul>
+ * Naming the source or changing its attributes keeps the plan. Other operators compile the plan and continue from it.
+ * When a failure policy is configured (see {@link Source#onErrorRetry(Backoff)}), the per-message operators it guards
+ * are not fused either: they compile the plan and apply the policy as {@link DefaultSource} does.
+ *
+ * @param <I> the type of payload received from the upstream
+ * @param <T> the type of payload emitted by this source
+ */
+class FusedSource<I, T> extends DefaultSource<T> {
+
+  /**
+   * Marker returned by a step when the message has been filtered out.
+   */
+  private static final Object FILTERED = new Object();
+
+  private final Publisher<Message<I>> upstream;
+
+  /**
+   * The logical plan, contains {@link Step} and {@link Barrier} instances.
+   */
+  private final Object[] plan;
+
+  private FusedSource(Publisher<Message<I>> upstream, Object[] plan, String name, Map<String, Object> attr) {
+    super(new CompiledPlan<>(upstream, plan), name, attr);
+    this.upstream = upstream;
+    this.plan = plan;
+  }
+
+  /**
+   * Creates a new {@link FusedSource} with an empty plan.
+   *
+   * @param upstream the upstream, must not be {@code null}
+   * @param name     the name of the source, can be {@code null}
+   * @param attr     the attributes of the source
+   * @param <T>      the type of payload
+   * @return the new source
+   */
+  static <T> FusedSource<T, T> start(Publisher<Message<T>> upstream, String name, Map<String, Object> attr) {
+    return new FusedSource<>(upstream, new Object[0], name, attr);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <X> X cast(Object object) {
+    return (X) object;
+  }
+
+  private <X> FusedSource<I, X> append(Object element) {
+    Object[] copy = Arrays.copyOf(plan, plan.length + 1);
+    copy[plan.length] = element;
+    return new FusedSource<>(upstream, copy, name(), attributes());
+  }
+
+  private Source<T> keepPlan(Source<T> source) {
+    return new FusedSource<>(upstream, plan, source.name(), ((DefaultSource<T>) source).attributes());
+  }
+
+  @Override
+  public Source<T> named(String name) {
+    return keepPlan(super.named(name));
+  }
+
+  @Override
+  public Source<T> unnamed() {
+    return keepPlan(super.unnamed());
+  }
+
+  @Override
+  public Source<T> withAttribute(String key, Object value) {
+    return keepPlan(super.withAttribute(key, value));
+  }
+
+  @Override
+  public Source<T> withoutAttribute(String key) {
+    return keepPlan(super.withoutAttribute(key));
+  }
+
+  @Override
+  public <X> Source<X> map(Function<Message<T>, Message<X>> mapper) {
+    if (policy() != null) {
+      return super.map(mapper);
+    }
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return append(new Step(false,
+      message -> Objects.requireNonNull(mapper.apply(cast(message)), "The mapper returned a `null` message")));
+  }
+
+  @Override
+  public <X> Source<X> mapPayload(Function<T, X> mapper) {
+    if (policy() != null) {
+      return super.mapPayload(mapper);
+    }
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return append(new Step(true,
+      payload -> Objects.requireNonNull(mapper.apply(cast(payload)), "The mapper returned a `null` payload")));
+  }
+
+  @Override
+  public Source<T> filter(Predicate<Message<T>> filter) {
+    Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
+    return append(new Step(false, message -> filter.test(cast(message)) ? message : FILTERED));
+  }
+
+  @Override
+  public Source<T> filterPayload(Predicate<T> filter) {
+    Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
+    return append(new Step(true, payload -> filter.test(cast(payload)) ? payload : FILTERED));
+  }
+
+  @Override
+  public Source<T> filterNot(Predicate<Message<T>> filter) {
+    Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
+    return append(new Step(false, message -> filter.test(cast(message)) ? FILTERED : message));
+  }
+
+  @Override
+  public Source<T> filterNotPayload(Predicate<T> filter) {
+    Objects.requireNonNull(filter, FILTER_CANNOT_BE_NULL_MESSAGE);
+    return append(new Step(true, payload -> filter.test(cast(payload)) ? FILTERED : payload));
+  }
+
+  @Override
+  public <X> Source<X> flatMap(Function<Message<T>, Publisher<Message<X>>> mapper) {
+    if (policy() != null) {
+      return super.flatMap(mapper);
+    }
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return append((Barrier) flowable -> {
+      Flowable<Message<X>> result = flowable.flatMap(message ->
+        Acknowledgements.fork(message, mapper.apply(cast(message))));
+      return cast(result);
+    });
+  }
+
+  @Override
+  public <X> Source<X> flatMap(Function<Message<T>, Publisher<Message<X>>> mapper, int maxConcurrency) {
+    if (policy() != null) {
+      return super.flatMap(mapper, maxConcurrency);
+    }
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("The `maxConcurrency` cannot be less than 1");
+    }
+    return append((Barrier) flowable -> {
+      Flowable<Message<X>> result = flowable.flatMap(message ->
+        Acknowledgements.fork(message, mapper.apply(cast(message))), maxConcurrency);
+      return cast(result);
+    });
+  }
+
+  @Override
+  public <X> Source<X> concatMap(Function<Message<T>, Publisher<Message<X>>> mapper) {
+    if (policy() != null) {
+      return super.concatMap(mapper);
+    }
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return append((Barrier) flowable -> {
+      Flowable<Message<X>> result = flowable.concatMap(message ->
+        Acknowledgements.fork(message, mapper.apply(cast(message))));
+      return cast(result);
+    });
+  }
+
+  @Override
+  public <X> Source<X> flatMapPayload(Function<T, Publisher<X>> mapper) {
+    if (policy() != null) {
+      return super.flatMapPayload(mapper);
+    }
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return append((Barrier) flowable -> {
+      Flowable<Message<X>> result = flowable.flatMap(message -> Acknowledgements.fork(message,
+        Flowable.fromPublisher(mapper.apply(cast(message.payload()))).map(message::with)));
+      return cast(result);
+    });
+  }
+
+  @Override
+  public <X> Source<X> flatMapPayload(Function<T, Publisher<X>> mapper, int maxConcurrency) {
+    if (policy() != null) {
+      return super.flatMapPayload(mapper, maxConcurrency);
+    }
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return append((Barrier) flowable -> {
+      Flowable<Message<X>> result = flowable.flatMap(message -> Acknowledgements.fork(message,
+        Flowable.fromPublisher(mapper.apply(cast(message.payload()))).map(message::with)),
+        maxConcurrency);
+      return cast(result);
+    });
+  }
+
+  @Override
+  public <X> Source<X> concatMapPayload(Function<T, Publisher<X>> mapper) {
+    if (policy() != null) {
+      return super.concatMapPayload(mapper);
+    }
+    Objects.requireNonNull(mapper, FUNCTION_CANNOT_BE_NULL_MESSAGE);
+    return append((Barrier) flowable -> {
+      Flowable<Message<X>> result = flowable.concatMap(message -> Acknowledgements.fork(message,
+        Flowable.fromPublisher(mapper.apply(cast(message.payload()))).map(message::with)));
+      return cast(result);
+    });
+  }
+
+  @Override
+  public <X> Source<X> scan(Message<X> zero, BiFunction<Message<X>, Message<T>, Message<X>> function) {
+    Objects.requireNonNull(function, "The `function` cannot be `null`");
+    Objects.requireNonNull(zero, "The `zero` item (seed) cannot be `null`");
+    return append((Barrier) flowable -> {
+      Flowable<Message<X>> result = flowable.scan(zero,
+        (acc, message) -> Acknowledgements.replace(message, function.apply(acc, cast(message))));
+      return cast(result);
+    });
+  }
+
+  @Override
+  public <X> Source<X> scanPayloads(X zero, BiFunction<X, T, X> function) {
+    Objects.requireNonNull(function, "The `function` cannot be `null`");
+    return append((Barrier) flowable -> {
+      Flowable<Message<X>> result = flowable
+        .scan(new Message<>(zero),
+          (acc, message) -> message.with(function.apply(acc.payload(), cast(message.payload()))));
+      return cast(result);
+    });
+  }
+
+  /**
+   * A stateless step of the plan. The function receives the payload (or the message if {@code onPayload} is
+   * {@code false}) and returns the new payload (or message), or {@link #FILTERED}.
+   */
+  private static final class Step {
+    private final boolean onPayload;
+    private final Function<Object, Object> function;
+
+    private Step(boolean onPayload, Function<Object, Object> function) {
+      this.onPayload = onPayload;
+      this.function = function;
+    }
+  }
+
+  /**
+   * A step of the plan that cannot be fused, compiled into a RxJava operator.
+   */
+  private interface Barrier extends Function<Flowable<Message<Object>>, Flowable<Message<Object>>> {
+  }
+
+  /**
+   * The publisher compiling the plan when subscribed for the first time.
+   */
+  private static final class CompiledPlan<I, T> implements Publisher<Message<T>> {
+    private final Publisher<Message<I>> upstream;
+    private final Object[] plan;
+    private volatile Flowable<Message<T>> compiled;
+
+    private CompiledPlan(Publisher<Message<I>> upstream, Object[] plan) {
+      this.upstream = upstream;
+      this.plan = plan;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Message<T>> subscriber) {
+      Flowable<Message<T>> flowable = compiled;
+      if (flowable == null) {
+        flowable = compile();
+        compiled = flowable;
+      }
+      flowable.subscribe(subscriber);
+    }
+
+    private Flowable<Message<T>> compile() {
+      Flowable<Message<Object>> flowable = cast(Flowable.fromPublisher(upstream));
+      List<Step> run = new ArrayList<>();
+      for (Object element : plan) {
+        if (element instanceof Step) {
+          run.add((Step) element);
+        } else {
+          flowable = ((Barrier) element).apply(fuse(flowable, run));
+          run = new ArrayList<>();
+        }
+      }
+      return cast(fuse(flowable, run));
+    }
+
+    private static Flowable<Message<Object>> fuse(Flowable<Message<Object>> flowable, List<Step> run) {
+      if (run.isEmpty()) {
+        return flowable;
+      }
+      Step[] steps = run.toArray(new Step[run.size()]);
+      return flowable.<Message<Object>>lift(downstream -> new FusedSubscriber(downstream, steps));
+    }
+  }
+
+  /**
+   * Subscriber executing a run of stateless steps.
+   */
+  private static final class FusedSubscriber implements FlowableSubscriber<Message<Object>>, Subscription {
+    private final Subscriber<? super Message<Object>> downstream;
+    private final Step[] steps;
+    private Subscription subscription;
+    private boolean done;
+
+    private FusedSubscriber(Subscriber<? super Message<Object>> downstream, Step[] steps) {
+      this.downstream = downstream;
+      this.steps = steps;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      this.subscription = s;
+      downstream.onSubscribe(this);
+    }
+
+    @Override
+    public void onNext(Message<Object> message) {
+      if (done) {
+        return;
+      }
+      Message<Object> envelope = message;
+      Object payload = message.payload();
+      try {
+        for (Step step : steps) {
+          if (step.onPayload) {
+            payload = step.function.apply(payload);
+          } else {
+            if (payload != envelope.payload()) {
+              envelope = envelope.with(payload);
+            }
+            Object result = step.function.apply(envelope);
+            if (result == FILTERED) {
+              payload = FILTERED;
+            } else {
+              envelope = Acknowledgements.propagate(envelope, cast(result));
+              payload = envelope.payload();
+            }
+          }
+          if (payload == FILTERED) {
+            envelope.ack();
+            subscription.request(1);
+            return;
+          }
+        }
+      } catch (Throwable e) {
+        Exceptions.throwIfFatal(e);
+        subscription.cancel();
+        onError(e);
+        return;
+      }
+      downstream.onNext(payload == envelope.payload() ? envelope : envelope.with(payload));
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (done) {
+        RxJavaPlugins.onError(t);
+        return;
+      }
+      done = true;
+      downstream.onError(t);
+    }
+
+    @Override
+    public void onComplete() {
+      if (done) {
+        return;
+      }
+      done = true;
+      downstream.onComplete();
+    }
+
+    @Override
+    public void request(long n) {
+      subscription.request(n);
+    }
+
+    @Override
+    public void cancel() {
+      subscription.cancel();
+    }
+  }
+}
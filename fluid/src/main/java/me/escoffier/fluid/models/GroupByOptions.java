@@ -0,0 +1,101 @@
+package me.escoffier.fluid.models;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options bounding the groups created by {@link Source#groupBy(java.util.function.Function, GroupByOptions)}.
+ * <p>
+ * By default, the number of groups is not bounded and groups are never evicted. When a group is evicted, its
+ * {@link GroupedDataStream} completes. If a message with the same key is received later, a new group is created.
+ * <p>
+ * The options hold the {@link GroupMetrics} updated by the sources using them.
+ */
+public class GroupByOptions {
+
+  /**
+   * The policy applied when a message requires a new group while the maximum number of groups is reached.
+   */
+  public enum Overflow {
+    /**
+     * Evicts the least recently used group, i.e. the group that has not received a message for the longest time.
+     */
+    EVICT_LEAST_RECENTLY_USED,
+    /**
+     * Fails the stream with an {@link IllegalStateException}.
+     */
+    FAIL
+  }
+
+  private int maxGroups = Integer.MAX_VALUE;
+
+  private Overflow overflow = Overflow.EVICT_LEAST_RECENTLY_USED;
+
+  private long idleTimeout;
+
+  private final GroupMetrics metrics = new GroupMetrics();
+
+  /**
+   * Sets the maximum number of groups open at the same time.
+   *
+   * @param maxGroups the maximum number of groups, must be strictly positive
+   * @return the current {@link GroupByOptions}
+   */
+  public GroupByOptions setMaxGroups(int maxGroups) {
+    if (maxGroups <= 0) {
+      throw new IllegalArgumentException("The maximum number of groups must be strictly positive");
+    }
+    this.maxGroups = maxGroups;
+    return this;
+  }
+
+  /**
+   * Sets the policy applied when the maximum number of groups is reached. Defaults to
+   * {@link Overflow#EVICT_LEAST_RECENTLY_USED}.
+   *
+   * @param overflow the policy, must not be {@code null}
+   * @return the current {@link GroupByOptions}
+   */
+  public GroupByOptions setOverflow(Overflow overflow) {
+    this.overflow = Objects.requireNonNull(overflow, "The `overflow` policy must not be `null`");
+    return this;
+  }
+
+  /**
+   * Sets the duration after which a group that has not received any message is evicted.
+   *
+   * @param timeout the timeout, 0 to disable the eviction of idle groups
+   * @param unit    the time unit, must not be {@code null}
+   * @return the current {@link GroupByOptions}
+   */
+  public GroupByOptions setIdleTimeout(long timeout, TimeUnit unit) {
+    Objects.requireNonNull(unit, "The `unit` must not be `null`");
+    if (timeout < 0) {
+      throw new IllegalArgumentException("The idle timeout must be positive or zero");
+    }
+    this.idleTimeout = unit.toMillis(timeout);
+    return this;
+  }
+
+  public int getMaxGroups() {
+    return maxGroups;
+  }
+
+  public Overflow getOverflow() {
+    return overflow;
+  }
+
+  /**
+   * @return the idle timeout in milliseconds, 0 if disabled
+   */
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * @return the metrics of the groups created with these options.
+   */
+  public GroupMetrics metrics() {
+    return metrics;
+  }
+}
@@ -0,0 +1,68 @@
+package me.escoffier.fluid.models;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics about the groups created by {@link Source#groupBy(java.util.function.Function, GroupByOptions)}.
+ */
+public class GroupMetrics {
+
+  private final AtomicLong live = new AtomicLong();
+  private final LongAdder created = new LongAdder();
+  private final LongAdder evictedOnIdle = new LongAdder();
+  private final LongAdder evictedOnOverflow = new LongAdder();
+
+  /**
+   * @return the number of groups currently open.
+   */
+  public long liveGroups() {
+    return live.get();
+  }
+
+  /**
+   * @return the number of groups created so far.
+   */
+  public long createdGroups() {
+    return created.sum();
+  }
+
+  /**
+   * @return the number of groups evicted because they were idle.
+   */
+  public long idleEvictions() {
+    return evictedOnIdle.sum();
+  }
+
+  /**
+   * @return the number of groups evicted because the maximum number of groups was reached.
+   */
+  public long overflowEvictions() {
+    return evictedOnOverflow.sum();
+  }
+
+  void onCreated() {
+    created.increment();
+    live.incrementAndGet();
+  }
+
+  void onRemoved() {
+    live.decrementAndGet();
+  }
+
+  void onIdleEviction() {
+    evictedOnIdle.increment();
+    onRemoved();
+  }
+
+  void onOverflowEviction() {
+    evictedOnOverflow.increment();
+    onRemoved();
+  }
+
+  @Override
+  public String toString() {
+    return "GroupMetrics{live=" + liveGroups() + ", created=" + createdGroups() + ", idleEvictions=" + idleEvictions()
+      + ", overflowEvictions=" + overflowEvictions() + "}";
+  }
+}
@@ -0,0 +1,575 @@
+package me.escoffier.fluid.models;
+
+import java.util.*;
+
+/**
+ * Immutable and persistent map storing the headers of a {@link Message}. Adding or removing a header creates a new
+ * instance sharing most of its structure with the original one, so {@link Message#with(String, Object)} and
+ * {@link Message#without(String)} do not copy the whole set of headers.
+ * <p>
+ * Small sets of headers (up to {@link #ARRAY_THRESHOLD} entries) are stored in a flat array preserving the insertion
+ * order. Larger sets are stored in a compressed hash array mapped trie (CHAMP), giving {@code O(log32 n)} updates.
+ * <p>
+ * Keys must not be {@code null}, values can be {@code null}.
+ *
+ * @author <a href="http://escoffier.me">Clement Escoffier</a>
+ */
+abstract class Headers extends AbstractMap<String, Object> {
+
+  /**
+   * Maximum number of entries stored in the array representation.
+   */
+  static final int ARRAY_THRESHOLD = 8;
+
+  /**
+   * Marker returned when a key is not found (values can be {@code null}).
+   */
+  private static final Object NOT_FOUND = new Object();
+
+  static final Headers EMPTY = new ArrayHeaders(new Object[0]);
+
+  /**
+   * Gets a {@link Headers} instance containing the entries of the given map. If the map is already a {@link Headers}
+   * instance, it is returned as it is.
+   *
+   * @param map the map, must not be {@code null}
+   * @return the headers
+   */
+  static Headers from(Map<String, Object> map) {
+    if (map instanceof Headers) {
+      return (Headers) map;
+    }
+    Headers headers = EMPTY;
+    for (Entry<String, Object> entry : map.entrySet()) {
+      headers = headers.plus(entry.getKey(), entry.getValue());
+    }
+    return headers;
+  }
+
+  /**
+   * Creates a new instance of {@link Headers} containing the current entries and the given one. If the key is already
+   * present, the value is replaced.
+   *
+   * @param key   the key, must not be {@code null}
+   * @param value the value
+   * @return the new instance, the current instance is not modified
+   */
+  abstract Headers plus(String key, Object value);
+
+  /**
+   * Creates a new instance of {@link Headers} containing the current entries except the one with the given key.
+   *
+   * @param key the key, must not be {@code null}
+   * @return the new instance, the current instance if the key is not present
+   */
+  abstract Headers minus(String key);
+
+  abstract Object find(String key);
+
+  @Override
+  public Object get(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+    Object value = find((String) key);
+    return value == NOT_FOUND ? null : value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof String && find((String) key) != NOT_FOUND;
+  }
+
+  private static boolean same(Object a, Object b) {
+    return a == b || (a != null && a.equals(b));
+  }
+
+  /**
+   * Flat array representation, entries are stored as {@code [k0, v0, k1, v1...]} in insertion order.
+   */
+  private static final class ArrayHeaders extends Headers {
+
+    private final Object[] entries;
+
+    ArrayHeaders(Object[] entries) {
+      this.entries = entries;
+    }
+
+    private int indexOf(String key) {
+      for (int i = 0; i < entries.length; i += 2) {
+        if (key.equals(entries[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Object find(String key) {
+      int index = indexOf(key);
+      return index == -1 ? NOT_FOUND : entries[index + 1];
+    }
+
+    @Override
+    Headers plus(String key, Object value) {
+      int index = indexOf(key);
+      if (index != -1) {
+        if (entries[index + 1] == value) {
+          return this;
+        }
+        Object[] copy = entries.clone();
+        copy[index + 1] = value;
+        return new ArrayHeaders(copy);
+      }
+
+      if (size() == ARRAY_THRESHOLD) {
+        Headers trie = TrieHeaders.EMPTY_TRIE;
+        for (int i = 0; i < entries.length; i += 2) {
+          trie = trie.plus((String) entries[i], entries[i + 1]);
+        }
+        return trie.plus(key, value);
+      }
+
+      Object[] copy = Arrays.copyOf(entries, entries.length + 2);
+      copy[entries.length] = key;
+      copy[entries.length + 1] = value;
+      return new ArrayHeaders(copy);
+    }
+
+    @Override
+    Headers minus(String key) {
+      int index = indexOf(key);
+      if (index == -1) {
+        return this;
+      }
+      Object[] copy = new Object[entries.length - 2];
+      System.arraycopy(entries, 0, copy, 0, index);
+      System.arraycopy(entries, index + 2, copy, index, entries.length - index - 2);
+      return new ArrayHeaders(copy);
+    }
+
+    @Override
+    public int size() {
+      return entries.length / 2;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return new AbstractSet<Entry<String, Object>>() {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+          return new Iterator<Entry<String, Object>>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+              return index < entries.length;
+            }
+
+            @Override
+            public Entry<String, Object> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              Entry<String, Object> entry = new SimpleImmutableEntry<>((String) entries[index], entries[index + 1]);
+              index += 2;
+              return entry;
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return ArrayHeaders.this.size();
+        }
+      };
+    }
+  }
+
+  /**
+   * Trie representation used for large set of headers.
+   */
+  private static final class TrieHeaders extends Headers {
+
+    static final TrieHeaders EMPTY_TRIE = new TrieHeaders(new BitmapNode(0, 0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    TrieHeaders(Node root, int size) {
+      this.root = root;
+      this.size = size;
+    }
+
+    @Override
+    Object find(String key) {
+      return root.find(key, key.hashCode(), 0);
+    }
+
+    @Override
+    Headers plus(String key, Object value) {
+      boolean[] added = new boolean[1];
+      Node updated = root.put(key, value, key.hashCode(), 0, added);
+      if (updated == root) {
+        return this;
+      }
+      return new TrieHeaders(updated, added[0] ? size + 1 : size);
+    }
+
+    @Override
+    Headers minus(String key) {
+      Node updated = root.remove(key, key.hashCode(), 0);
+      if (updated == root) {
+        return this;
+      }
+      return new TrieHeaders(updated, size - 1);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return new AbstractSet<Entry<String, Object>>() {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+          return new TrieIterator(root);
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+  }
+
+  private abstract static class Node {
+
+    abstract Object find(String key, int hash, int shift);
+
+    abstract Node put(String key, Object value, int hash, int shift, boolean[] added);
+
+    abstract Node remove(String key, int hash, int shift);
+
+    abstract int payloadArity();
+
+    abstract String keyAt(int index);
+
+    abstract Object valueAt(int index);
+
+    abstract int nodeArity();
+
+    abstract Node nodeAt(int index);
+  }
+
+  /**
+   * Trie node. The content array stores the inlined entries first ({@code [k0, v0, k1, v1...]}), followed by the
+   * sub-nodes. The position in the array is computed from the bitmaps.
+   */
+  private static final class BitmapNode extends Node {
+
+    private final int dataMap;
+    private final int nodeMap;
+    private final Object[] content;
+
+    BitmapNode(int dataMap, int nodeMap, Object[] content) {
+      this.dataMap = dataMap;
+      this.nodeMap = nodeMap;
+      this.content = content;
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & 31);
+    }
+
+    private int dataIndex(int bit) {
+      return Integer.bitCount(dataMap & (bit - 1));
+    }
+
+    private int nodeIndex(int bit) {
+      return 2 * Integer.bitCount(dataMap) + Integer.bitCount(nodeMap & (bit - 1));
+    }
+
+    @Override
+    Object find(String key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int index = 2 * dataIndex(bit);
+        return key.equals(content[index]) ? content[index + 1] : NOT_FOUND;
+      }
+      if ((nodeMap & bit) != 0) {
+        return ((Node) content[nodeIndex(bit)]).find(key, hash, shift + 5);
+      }
+      return NOT_FOUND;
+    }
+
+    @Override
+    Node put(String key, Object value, int hash, int shift, boolean[] added) {
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int index = 2 * dataIndex(bit);
+        String existing = (String) content[index];
+        if (key.equals(existing)) {
+          if (content[index + 1] == value) {
+            return this;
+          }
+          Object[] copy = content.clone();
+          copy[index + 1] = value;
+          return new BitmapNode(dataMap, nodeMap, copy);
+        }
+        added[0] = true;
+        Node sub = merge(existing, content[index + 1], existing.hashCode(), key, value, hash, shift + 5);
+        return migrateToNode(bit, index, sub);
+      }
+      if ((nodeMap & bit) != 0) {
+        int index = nodeIndex(bit);
+        Node sub = (Node) content[index];
+        Node updated = sub.put(key, value, hash, shift + 5, added);
+        if (updated == sub) {
+          return this;
+        }
+        Object[] copy = content.clone();
+        copy[index] = updated;
+        return new BitmapNode(dataMap, nodeMap, copy);
+      }
+      added[0] = true;
+      int index = 2 * dataIndex(bit);
+      Object[] copy = new Object[content.length + 2];
+      System.arraycopy(content, 0, copy, 0, index);
+      copy[index] = key;
+      copy[index + 1] = value;
+      System.arraycopy(content, index, copy, index + 2, content.length - index);
+      return new BitmapNode(dataMap | bit, nodeMap, copy);
+    }
+
+    @Override
+    Node remove(String key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int index = 2 * dataIndex(bit);
+        if (!key.equals(content[index])) {
+          return this;
+        }
+        Object[] copy = new Object[content.length - 2];
+        System.arraycopy(content, 0, copy, 0, index);
+        System.arraycopy(content, index + 2, copy, index, content.length - index - 2);
+        return new BitmapNode(dataMap ^ bit, nodeMap, copy);
+      }
+      if ((nodeMap & bit) != 0) {
+        int index = nodeIndex(bit);
+        Node sub = (Node) content[index];
+        Node updated = sub.remove(key, hash, shift + 5);
+        if (updated == sub) {
+          return this;
+        }
+        if (updated.payloadArity() == 1 && updated.nodeArity() == 0) {
+          // Inline the remaining entry to keep the trie compact.
+          return migrateToInline(bit, index, updated.keyAt(0), updated.valueAt(0));
+        }
+        Object[] copy = content.clone();
+        copy[index] = updated;
+        return new BitmapNode(dataMap, nodeMap, copy);
+      }
+      return this;
+    }
+
+    private Node migrateToNode(int bit, int dataIndex, Node sub) {
+      // Removes the entry at dataIndex and inserts the node.
+      int nodeIndex = nodeIndex(bit) - 2;
+      Object[] copy = new Object[content.length - 1];
+      System.arraycopy(content, 0, copy, 0, dataIndex);
+      System.arraycopy(content, dataIndex + 2, copy, dataIndex, nodeIndex - dataIndex);
+      copy[nodeIndex] = sub;
+      System.arraycopy(content, nodeIndex + 2, copy, nodeIndex + 1, content.length - nodeIndex - 2);
+      return new BitmapNode(dataMap ^ bit, nodeMap | bit, copy);
+    }
+
+    private Node migrateToInline(int bit, int nodeIndex, String key, Object value) {
+      // Removes the node at nodeIndex and inserts the entry.
+      int dataIndex = 2 * dataIndex(bit);
+      Object[] copy = new Object[content.length + 1];
+      System.arraycopy(content, 0, copy, 0, dataIndex);
+      copy[dataIndex] = key;
+      copy[dataIndex + 1] = value;
+      System.arraycopy(content, dataIndex, copy, dataIndex + 2, nodeIndex - dataIndex);
+      System.arraycopy(content, nodeIndex + 1, copy, nodeIndex + 2, content.length - nodeIndex - 1);
+      return new BitmapNode(dataMap | bit, nodeMap ^ bit, copy);
+    }
+
+    private static Node merge(String k0, Object v0, int h0, String k1, Object v1, int h1, int shift) {
+      if (shift >= 32) {
+        // Full hash collision.
+        return new CollisionNode(new Object[] {k0, v0, k1, v1});
+      }
+      int m0 = (h0 >>> shift) & 31;
+      int m1 = (h1 >>> shift) & 31;
+      if (m0 != m1) {
+        Object[] content = m0 < m1 ? new Object[] {k0, v0, k1, v1} : new Object[] {k1, v1, k0, v0};
+        return new BitmapNode((1 << m0) | (1 << m1), 0, content);
+      }
+      return new BitmapNode(0, 1 << m0, new Object[] {merge(k0, v0, h0, k1, v1, h1, shift + 5)});
+    }
+
+    @Override
+    int payloadArity() {
+      return Integer.bitCount(dataMap);
+    }
+
+    @Override
+    String keyAt(int index) {
+      return (String) content[2 * index];
+    }
+
+    @Override
+    Object valueAt(int index) {
+      return content[2 * index + 1];
+    }
+
+    @Override
+    int nodeArity() {
+      return Integer.bitCount(nodeMap);
+    }
+
+    @Override
+    Node nodeAt(int index) {
+      return (Node) content[2 * Integer.bitCount(dataMap) + index];
+    }
+  }
+
+  /**
+   * Node storing entries whose keys have the same hash code.
+   */
+  private static final class CollisionNode extends Node {
+
+    private final Object[] entries;
+
+    CollisionNode(Object[] entries) {
+      this.entries = entries;
+    }
+
+    private int indexOf(String key) {
+      for (int i = 0; i < entries.length; i += 2) {
+        if (key.equals(entries[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Object find(String key, int hash, int shift) {
+      int index = indexOf(key);
+      return index == -1 ? NOT_FOUND : entries[index + 1];
+    }
+
+    @Override
+    Node put(String key, Object value, int hash, int shift, boolean[] added) {
+      int index = indexOf(key);
+      if (index != -1) {
+        if (entries[index + 1] == value) {
+          return this;
+        }
+        Object[] copy = entries.clone();
+        copy[index + 1] = value;
+        return new CollisionNode(copy);
+      }
+      added[0] = true;
+      Object[] copy = Arrays.copyOf(entries, entries.length + 2);
+      copy[entries.length] = key;
+      copy[entries.length + 1] = value;
+      return new CollisionNode(copy);
+    }
+
+    @Override
+    Node remove(String key, int hash, int shift) {
+      int index = indexOf(key);
+      if (index == -1) {
+        return this;
+      }
+      Object[] copy = new Object[entries.length - 2];
+      System.arraycopy(entries, 0, copy, 0, index);
+      System.arraycopy(entries, index + 2, copy, index, entries.length - index - 2);
+      return new CollisionNode(copy);
+    }
+
+    @Override
+    int payloadArity() {
+      return entries.length / 2;
+    }
+
+    @Override
+    String keyAt(int index) {
+      return (String) entries[2 * index];
+    }
+
+    @Override
+    Object valueAt(int index) {
+      return entries[2 * index + 1];
+    }
+
+    @Override
+    int nodeArity() {
+      return 0;
+    }
+
+    @Override
+    Node nodeAt(int index) {
+      throw new IndexOutOfBoundsException("Collision nodes have no sub-nodes");
+    }
+  }
+
+  /**
+   * Depth-first iterator on the trie. The trie has at most 7 levels of bitmap nodes and one level of collision nodes.
+   */
+  private static final class TrieIterator implements Iterator<Entry<String, Object>> {
+    private final Node[] nodes = new Node[8];
+    private final int[] cursors = new int[8];
+    private int depth;
+    private Node current;
+    private int payloadCursor;
+
+    TrieIterator(Node root) {
+      nodes[0] = root;
+      current = root;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (true) {
+        if (current != null && payloadCursor < current.payloadArity()) {
+          return true;
+        }
+        current = null;
+        while (depth >= 0 && current == null) {
+          Node node = nodes[depth];
+          if (cursors[depth] < node.nodeArity()) {
+            Node child = node.nodeAt(cursors[depth]++);
+            depth++;
+            nodes[depth] = child;
+            cursors[depth] = 0;
+            current = child;
+            payloadCursor = 0;
+          } else {
+            depth--;
+          }
+        }
+        if (current == null) {
+          return false;
+        }
+      }
+    }
+
+    @Override
+    public Entry<String, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int index = payloadCursor++;
+      return new SimpleImmutableEntry<>(current.keyAt(index), current.valueAt(index));
+    }
+  }
+
+}
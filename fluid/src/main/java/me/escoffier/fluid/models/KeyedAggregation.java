@@ -0,0 +1,150 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static me.escoffier.fluid.models.CommonHeaders.GROUP_KEY;
+import static me.escoffier.fluid.models.Pair.pair;
+
+/**
+ * Implements {@link Source#aggregateByKey(Function, Aggregator, Emission)}. The state of all the keys is kept in a
+ * single {@link KeyedState}, so no stream or object is created per key.
+ * <p>
+ * A new instance is created for each subscription.
+ * <p>
+ * When the results are emitted every {@code n} messages or periodically, the messages accumulated since the previous
+ * emission are acknowledged once all the emitted results have been acknowledged.
+ *
+ * @param <T> the type of payload
+ * @param <K> the type of key
+ * @param <R> the type of result
+ */
+final class KeyedAggregation<T, K, R> {
+
+  private static final Object TICK = new Object();
+
+  private final Function<Message<T>, K> key;
+
+  private final Aggregator<T, R> aggregator;
+
+  private final KeyedState<K> state;
+
+  private final int count;
+
+  private int received;
+
+  /**
+   * The acknowledgements of the messages accumulated since the previous emission.
+   */
+  private final List<Acknowledgement> pending = new ArrayList<>();
+
+  private KeyedAggregation(Function<Message<T>, K> key, Aggregator<T, R> aggregator, int count) {
+    this.key = key;
+    this.aggregator = aggregator;
+    this.state = new KeyedState<>(aggregator.width());
+    this.count = count;
+  }
+
+  static <T, K, R> Flowable<Message<Pair<K, R>>> apply(Publisher<Message<T>> upstream, Function<Message<T>, K> key,
+                                                       Aggregator<T, R> aggregator, Emission emission) {
+    Flowable<Message<T>> flowable = Flowable.fromPublisher(upstream);
+    if (emission.isEveryElement()) {
+      return Flowable.defer(() -> {
+        KeyedAggregation<T, K, R> aggregation = new KeyedAggregation<>(key, aggregator, 1);
+        return flowable.map(aggregation::update);
+      });
+    }
+
+    if (!emission.isPeriodic()) {
+      return Flowable.defer(() -> {
+        KeyedAggregation<T, K, R> aggregation = new KeyedAggregation<>(key, aggregator, emission.count());
+        return flowable
+          .concatMapIterable(aggregation::onMessage)
+          .concatWith(Flowable.defer(() -> Flowable.fromIterable(aggregation.emitUpdated())));
+      });
+    }
+
+    // Periodic emission: the ticks are merged with the messages, so the state is only accessed serially.
+    return Flowable.defer(() -> {
+      KeyedAggregation<T, K, R> aggregation = new KeyedAggregation<>(key, aggregator, 0);
+      return flowable
+        .publish(shared -> Flowable.merge(
+          shared.map(message -> (Object) message),
+          Flowable.interval(emission.period(), emission.period(), TimeUnit.MILLISECONDS)
+            .map(tick -> TICK)
+            .onBackpressureDrop()
+            .takeUntil(shared.ignoreElements().andThen(Flowable.just(TICK)))))
+        .concatMapIterable(aggregation::onItem)
+        .concatWith(Flowable.defer(() -> Flowable.fromIterable(aggregation.emitUpdated())));
+    });
+  }
+
+  private int accumulate(Message<T> message) {
+    K k = Objects.requireNonNull(key.apply(message), "The key of a message must not be `null`");
+    int index = state.indexOf(k);
+    if (index < 0) {
+      index = -(index + 1);
+      aggregator.initialize(state.values(), index * aggregator.width());
+    }
+    aggregator.accumulate(state.values(), index * aggregator.width(), message.payload());
+    return index;
+  }
+
+  private Message<Pair<K, R>> update(Message<T> message) {
+    int index = accumulate(message);
+    K k = state.key(index);
+    return message.with(pair(k, aggregator.result(state.values(), index * aggregator.width()))).with(GROUP_KEY, k);
+  }
+
+  private List<Message<Pair<K, R>>> onMessage(Message<T> message) {
+    state.markUpdated(accumulate(message));
+    retain(message);
+    if (++received == count) {
+      received = 0;
+      return emitUpdated();
+    }
+    return Collections.emptyList();
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Message<Pair<K, R>>> onItem(Object item) {
+    if (item == TICK) {
+      return emitUpdated();
+    }
+    Message<T> message = (Message<T>) item;
+    state.markUpdated(accumulate(message));
+    retain(message);
+    return Collections.emptyList();
+  }
+
+  private void retain(Message<T> message) {
+    if (message.acknowledgement() != null) {
+      pending.add(message.acknowledgement());
+    }
+  }
+
+  private List<Message<Pair<K, R>>> emitUpdated() {
+    List<Message<Pair<K, R>>> results = new ArrayList<>();
+    state.drainUpdated(index -> {
+      K k = state.key(index);
+      results.add(new Message<>(pair(k, aggregator.result(state.values(), index * aggregator.width())))
+        .with(GROUP_KEY, k));
+    });
+    Acknowledgement acknowledgement = Acknowledgement.all(pending.toArray(new Acknowledgement[0]));
+    pending.clear();
+    if (acknowledgement != null && !results.isEmpty()) {
+      List<Acknowledgement> children = Acknowledgements.split(acknowledgement, results.size());
+      for (int i = 0; i < results.size(); i++) {
+        results.set(i, results.get(i).withAcknowledgement(children.get(i)));
+      }
+    }
+    return results;
+  }
+}
@@ -0,0 +1,69 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.parallel.ParallelFlowable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Splits a stream into rails, routing the messages according to the hash of their {@link CommonHeaders#KEY}, so the
+ * messages sharing the same key are always dispatched to the same rail. Messages without key are dispatched to the
+ * rails in a round-robin fashion. The dispatching relies on a {@link Router}.
+ *
+ * @param <T> the type of payload
+ */
+final class KeyedRails<T> extends ParallelFlowable<Message<T>> {
+
+  private final Publisher<Message<T>> upstream;
+
+  private final int parallelism;
+
+  KeyedRails(Publisher<Message<T>> upstream, int parallelism) {
+    this.upstream = upstream;
+    this.parallelism = parallelism;
+  }
+
+  @Override
+  public int parallelism() {
+    return parallelism;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super Message<T>>[] subscribers) {
+    if (!validate(subscribers)) {
+      return;
+    }
+    Router<T> router = new Router<>(upstream, new RailSelector<>(parallelism), parallelism,
+      Router.DEFAULT_CAPACITY);
+    for (int i = 0; i < parallelism; i++) {
+      router.output(i).subscribe(subscribers[i]);
+    }
+  }
+
+  /**
+   * Computes the rail of a message. Called serially by the router, so the round-robin counter does not need to be
+   * synchronized.
+   */
+  private static final class RailSelector<T> implements ToIntFunction<Message<T>> {
+    private final int rails;
+    private int next;
+
+    private RailSelector(int rails) {
+      this.rails = rails;
+    }
+
+    @Override
+    public int applyAsInt(Message<T> message) {
+      String key = CommonHeaders.key(message);
+      if (key == null) {
+        int rail = next;
+        next = rail + 1 == rails ? 0 : rail + 1;
+        return rail;
+      }
+      int hash = key.hashCode();
+      hash ^= hash >>> 16;
+      return (hash & Integer.MAX_VALUE) % rails;
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package me.escoffier.fluid.models;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map associating keys with a fixed number of {@code long} cells. Entries are stored densely,
+ * in insertion order: the key of the entry {@code i} is {@code keys[i]} and its cells start at {@code i * width} in
+ * {@link #values()}. The hash table only contains entry indexes, so growing it does not move the entries, and the index
+ * of an entry is stable.
+ * <p>
+ * The map also tracks the entries updated since the last call to {@link #drainUpdated(Visitor)}. It is not thread-safe.
+ *
+ * @param <K> the type of key
+ */
+final class KeyedState<K> {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final int width;
+
+  private Object[] keys = new Object[INITIAL_CAPACITY];
+
+  private long[] values;
+
+  private int size;
+
+  /**
+   * The hash table, containing {@code index + 1} for each entry, 0 for empty buckets. Linear probing.
+   */
+  private int[] table = new int[INITIAL_CAPACITY * 2];
+
+  private int[] updated = new int[INITIAL_CAPACITY];
+
+  private int updatedCount;
+
+  private boolean[] flagged = new boolean[INITIAL_CAPACITY];
+
+  KeyedState(int width) {
+    this.width = width;
+    this.values = new long[INITIAL_CAPACITY * width];
+  }
+
+  /**
+   * @return the cells of all the entries, the returned array changes when the map grows.
+   */
+  long[] values() {
+    return values;
+  }
+
+  int size() {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  K key(int index) {
+    return (K) keys[index];
+  }
+
+  /**
+   * Gets the index of the entry associated with the given key.
+   *
+   * @param key the key, must not be {@code null}
+   * @return the index of the entry, or {@code -(index + 1)} if the entry has been created by this call
+   */
+  int indexOf(K key) {
+    int mask = table.length - 1;
+    int bucket = hash(key) & mask;
+    int slot;
+    while ((slot = table[bucket]) != 0) {
+      if (keys[slot - 1].equals(key)) {
+        return slot - 1;
+      }
+      bucket = (bucket + 1) & mask;
+    }
+    int index = size++;
+    if (index == keys.length) {
+      grow();
+    }
+    keys[index] = key;
+    table[bucket] = index + 1;
+    if (size * 2 > table.length) {
+      rehash();
+    }
+    return -(index + 1);
+  }
+
+  /**
+   * Marks the given entry as updated.
+   *
+   * @param index the index of the entry
+   */
+  void markUpdated(int index) {
+    if (!flagged[index]) {
+      flagged[index] = true;
+      if (updatedCount == updated.length) {
+        updated = Arrays.copyOf(updated, updatedCount * 2);
+      }
+      updated[updatedCount++] = index;
+    }
+  }
+
+  /**
+   * Visits the entries updated since the last call, in update order, and clears the updated set.
+   *
+   * @param visitor the visitor
+   */
+  void drainUpdated(Visitor visitor) {
+    for (int i = 0; i < updatedCount; i++) {
+      int index = updated[i];
+      flagged[index] = false;
+      visitor.visit(index);
+    }
+    updatedCount = 0;
+  }
+
+  private void grow() {
+    int capacity = keys.length * 2;
+    keys = Arrays.copyOf(keys, capacity);
+    values = Arrays.copyOf(values, capacity * width);
+    flagged = Arrays.copyOf(flagged, capacity);
+  }
+
+  private void rehash() {
+    int[] rehashed = new int[table.length * 2];
+    int mask = rehashed.length - 1;
+    for (int i = 0; i < size; i++) {
+      int bucket = hash(keys[i]) & mask;
+      while (rehashed[bucket] != 0) {
+        bucket = (bucket + 1) & mask;
+      }
+      rehashed[bucket] = i + 1;
+    }
+    table = rehashed;
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  interface Visitor {
+    void visit(int index);
+  }
+}
@@ -0,0 +1,117 @@
+package me.escoffier.fluid.models;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A {@link Message} computing its headers only when they are accessed. The headers are extracted from the object the
+ * message has been created from (such as a Kafka record or an event bus message). Messages derived using
+ * {@link #with(Object)} or {@link #withAcknowledgement(Acknowledgement)} stay lazy, and share the extracted headers, so
+ * the headers are extracted at most once.
+ *
+ * @param <T> the type of payload
+ * @param <S> the type of the object from which the headers are extracted
+ */
+final class LazyMessage<T, S> extends Message<T> {
+
+  private final Extraction<S> extraction;
+
+  /**
+   * The message containing the extracted headers, {@code null} until the headers are accessed.
+   */
+  private volatile Message<T> materialized;
+
+  LazyMessage(T payload, S source, Function<S, Map<String, Object>> extractor) {
+    this(payload, new Extraction<>(source, extractor), null);
+  }
+
+  private LazyMessage(T payload, Extraction<S> extraction, Acknowledgement acknowledgement) {
+    super(payload, acknowledgement);
+    this.extraction = extraction;
+  }
+
+  private Message<T> materialize() {
+    Message<T> message = materialized;
+    if (message == null) {
+      message = extraction.headers().with(payload()).withAcknowledgement(acknowledgement());
+      materialized = message;
+    }
+    return message;
+  }
+
+  @Override
+  public <O> Message<O> with(O payload) {
+    Message<T> message = materialized;
+    if (message != null) {
+      return message.with(payload);
+    }
+    return new LazyMessage<>(Objects.requireNonNull(payload), extraction, acknowledgement());
+  }
+
+  @Override
+  public Message<T> withAcknowledgement(Acknowledgement acknowledgement) {
+    Message<T> message = materialized;
+    if (message != null) {
+      return message.withAcknowledgement(acknowledgement);
+    }
+    return new LazyMessage<>(payload(), extraction, acknowledgement);
+  }
+
+  @Override
+  Object slot(int slot) {
+    return materialize().slot(slot);
+  }
+
+  @Override
+  public <X> X get(String key) {
+    return materialize().get(key);
+  }
+
+  @Override
+  public Message<T> with(String key, Object value) {
+    return materialize().with(key, value);
+  }
+
+  @Override
+  public Message<T> without(String key) {
+    return materialize().without(key);
+  }
+
+  @Override
+  public Map<String, Object> headers() {
+    return materialize().headers();
+  }
+
+  /**
+   * The extraction of the headers, shared by a lazy message and the messages derived from it.
+   */
+  private static final class Extraction<S> {
+    private final S source;
+    private final Function<S, Map<String, Object>> extractor;
+
+    /**
+     * A message holding the extracted headers, {@code null} until they are extracted.
+     */
+    private volatile Message<S> headers;
+
+    private Extraction(S source, Function<S, Map<String, Object>> extractor) {
+      this.source = Objects.requireNonNull(source, "The `source` must not be `null`");
+      this.extractor = Objects.requireNonNull(extractor, "The `extractor` must not be `null`");
+    }
+
+    private Message<S> headers() {
+      Message<S> message = headers;
+      if (message == null) {
+        synchronized (this) {
+          message = headers;
+          if (message == null) {
+            message = new Message<>(source, extractor.apply(source));
+            headers = message;
+          }
+        }
+      }
+      return message;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package me.escoffier.fluid.models;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -8,15 +9,37 @@ import java.util.stream.Collectors;
  */
 public class Message<T> {
 
+  /**
+   * Marker stored in a slot when a well-known header is explicitly set to {@code null}.
+   */
+  private static final Object NULL_VALUE = new Object();
+
   /**
    * The payload, must not be {@code null}
    */
   private final T payload;
 
   /**
-   * A set of headers.
+   * A set of headers. The header map is persistent, so derived messages share its structure. Well-known headers (see
+   * {@link CommonHeaders}) are not stored in this map, but in {@link #slots}.
+   */
+  private final Headers headers;
+
+  /**
+   * The values of the well-known headers, indexed by their slot (see {@link CommonHeaders#slot(String)}). {@code null}
+   * if none of the well-known headers are set.
+   */
+  private final Object[] slots;
+
+  /**
+   * The complete set of headers (including the well-known headers), computed lazily.
    */
-  private final Map<String, Object> headers;
+  private Map<String, Object> view;
+
+  /**
+   * The acknowledgement notified when the message has been processed, {@code null} if none.
+   */
+  private final Acknowledgement acknowledgement;
 
   /**
    * Creates a new instance of {@link Message}. This constructor does not set any headers (empty map).
@@ -25,7 +48,9 @@ public class Message<T> {
    */
   public Message(T payload) {
     this.payload = Objects.requireNonNull(payload);
-    this.headers = Collections.emptyMap();
+    this.headers = Headers.EMPTY;
+    this.slots = null;
+    this.acknowledgement = null;
   }
 
   /**
@@ -36,8 +61,73 @@ public class Message<T> {
    */
   public Message(T payload, Map<String, Object> headers) {
     this.payload = Objects.requireNonNull(payload);
-    this.headers = Collections
-      .unmodifiableMap(new HashMap<>(Objects.requireNonNull(headers)));
+    Objects.requireNonNull(headers);
+    if (headers instanceof Headers && !containsWellKnownHeaders(headers)) {
+      this.headers = (Headers) headers;
+      this.slots = null;
+    } else {
+      Headers others = Headers.EMPTY;
+      Object[] values = null;
+      for (Map.Entry<String, Object> entry : headers.entrySet()) {
+        int slot = CommonHeaders.slot(entry.getKey());
+        if (slot == -1) {
+          others = others.plus(entry.getKey(), entry.getValue());
+        } else {
+          if (values == null) {
+            values = new Object[CommonHeaders.SLOT_COUNT];
+          }
+          values[slot] = mask(entry.getValue());
+        }
+      }
+      this.headers = others;
+      this.slots = values;
+    }
+    this.acknowledgement = null;
+  }
+
+  Message(T payload, Acknowledgement acknowledgement) {
+    this(Objects.requireNonNull(payload), Headers.EMPTY, null, acknowledgement);
+  }
+
+  private Message(T payload, Headers headers, Object[] slots, Acknowledgement acknowledgement) {
+    this.payload = payload;
+    this.headers = headers;
+    this.slots = slots;
+    this.acknowledgement = acknowledgement;
+  }
+
+  /**
+   * Creates a new instance of {@link Message} whose headers are computed lazily. The given function is called at most
+   * once, when the headers of the returned message or of a message derived from it are accessed for the first time.
+   * Connectors use this method to avoid building the headers of every received record when the downstream processing
+   * only uses the payload.
+   *
+   * @param payload   the payload, must not be {@code null}
+   * @param source    the object from which the headers are extracted, must not be {@code null}
+   * @param extractor the function computing the headers from the source, must not be {@code null}
+   * @param <T>       the type of payload
+   * @param <S>       the type of the source object
+   * @return the new instance
+   */
+  public static <T, S> Message<T> lazy(T payload, S source, Function<S, Map<String, Object>> extractor) {
+    return new LazyMessage<>(payload, source, extractor);
+  }
+
+  private static boolean containsWellKnownHeaders(Map<String, Object> headers) {
+    for (int i = 0; i < CommonHeaders.SLOT_COUNT; i++) {
+      if (headers.containsKey(CommonHeaders.slotName(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Object mask(Object value) {
+    return value == null ? NULL_VALUE : value;
+  }
+
+  private static Object unmask(Object value) {
+    return value == NULL_VALUE ? null : value;
   }
 
   /**
@@ -48,7 +138,17 @@ public class Message<T> {
    * @return the new instance
    */
   public <O> Message<O> with(O payload) {
-    return new Message<>(Objects.requireNonNull(payload), headers());
+    return new Message<>(Objects.requireNonNull(payload), headers, slots, acknowledgement);
+  }
+
+  /**
+   * Reads the value of a well-known header directly from its slot.
+   *
+   * @param slot the slot index
+   * @return the value, {@code null} if not set
+   */
+  Object slot(int slot) {
+    return slots == null ? null : unmask(slots[slot]);
   }
 
   /**
@@ -60,7 +160,11 @@ public class Message<T> {
    */
   @SuppressWarnings("unchecked")
   public <X> X get(String key) {
-    return (X) headers.get(Objects.requireNonNull(key));
+    int slot = CommonHeaders.slot(Objects.requireNonNull(key));
+    if (slot != -1) {
+      return (X) slot(slot);
+    }
+    return (X) headers.get(key);
   }
 
   /**
@@ -70,9 +174,8 @@ public class Message<T> {
    * @param <X> the expected type
    * @return an {@link Optional} containing the value if present
    */
-  @SuppressWarnings("unchecked")
   public <X> Optional<X> getOpt(String key) {
-    return Optional.ofNullable((X) headers.get(Objects.requireNonNull(key)));
+    return Optional.ofNullable(get(key));
   }
 
   /**
@@ -84,9 +187,13 @@ public class Message<T> {
    * @return the new instance of {@link Message}
    */
   public Message<T> with(String key, Object value) {
-    Map<String, Object> copy = new HashMap<>(headers);
-    copy.put(Objects.requireNonNull(key), value);
-    return new Message<>(payload, copy);
+    int slot = CommonHeaders.slot(Objects.requireNonNull(key));
+    if (slot != -1) {
+      Object[] copy = slots == null ? new Object[CommonHeaders.SLOT_COUNT] : slots.clone();
+      copy[slot] = mask(value);
+      return new Message<>(payload, headers, copy, acknowledgement);
+    }
+    return new Message<>(payload, headers.plus(key, value), slots, acknowledgement);
   }
 
   /**
@@ -97,18 +204,80 @@ public class Message<T> {
    * @return the new instance of {@link Message}
    */
   public Message<T> without(String key) {
-    Map<String, Object> copy = new HashMap<>(headers);
-    copy.remove(Objects.requireNonNull(key));
-    return new Message<>(payload, copy);
+    int slot = CommonHeaders.slot(Objects.requireNonNull(key));
+    if (slot != -1) {
+      if (slots == null || slots[slot] == null) {
+        return new Message<>(payload, headers, slots, acknowledgement);
+      }
+      Object[] copy = slots.clone();
+      copy[slot] = null;
+      return new Message<>(payload, headers, copy, acknowledgement);
+    }
+    return new Message<>(payload, headers.minus(key), slots, acknowledgement);
   }
 
   /**
    * Gets the set of headers associated with the current {@link Message}.
    *
-   * @return the headers, never {@code null}. An empty map is returned if the {@link Message} has no headers.
+   * @return the headers, never {@code null}. An empty map is returned if the {@link Message} has no headers. The
+   * returned map is immutable.
    */
   public Map<String, Object> headers() {
-    return headers;
+    if (slots == null) {
+      return headers;
+    }
+    Map<String, Object> all = view;
+    if (all == null) {
+      Headers merged = headers;
+      for (int i = 0; i < slots.length; i++) {
+        if (slots[i] != null) {
+          merged = merged.plus(CommonHeaders.slotName(i), unmask(slots[i]));
+        }
+      }
+      view = all = merged;
+    }
+    return all;
+  }
+
+  /**
+   * Creates a new instance of {@link Message} copying the current instance but with the given acknowledgement. The
+   * acknowledgement is kept by the messages derived from the new instance.
+   *
+   * @param acknowledgement the acknowledgement, {@code null} to remove the current one
+   * @return the new instance of {@link Message}
+   */
+  public Message<T> withAcknowledgement(Acknowledgement acknowledgement) {
+    return new Message<>(payload, headers, slots, acknowledgement);
+  }
+
+  /**
+   * @return the acknowledgement attached to this message, {@code null} if none
+   */
+  public Acknowledgement acknowledgement() {
+    return acknowledgement;
+  }
+
+  /**
+   * Acknowledges the message, i.e. notifies that its processing has completed successfully. Does nothing if the
+   * message has no acknowledgement.
+   */
+  public void ack() {
+    Acknowledgement ack = acknowledgement();
+    if (ack != null) {
+      ack.ack();
+    }
+  }
+
+  /**
+   * Notifies that the processing of the message has failed. Does nothing if the message has no acknowledgement.
+   *
+   * @param reason the failure
+   */
+  public void nack(Throwable reason) {
+    Acknowledgement ack = acknowledgement();
+    if (ack != null) {
+      ack.nack(reason);
+    }
   }
 
   /**
@@ -118,8 +287,30 @@ public class Message<T> {
     return payload;
   }
 
+  /**
+   * Gets the payload as an instance of the given type. If the payload is a {@link RawPayload}, it is decoded lazily,
+   * and the decoded value is cached (see {@link RawPayload#as(Class)}).
+   *
+   * @param type the type, must not be {@code null}
+   * @param <X>  the type
+   * @return the payload
+   * @throws ClassCastException if the payload cannot be read as an instance of {@code type}
+   */
+  public <X> X payloadAs(Class<X> type) {
+    Objects.requireNonNull(type, "The `type` must not be `null`");
+    if (type.isInstance(payload)) {
+      return type.cast(payload);
+    }
+    if (payload instanceof RawPayload) {
+      return ((RawPayload) payload).as(type);
+    }
+    throw new ClassCastException("The payload (" + payload.getClass().getName() + ") is not an instance of "
+      + type.getName());
+  }
+
   @Override
   public String toString() {
+    Map<String, Object> headers = headers();
     StringBuilder builder = new StringBuilder("{\"payload\":\"" + payload.toString() + "\", \"headers\":");
     if (!headers.isEmpty()) {
       builder.append("{");
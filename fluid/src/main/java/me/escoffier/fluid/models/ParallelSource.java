@@ -0,0 +1,77 @@
+package me.escoffier.fluid.models;
+
+import org.reactivestreams.Publisher;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A source split into several <em>rails</em>, each rail processing its messages on its own worker, and so potentially
+ * on its own core. Operators applied on a {@link ParallelSource} are applied on every rail. Use {@link #sequential()}
+ * to merge the rails back into a single {@link Source}.
+ * <p>
+ * Instances are created using {@link Source#parallel(int)} or {@link Source#parallelByKey(int)}. The messages of a rail
+ * are processed in order, but there are no ordering guarantees between rails. When created with
+ * {@link Source#parallelByKey(int)}, all the messages with the same {@link CommonHeaders#KEY} are processed by the same
+ * rail, and so are kept in order.
+ *
+ * @param <T> the type of payload
+ */
+public interface ParallelSource<T> {
+
+  /**
+   * @return the number of rails.
+   */
+  int parallelism();
+
+  /**
+   * Transforms the messages of every rail using the given function.
+   *
+   * @param mapper the function, must not be {@code null}
+   * @param <X>    the type of payload contained in the returned messages
+   * @return the new parallel source
+   */
+  <X> ParallelSource<X> map(Function<Message<T>, Message<X>> mapper);
+
+  /**
+   * Transforms the payload of the messages of every rail using the given function. The headers are kept.
+   *
+   * @param mapper the function, must not be {@code null}
+   * @param <X>    the type of payload returned by the function
+   * @return the new parallel source
+   */
+  <X> ParallelSource<X> mapPayload(Function<T, X> mapper);
+
+  /**
+   * Filters the messages of every rail using the given predicate.
+   *
+   * @param filter the predicate, must not be {@code null}
+   * @return the new parallel source
+   */
+  ParallelSource<T> filter(Predicate<Message<T>> filter);
+
+  /**
+   * Filters the messages of every rail using the given predicate called on the payloads.
+   *
+   * @param filter the predicate, must not be {@code null}
+   * @return the new parallel source
+   */
+  ParallelSource<T> filterPayload(Predicate<T> filter);
+
+  /**
+   * Transforms the messages of every rail using the given asynchronous function. Within a rail, the items emitted by
+   * the returned publishers are merged, so they may be interleaved.
+   *
+   * @param mapper the function, must not be {@code null}
+   * @param <X>    the type of payload contained in the returned messages
+   * @return the new parallel source
+   */
+  <X> ParallelSource<X> flatMap(Function<Message<T>, Publisher<Message<X>>> mapper);
+
+  /**
+   * Merges the rails into a single {@link Source}. The messages of a rail are kept in order.
+   *
+   * @return the merged source
+   */
+  Source<T> sequential();
+}
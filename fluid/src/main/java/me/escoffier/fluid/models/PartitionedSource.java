@@ -0,0 +1,33 @@
+package me.escoffier.fluid.models;
+
+import org.reactivestreams.Publisher;
+
+/**
+ * A {@link Source} whose messages come from independent partitions, such as the partitions of a Kafka topic. The
+ * messages of a partition are ordered, but there are no ordering guarantees between partitions.
+ * <p>
+ * When the partitioned mode is enabled, the partitions can be consumed concurrently using {@link #partitions()}. In
+ * this case, the mediator functions consuming the source run concurrently across partitions, and in order within a
+ * partition. The source itself still emits the messages of all the partitions, merged.
+ *
+ * @param <T> the type of payload
+ */
+public interface PartitionedSource<T> extends Source<T> {
+
+  /**
+   * @return {@code true} if the partitioned mode is enabled, i.e. if {@link #partitions()} can be used.
+   */
+  boolean isPartitioned();
+
+  /**
+   * Gets the stream of partitions. A partition is emitted when it starts receiving messages (for instance, when it is
+   * assigned to the consumer), and completes when it stops (for instance, when it is revoked). If it is received
+   * again later, a new partition is emitted.
+   * <p>
+   * The returned publisher and the source cannot be consumed both.
+   *
+   * @return the stream of partitions
+   * @throws IllegalStateException if the partitioned mode is not enabled
+   */
+  Publisher<Source<T>> partitions();
+}
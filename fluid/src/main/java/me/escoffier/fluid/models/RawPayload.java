@@ -0,0 +1,120 @@
+package me.escoffier.fluid.models;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A payload kept in its serialized form, as received by a connector. The bytes are neither copied nor decoded when
+ * the message is created, so pipelines only reading a few messages, or forwarding them to a sink accepting raw
+ * payloads, do not pay the decoding and encoding cost.
+ * <p>
+ * The bytes are decoded on demand, using the decoder given by the connector, and the decoded value is cached. Use
+ * {@link Message#payloadAs(Class)} to read the payload of a message as a given type.
+ */
+public final class RawPayload {
+
+  /**
+   * Marker stored in {@link #decoded} until the payload is decoded.
+   */
+  private static final Object NOT_DECODED = new Object();
+
+  private final byte[] bytes;
+
+  private final Function<byte[], ?> decoder;
+
+  private volatile Object decoded = NOT_DECODED;
+
+  /**
+   * Creates a new {@link RawPayload} without decoder. It can only be read as {@code byte[]} or {@link ByteBuffer}.
+   *
+   * @param bytes the serialized payload, must not be {@code null}. The array is not copied.
+   */
+  public RawPayload(byte[] bytes) {
+    this(bytes, null);
+  }
+
+  /**
+   * Creates a new {@link RawPayload}.
+   *
+   * @param bytes   the serialized payload, must not be {@code null}. The array is not copied.
+   * @param decoder the function decoding the bytes, {@code null} if the payload cannot be decoded
+   */
+  public RawPayload(byte[] bytes, Function<byte[], ?> decoder) {
+    this.bytes = Objects.requireNonNull(bytes, "The `bytes` must not be `null`");
+    this.decoder = decoder;
+  }
+
+  /**
+   * @return the serialized payload. The array is shared, and must not be modified.
+   */
+  public byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * @return a read-only {@link ByteBuffer} wrapping the serialized payload.
+   */
+  public ByteBuffer buffer() {
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
+  /**
+   * @return the size of the serialized payload, in bytes.
+   */
+  public int size() {
+    return bytes.length;
+  }
+
+  /**
+   * Decodes the payload. The decoder is called at most once, the result is cached.
+   *
+   * @return the decoded payload
+   * @throws IllegalStateException if the payload has no decoder
+   */
+  public Object decoded() {
+    Object value = decoded;
+    if (value == NOT_DECODED) {
+      if (decoder == null) {
+        throw new IllegalStateException("The raw payload cannot be decoded, no decoder has been configured");
+      }
+      // Concurrent readers may decode the payload twice, but they get equal values.
+      value = decoder.apply(bytes);
+      decoded = value;
+    }
+    return value;
+  }
+
+  /**
+   * Gets the payload as an instance of the given type. {@code byte[]} and {@link ByteBuffer} give access to the
+   * serialized payload, other types to the decoded payload.
+   *
+   * @param type the type, must not be {@code null}
+   * @param <X>  the type
+   * @return the payload
+   * @throws ClassCastException if the decoded payload is not an instance of {@code type}
+   */
+  public <X> X as(Class<X> type) {
+    Objects.requireNonNull(type, "The `type` must not be `null`");
+    if (type == byte[].class) {
+      return type.cast(bytes);
+    }
+    if (type == ByteBuffer.class) {
+      return type.cast(buffer());
+    }
+    if (type == RawPayload.class) {
+      return type.cast(this);
+    }
+    Object value = decoded();
+    if (value != null && !type.isInstance(value)) {
+      throw new ClassCastException("The decoded payload (" + value.getClass().getName() + ") is not an instance of "
+        + type.getName());
+    }
+    return type.cast(value);
+  }
+
+  @Override
+  public String toString() {
+    return "RawPayload[" + bytes.length + " bytes]";
+  }
+}
@@ -0,0 +1,305 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.internal.subscriptions.EmptySubscription;
+import io.reactivex.plugins.RxJavaPlugins;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Dispatches each message of a stream to exactly one of N outputs, using a classifier returning the index of the
+ * output. The classifier is called once per message. A negative index discards the message. Like the messages
+ * discarded by a filter, the discarded messages are acknowledged.
+ * <p>
+ * Each output has its own queue and its own downstream demand, so a slow output does not prevent the others from
+ * receiving messages until its queue is full. The upstream is only requested when every output has room for the
+ * requested messages: for each output, the number of queued messages plus the number of outstanding upstream
+ * requests never exceeds the capacity. Cancelled outputs discard (and acknowledge) their messages; the upstream is
+ * cancelled when all the outputs are cancelled.
+ * <p>
+ * The upstream is subscribed once all the outputs have a subscriber. Each output accepts a single subscriber.
+ *
+ * @param <T> the type of payload
+ */
+final class Router<T> implements FlowableSubscriber<Message<T>> {
+
+  static final int DEFAULT_CAPACITY = 128;
+
+  private final Publisher<Message<T>> upstream;
+
+  private final ToIntFunction<Message<T>> classifier;
+
+  private final Output[] outputs;
+
+  private final int capacity;
+
+  private final AtomicInteger subscribers = new AtomicInteger();
+
+  private final AtomicLong outstanding = new AtomicLong();
+
+  private final AtomicInteger active;
+
+  private volatile Subscription subscription;
+
+  private boolean done;
+
+  @SuppressWarnings("unchecked")
+  Router(Publisher<Message<T>> upstream, ToIntFunction<Message<T>> classifier, int outputs, int capacity) {
+    this.upstream = upstream;
+    this.classifier = classifier;
+    this.capacity = capacity;
+    this.outputs = new Router.Output[outputs];
+    for (int i = 0; i < outputs; i++) {
+      this.outputs[i] = new Output(i);
+    }
+    this.active = new AtomicInteger(outputs);
+  }
+
+  int size() {
+    return outputs.length;
+  }
+
+  /**
+   * Gets the publisher emitting the messages routed to the given output.
+   *
+   * @param index the index of the output
+   * @return the publisher
+   */
+  Publisher<Message<T>> output(int index) {
+    return outputs[index];
+  }
+
+  @Override
+  public void onSubscribe(Subscription s) {
+    this.subscription = s;
+    if (active.get() == 0) {
+      s.cancel();
+      return;
+    }
+    outstanding.set(capacity);
+    s.request(capacity);
+  }
+
+  @Override
+  public void onNext(Message<T> message) {
+    if (done) {
+      return;
+    }
+    int index;
+    try {
+      index = classifier.applyAsInt(message);
+      if (index >= outputs.length) {
+        throw new IndexOutOfBoundsException("Invalid output index " + index + ", only " + outputs.length
+          + " outputs are available");
+      }
+    } catch (Throwable e) {
+      Exceptions.throwIfFatal(e);
+      subscription.cancel();
+      onError(e);
+      return;
+    }
+
+    if (index >= 0 && !outputs[index].cancelled) {
+      Output output = outputs[index];
+      // Increment the queue size before decrementing the outstanding requests, so their sum never decreases.
+      output.queued.incrementAndGet();
+      outstanding.decrementAndGet();
+      output.queue.offer(message);
+      output.drain();
+    } else {
+      outstanding.decrementAndGet();
+      message.ack();
+      replenish();
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (done) {
+      RxJavaPlugins.onError(t);
+      return;
+    }
+    done = true;
+    for (Output output : outputs) {
+      output.error = t;
+      output.done = true;
+      output.drain();
+    }
+  }
+
+  @Override
+  public void onComplete() {
+    if (done) {
+      return;
+    }
+    done = true;
+    for (Output output : outputs) {
+      output.done = true;
+      output.drain();
+    }
+  }
+
+  /**
+   * Requests more messages from the upstream if all the outputs have room for them.
+   */
+  private void replenish() {
+    if (subscription == null || outstanding.get() > capacity / 2) {
+      return;
+    }
+    synchronized (this) {
+      long room = capacity;
+      for (Output output : outputs) {
+        if (!output.cancelled) {
+          room = Math.min(room, capacity - output.queued.get());
+        }
+      }
+      long requests = room - outstanding.get();
+      if (requests > 0) {
+        outstanding.addAndGet(requests);
+        subscription.request(requests);
+      }
+    }
+  }
+
+  private void onOutputCancelled() {
+    if (active.decrementAndGet() == 0) {
+      if (subscription != null) {
+        subscription.cancel();
+      }
+    } else {
+      replenish();
+    }
+  }
+
+  private final class Output implements Publisher<Message<T>>, Subscription {
+    private final int index;
+    private final Queue<Message<T>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile Subscriber<? super Message<T>> downstream;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    private Output(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Message<T>> subscriber) {
+      if (downstream != null) {
+        EmptySubscription.error(new IllegalStateException("The output " + index + " accepts a single subscriber"),
+          subscriber);
+        return;
+      }
+      downstream = subscriber;
+      subscriber.onSubscribe(this);
+      if (subscribers.incrementAndGet() == outputs.length) {
+        upstream.subscribe(Router.this);
+      }
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        RxJavaPlugins.onError(new IllegalArgumentException("The number of requested items must be positive, got " + n));
+        return;
+      }
+      long current;
+      long next;
+      do {
+        current = requested.get();
+        next = current + n < 0 ? Long.MAX_VALUE : current + n;
+      } while (!requested.compareAndSet(current, next));
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        if (wip.getAndIncrement() == 0) {
+          clear();
+        }
+        onOutputCancelled();
+      }
+    }
+
+    private void clear() {
+      Message<T> message;
+      while ((message = queue.poll()) != null) {
+        message.ack();
+      }
+      queued.set(0);
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      for (; ; ) {
+        Subscriber<? super Message<T>> subscriber = downstream;
+        if (subscriber != null) {
+          long r = requested.get();
+          long e = 0;
+          while (e != r) {
+            if (cancelled) {
+              clear();
+              return;
+            }
+            boolean d = done;
+            Message<T> message = queue.poll();
+            if (message == null) {
+              if (d) {
+                terminate(subscriber);
+                return;
+              }
+              break;
+            }
+            subscriber.onNext(message);
+            queued.decrementAndGet();
+            e++;
+          }
+          if (cancelled) {
+            clear();
+            return;
+          }
+          if (done && queue.isEmpty()) {
+            terminate(subscriber);
+            return;
+          }
+          if (e != 0) {
+            if (r != Long.MAX_VALUE) {
+              requested.addAndGet(-e);
+            }
+            replenish();
+          }
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          break;
+        }
+      }
+    }
+
+    private void terminate(Subscriber<? super Message<T>> subscriber) {
+      cancelled = true;
+      Throwable failure = error;
+      if (failure != null) {
+        subscriber.onError(failure);
+      } else {
+        subscriber.onComplete();
+      }
+    }
+  }
+}
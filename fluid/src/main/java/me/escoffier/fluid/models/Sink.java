@@ -1,11 +1,13 @@
 package me.escoffier.fluid.models;
 
 import io.reactivex.Completable;
+import io.reactivex.Flowable;
 import me.escoffier.fluid.impl.HeadSink;
 import me.escoffier.fluid.impl.ListSink;
 import me.escoffier.fluid.impl.ScanSink;
 import me.escoffier.fluid.impl.TailSink;
 
+import java.util.List;
 import java.util.Objects;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -23,10 +25,34 @@ public interface Sink<OUT> {
     return dispatch(new Message<>(data));
   }
 
+  /**
+   * Dispatches a batch of messages, as done by {@link Source#to(Sink, BatchPolicy)}. The default implementation
+   * dispatches the messages one by one, in order, waiting for the completion of a message before dispatching the next
+   * one. Sinks able to write several messages at once should override this method to reduce the per-message overhead.
+   *
+   * @param messages the messages, must not be {@code null}
+   * @return a {@link Completable} completed when all the messages have been dispatched
+   */
+  default Completable dispatchBatch(List<Message<OUT>> messages) {
+    return Flowable.fromIterable(Objects.requireNonNull(messages, "The `messages` must not be `null`"))
+      .flatMapCompletable(this::dispatch, false, 1);
+  }
+
   default String name() {
     return null;
   }
 
+  /**
+   * Gets the maximum number of messages dispatched to this sink and not yet completed when a source is connected with
+   * {@link Source#to(Sink)}. Sinks queuing the messages they dispatch bound this number, so the source is not consumed
+   * faster than the messages are written.
+   *
+   * @return the maximum number of in-flight messages, {@link Integer#MAX_VALUE} (the default) if not bounded
+   */
+  default int maxInFlight() {
+    return Integer.MAX_VALUE;
+  }
+
   /**
    * Transforms the current Sink into another Sink that transforms each incoming payload (encapsulated in the
    * {@link Message} before calling current Sink. In other words, it creates a new Sink receiving data. Each data is
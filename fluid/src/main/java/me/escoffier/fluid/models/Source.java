@@ -2,6 +2,7 @@ package me.escoffier.fluid.models;
 
 import io.reactivex.Flowable;
 import io.reactivex.Maybe;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import org.reactivestreams.Publisher;
 
@@ -156,6 +157,146 @@ public interface Source<T> extends Publisher<Message<T>> {
    */
   Optional<T> attr(String key);
 
+  /**
+   * Creates a new {@link Source} from the current one enabling the <em>fused</em> execution mode. In this mode, the
+   * {@code map}, {@code filter}, {@code filterNot}, {@code flatMap}, {@code concatMap} and {@code scan} operators (and
+   * their payload variants) are recorded in a logical plan compiled into the fewest possible RxJava operators when the
+   * source is subscribed for the first time. Consecutive stateless operators are executed as a single operator. Along
+   * such a run, the incoming message envelope is reused, so consecutive payload-only operators
+   * ({@link #mapPayload(Function)}, {@link #filterPayload(Predicate)} and {@link #filterNotPayload(Predicate)}) create
+   * only one {@link Message} at the end of the chain instead of one per operator.
+   * <p>
+   * The mode is stored as a source attribute and so is propagated to the sources created from the returned one.
+   *
+   * @return the new source
+   */
+  Source<T> fused();
+
+  /**
+   * Creates a new {@link Source} from the current one retrying the per-message actions that fail, according to the
+   * given {@link Backoff}. The per-message actions are the functions passed to the {@code map}, {@code flatMap} and
+   * {@code concatMap} operators (and their payload variants) applied on the returned source and the sources created
+   * from it, and the dispatch of the messages to a sink using {@code to}. Once the retries are exhausted, the failure
+   * is handled as configured by {@link #onErrorSkip()} or {@link #onErrorDeadLetter(String)}, and otherwise
+   * terminates the stream.
+   * <p>
+   * The policy is stored as a source attribute. In the fused execution mode (see {@link #fused()}), the operators
+   * guarded by a policy are not fused: they are executed as in the default mode, so the policy is applied. Retrying a
+   * {@code flatMap} function re-subscribes to the publisher it returns, so items emitted before the failure may be
+   * emitted twice.
+   *
+   * @param backoff the backoff, must not be {@code null}
+   * @return the new source
+   * @see FailurePolicy
+   */
+  Source<T> onErrorRetry(Backoff backoff);
+
+  /**
+   * Creates a new {@link Source} from the current one skipping the messages whose per-message action failed (after
+   * the retries configured using {@link #onErrorRetry(Backoff)}), so the stream continues with the next message. See
+   * {@link #onErrorRetry(Backoff)} for the list of per-message actions.
+   *
+   * @return the new source
+   */
+  Source<T> onErrorSkip();
+
+  /**
+   * Creates a new {@link Source} from the current one sending the messages whose per-message action failed (after the
+   * retries configured using {@link #onErrorRetry(Backoff)}) to the sink with the given name, so the stream continues
+   * with the next message. The failure is passed in the {@link FailurePolicy#FAILURE_HEADER} header. See
+   * {@link #onErrorRetry(Backoff)} for the list of per-message actions.
+   *
+   * @param sink the name of the dead letter sink, must not be {@code null}. The sink is looked up from the
+   *             {@link me.escoffier.fluid.registry.FluidRegistry} when a failure happens.
+   * @return the new source
+   */
+  Source<T> onErrorDeadLetter(String sink);
+
+  /**
+   * @return the metrics of the failures handled by the policy configured on the current source using
+   * {@link #onErrorRetry(Backoff)}, {@link #onErrorSkip()} or {@link #onErrorDeadLetter(String)}. If no policy is
+   * configured, the returned metrics are always 0.
+   */
+  FailureMetrics failures();
+
+  /**
+   * Creates a new {@link Source} from the current one delivering the messages on the given {@link Scheduler}. The
+   * operators applied on the returned source, as well as the sinks it is connected to, are executed on this scheduler.
+   * It is used to move CPU intensive or blocking processing off the event loop or the connector threads.
+   *
+   * @param scheduler the scheduler, must not be {@code null}
+   * @return the new source
+   */
+  Source<T> dispatchOn(Scheduler scheduler);
+
+  /**
+   * Same as {@link #dispatchOn(Scheduler)} but uses a scheduler registered under the given name. Executors declared in
+   * the {@code executors} section of the configuration are registered under their name.
+   *
+   * @param executor the name of the executor, must not be {@code null}
+   * @return the new source
+   * @throws IllegalArgumentException if there are no executor with the given name
+   */
+  Source<T> dispatchOn(String executor);
+
+  /**
+   * Creates a new {@link Source} from the current one subscribing to the upstream source, and so emitting the messages,
+   * from the given {@link Scheduler}. Unlike {@link #dispatchOn(Scheduler)}, it impacts the upstream processing. Note
+   * that sources emitting messages from their own threads (such as connectors) keep using them.
+   *
+   * @param scheduler the scheduler, must not be {@code null}
+   * @return the new source
+   */
+  Source<T> emitOn(Scheduler scheduler);
+
+  /**
+   * Same as {@link #emitOn(Scheduler)} but uses a scheduler registered under the given name.
+   *
+   * @param executor the name of the executor, must not be {@code null}
+   * @return the new source
+   * @throws IllegalArgumentException if there are no executor with the given name
+   */
+  Source<T> emitOn(String executor);
+
+  /**
+   * Splits the current source into the given number of <em>rails</em>. Each rail processes its messages on a worker of
+   * the computation scheduler, so the rails run on separate cores. Messages are dispatched to the rails in a
+   * round-robin fashion and keep their headers. Use {@link ParallelSource#sequential()} to merge the rails.
+   *
+   * @param rails the number of rails, must be strictly positive
+   * @return the parallel source
+   */
+  ParallelSource<T> parallel(int rails);
+
+  /**
+   * Same as {@link #parallel(int)} but the rails run on the given {@link Scheduler}.
+   *
+   * @param rails     the number of rails, must be strictly positive
+   * @param scheduler the scheduler, must not be {@code null}
+   * @return the parallel source
+   */
+  ParallelSource<T> parallel(int rails, Scheduler scheduler);
+
+  /**
+   * Same as {@link #parallel(int)} but the messages are dispatched according to the hash of their
+   * {@link CommonHeaders#KEY} header, so the messages with the same key are processed by the same rail and stay in
+   * order. Messages without key are dispatched in a round-robin fashion. Each rail buffers a bounded number of messages,
+   * so a slow rail ends up slowing the consumption of the current source.
+   *
+   * @param rails the number of rails, must be strictly positive
+   * @return the parallel source
+   */
+  ParallelSource<T> parallelByKey(int rails);
+
+  /**
+   * Same as {@link #parallelByKey(int)} but the rails run on the given {@link Scheduler}.
+   *
+   * @param rails     the number of rails, must be strictly positive
+   * @param scheduler the scheduler, must not be {@code null}
+   * @return the parallel source
+   */
+  ParallelSource<T> parallelByKey(int rails, Scheduler scheduler);
+
   /**
    * Creates a new {@link Source} transforms each incoming message from the current source using the given mapper function.
    *
@@ -280,7 +421,8 @@ public interface Source<T> extends Publisher<Message<T>> {
   <X> Source<X> scan(Message<X> zero, BiFunction<Message<X>, Message<T>, Message<X>> function);
 
   /**
-   * Same as {@link #scan(Message, BiFunction)} but the function is called on the payload of the messages.
+   * Same as {@link #scan(Message, BiFunction)} but the function is called on the payload of the messages. Each
+   * accumulated value is emitted with the headers and the acknowledgement of the message it has been computed from.
    *
    * @param zero     the initial value, must not be {@code}
    * @param function the function, must not be {@code null}
@@ -302,6 +444,85 @@ public interface Source<T> extends Publisher<Message<T>> {
    */
   <K> Publisher<GroupedDataStream<K, T>> groupBy(Function<Message<T>, K> keySupplier);
 
+  /**
+   * Same as {@link #groupBy(Function)}, but the groups can be evicted before the completion of the current source, as
+   * configured by the given {@link GroupByOptions}: groups can be evicted when idle, and the number of groups open at
+   * the same time can be bounded. An evicted group completes, and a new group is opened if a message with the same key
+   * is received later. This bounds the memory used when grouping an unbounded stream with high-cardinality keys.
+   * <p>
+   * The metrics about the groups are available from {@link GroupByOptions#metrics()}.
+   *
+   * @param keySupplier the function providing the key for the given message, must not be {@code null}, must not return
+   *                    {@code null}.
+   * @param options     the options, must not be {@code null}
+   * @param <K>         The type of the key
+   * @return the created publisher
+   */
+  <K> Publisher<GroupedDataStream<K, T>> groupBy(Function<Message<T>, K> keySupplier, GroupByOptions options);
+
+  /**
+   * Creates a new {@link Source} computing an aggregation per key, emitting the updated result of a key every time a
+   * message is received. The emitted messages contain a {@link Pair} (key, result), the headers of the received
+   * message and the {@link CommonHeaders#GROUP_KEY} header. Unlike {@link #groupBy(Function)}, no stream is created per
+   * key, and the state of the keys is stored in primitive arrays, so this operator can handle a large number of keys.
+   *
+   * @param key        the function computing the key of a message, must not be {@code null}, must not return
+   *                   {@code null}
+   * @param aggregator the aggregator, must not be {@code null}. Built-in aggregators are provided by
+   *                   {@link Aggregator}.
+   * @param <K>        the type of key
+   * @param <R>        the type of result
+   * @return the new source
+   */
+  <K, R> Source<Pair<K, R>> aggregateByKey(Function<Message<T>, K> key, Aggregator<T, R> aggregator);
+
+  /**
+   * Same as {@link #aggregateByKey(Function, Aggregator)} but emits the results according to the given {@link Emission}
+   * policy. When the results are not emitted for every message, the results of the keys updated since the previous
+   * emission are emitted, with only the {@link CommonHeaders#GROUP_KEY} header. Pending updates are emitted when the
+   * current source completes.
+   *
+   * @param key        the function computing the key of a message, must not be {@code null}, must not return
+   *                   {@code null}
+   * @param aggregator the aggregator, must not be {@code null}
+   * @param emission   the emission policy, must not be {@code null}
+   * @param <K>        the type of key
+   * @param <R>        the type of result
+   * @return the new source
+   */
+  <K, R> Source<Pair<K, R>> aggregateByKey(Function<Message<T>, K> key, Aggregator<T, R> aggregator,
+                                            Emission emission);
+
+  /**
+   * Creates a new {@link Source} grouping the messages into windows. Each window is emitted as a {@link Message} whose
+   * payload is the list of payloads of the messages of the window, and whose headers are the headers of the last message
+   * of the window. Windows are emitted when they are closed, and on completion for the windows still open. Time-based
+   * and session windows rely on processing time and share a single timer thread, so opening many windows (for instance
+   * one per group) is cheap.
+   *
+   * @param window the window specification, must not be {@code null}
+   * @return the new source
+   * @see Window
+   */
+  Source<List<T>> window(Window window);
+
+  /**
+   * Creates a pair of sources grouping the messages into windows based on the <em>event time</em> of the messages
+   * instead of their reception time. The left source emits the windows, as {@link #window(Window)} does. A window is
+   * emitted when the watermark computed by the given {@link EventTime} passes the end of the window, so the result does
+   * not depend on the processing speed. The right source emits the late messages, i.e. the messages received once all
+   * their windows have been discarded.
+   * <p>
+   * Only time-based tumbling and sliding windows are supported. The current source is consumed when the left source is
+   * subscribed, the right source does not need to be subscribed. The late messages emitted while the right source has
+   * no subscriber are acknowledged and discarded, so subscribe to the right source first to receive all of them.
+   *
+   * @param window    the window specification, must not be {@code null}
+   * @param eventTime the event time configuration, must not be {@code null}
+   * @return the {@link Pair} of sources, the left one emitting the windows, the right one the late messages
+   */
+  Pair<Source<List<T>>, Source<T>> window(Window window, EventTime<T> eventTime);
+
   Source<T> log(String loggerName);
 
   /**
@@ -323,10 +544,37 @@ public interface Source<T> extends Publisher<Message<T>> {
    */
   Map<String, Source<T>> broadcast(String... names);
 
+  /**
+   * Same as {@link #broadcast(int)}, but each branch buffers its messages in a bounded buffer and is delivered on its
+   * own worker, so a slow branch does not slow down the other ones, depending on the {@link BroadcastOptions.Overflow}
+   * policy. Unlike {@link #broadcast(int)}, the current source is consumed as soon as one branch is subscribed, the
+   * messages being buffered for the other branches until they are subscribed.
+   * <p>
+   * The lag of each branch is available from {@link BroadcastOptions#metrics()}.
+   *
+   * @param numberOfBranches the number of branch, must be strictly greater than 1.
+   * @param options          the options, must not be {@code null}
+   * @return the list of sources.
+   */
+  List<Source<T>> broadcast(int numberOfBranches, BroadcastOptions options);
+
+  /**
+   * Same as {@link #broadcast(String...)} but configures the buffering of the branches as
+   * {@link #broadcast(int, BroadcastOptions)} does. In the metrics, the branches are indexed in the order of the given
+   * names.
+   *
+   * @param options the options, must not be {@code null}
+   * @param names   the names used to name the created sources. Must not be {@code null}, must not contain {@code null}
+   *                or be blank.
+   * @return the {@link Map} associating the names to the created source.
+   */
+  Map<String, Source<T>> broadcast(BroadcastOptions options, String... names);
+
   /**
    * Creates a pair of sources. These sources receives the message from the current source. However, depending whether or
    * not they match the given predicates they are emitted in the first source or in the second source. This construct can
-   * be seen as an "if-then-else" conditional structure.
+   * be seen as an "if-then-else" conditional structure. The condition is evaluated once per message, see
+   * {@link #route(Function, int)}.
    *
    * @param condition the condition, must not be {@code null}
    * @return the {@link Pair} of sources
@@ -345,13 +593,73 @@ public interface Source<T> extends Publisher<Message<T>> {
   Pair<Source<T>, Source<T>> branchOnPayload(Predicate<T> condition);
 
   /**
-   * Connects the current source to a sink. The sink is a terminal operation.
+   * Creates a set of sources, each message of the current source being emitted by exactly one of them. The given
+   * classifier is called once per message and returns the index of the source emitting the message. If it returns a
+   * negative value or {@code null}, the message is discarded. Returning an index greater or equal to the number of
+   * branches fails the returned sources.
+   * <p>
+   * Each returned source has its own bounded buffer and its own backpressure, so a slow branch does not slow down the
+   * other ones until its buffer is full. The current source is consumed once all the returned sources are subscribed.
+   * Each returned source can only be subscribed once.
+   *
+   * @param classifier       the function computing the index of the branch, must not be {@code null}
+   * @param numberOfBranches the number of branches, must be strictly positive
+   * @return the list of sources, indexed by branch
+   */
+  List<Source<T>> route(Function<Message<T>, Integer> classifier, int numberOfBranches);
+
+  /**
+   * Same as {@link #route(Function, int)}, but each branch is associated with a name and a predicate. The predicates are
+   * evaluated in the iteration order of the given map, and the message is emitted by the source of the first matching
+   * predicate. Messages matching no predicate are discarded. The created sources are named using the given names.
+   *
+   * @param routes the routes, must not be {@code null} or empty, the names must not be {@code null} or blank
+   * @return the {@link Map} associating the names to the created sources
+   */
+  Map<String, Source<T>> route(Map<String, Predicate<Message<T>>> routes);
+
+  /**
+   * Connects the current source to a sink. The number of messages dispatched to the sink and not yet completed is
+   * bounded by {@link Sink#maxInFlight()}. The sink is a terminal operation.
    *
    * @param sink the sink, must not be {@code null}
    * @return the passed sink
    */
   Sink<T> to(Sink<T> sink);
 
+  /**
+   * Connects the current source to a sink, dispatching the messages in batches using
+   * {@link Sink#dispatchBatch(List)}. The messages are grouped according to the given {@link BatchPolicy}. A batch is
+   * dispatched once the previous one has been processed by the sink. The sink is a terminal operation.
+   *
+   * @param sink   the sink, must not be {@code null}
+   * @param policy the batch policy, must not be {@code null}
+   * @return the passed sink
+   */
+  Sink<T> to(Sink<T> sink, BatchPolicy policy);
+
+  /**
+   * Connects the current source to a sink, limiting the number of messages dispatched to the sink and not yet
+   * completed. The current source is not consumed while this limit is reached, which bounds the memory used when the
+   * sink slows down. The sink is a terminal operation.
+   *
+   * @param sink        the sink, must not be {@code null}
+   * @param maxInFlight the maximum number of in-flight messages, must be strictly positive
+   * @return the passed sink
+   */
+  Sink<T> to(Sink<T> sink, int maxInFlight);
+
+  /**
+   * Connects the current source to a sink, dispatching the messages as configured by the given
+   * {@link DispatchOptions}. The number of in-flight messages is available from {@link DispatchOptions#metrics()}. The
+   * sink is a terminal operation.
+   *
+   * @param sink    the sink, must not be {@code null}
+   * @param options the options, must not be {@code null}
+   * @return the passed sink
+   */
+  Sink<T> to(Sink<T> sink, DispatchOptions options);
+
   /**
    * @return the current source as a RX Java 2 {@link Flowable}.
    */
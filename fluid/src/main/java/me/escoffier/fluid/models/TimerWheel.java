@@ -0,0 +1,172 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.exceptions.Exceptions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timer wheel shared by the time-based operators. Scheduling a task is a constant-time operation (an enqueue),
+ * and a single thread drives all the timers, so operators can arm one timer per window or per group without
+ * allocating a scheduled task in a thread pool each time.
+ * <p>
+ * Tasks are executed on the timer thread and must be short: they are expected to hand over any real work (such as
+ * emitting downstream) to another thread. The precision of the timers is the tick duration.
+ */
+final class TimerWheel {
+
+  private static final Logger LOGGER = LogManager.getLogger(TimerWheel.class);
+
+  /**
+   * The wheel used by default.
+   */
+  static final TimerWheel SHARED = new TimerWheel(10, 512);
+
+  private final long tick;
+
+  private final Timeout[] buckets;
+
+  private final int mask;
+
+  private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+  private final long origin = System.nanoTime();
+
+  private long ticks;
+
+  private volatile Thread worker;
+
+  /**
+   * Creates a new wheel.
+   *
+   * @param tick    the duration of a tick in milliseconds
+   * @param buckets the number of buckets, must be a power of 2
+   */
+  TimerWheel(long tick, int buckets) {
+    if (Integer.bitCount(buckets) != 1) {
+      throw new IllegalArgumentException("The number of buckets must be a power of 2");
+    }
+    this.tick = tick;
+    this.buckets = new Timeout[buckets];
+    this.mask = buckets - 1;
+  }
+
+  /**
+   * Schedules the given task.
+   *
+   * @param task  the task, must not be {@code null}
+   * @param delay the delay in milliseconds
+   * @return the timeout, used to cancel the task
+   */
+  Timeout schedule(Runnable task, long delay) {
+    Objects.requireNonNull(task, "The `task` must not be `null`");
+    start();
+    Timeout timeout = new Timeout(task, elapsed() + Math.max(0, delay));
+    pending.add(timeout);
+    return timeout;
+  }
+
+  private long elapsed() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+  }
+
+  private void start() {
+    if (worker == null) {
+      synchronized (this) {
+        if (worker == null) {
+          Thread thread = new Thread(this::run, "fluid-timer");
+          thread.setDaemon(true);
+          thread.start();
+          worker = thread;
+        }
+      }
+    }
+  }
+
+  private void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      long deadline = (ticks + 1) * tick;
+      long sleep = deadline - elapsed();
+      if (sleep > 0) {
+        try {
+          Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      transfer();
+      expire((int) (ticks & mask), deadline);
+      ticks++;
+    }
+  }
+
+  private void transfer() {
+    Timeout timeout;
+    while ((timeout = pending.poll()) != null) {
+      long target = Math.max(timeout.deadline / tick, ticks);
+      timeout.rounds = (target - ticks) / buckets.length;
+      int index = (int) (target & mask);
+      timeout.next = buckets[index];
+      buckets[index] = timeout;
+    }
+  }
+
+  private void expire(int index, long now) {
+    Timeout previous = null;
+    Timeout timeout = buckets[index];
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      boolean remove = timeout.cancelled;
+      if (!remove && timeout.rounds > 0) {
+        timeout.rounds--;
+      } else if (!remove && timeout.deadline <= now) {
+        remove = true;
+        try {
+          timeout.task.run();
+        } catch (Throwable e) {
+          Exceptions.throwIfFatal(e);
+          LOGGER.error("A timer task has thrown an exception", e);
+        }
+      }
+      if (remove) {
+        if (previous == null) {
+          buckets[index] = next;
+        } else {
+          previous.next = next;
+        }
+        timeout.next = null;
+      } else {
+        previous = timeout;
+      }
+      timeout = next;
+    }
+  }
+
+  /**
+   * A scheduled task.
+   */
+  static final class Timeout {
+    private final Runnable task;
+    private final long deadline;
+    private long rounds;
+    private Timeout next;
+    private volatile boolean cancelled;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancels the task. The task is removed from the wheel the next time its bucket is visited.
+     */
+    void cancel() {
+      cancelled = true;
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package me.escoffier.fluid.models;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how {@link Source#window(Window)} groups messages. Windows are either:
+ * <ul>
+ * <li><em>tumbling</em>: fixed-size, non-overlapping windows,</li>
+ * <li><em>sliding</em>: fixed-size windows opened at a fixed interval, so a message can belong to several windows,</li>
+ * <li><em>session</em>: windows closed after a period of inactivity.</li>
+ * </ul>
+ * The size of tumbling and sliding windows is expressed either as a number of messages or as a duration. Time-based
+ * windows are aligned on the epoch: a window of 1 minute starts at the beginning of a minute. Windows without messages
+ * are not emitted.
+ */
+public final class Window {
+
+  enum Type {
+    COUNT, TIME, SESSION
+  }
+
+  private final Type type;
+
+  /**
+   * The size of the window, in number of messages or in milliseconds. The gap for session windows.
+   */
+  private final long size;
+
+  /**
+   * The interval between the opening of two windows, in number of messages or in milliseconds.
+   */
+  private final long step;
+
+  private Window(Type type, long size, long step) {
+    this.type = type;
+    this.size = size;
+    this.step = step;
+  }
+
+  /**
+   * Creates a tumbling window containing the given number of messages.
+   *
+   * @param count the number of messages, must be strictly positive
+   * @return the window
+   */
+  public static Window tumbling(int count) {
+    return sliding(count, count);
+  }
+
+  /**
+   * Creates a tumbling window containing the messages received during the given duration.
+   *
+   * @param duration the duration, must be strictly positive
+   * @param unit     the time unit, must not be {@code null}
+   * @return the window
+   */
+  public static Window tumbling(long duration, TimeUnit unit) {
+    return sliding(duration, duration, unit);
+  }
+
+  /**
+   * Creates a sliding window containing {@code count} messages. A new window is opened every {@code step} messages.
+   *
+   * @param count the number of messages in the window, must be strictly positive
+   * @param step  the number of messages between the opening of two windows, must be strictly positive
+   * @return the window
+   */
+  public static Window sliding(int count, int step) {
+    positive(count, "count");
+    positive(step, "step");
+    return new Window(Type.COUNT, count, step);
+  }
+
+  /**
+   * Creates a sliding window containing the messages received during {@code duration}. A new window is opened every
+   * {@code step}.
+   *
+   * @param duration the duration of the window, must be strictly positive
+   * @param step     the interval between the opening of two windows, must be strictly positive
+   * @param unit     the time unit, must not be {@code null}
+   * @return the window
+   */
+  public static Window sliding(long duration, long step, TimeUnit unit) {
+    Objects.requireNonNull(unit, "The `unit` must not be `null`");
+    long size = positive(unit.toMillis(duration), "duration");
+    long interval = positive(unit.toMillis(step), "step");
+    return new Window(Type.TIME, size, interval);
+  }
+
+  /**
+   * Creates a session window. The window is closed when no message has been received during {@code gap}.
+   *
+   * @param gap  the inactivity period closing the window, must be strictly positive
+   * @param unit the time unit, must not be {@code null}
+   * @return the window
+   */
+  public static Window session(long gap, TimeUnit unit) {
+    Objects.requireNonNull(unit, "The `unit` must not be `null`");
+    return new Window(Type.SESSION, positive(unit.toMillis(gap), "gap"), 0);
+  }
+
+  private static long positive(long value, String name) {
+    if (value <= 0) {
+      throw new IllegalArgumentException("The `" + name
+        + "` must be strictly positive (in milliseconds for durations)");
+    }
+    return value;
+  }
+
+  Type type() {
+    return type;
+  }
+
+  long size() {
+    return size;
+  }
+
+  long step() {
+    return step;
+  }
+
+  @Override
+  public String toString() {
+    switch (type) {
+      case COUNT:
+        return "Window{count=" + size + ", step=" + step + "}";
+      case TIME:
+        return "Window{duration=" + size + "ms, step=" + step + "ms}";
+      default:
+        return "Window{gap=" + size + "ms}";
+    }
+  }
+}
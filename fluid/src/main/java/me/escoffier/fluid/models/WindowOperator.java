@@ -0,0 +1,384 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.FlowableOperator;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operator implementing {@link Source#window(Window)}. Each window is emitted as a {@link Message} containing the list
+ * of payloads and the headers of the last message of the window. Acknowledging the window acknowledges all its
+ * messages. A message belonging to several (sliding) windows is acknowledged once all these windows have been
+ * acknowledged, and a message belonging to no window is acknowledged immediately.
+ * <p>
+ * Time-based and session windows are closed by timers armed on the shared {@link TimerWheel}, one timer per open
+ * window. When a timer closes a window, the emission is dispatched on the computation scheduler so the timer thread is
+ * never blocked by the downstream processing. The upstream is consumed in batches of {@link #PREFETCH} messages, and
+ * is not requested while too many closed windows are waiting for downstream requests.
+ *
+ * @param <T> the type of payload
+ */
+final class WindowOperator<T> implements FlowableOperator<Message<List<T>>, Message<T>> {
+
+  static final int PREFETCH = 128;
+
+  private static final int LIMIT = PREFETCH - (PREFETCH >> 2);
+
+  /**
+   * The maximum number of closed windows waiting for downstream requests before the upstream stops being requested.
+   */
+  private static final int MAX_PENDING_WINDOWS = 16;
+
+  private final Window window;
+  private final TimerWheel timers;
+  private final Scheduler scheduler;
+
+  WindowOperator(Window window) {
+    this(window, TimerWheel.SHARED, Schedulers.computation());
+  }
+
+  WindowOperator(Window window, TimerWheel timers, Scheduler scheduler) {
+    this.window = window;
+    this.timers = timers;
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public Subscriber<? super Message<T>> apply(Subscriber<? super Message<List<T>>> downstream) {
+    return new WindowSubscriber<>(downstream, window, timers, scheduler);
+  }
+
+  /**
+   * The messages accumulated in a window.
+   */
+  private static final class Pane<T> {
+    private final long end;
+    private final List<T> payloads = new ArrayList<>();
+    private final List<Acknowledgement> acknowledgements = new ArrayList<>();
+    private Message<T> last;
+
+    private Pane(long end) {
+      this.end = end;
+    }
+
+    private void add(Message<T> message) {
+      payloads.add(message.payload());
+      if (message.acknowledgement() != null) {
+        acknowledgements.add(message.acknowledgement());
+      }
+      last = message;
+    }
+
+    private Message<List<T>> toMessage() {
+      return last.with(Collections.unmodifiableList(payloads))
+        .withAcknowledgement(Acknowledgement.all(acknowledgements.toArray(new Acknowledgement[0])));
+    }
+  }
+
+  private static final class WindowSubscriber<T> implements FlowableSubscriber<Message<T>>, Subscription {
+    private final Subscriber<? super Message<List<T>>> downstream;
+    private final Window window;
+    private final TimerWheel timers;
+    private final Scheduler scheduler;
+
+    /**
+     * The open windows, ordered by opening time (and so by closing time). Guarded by {@code this}.
+     */
+    private final ArrayDeque<Pane<T>> panes = new ArrayDeque<>();
+
+    /**
+     * The closed windows waiting to be emitted.
+     */
+    private final Queue<Message<List<T>>> closed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingWindows = new AtomicInteger();
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong consumed = new AtomicLong();
+
+    private Subscription upstream;
+
+    /**
+     * The number of received messages, for count-based windows. Guarded by {@code this}.
+     */
+    private long received;
+
+    /**
+     * The reception time of the last message, for session windows. Guarded by {@code this}.
+     */
+    private long lastReception;
+
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+
+    private WindowSubscriber(Subscriber<? super Message<List<T>>> downstream, Window window, TimerWheel timers,
+                             Scheduler scheduler) {
+      this.downstream = downstream;
+      this.window = window;
+      this.timers = timers;
+      this.scheduler = scheduler;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      this.upstream = s;
+      downstream.onSubscribe(this);
+      s.request(PREFETCH);
+    }
+
+    @Override
+    public void onNext(Message<T> message) {
+      if (done) {
+        return;
+      }
+      synchronized (this) {
+        switch (window.type()) {
+          case COUNT:
+            addToCountWindows(message);
+            break;
+          case TIME:
+            addToTimeWindows(message, System.currentTimeMillis());
+            break;
+          default:
+            addToSession(message, System.currentTimeMillis());
+            break;
+        }
+      }
+      consumed.incrementAndGet();
+      replenish();
+      drain();
+    }
+
+    private void addToCountWindows(Message<T> message) {
+      if (received % window.step() == 0) {
+        panes.add(new Pane<>(received + window.size()));
+      }
+      received++;
+      addToPanes(message);
+      Pane<T> first = panes.peek();
+      if (first != null && first.end == received) {
+        close(panes.poll());
+      }
+    }
+
+    private void addToTimeWindows(Message<T> message, long now) {
+      while (!panes.isEmpty() && panes.peek().end <= now) {
+        close(panes.poll());
+      }
+      // Open the missing windows containing `now`, their start is a multiple of the step. When the step is greater than
+      // the duration, `now` may not belong to any window.
+      long latest = now - now % window.step();
+      long start = latest;
+      Pane<T> last = panes.peekLast();
+      long opened = last == null ? Long.MIN_VALUE : last.end - window.size();
+      while (start - window.step() > now - window.size() && start - window.step() > opened) {
+        start -= window.step();
+      }
+      for (; start <= latest; start += window.step()) {
+        if (start > opened && start + window.size() > now) {
+          Pane<T> pane = new Pane<>(start + window.size());
+          panes.add(pane);
+          timers.schedule(() -> onTimer(pane), pane.end - now);
+        }
+      }
+      addToPanes(message);
+    }
+
+    /**
+     * Adds the message to all the open windows, each of them receiving its own copy of the message.
+     */
+    private void addToPanes(Message<T> message) {
+      if (panes.isEmpty()) {
+        // The message does not belong to any window.
+        message.ack();
+        return;
+      }
+      Iterator<Message<T>> copies = Acknowledgements.fork(message, panes.size()).iterator();
+      for (Pane<T> pane : panes) {
+        pane.add(copies.next());
+      }
+    }
+
+    private void addToSession(Message<T> message, long now) {
+      Pane<T> session = panes.peek();
+      if (session != null && now - lastReception >= window.size()) {
+        close(panes.poll());
+        session = null;
+      }
+      if (session == null) {
+        session = new Pane<>(0);
+        panes.add(session);
+        Pane<T> current = session;
+        timers.schedule(() -> onTimer(current), window.size());
+      }
+      lastReception = now;
+      session.add(message);
+    }
+
+    private void onTimer(Pane<T> pane) {
+      if (done || cancelled) {
+        return;
+      }
+      synchronized (this) {
+        if (!panes.contains(pane)) {
+          return;
+        }
+        if (window.type() == Window.Type.SESSION) {
+          long remaining = lastReception + window.size() - System.currentTimeMillis();
+          if (remaining > 0) {
+            timers.schedule(() -> onTimer(pane), remaining);
+            return;
+          }
+        }
+        // Close the window and the windows opened before it.
+        Pane<T> head;
+        do {
+          head = panes.poll();
+          close(head);
+        } while (head != pane);
+      }
+      scheduler.scheduleDirect(this::drain);
+    }
+
+    private void close(Pane<T> pane) {
+      closed.add(pane.toMessage());
+      pendingWindows.incrementAndGet();
+    }
+
+    private void replenish() {
+      if (consumed.get() >= LIMIT && pendingWindows.get() < MAX_PENDING_WINDOWS) {
+        long count = consumed.getAndSet(0);
+        if (count > 0) {
+          upstream.request(count);
+        }
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (done) {
+        RxJavaPlugins.onError(t);
+        return;
+      }
+      synchronized (this) {
+        panes.clear();
+      }
+      error = t;
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void onComplete() {
+      if (done) {
+        return;
+      }
+      synchronized (this) {
+        while (!panes.isEmpty()) {
+          close(panes.poll());
+        }
+      }
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        RxJavaPlugins.onError(new IllegalArgumentException("The number of requested items must be positive, got " + n));
+        return;
+      }
+      long current;
+      long next;
+      do {
+        current = requested.get();
+        next = current + n < 0 ? Long.MAX_VALUE : current + n;
+      } while (!requested.compareAndSet(current, next));
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        upstream.cancel();
+        synchronized (this) {
+          panes.clear();
+        }
+        if (wip.getAndIncrement() == 0) {
+          closed.clear();
+        }
+      }
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      for (; ; ) {
+        long r = requested.get();
+        long e = 0;
+        while (e != r) {
+          if (terminated()) {
+            return;
+          }
+          Message<List<T>> next = closed.poll();
+          if (next == null) {
+            break;
+          }
+          downstream.onNext(next);
+          e++;
+        }
+        if (terminated()) {
+          return;
+        }
+        if (e != 0) {
+          pendingWindows.addAndGet((int) -e);
+          if (r != Long.MAX_VALUE) {
+            requested.addAndGet(-e);
+          }
+          replenish();
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          break;
+        }
+      }
+    }
+
+    private boolean terminated() {
+      if (cancelled) {
+        closed.clear();
+        return true;
+      }
+      Throwable failure = error;
+      if (failure != null) {
+        closed.clear();
+        cancelled = true;
+        downstream.onError(failure);
+        return true;
+      }
+      if (done && closed.isEmpty()) {
+        cancelled = true;
+        downstream.onComplete();
+        return true;
+      }
+      return false;
+    }
+  }
+}
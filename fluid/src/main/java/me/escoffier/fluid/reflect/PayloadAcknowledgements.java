@@ -0,0 +1,85 @@
+package me.escoffier.fluid.reflect;
+
+import io.reactivex.Flowable;
+import me.escoffier.fluid.models.Acknowledgement;
+import me.escoffier.fluid.models.Message;
+import org.reactivestreams.Publisher;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Acknowledges the messages whose payloads are injected into a transformation method, such as a
+ * {@code Flowable<String>} parameter.
+ * <p>
+ * The results of the method cannot be correlated with its inputs, so a message is acknowledged once a result emitted
+ * after the delivery of its payload has been dispatched, or nacked if the processing of this result has failed: in an
+ * ordered pipeline, this result has been computed from this payload or from the following ones. The messages that
+ * are still pending are acknowledged when the stream of results completes.
+ */
+final class PayloadAcknowledgements {
+
+  private final Queue<Message<?>> delivered = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong deliveries = new AtomicLong();
+
+  /**
+   * The number of acknowledged or nacked messages. Guarded by {@code this}.
+   */
+  private long released;
+
+  /**
+   * Extracts the payloads of the messages, tracking the delivered messages.
+   */
+  <T> Flowable<T> payloads(Publisher<Message<T>> source) {
+    return Flowable.fromPublisher(source)
+      .doOnNext(message -> {
+        delivered.add(message);
+        deliveries.incrementAndGet();
+      })
+      .map(Message::payload);
+  }
+
+  /**
+   * @return the acknowledgement of the messages delivered so far, to attach to the result emitted now. Once the result
+   * has been dispatched, these messages are acknowledged, if not already done. If the processing of the result fails,
+   * they are nacked.
+   */
+  Acknowledgement delivered() {
+    long mark = deliveries.get();
+    return new Acknowledgement() {
+      @Override
+      public void ack() {
+        release(mark, Message::ack);
+      }
+
+      @Override
+      public void nack(Throwable reason) {
+        release(mark, message -> message.nack(reason));
+      }
+    };
+  }
+
+  /**
+   * Releases the first {@code mark} delivered messages, if not already done.
+   */
+  private synchronized void release(long mark, Consumer<Message<?>> action) {
+    while (released < mark) {
+      Message<?> message = delivered.poll();
+      if (message == null) {
+        return;
+      }
+      released++;
+      action.accept(message);
+    }
+  }
+
+  /**
+   * Acknowledges all the delivered messages.
+   */
+  void acknowledgeAll() {
+    release(Long.MAX_VALUE, Message::ack);
+  }
+}
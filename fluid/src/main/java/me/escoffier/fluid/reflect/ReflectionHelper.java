@@ -2,27 +2,37 @@ package me.escoffier.fluid.reflect;
 
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
 import me.escoffier.fluid.annotations.Function;
 import me.escoffier.fluid.annotations.Inbound;
+import me.escoffier.fluid.annotations.OnError;
 import me.escoffier.fluid.annotations.Outbound;
+import me.escoffier.fluid.models.Acknowledgement;
+import me.escoffier.fluid.models.Backoff;
+import me.escoffier.fluid.models.FailurePolicy;
 import me.escoffier.fluid.models.Message;
+import me.escoffier.fluid.models.PartitionedSource;
 import me.escoffier.fluid.models.Sink;
 import me.escoffier.fluid.models.Source;
 import me.escoffier.fluid.registry.FluidRegistry;
 import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.reactivestreams.Publisher;
 
 import java.lang.reflect.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class ReflectionHelper {
 
+  private static final Logger logger = LogManager.getLogger(ReflectionHelper.class);
+
   private ReflectionHelper() {
     // Avoid direct instantiation
   }
@@ -75,27 +85,141 @@ public class ReflectionHelper {
 
     Method methodToBeInvoked = method;
     Sink<Object> theSink = sink;
+    FailurePolicy policy = getFailurePolicy(mediator, method);
 
-    Flowable<Optional<Object>> result;
-    if (sources.size() == 1) {
-      result = sources.get(0)
-        .map(item -> Optional.ofNullable(methodToBeInvoked.invoke(mediator, item)));
+    Completable completion;
+    PartitionedSource<Object> partitioned = getPartitionedSource(method);
+    if (partitioned != null) {
+      // Each partition is processed on its own worker: concurrently with the other partitions, and in order.
+      completion = Flowable.fromPublisher(partitioned.partitions())
+        .flatMapCompletable(partition -> process(mediator, methodToBeInvoked, theSink, policy,
+          messages(partition)
+            .observeOn(Schedulers.computation())
+            .map(item -> new Object[] {item})), false, Integer.MAX_VALUE);
+    } else if (sources.size() == 1) {
+      completion = process(mediator, methodToBeInvoked, theSink, policy,
+        sources.get(0).map(item -> new Object[] {item}));
     } else {
-      result = Flowable.zip(sources, args -> args)
-        .map(args -> Optional.ofNullable(methodToBeInvoked.invoke(mediator, args)));
+      completion = process(mediator, methodToBeInvoked, theSink, policy, Flowable.zip(sources, args -> args));
     }
 
-    result
-      .flatMapCompletable(maybeResult -> {
-          if (! maybeResult.isPresent()) {
+    completion
+      .subscribe(() -> {
+      }, failure -> onFailure(mediator, methodToBeInvoked, failure));
+  }
+
+  /**
+   * Invokes the function for each set of received messages. The messages are acknowledged once the result of the
+   * invocation has been dispatched, even if the function receives their payloads. The failure policy is applied to
+   * the received messages, so they are acknowledged when skipped or dead-lettered, and nacked on failure.
+   */
+  private static Completable process(Object mediator, Method method, Sink<Object> sink, FailurePolicy policy,
+                                     Flowable<Object[]> invocations) {
+    return invocations
+      .flatMapCompletable(received -> {
+        Object[] args = arguments(method, received);
+        List<Message<?>> messages = toMessages(received);
+        return policy.apply(messages, Completable.defer(() -> {
+          Object result = invoke(mediator, method, args);
+          if (result == null) {
             // We didn't get a result
             return Completable.complete();
           } else {
-            return propagateResult(maybeResult.get(), theSink);
+            return propagateResult(result, sink);
           }
-      })
-      .doOnError(Throwable::printStackTrace) // TODO improve error reporting
-      .subscribe();
+        }).doOnComplete(() -> messages.forEach(Message::ack)).toFlowable()).ignoreElements();
+      });
+  }
+
+  /**
+   * @return the arguments of the function: the received messages, or their payloads for the parameters that are not
+   * messages.
+   */
+  private static Object[] arguments(Method method, Object[] messages) {
+    Parameter[] parameters = method.getParameters();
+    Object[] args = new Object[messages.length];
+    for (int i = 0; i < messages.length; i++) {
+      if (parameters[i].getType().isAssignableFrom(Message.class)) {
+        args[i] = messages[i];
+      } else {
+        args[i] = ((Message<?>) messages[i]).payload();
+      }
+    }
+    return args;
+  }
+
+  /**
+   * @return the source consumed by the given function if it is the only one and it is partitioned, {@code null}
+   * otherwise.
+   */
+  @SuppressWarnings("unchecked")
+  private static PartitionedSource<Object> getPartitionedSource(Method method) {
+    if (method.getParameterCount() != 1) {
+      return null;
+    }
+    Source<Object> source = getSourceOrFail(method.getParameters()[0].getAnnotation(Inbound.class).value());
+    if (source instanceof PartitionedSource && ((PartitionedSource<Object>) source).isPartitioned()) {
+      return (PartitionedSource<Object>) source;
+    }
+    return null;
+  }
+
+  private static Object invoke(Object mediator, Method method, Object[] args) throws Exception {
+    try {
+      return method.invoke(mediator, args);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return the acknowledgement of the messages whose payloads have been delivered so far, {@code null} if the method
+   * does not receive payloads.
+   */
+  private static Acknowledgement delivered(List<PayloadAcknowledgements> acknowledgements) {
+    List<Acknowledgement> list = new ArrayList<>(acknowledgements.size());
+    for (PayloadAcknowledgements acknowledgement : acknowledgements) {
+      list.add(acknowledgement.delivered());
+    }
+    return Acknowledgement.all(list.toArray(new Acknowledgement[0]));
+  }
+
+  private static List<Message<?>> toMessages(Object[] received) {
+    List<Message<?>> messages = new ArrayList<>(received.length);
+    for (Object message : received) {
+      messages.add((Message<?>) message);
+    }
+    return messages;
+  }
+
+  /**
+   * Creates the {@link FailurePolicy} of a mediator method from its {@link OnError} annotation, and registers its
+   * metrics.
+   */
+  private static FailurePolicy getFailurePolicy(Object mediator, Method method) {
+    FailurePolicy policy = FailurePolicy.failFast();
+    OnError onError = method.getAnnotation(OnError.class);
+    if (onError != null) {
+      if (onError.retries() > 0) {
+        policy = policy.withRetry(Backoff.exponential(onError.delay(), Math.max(onError.delay(), onError.maxDelay()),
+          TimeUnit.MILLISECONDS, onError.retries()));
+      }
+      if (onError.deadLetter().isEmpty()) {
+        policy = policy.withSkip();
+      } else {
+        policy = policy.withDeadLetter(onError.deadLetter());
+      }
+    }
+    FluidRegistry.register(mediator.getClass().getName() + "#" + method.getName(), policy.metrics());
+    return policy;
+  }
+
+  private static void onFailure(Object mediator, Method method, Throwable failure) {
+    logger.error("The invocation of " + method.getName() + " from " + mediator.getClass().getName()
+      + " has failed, the stream is terminated", failure);
   }
 
   private static List<Flowable<Object>> getFlowableForParameters(Method method) {
@@ -115,20 +239,25 @@ public class ReflectionHelper {
 
       String name = inbound.value();
       Source<Object> source = getSourceOrFail(name);
-
-      if (!param.getType().isAssignableFrom(Message.class)) {
-        sources.add(source.asFlowable().map(Message::payload));
-      } else {
-        sources.add(source.asFlowable().cast(Object.class));
-      }
+      sources.add(messages(source));
     }
     return sources;
   }
 
+  /**
+   * @return the messages of the source. The payloads are extracted when the function is invoked, so the messages can
+   * be acknowledged afterwards.
+   */
+  private static Flowable<Object> messages(Source<Object> source) {
+    return source.asFlowable().cast(Object.class);
+  }
+
 
   public static void invokeTransformationMethod(Object mediator, Method method) {
     method = ReflectionHelper.makeAccessibleIfNot(method);
-    List<Object> values = getParameterFromTransformationMethod(method);
+    List<PayloadAcknowledgements> acknowledgements = new ArrayList<>();
+    List<Object> values = getParameterFromTransformationMethod(method,
+      method.getReturnType().equals(Void.TYPE) ? null : acknowledgements);
 
     try {
       Class<?> returnType = method.getReturnType();
@@ -151,23 +280,29 @@ public class ReflectionHelper {
           }
 
           Type type = method.getGenericReturnType();
-          if (type instanceof ParameterizedType) {
-            Type enclosed = ((ParameterizedType) type).getActualTypeArguments()[0];
-            if (!enclosed.getTypeName().startsWith(Message.class.getName())) {
-              flowable.flatMapCompletable(sink::dispatch)
-                .doOnError(Throwable::printStackTrace) // TODO improve error reporting
-                .subscribe();
-            } else {
-              flowable
-                .flatMapCompletable(d -> sink.dispatch((Message) d))
-                .doOnError(Throwable::printStackTrace) // TODO improve error reporting
-                .subscribe();
-            }
-          } else {
-            flowable.flatMapCompletable(sink::dispatch)
-              .doOnError(Throwable::printStackTrace) // TODO improve error reporting
-              .subscribe();
-          }
+          boolean messages = type instanceof ParameterizedType
+            && ((ParameterizedType) type).getActualTypeArguments()[0].getTypeName()
+            .startsWith(Message.class.getName());
+          FailurePolicy policy = getFailurePolicy(mediator, method);
+          Method invoked = method;
+          flowable
+            .flatMapCompletable(d -> {
+              // The payloads delivered so far have been used to compute this result, so the failure policy applies
+              // to their messages too.
+              Message<?> result = messages ? (Message<?>) d : new Message<>(d);
+              Message<?> guarded = result.withAcknowledgement(
+                Acknowledgement.all(result.acknowledgement(), delivered(acknowledgements)));
+              return policy.apply(guarded, Completable.defer(() -> {
+                if (messages) {
+                  return sink.dispatch((Message) d);
+                } else {
+                  return sink.dispatch(d);
+                }
+              }).doOnComplete(guarded::ack));
+            })
+            .doOnComplete(() -> acknowledgements.forEach(PayloadAcknowledgements::acknowledgeAll))
+            .subscribe(() -> {
+            }, failure -> onFailure(mediator, invoked, failure));
         }
       }
     } catch (Exception e) {
@@ -176,7 +311,12 @@ public class ReflectionHelper {
     }
   }
 
-  private static List<Object> getParameterFromTransformationMethod(Method method) {
+  /**
+   * @param acknowledgements the list receiving the {@link PayloadAcknowledgements} of the parameters receiving
+   *                         payloads, {@code null} if the results of the method are not observed
+   */
+  private static List<Object> getParameterFromTransformationMethod(Method method,
+                                                                   List<PayloadAcknowledgements> acknowledgements) {
     List<Object> values = new ArrayList<>();
     for (Parameter param : method.getParameters()) {
       Inbound inbound = param.getAnnotation(Inbound.class);
@@ -185,7 +325,12 @@ public class ReflectionHelper {
       if (inbound != null) {
         String name = inbound.value();
         Source<Object> source = getSourceOrFail(name);
-        Object inject = getSourceToInject(param.getType(), param.getParameterizedType(), source);
+        PayloadAcknowledgements acknowledgement = null;
+        if (acknowledgements != null) {
+          acknowledgement = new PayloadAcknowledgements();
+          acknowledgements.add(acknowledgement);
+        }
+        Object inject = getSourceToInject(param.getType(), param.getParameterizedType(), source, acknowledgement);
         values.add(inject);
       } else if (outbound != null) {
         String name = outbound.value();
@@ -199,12 +344,25 @@ public class ReflectionHelper {
     return values;
   }
 
+  /**
+   * Computes the object to inject for the given source. When only the payloads are injected, the processing of the
+   * messages cannot be observed, so they are acknowledged once their payloads have been delivered.
+   */
   public static Object getSourceToInject(Class<?> clazz, Type type, Source<Object> source) {
+    return getSourceToInject(clazz, type, source, null);
+  }
+
+  /**
+   * @param acknowledgements the object acknowledging the messages when only the payloads are injected, {@code null}
+   *                         to acknowledge them once their payloads have been delivered
+   */
+  private static Object getSourceToInject(Class<?> clazz, Type type, Source<Object> source,
+                                          PayloadAcknowledgements acknowledgements) {
     if (clazz.isAssignableFrom(Publisher.class)) {
       if (type instanceof ParameterizedType) {
         Type enclosed = ((ParameterizedType) type).getActualTypeArguments()[0];
         if (!enclosed.getTypeName().startsWith(Message.class.getName())) {
-          return Flowable.fromPublisher(source).map(Message::payload);
+          return payloads(source, acknowledgements);
         } else {
           return source;
         }
@@ -216,7 +374,7 @@ public class ReflectionHelper {
       if (type instanceof ParameterizedType) {
         Type enclosed = ((ParameterizedType) type).getActualTypeArguments()[0];
         if (!enclosed.getTypeName().startsWith(Message.class.getName())) {
-          return flowable.map(Message::payload);
+          return payloads(flowable, acknowledgements);
         } else {
           return flowable;
         }
@@ -229,6 +387,15 @@ public class ReflectionHelper {
     return source;
   }
 
+  private static Flowable<Object> payloads(Publisher<Message<Object>> messages,
+                                           PayloadAcknowledgements acknowledgements) {
+    if (acknowledgements != null) {
+      return acknowledgements.payloads(messages);
+    }
+    // Called once the payload has been handed to the subscriber.
+    return Flowable.fromPublisher(messages).doAfterNext(Message::ack).map(Message::payload);
+  }
+
   public static void inject(Object mediator) {
     List<Field> list = FieldUtils.getFieldsListWithAnnotation(mediator.getClass(), Inbound.class);
     for (Field field : list) {
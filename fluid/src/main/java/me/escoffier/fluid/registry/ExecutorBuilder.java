@@ -0,0 +1,112 @@
+package me.escoffier.fluid.registry;
+
+import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.config.FluidConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the named thread pools declared in the {@code executors} section of the configuration. These pools are used
+ * by {@link me.escoffier.fluid.models.Source#dispatchOn(String)} and
+ * {@link me.escoffier.fluid.models.Source#emitOn(String)}. For example:
+ * <pre>
+ * executors:
+ *   cpu:
+ *     type: compute   # fixed pool, `size` defaults to the number of processors
+ *   blocking:
+ *     type: io        # bounded pool, threads are released after `keep-alive` ms of inactivity
+ *     size: 32
+ *   per-task:
+ *     type: virtual   # one (virtual) thread per task
+ * </pre>
+ */
+public class ExecutorBuilder {
+
+  private static final Logger LOGGER = LogManager.getLogger(ExecutorBuilder.class);
+
+  public static final String COMPUTE = "compute";
+  public static final String IO = "io";
+  public static final String VIRTUAL = "virtual";
+
+  private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+  private ExecutorBuilder() {
+    // Avoid direct instantiation.
+  }
+
+  public static Map<String, ExecutorService> createExecutorsFromConfiguration(FluidConfig config) {
+    Map<String, ExecutorService> map = new HashMap<>();
+
+    Optional<Config> executors = config.getConfig("executors");
+    if (executors.isPresent()) {
+      Iterator<String> names = executors.get().names();
+      while (names.hasNext()) {
+        String name = names.next();
+        LOGGER.info("Creating executor from configuration `" + name + "`");
+        Optional<Config> conf = executors.get().getConfig(name);
+        ExecutorService executor = buildExecutor(name,
+          conf.orElseThrow(() -> new IllegalStateException("Illegal configuration for executor `" + name + "`")));
+        map.put(name, executor);
+      }
+    }
+    return map;
+  }
+
+  private static ExecutorService buildExecutor(String name, Config config) {
+    String type = config.getString("type", COMPUTE);
+    switch (type.toLowerCase()) {
+      case COMPUTE:
+        return Executors.newFixedThreadPool(config.getInt("size", PROCESSORS), new NamedThreadFactory(name));
+      case IO:
+        int size = config.getInt("size", PROCESSORS * 8);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size,
+          config.getLong("keep-alive", 60000L), TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<>(), new NamedThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+      case VIRTUAL:
+        return createTaskPerThreadExecutor(name);
+      default:
+        throw new IllegalArgumentException("Invalid configuration, the executor type " + type + " is unknown");
+    }
+  }
+
+  /**
+   * Uses {@code Executors.newVirtualThreadPerTaskExecutor()} when the JVM provides it. Otherwise, falls back to an
+   * unbounded cached pool, which also runs each task on its own (platform) thread.
+   */
+  private static ExecutorService createTaskPerThreadExecutor(String name) {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      LOGGER.warn("Virtual threads are not supported by this JVM, the executor `" + name + "` uses platform threads");
+      return Executors.newCachedThreadPool(new NamedThreadFactory(name));
+    }
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    NamedThreadFactory(String name) {
+      this.prefix = "fluid-" + name + "-";
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
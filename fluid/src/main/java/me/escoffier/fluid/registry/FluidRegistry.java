@@ -1,17 +1,21 @@
 package me.escoffier.fluid.registry;
 
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
 import io.vertx.reactivex.core.Vertx;
 import me.escoffier.fluid.config.FluidConfig;
+import me.escoffier.fluid.models.FailureMetrics;
 import me.escoffier.fluid.models.Sink;
 import me.escoffier.fluid.models.Source;
 
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 /**
- * Component storing the sources and sinks created from the configuration. It also provides a way to
- * register other sources and sinks.
+ * Component storing the sources, sinks and executors created from the configuration. It also provides a way to
+ * register other sources, sinks and schedulers.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
@@ -23,8 +27,18 @@ public class FluidRegistry {
 
   private static Map<String, Source> sources = new ConcurrentHashMap<>();
   private static Map<String, Sink> sinks = new ConcurrentHashMap<>();
+  private static Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+  private static Map<String, Scheduler> schedulers = new ConcurrentHashMap<>();
+  private static Map<String, FailureMetrics> failures = new ConcurrentHashMap<>();
 
   public static synchronized void initialize(Vertx vertx, FluidConfig config) {
+    ExecutorBuilder.createExecutorsFromConfiguration(config).forEach((name, executor) -> {
+      ExecutorService old = executors.put(name, executor);
+      if (old != null) {
+        old.shutdown();
+      }
+      schedulers.put(name, Schedulers.from(executor));
+    });
     sinks.putAll(SourceAndSinkBuilder.createSinksFromConfiguration(vertx, config));
     sources.putAll(SourceAndSinkBuilder.createSourcesFromConfiguration(vertx, config));
   }
@@ -36,6 +50,10 @@ public class FluidRegistry {
   public static void reset() {
     sources.clear();
     sinks.clear();
+    schedulers.clear();
+    executors.values().forEach(ExecutorService::shutdown);
+    executors.clear();
+    failures.clear();
   }
 
   public static synchronized <T> void register(Source<T> source) {
@@ -54,6 +72,14 @@ public class FluidRegistry {
     sinks.put(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE), sink);
   }
 
+  public static synchronized void register(String name, Scheduler scheduler) {
+    schedulers.put(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE), scheduler);
+  }
+
+  public static synchronized void register(String name, FailureMetrics metrics) {
+    failures.put(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE), Objects.requireNonNull(metrics));
+  }
+
   public static synchronized void unregisterSource(String name) {
     sources.remove(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE));
   }
@@ -62,6 +88,40 @@ public class FluidRegistry {
     sinks.remove(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE));
   }
 
+  public static synchronized void unregisterScheduler(String name) {
+    schedulers.remove(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE));
+  }
+
+  /**
+   * Looks for the scheduler with the given name. Executors declared in the configuration are registered under their
+   * name. If not overridden, {@code compute} and {@code io} designate the RxJava computation and I/O schedulers.
+   *
+   * @param name the name, must not be {@code null}
+   * @return the scheduler, {@code null} if not found
+   */
+  public static Scheduler scheduler(String name) {
+    Scheduler scheduler = schedulers.get(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE));
+    if (scheduler == null) {
+      if (ExecutorBuilder.COMPUTE.equals(name)) {
+        return Schedulers.computation();
+      } else if (ExecutorBuilder.IO.equals(name)) {
+        return Schedulers.io();
+      }
+    }
+    return scheduler;
+  }
+
+  /**
+   * Gets the metrics of the failures handled for the component with the given name, such as a mediator method
+   * annotated with {@link me.escoffier.fluid.annotations.OnError}.
+   *
+   * @param name the name, must not be {@code null}
+   * @return the metrics, {@code null} if there are no metrics registered with the given name
+   */
+  public static FailureMetrics failures(String name) {
+    return failures.get(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE));
+  }
+
   @SuppressWarnings("unchecked")
   public static <T> Source<T> source(String name) {
     return (Source<T>) sources.get(Objects.requireNonNull(name, NAME_NOT_PROVIDED_MESSAGE));
@@ -0,0 +1,27 @@
+package me.escoffier.fluid.spi;
+
+/**
+ * Converts payloads to and from bytes, so connectors can exchange them with brokers and remote consumers.
+ * Implementations must be thread-safe.
+ */
+public interface Codec {
+
+  /**
+   * Encodes a payload.
+   *
+   * @param payload the payload, must not be {@code null}
+   * @return the bytes
+   * @throws IllegalArgumentException if the payload is not supported by the codec
+   */
+  byte[] encode(Object payload);
+
+  /**
+   * Decodes a payload.
+   *
+   * @param bytes the bytes produced by {@link #encode(Object)}, must not be {@code null}
+   * @return the payload
+   * @throws IllegalArgumentException if the bytes cannot be decoded
+   */
+  Object decode(byte[] bytes);
+
+}
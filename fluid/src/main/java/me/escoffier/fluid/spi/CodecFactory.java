@@ -0,0 +1,24 @@
+package me.escoffier.fluid.spi;
+
+import me.escoffier.fluid.config.Config;
+
+/**
+ * Creates the {@link Codec}s selected by the {@code codec} option of the connectors. Factories are discovered using
+ * the {@link java.util.ServiceLoader} mechanism, and selected by {@link #name()}.
+ */
+public interface CodecFactory {
+
+  /**
+   * @return the name of the codec, such as {@code json} or {@code binary}.
+   */
+  String name();
+
+  /**
+   * Creates a codec.
+   *
+   * @param config the configuration of the connector using the codec
+   * @return the codec
+   */
+  Codec create(Config config);
+
+}
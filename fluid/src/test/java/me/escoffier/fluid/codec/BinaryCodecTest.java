@@ -0,0 +1,120 @@
+package me.escoffier.fluid.codec;
+
+import com.fasterxml.jackson.databind.node.NullNode;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.impl.Codecs;
+import me.escoffier.fluid.spi.Codec;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of the {@link BinaryCodec} and of the {@link SchemaRegistry}.
+ */
+public class BinaryCodecTest {
+
+  private final Codec codec = Codecs.codec("binary", new Config(NullNode.getInstance()));
+
+  @Test
+  public void testRoundTrip() {
+    JsonObject json = new JsonObject()
+      .put("int", 42)
+      .put("negative", -3)
+      .put("long", Long.MAX_VALUE)
+      .put("float", 1.5f)
+      .put("double", Math.PI)
+      .put("boolean", true)
+      .put("string", "héllo")
+      .put("binary", new byte[] {1, 2, 3})
+      .putNull("null")
+      .put("object", new JsonObject().put("name", "nested").put("rating", 4))
+      .put("array", new JsonArray().add(1).add("two").add(new JsonObject().put("three", 3)).addNull());
+
+    JsonObject decoded = (JsonObject) codec.decode(codec.encode(json));
+    assertThat(decoded).isEqualTo(json);
+    assertThat(decoded.fieldNames()).containsExactlyElementsOf(json.fieldNames());
+    assertThat(decoded.getValue("long")).isInstanceOf(Long.class);
+    assertThat(decoded.getValue("float")).isInstanceOf(Float.class);
+  }
+
+  @Test
+  public void testSchemasAreRegisteredOnce() {
+    codec.encode(new JsonObject().put("registered-once", 1));
+    int size = SchemaRegistry.local().size();
+    byte[] first = codec.encode(new JsonObject().put("registered-once", 2));
+    byte[] second = codec.encode(new JsonObject().put("registered-once", 3));
+    assertThat(SchemaRegistry.local().size()).isEqualTo(size);
+    // Magic byte, schema id, value.
+    assertThat(first).hasSize(6);
+    assertThat(Arrays.copyOfRange(first, 0, 5)).isEqualTo(Arrays.copyOfRange(second, 0, 5));
+  }
+
+  @Test
+  public void testPojoAndMapPayloads() {
+    Movie movie = new Movie();
+    movie.title = "Fluid";
+    movie.year = 2018;
+    assertThat(codec.decode(codec.encode(movie)))
+      .isEqualTo(new JsonObject().put("title", "Fluid").put("year", 2018));
+    assertThat(codec.decode(codec.encode(new JsonObject().put("a", 1).getMap())))
+      .isEqualTo(new JsonObject().put("a", 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodingBytesNotEncodedByTheCodec() {
+    codec.decode("{}".getBytes());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownCodec() {
+    Codecs.codec("unknown", new Config(NullNode.getInstance()));
+  }
+
+  @Test
+  public void testDirectoryRegistry() throws IOException {
+    File directory = Files.createTempDirectory("schemas").toFile();
+    Codec shared = Codecs.codec("binary", new Config(new JsonObject()
+      .put("codec", "binary")
+      .put("codec.registry", directory.getAbsolutePath())));
+    JsonObject json = new JsonObject().put("stored", "in a file");
+    assertThat(shared.decode(shared.encode(json))).isEqualTo(json);
+    assertThat(directory.listFiles()).hasSize(1);
+
+    Schema schema = Schema.fromJson(new JsonObject(new String(Files.readAllBytes(directory.listFiles()[0].toPath()))));
+    assertThat(schema.size()).isEqualTo(1);
+    assertThat(schema.name(0)).isEqualTo("stored");
+  }
+
+  @Test
+  public void testBinaryPayloadsAreSmallerThanJson() {
+    JsonObject review = new JsonObject()
+      .put("id", 123456789L)
+      .put("movie", 4242)
+      .put("user", "a7c5d2e0-3b1f-4c8e-9f6a-1d2e3f4a5b6c")
+      .put("rating", 4.5)
+      .put("verified", true)
+      .put("title", "A great movie")
+      .put("text", "The plot is simple, but the photography is superb and the actors are convincing.")
+      .put("tags", new JsonArray().add("drama").add("classic"));
+    Codec json = Codecs.codec("json", new Config(NullNode.getInstance()));
+
+    assertThat(codec.decode(codec.encode(review))).isEqualTo(review);
+    assertThat(json.decode(json.encode(review))).isEqualTo(review);
+    // The field names are not repeated in the binary payload: 169 bytes against 245 bytes in JSON.
+    assertThat(codec.encode(review)).hasSize(169);
+    assertThat(json.encode(review)).hasSize(245);
+  }
+
+  public static class Movie {
+    public String title;
+    public int year;
+  }
+
+}
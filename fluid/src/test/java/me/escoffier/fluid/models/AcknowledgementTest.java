@@ -0,0 +1,254 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import me.escoffier.fluid.impl.ListSink;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks the propagation of the {@link Acknowledgement} of the messages.
+ */
+public class AcknowledgementTest {
+
+  @Test
+  public void testAcknowledgementSurvivesDerivation() {
+    Recorder recorder = new Recorder();
+    Message<String> message = new Message<>("a").withAcknowledgement(recorder.acknowledgement("a"));
+
+    message.with("b").with("key", "value").without("key").ack();
+    assertThat(recorder.acked).containsExactly("a");
+
+    assertThat(Message.lazy("a", "source", s -> new HashMap<>())
+      .withAcknowledgement(recorder.acknowledgement("lazy"))
+      .with("key", "value")
+      .acknowledgement()).isNotNull();
+  }
+
+  @Test
+  public void testMapAndFilter() {
+    Recorder recorder = new Recorder();
+    ListSink<Integer> sink = new ListSink<>();
+    Source.from(recorder.messages(1, 2, 3, 4))
+      .mapPayload(i -> i * 10)
+      .map(m -> new Message<>(m.payload() + 1))
+      .filterPayload(i -> i > 30)
+      .to(sink);
+
+    await().until(() -> recorder.acked.size() == 4);
+    assertThat(sink.values()).containsExactly(31, 41);
+    assertThat(recorder.acked).containsExactlyInAnyOrder("1", "2", "3", "4");
+  }
+
+  @Test
+  public void testParallelMapAndFilter() {
+    Recorder recorder = new Recorder();
+    ListSink<Integer> sink = new ListSink<>();
+    Source.from(recorder.messages(1, 2, 3, 4))
+      .parallel(2)
+      .mapPayload(i -> i * 10)
+      .map(m -> new Message<>(m.payload() + 1))
+      .filterPayload(i -> i > 30)
+      .filter(m -> m.payload() < 40)
+      .sequential()
+      .to(sink);
+
+    await().until(() -> recorder.acked.size() == 4);
+    assertThat(sink.values()).containsExactly(31);
+    assertThat(recorder.acked).containsExactlyInAnyOrder("1", "2", "3", "4");
+  }
+
+  @Test
+  public void testParallelFlatMapAcknowledgesOnceAllChildrenAreAcknowledged() {
+    Recorder recorder = new Recorder();
+    List<Message<Integer>> children = new CopyOnWriteArrayList<>();
+    Flowable.fromPublisher(Source.from(recorder.messages(1, 2))
+      .parallel(2)
+      .flatMap(m -> m.payload() == 1 ? Flowable.just(m, m) : Flowable.<Message<Integer>>empty())
+      .sequential())
+      .subscribe(children::add);
+
+    await().until(() -> children.size() == 2);
+    // The message without children is acknowledged.
+    await().until(() -> recorder.acked.contains("2"));
+    children.get(0).ack();
+    assertThat(recorder.acked).containsExactly("2");
+    children.get(1).ack();
+    assertThat(recorder.acked).containsExactly("2", "1");
+  }
+
+  @Test
+  public void testFlatMapAcknowledgesOnceAllChildrenAreAcknowledged() {
+    Recorder recorder = new Recorder();
+    List<Message<Integer>> children = new ArrayList<>();
+    Flowable.fromPublisher(Source.from(recorder.messages(1, 2))
+      .flatMapPayload(i -> Flowable.just(i, i, i)))
+      .subscribe(children::add);
+
+    assertThat(children).hasSize(6);
+    children.get(0).ack();
+    children.get(1).ack();
+    assertThat(recorder.acked).isEmpty();
+    children.get(2).ack();
+    assertThat(recorder.acked).containsExactly("1");
+
+    // Acknowledging a child twice must not acknowledge the parent.
+    children.get(3).ack();
+    children.get(3).ack();
+    children.get(4).ack();
+    assertThat(recorder.acked).containsExactly("1");
+    children.get(5).ack();
+    assertThat(recorder.acked).containsExactly("1", "2");
+  }
+
+  @Test
+  public void testFlatMapNack() {
+    Recorder recorder = new Recorder();
+    List<Message<Integer>> children = new ArrayList<>();
+    Flowable.fromPublisher(Source.from(recorder.messages(1))
+      .flatMap(m -> Flowable.just(m, m)))
+      .subscribe(children::add);
+
+    children.get(0).nack(new Exception("boom"));
+    children.get(1).ack();
+    assertThat(recorder.acked).isEmpty();
+    assertThat(recorder.nacked).containsExactly("1");
+  }
+
+  @Test
+  public void testScanAndZip() {
+    Recorder recorder = new Recorder();
+    List<Message<Integer>> sums = Flowable.fromPublisher(Source.from(recorder.messages(1, 2, 3))
+      .scan(new Message<>(0), (acc, m) -> acc.with(acc.payload() + m.payload())))
+      .toList()
+      .blockingGet();
+
+    assertThat(sums.get(0).acknowledgement()).isNull();
+    sums.forEach(Message::ack);
+    assertThat(recorder.acked).containsExactly("1", "2", "3");
+
+    Recorder other = new Recorder();
+    Flowable.fromPublisher(Source.from(recorder.messages(4))
+      .zipWith(other.messages(5)))
+      .blockingFirst()
+      .ack();
+    assertThat(recorder.acked).endsWith("4");
+    assertThat(other.acked).containsExactly("5");
+  }
+
+  @Test
+  public void testNackOnDispatchFailure() {
+    Recorder recorder = new Recorder();
+    Source.from(recorder.messages(1, 2))
+      .to(Sink.forEachPayload(i -> {
+        if (i == 2) {
+          throw new IllegalStateException("boom");
+        }
+      }));
+
+    await().until(() -> recorder.nacked.size() == 1);
+    assertThat(recorder.acked).containsExactly("1");
+    assertThat(recorder.nacked).containsExactly("2");
+  }
+
+  @Test
+  public void testRouteAcknowledgesTheDiscardedMessages() {
+    Recorder recorder = new Recorder();
+    ListSink<Integer> sink = new ListSink<>();
+    List<Source<Integer>> branches = Source.from(recorder.messages(1, 2, 3, 4))
+      .route(m -> m.payload() % 2 == 0 ? 0 : -1, 1);
+    branches.get(0).to(sink);
+
+    await().until(() -> recorder.acked.size() == 4);
+    assertThat(sink.values()).containsExactly(2, 4);
+    assertThat(recorder.acked).containsExactlyInAnyOrder("1", "2", "3", "4");
+  }
+
+  @Test
+  public void testBroadcastAcknowledgesOnceAllBranchesHaveProcessedTheMessage() {
+    Recorder recorder = new Recorder();
+    List<Source<Integer>> branches = Source.from(recorder.messages(1, 2)).broadcast(2);
+    List<Message<Integer>> first = new ArrayList<>();
+    List<Message<Integer>> second = new ArrayList<>();
+    Flowable.fromPublisher(branches.get(0)).subscribe(first::add);
+    Flowable.fromPublisher(branches.get(1)).subscribe(second::add);
+
+    assertThat(first).hasSize(2);
+    assertThat(second).hasSize(2);
+    first.forEach(Message::ack);
+    assertThat(recorder.acked).isEmpty();
+    second.get(0).ack();
+    assertThat(recorder.acked).containsExactly("1");
+    second.get(1).nack(new Exception("boom"));
+    assertThat(recorder.nacked).containsExactly("2");
+  }
+
+  @Test
+  public void testWindowsAcknowledgeAllTheirMessages() {
+    Recorder recorder = new Recorder();
+    List<Message<List<Integer>>> windows = Flowable.fromPublisher(Source.from(recorder.messages(1, 2, 3, 4))
+      .window(Window.tumbling(2)))
+      .toList()
+      .blockingGet();
+
+    windows.get(0).ack();
+    assertThat(recorder.acked).containsExactly("1", "2");
+
+    // With sliding windows, a message is acknowledged once all its windows have been acknowledged.
+    Recorder sliding = new Recorder();
+    windows = Flowable.fromPublisher(Source.from(sliding.messages(1, 2, 3))
+      .window(Window.sliding(2, 1)))
+      .toList()
+      .blockingGet();
+    windows.get(0).ack();
+    assertThat(sliding.acked).containsExactly("1");
+    windows.get(1).ack();
+    assertThat(sliding.acked).containsExactly("1", "2");
+  }
+
+  @Test
+  public void testAggregationAcknowledgesTheAccumulatedMessages() {
+    Recorder recorder = new Recorder();
+    List<Message<Pair<Integer, Long>>> results = Flowable.fromPublisher(Source.from(recorder.messages(1, 2, 3, 4))
+      .aggregateByKey(m -> m.payload() % 2, Aggregator.count(), Emission.every(4)))
+      .toList()
+      .blockingGet();
+
+    assertThat(results).hasSize(2);
+    results.get(0).ack();
+    assertThat(recorder.acked).isEmpty();
+    results.get(1).ack();
+    assertThat(recorder.acked).containsExactlyInAnyOrder("1", "2", "3", "4");
+  }
+
+  private static class Recorder {
+    private final List<String> acked = new CopyOnWriteArrayList<>();
+    private final List<String> nacked = new CopyOnWriteArrayList<>();
+
+    private Acknowledgement acknowledgement(String id) {
+      return new Acknowledgement() {
+        @Override
+        public void ack() {
+          acked.add(id);
+        }
+
+        @Override
+        public void nack(Throwable reason) {
+          nacked.add(id);
+        }
+      };
+    }
+
+    private Flowable<Message<Integer>> messages(Integer... payloads) {
+      return Flowable.fromArray(payloads)
+        .map(i -> new Message<>(i).withAcknowledgement(acknowledgement(Integer.toString(i))));
+    }
+  }
+
+}
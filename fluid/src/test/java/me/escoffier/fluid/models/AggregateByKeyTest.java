@@ -0,0 +1,128 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import me.escoffier.fluid.impl.ListSink;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static me.escoffier.fluid.models.Pair.pair;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks the behavior of {@link Source#aggregateByKey(java.util.function.Function, Aggregator)}.
+ */
+public class AggregateByKeyTest {
+
+  @Test
+  public void testCountEveryElement() {
+    List<Message<Pair<String, Long>>> results = new ArrayList<>();
+    Source.from("a", "b", "a", "c", "a")
+      .aggregateByKey(Message::payload, Aggregator.count())
+      .to(Sink.forEach(results::add));
+
+    assertThat(results).extracting(Message::payload)
+      .containsExactly(pair("a", 1L), pair("b", 1L), pair("a", 2L), pair("c", 1L), pair("a", 3L));
+    assertThat(results).extracting(m -> CommonHeaders.<String>groupKey(m)).containsExactly("a", "b", "a", "c", "a");
+  }
+
+  @Test
+  public void testBuiltInAggregators() {
+    Source<Integer> source = Source.from(1, 2, 3, 4, 5, 6);
+    assertThat(last(source.aggregateByKey(m -> m.payload() % 2, Aggregator.sum(i -> i))))
+      .containsEntry(0, 12.0).containsEntry(1, 9.0);
+    assertThat(last(source.aggregateByKey(m -> m.payload() % 2, Aggregator.sumAsLong(i -> i))))
+      .containsEntry(0, 12L).containsEntry(1, 9L);
+    assertThat(last(source.aggregateByKey(m -> m.payload() % 2, Aggregator.average(i -> i))))
+      .containsEntry(0, 4.0).containsEntry(1, 3.0);
+    assertThat(last(source.aggregateByKey(m -> m.payload() % 2, Aggregator.min(i -> i))))
+      .containsEntry(0, 2.0).containsEntry(1, 1.0);
+    assertThat(last(source.aggregateByKey(m -> m.payload() % 2, Aggregator.max(i -> i))))
+      .containsEntry(0, 6.0).containsEntry(1, 5.0);
+  }
+
+  @Test
+  public void testHeadersArePreserved() {
+    List<Message<Pair<String, Long>>> results = new ArrayList<>();
+    Source.from(new Message<>("a").with("foo", "bar"))
+      .aggregateByKey(Message::payload, Aggregator.count())
+      .to(Sink.forEach(results::add));
+
+    assertThat(results).hasSize(1);
+    assertThat(results.get(0).<String>get("foo")).isEqualTo("bar");
+  }
+
+  @Test
+  public void testEmissionEveryN() {
+    ListSink<Pair<String, Long>> sink = Sink.list();
+    Source.from("a", "b", "a", "a", "c", "a", "b")
+      .aggregateByKey(Message::payload, Aggregator.count(), Emission.every(3))
+      .to(sink);
+
+    // Updated keys are emitted every 3 messages, and on completion.
+    assertThat(sink.values()).containsExactly(
+      pair("a", 2L), pair("b", 1L),
+      pair("a", 4L), pair("c", 1L),
+      pair("b", 2L));
+  }
+
+  @Test
+  public void testPeriodicEmission() {
+    ListSink<Pair<Long, Long>> sink = Sink.list();
+    Source.fromPayloads(Flowable.interval(5, TimeUnit.MILLISECONDS).take(100).concatWith(Flowable.never()))
+      .aggregateByKey(m -> m.payload() % 3, Aggregator.count(), Emission.every(50, TimeUnit.MILLISECONDS))
+      .to(sink);
+
+    await().until(() -> {
+      Map<Long, Long> counts = new HashMap<>();
+      sink.values().forEach(p -> counts.put(p.left(), p.right()));
+      return counts.values().stream().mapToLong(Long::longValue).sum() == 100;
+    });
+    // Fewer results than messages are emitted.
+    assertThat(sink.values().size()).isLessThan(100);
+  }
+
+  @Test
+  public void testManyKeys() {
+    int keys = 100000;
+    Flowable<Integer> payloads = Flowable.range(0, keys * 3).map(i -> i % keys);
+    ListSink<Pair<Integer, Long>> sink = Sink.list();
+    Source.fromPayloads(payloads)
+      .aggregateByKey(Message::payload, Aggregator.count(), Emission.every(keys * 3))
+      .to(sink);
+
+    assertThat(sink.values()).hasSize(keys).allSatisfy(p -> assertThat(p.right()).isEqualTo(3L));
+    assertThat(sink.values().get(42).left()).isEqualTo(42);
+  }
+
+  @Test
+  public void testKeyedState() {
+    KeyedState<String> state = new KeyedState<>(2);
+    assertThat(state.indexOf("a")).isEqualTo(-1);
+    assertThat(state.indexOf("b")).isEqualTo(-2);
+    assertThat(state.indexOf("a")).isEqualTo(0);
+    // "Aa" and "BB" have the same hash code.
+    assertThat(state.indexOf("Aa")).isEqualTo(-3);
+    assertThat(state.indexOf("BB")).isEqualTo(-4);
+    assertThat(state.indexOf("BB")).isEqualTo(3);
+    for (int i = 0; i < 1000; i++) {
+      state.indexOf("key-" + i);
+    }
+    assertThat(state.size()).isEqualTo(1004);
+    assertThat(state.indexOf("Aa")).isEqualTo(2);
+    assertThat(state.key(2)).isEqualTo("Aa");
+    assertThat(state.values().length).isGreaterThanOrEqualTo(1004 * 2);
+  }
+
+  private static <K, R> Map<K, R> last(Source<Pair<K, R>> source) {
+    Map<K, R> results = new HashMap<>();
+    source.to(Sink.forEachPayload(p -> results.put(p.left(), p.right())));
+    return results;
+  }
+
+}
@@ -0,0 +1,98 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import me.escoffier.fluid.impl.ListSink;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks the behavior of {@link Source#to(Sink, BatchPolicy)}.
+ */
+public class BatchPolicyTest {
+
+  @Test
+  public void testBatchesBySize() {
+    BatchSink<Integer> sink = new BatchSink<>();
+    Source.from(1, 2, 3, 4, 5, 6, 7).to(sink, BatchPolicy.ofSize(3));
+
+    await().until(() -> sink.batches.size() == 3);
+    assertThat(sink.batches).containsExactly(list(1, 2, 3), list(4, 5, 6), list(7));
+  }
+
+  @Test
+  public void testBatchesByBytes() {
+    BatchSink<String> sink = new BatchSink<>();
+    Source.from("aaaa", "bb", "cccc", "d", "eeeeee", "f").to(sink, BatchPolicy.ofBytes(5));
+
+    await().until(() -> sink.batches.size() == 4);
+    assertThat(sink.batches).containsExactly(list("aaaa", "bb"), list("cccc", "d"), list("eeeeee"), list("f"));
+  }
+
+  @Test
+  public void testBatchesByLinger() {
+    BatchSink<Integer> sink = new BatchSink<>();
+    Source.fromPayloads(Flowable.just(1, 2)
+      .concatWith(Flowable.just(3).delay(500, TimeUnit.MILLISECONDS))
+      .concatWith(Flowable.never()))
+      .to(sink, BatchPolicy.ofSize(100).withLinger(100, TimeUnit.MILLISECONDS));
+
+    await().until(() -> sink.batches.size() == 2);
+    assertThat(sink.batches).containsExactly(list(1, 2), list(3));
+  }
+
+  @Test
+  public void testDefaultBatchDispatch() {
+    List<Integer> received = new CopyOnWriteArrayList<>();
+    Sink<Integer> sink = Sink.forEachPayload(received::add);
+    Source.fromPayloads(Flowable.range(0, 1000)).to(sink, BatchPolicy.ofSize(64));
+
+    await().until(() -> received.size() == 1000);
+    assertThat(received).isSorted();
+  }
+
+  @Test
+  public void testListSinkReceivesBatches() {
+    ListSink<Integer> sink = Sink.list();
+    Source.fromPayloads(Flowable.range(0, 100)).to(sink, BatchPolicy.ofSize(10));
+
+    await().until(() -> sink.values().size() == 100);
+    assertThat(sink.values()).isSorted();
+  }
+
+  @Test
+  public void testInvalidPolicies() {
+    assertThatThrownBy(() -> BatchPolicy.ofSize(0)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> BatchPolicy.ofBytes(-1)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> BatchPolicy.ofLinger(0, TimeUnit.SECONDS)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @SafeVarargs
+  private static <T> List<T> list(T... items) {
+    return Arrays.asList(items);
+  }
+
+  private static class BatchSink<T> implements Sink<T> {
+    private final List<List<T>> batches = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Completable dispatch(Message<T> message) {
+      return Completable.error(new UnsupportedOperationException("Batches expected"));
+    }
+
+    @Override
+    public Completable dispatchBatch(List<Message<T>> messages) {
+      return Completable.fromAction(() ->
+        batches.add(messages.stream().map(Message::payload).collect(Collectors.toList())));
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static me.escoffier.fluid.models.Pair.pair;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks the behavior of {@link Source#groupBy(java.util.function.Function, GroupByOptions)}.
+ */
+public class BoundedGroupByTest {
+
+  @Test
+  public void testLeastRecentlyUsedEviction() {
+    GroupByOptions options = new GroupByOptions().setMaxGroups(2);
+    List<Pair<String, List<String>>> groups = Flowable.fromPublisher(
+      Source.from("a", "b", "a", "c", "b").groupBy(Message::payload, options))
+      .flatMapSingle(group -> Flowable.fromPublisher(group).map(Message::payload).toList()
+        .map(list -> pair(group.key(), list)))
+      .toList()
+      .blockingGet();
+
+    // `b` is evicted when `c` arrives, `a` is evicted when `b` arrives again.
+    assertThat(groups).containsExactly(
+      pair("b", Arrays.asList("b")),
+      pair("a", Arrays.asList("a", "a")),
+      pair("c", Arrays.asList("c")),
+      pair("b", Arrays.asList("b")));
+
+    assertThat(options.metrics().createdGroups()).isEqualTo(4);
+    assertThat(options.metrics().overflowEvictions()).isEqualTo(2);
+    assertThat(options.metrics().liveGroups()).isEqualTo(0);
+  }
+
+  @Test
+  public void testGroupKeyHeader() {
+    List<Object> keys = Flowable.fromPublisher(
+      Source.from(1, 2, 3).groupBy(m -> m.payload() % 2, new GroupByOptions().setMaxGroups(10)))
+      .flatMap(group -> group)
+      .map(CommonHeaders::groupKey)
+      .toList()
+      .blockingGet();
+    assertThat(keys).containsExactly(1, 0, 1);
+  }
+
+  @Test
+  public void testOverflowFailure() {
+    GroupByOptions options = new GroupByOptions().setMaxGroups(2).setOverflow(GroupByOptions.Overflow.FAIL);
+    TestSubscriber<Message<String>> subscriber = Flowable.fromPublisher(
+      Source.from("a", "b", "c").groupBy(Message::payload, options))
+      .flatMap(group -> group)
+      .test();
+
+    subscriber.assertError(IllegalStateException.class);
+    subscriber.assertValueCount(2);
+  }
+
+  @Test
+  public void testIdleEviction() {
+    GroupByOptions options = new GroupByOptions().setIdleTimeout(100, TimeUnit.MILLISECONDS);
+    List<Pair<String, List<String>>> completed = new CopyOnWriteArrayList<>();
+    Flowable.fromPublisher(
+      Source.fromPayloads(Flowable.just("a", "b")
+        .concatWith(Flowable.just("a").delay(500, TimeUnit.MILLISECONDS))
+        .concatWith(Flowable.never()))
+        .groupBy(Message::payload, options))
+      .flatMapSingle(group -> Flowable.fromPublisher(group).map(Message::payload).toList()
+        .map(list -> pair(group.key(), list)))
+      .subscribe(completed::add);
+
+    await().until(() -> completed.size() == 3);
+    assertThat(completed).containsExactlyInAnyOrder(
+      pair("a", Arrays.asList("a")),
+      pair("b", Arrays.asList("b")),
+      pair("a", Arrays.asList("a")));
+    assertThat(options.metrics().idleEvictions()).isEqualTo(3);
+    assertThat(options.metrics().liveGroups()).isEqualTo(0);
+  }
+
+  /**
+   * Groups one million distinct keys with at most 1000 open groups.
+   */
+  @Test
+  public void testOneMillionDistinctKeys() {
+    int keys = 1000000;
+    GroupByOptions options = new GroupByOptions().setMaxGroups(1000);
+    AtomicLong maxLive = new AtomicLong();
+    long count = Flowable.fromPublisher(
+      Source.fromPayloads(Flowable.range(0, keys)).groupBy(Message::payload, options))
+      .flatMap(group -> group, Integer.MAX_VALUE)
+      .doOnNext(m -> maxLive.accumulateAndGet(options.metrics().liveGroups(), Math::max))
+      .count()
+      .blockingGet();
+
+    assertThat(count).isEqualTo(keys);
+    assertThat(maxLive.get()).isLessThanOrEqualTo(1000);
+    assertThat(options.metrics().createdGroups()).isEqualTo(keys);
+    assertThat(options.metrics().overflowEvictions()).isEqualTo(keys - 1000);
+    assertThat(options.metrics().idleEvictions()).isEqualTo(0);
+    // The groups still open when the upstream completes are closed.
+    assertThat(options.metrics().liveGroups()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMessagesBufferedByACancelledGroupAreAcknowledged() {
+    List<String> acked = new CopyOnWriteArrayList<>();
+    List<GroupedDataStream<String, String>> groups = new CopyOnWriteArrayList<>();
+    Flowable.fromPublisher(Source.fromPayloads(Flowable.just("a1", "a2", "a3"))
+      .map(m -> m.withAcknowledgement(acknowledgement(m.payload(), acked)))
+      .groupBy(m -> m.payload().substring(0, 1), new GroupByOptions().setMaxGroups(10)))
+      .subscribe(groups::add);
+
+    TestSubscriber<Message<String>> subscriber = Flowable.fromPublisher(groups.get(0)).test(1);
+    subscriber.assertValueCount(1);
+    assertThat(acked).isEmpty();
+
+    subscriber.cancel();
+    assertThat(acked).containsExactly("a2", "a3");
+  }
+
+  @Test
+  public void testMessagesForANewKeyAfterTheMainCancellationAreAcknowledged() {
+    List<String> acked = new CopyOnWriteArrayList<>();
+    GroupedDataStream<String, String> group = Flowable.fromPublisher(
+      Source.fromPayloads(Flowable.just("a1", "b1", "a2"))
+        .map(m -> m.withAcknowledgement(acknowledgement(m.payload(), acked)))
+        .groupBy(m -> m.payload().substring(0, 1), new GroupByOptions().setMaxGroups(10)))
+      .blockingFirst();
+
+    List<String> payloads = Flowable.fromPublisher(group).map(Message::payload).toList().blockingGet();
+    assertThat(payloads).containsExactly("a1", "a2");
+    assertThat(acked).containsExactly("b1");
+  }
+
+  private static Acknowledgement acknowledgement(String id, List<String> acked) {
+    return new Acknowledgement() {
+      @Override
+      public void ack() {
+        acked.add(id);
+      }
+
+      @Override
+      public void nack(Throwable reason) {
+        // Not expected.
+      }
+    };
+  }
+
+}
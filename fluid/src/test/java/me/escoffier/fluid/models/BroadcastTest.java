@@ -0,0 +1,137 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks the behavior of {@link Source#broadcast(int, BroadcastOptions)}.
+ */
+public class BroadcastTest {
+
+  @Test
+  public void testSlowBranchDoesNotStallFastBranch() {
+    BroadcastOptions options = new BroadcastOptions().setBufferSize(16)
+      .setOverflow(BroadcastOptions.Overflow.DROP_OLDEST);
+    List<Source<Integer>> branches = Source.fromPayloads(Flowable.range(0, 1000)).broadcast(2, options);
+
+    TestSubscriber<Integer> slow = branches.get(0).asFlowable().map(Message::payload).test(0);
+    TestSubscriber<Integer> fast = branches.get(1).asFlowable().map(Message::payload).test();
+
+    fast.awaitDone(5, TimeUnit.SECONDS).assertValueCount(1000).assertComplete();
+    assertThat(fast.values()).isSorted();
+    assertThat(options.metrics().lag(0)).isEqualTo(16);
+    assertThat(options.metrics().dropped(0)).isEqualTo(1000 - 16);
+    assertThat(options.metrics().dropped(1)).isEqualTo(0);
+
+    // The slow branch receives the most recent messages.
+    slow.request(Long.MAX_VALUE);
+    slow.awaitDone(5, TimeUnit.SECONDS).assertValueCount(16).assertComplete();
+    assertThat(slow.values()).containsExactly(984, 985, 986, 987, 988, 989, 990, 991, 992, 993, 994, 995, 996, 997,
+      998, 999);
+    assertThat(options.metrics().maxLag()).isEqualTo(0);
+  }
+
+  @Test
+  public void testUnsubscribedBranchDoesNotStallTheOtherBranches() {
+    BroadcastOptions options = new BroadcastOptions().setBufferSize(8)
+      .setOverflow(BroadcastOptions.Overflow.DROP_NEWEST);
+    List<Source<Integer>> branches = Source.fromPayloads(Flowable.range(0, 100)).broadcast(2, options);
+
+    branches.get(0).asFlowable().map(Message::payload).test()
+      .awaitDone(5, TimeUnit.SECONDS).assertValueCount(100).assertComplete();
+    assertThat(options.metrics().lag(1)).isEqualTo(8);
+    assertThat(options.metrics().dropped(1)).isEqualTo(92);
+
+    // A late subscriber receives the buffered messages.
+    branches.get(1).asFlowable().map(Message::payload).test()
+      .awaitDone(5, TimeUnit.SECONDS).assertValues(0, 1, 2, 3, 4, 5, 6, 7).assertComplete();
+  }
+
+  @Test
+  public void testOverflowFailsTheSlowBranchOnly() {
+    BroadcastOptions options = new BroadcastOptions().setBufferSize(4).setOverflow(BroadcastOptions.Overflow.FAIL);
+    List<Source<Integer>> branches = Source.fromPayloads(Flowable.range(0, 100)).broadcast(2, options);
+
+    TestSubscriber<Integer> slow = branches.get(0).asFlowable().map(Message::payload).test(0);
+    TestSubscriber<Integer> fast = branches.get(1).asFlowable().map(Message::payload).test();
+
+    fast.awaitDone(5, TimeUnit.SECONDS).assertValueCount(100).assertComplete();
+    slow.request(Long.MAX_VALUE);
+    slow.awaitDone(5, TimeUnit.SECONDS).assertValues(0, 1, 2, 3).assertError(IllegalStateException.class);
+  }
+
+  @Test
+  public void testBlockPacesTheBranches() {
+    BroadcastOptions options = new BroadcastOptions().setBufferSize(4);
+    List<Source<Integer>> branches = Source.fromPayloads(Flowable.range(0, 100)).broadcast(2, options);
+
+    TestSubscriber<Integer> slow = branches.get(0).asFlowable().map(Message::payload).test(0);
+    TestSubscriber<Integer> fast = branches.get(1).asFlowable().map(Message::payload).test();
+
+    await().until(() -> fast.valueCount() == 4);
+    assertThat(options.metrics().lag(0)).isEqualTo(4);
+    assertThat(fast.valueCount()).isEqualTo(4);
+
+    slow.request(Long.MAX_VALUE);
+    slow.awaitDone(5, TimeUnit.SECONDS).assertValueCount(100).assertComplete();
+    fast.awaitDone(5, TimeUnit.SECONDS).assertValueCount(100).assertComplete();
+    assertThat(options.metrics().dropped(0)).isEqualTo(0);
+    assertThat(options.metrics().dropped(1)).isEqualTo(0);
+  }
+
+  @Test
+  public void testNamedBranches() {
+    BroadcastOptions options = new BroadcastOptions();
+    Map<String, Source<Integer>> branches = Source.fromPayloads(Flowable.range(1, 10))
+      .broadcast(options, "a", "b", "c");
+
+    assertThat(branches).containsOnlyKeys("a", "b", "c");
+    assertThat(options.metrics().branches()).isEqualTo(3);
+    for (Map.Entry<String, Source<Integer>> entry : branches.entrySet()) {
+      assertThat(entry.getValue().name()).isEqualTo(entry.getKey());
+      entry.getValue().asFlowable().map(Message::payload).test()
+        .awaitDone(5, TimeUnit.SECONDS).assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+    }
+  }
+
+  @Test
+  public void testMessagesAreAcknowledgedOnceEveryBranchHasProcessedThem() {
+    List<Integer> acked = new CopyOnWriteArrayList<>();
+    BroadcastOptions options = new BroadcastOptions().setBufferSize(8)
+      .setOverflow(BroadcastOptions.Overflow.DROP_NEWEST);
+    List<Source<Integer>> branches = Source.from(Flowable.range(0, 100)
+      .map(i -> new Message<>(i).withAcknowledgement(new Acknowledgement() {
+        @Override
+        public void ack() {
+          acked.add(i);
+        }
+
+        @Override
+        public void nack(Throwable reason) {
+          // Not used
+        }
+      }))).broadcast(2, options);
+
+    TestSubscriber<Message<Integer>> slow = branches.get(1).asFlowable().test(0);
+    branches.get(0).asFlowable().doOnNext(Message::ack).test()
+      .awaitDone(5, TimeUnit.SECONDS).assertValueCount(100);
+
+    // The messages dropped by the slow branch are acknowledged, the buffered ones are still pending.
+    await().until(() -> acked.size() == 92);
+    assertThat(options.metrics().dropped(1)).isEqualTo(92);
+    assertThat(acked).doesNotContain(0, 1, 2, 3, 4, 5, 6, 7);
+
+    // The messages discarded by the cancellation are acknowledged too.
+    slow.cancel();
+    assertThat(acked).hasSize(100);
+  }
+}
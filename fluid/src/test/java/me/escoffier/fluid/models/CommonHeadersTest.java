@@ -42,4 +42,47 @@ public class CommonHeadersTest {
     assertThat(originalOpt(messageWithoutCommonHeaders)).isEmpty();
   }
 
+  @Test
+  public void shouldStoreCommonHeadersInSlots() {
+    Message<String> message = new Message<>("payload")
+      .with(KEY, "key")
+      .with(PARTITION, 2)
+      .with(TIMESTAMP, 10L)
+      .with("custom", "value");
+
+    assertThat(key(message)).isEqualTo("key");
+    assertThat(partition(message)).isEqualTo(2);
+    assertThat(timestamp(message)).isEqualTo(10L);
+    assertThat(checksum(message)).isNull();
+    assertThat((String) message.get(KEY)).isEqualTo("key");
+    assertThat(message.headers()).containsOnlyKeys(KEY, PARTITION, TIMESTAMP, "custom");
+
+    Message<String> withoutKey = message.without(KEY);
+    assertThat(keyOpt(withoutKey)).isEmpty();
+    assertThat(withoutKey.headers()).containsOnlyKeys(PARTITION, TIMESTAMP, "custom");
+    assertThat(key(message)).isEqualTo("key");
+  }
+
+  @Test
+  public void shouldKeepNullCommonHeaders() {
+    Message<String> message = new Message<>("payload").with(KEY, null);
+    assertThat(key(message)).isNull();
+    assertThat(message.headers()).containsKey(KEY);
+  }
+
+  @Test
+  public void shouldConvertOrIgnoreTheNumericHeadersSetByTheUser() {
+    Message<String> message = new Message<>("payload")
+      .with(PARTITION, "a")
+      .with(TIMESTAMP, 10)
+      .with(CHECKSUM, "c");
+
+    assertThat(partition(message)).isNull();
+    assertThat(timestamp(message)).isEqualTo(10L);
+    assertThat(checksum(message)).isNull();
+    // The raw values are still available.
+    assertThat((String) message.get(PARTITION)).isEqualTo("a");
+    assertThat(partition(message.with(PARTITION, 3L))).isEqualTo(3);
+  }
+
 }
@@ -4,6 +4,7 @@ import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.entry;
@@ -68,4 +69,32 @@ public class DataTest {
       .isEqualTo("{\"payload\":\"hello\", \"headers\":{\"key\":\"value\",\"foo\":\"25\"}}");
   }
 
+  @Test
+  public void testLazyHeaders() {
+    AtomicInteger calls = new AtomicInteger();
+    Message<String> message = Message.lazy("hello", "source", source -> {
+      calls.incrementAndGet();
+      Map<String, Object> headers = new HashMap<>();
+      headers.put("foo", "bar");
+      headers.put(CommonHeaders.ORIGINAL, source);
+      return headers;
+    });
+
+    Message<Integer> mapped = message.with(2);
+    assertThat(mapped.payload()).isEqualTo(2);
+    assertThat(calls).hasValue(0);
+
+    String h = message.get("foo");
+    assertThat(h).isEqualTo("bar");
+    assertThat(CommonHeaders.<String>original(message)).isEqualTo("source");
+    assertThat(message.headers()).hasSize(2);
+    assertThat(calls).hasValue(1);
+
+    Message<String> updated = message.with("k", "v");
+    assertThat(updated.headers()).containsOnlyKeys("foo", "k", CommonHeaders.ORIGINAL);
+    assertThat(mapped.headers()).containsOnlyKeys("foo", CommonHeaders.ORIGINAL);
+    // The derived messages share the extracted headers.
+    assertThat(calls).hasValue(1);
+  }
+
 }
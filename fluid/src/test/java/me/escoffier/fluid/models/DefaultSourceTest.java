@@ -6,15 +6,24 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import io.reactivex.Flowable;
 import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
 import me.escoffier.fluid.impl.ListSink;
+import me.escoffier.fluid.registry.FluidRegistry;
 import org.junit.Test;
 import org.reactivestreams.Publisher;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
@@ -381,6 +390,190 @@ public class DefaultSourceTest {
     assertThat(right.values()).containsExactly("1", "2", "4", "5", "7", "8", "10");
   }
 
+  @Test
+  public void testRoute() {
+    AtomicInteger calls = new AtomicInteger();
+    List<Source<Integer>> branches = Source.from(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)
+      .route(m -> {
+        calls.incrementAndGet();
+        return m.payload() == 10 ? -1 : m.payload() % 3;
+      }, 3);
+
+    assertThat(branches).hasSize(3);
+    ListSink<Integer> zero = Sink.list();
+    ListSink<Integer> one = Sink.list();
+    ListSink<Integer> two = Sink.list();
+    branches.get(0).to(zero);
+    branches.get(1).to(one);
+    branches.get(2).to(two);
+
+    assertThat(zero.values()).containsExactly(3, 6, 9);
+    assertThat(one.values()).containsExactly(1, 4, 7);
+    assertThat(two.values()).containsExactly(2, 5, 8);
+    assertThat(calls.get()).isEqualTo(10);
+  }
+
+  @Test
+  public void testRouteWithNames() {
+    Map<String, Predicate<Message<Integer>>> routes = new LinkedHashMap<>();
+    routes.put("small", m -> m.payload() < 3);
+    routes.put("even", m -> m.payload() % 2 == 0);
+    Map<String, Source<Integer>> branches = Source.from(1, 2, 3, 4, 5, 6).route(routes);
+
+    assertThat(branches).containsOnlyKeys("small", "even");
+    assertThat(branches.get("even").name()).isEqualTo("even");
+    ListSink<Integer> small = Sink.list();
+    ListSink<Integer> even = Sink.list();
+    branches.get("small").to(small);
+    branches.get("even").to(even);
+
+    assertThat(small.values()).containsExactly(1, 2);
+    assertThat(even.values()).containsExactly(4, 6);
+  }
+
+  @Test
+  public void testRouteWithIndependentBackpressure() {
+    List<Source<Integer>> branches = Source.fromPayloads(Flowable.range(0, 100)).route(m -> m.payload() % 2, 2);
+    TestSubscriber<Integer> slow = branches.get(0).asFlowable().map(Message::payload).test(0);
+    TestSubscriber<Integer> fast = branches.get(1).asFlowable().map(Message::payload).test();
+
+    fast.assertValueCount(50).assertComplete();
+    slow.assertNoValues().assertNotComplete();
+
+    slow.request(Long.MAX_VALUE);
+    slow.assertValueCount(50).assertComplete();
+  }
+
+  @Test
+  public void testRouteWithInvalidIndex() {
+    List<Source<Integer>> branches = Source.from(1, 2, 3).route(m -> m.payload(), 2);
+    TestSubscriber<Message<Integer>> first = branches.get(0).asFlowable().test();
+    TestSubscriber<Message<Integer>> second = branches.get(1).asFlowable().test();
+
+    first.assertError(IndexOutOfBoundsException.class);
+    second.assertValueCount(1).assertError(IndexOutOfBoundsException.class);
+  }
+
+  @Test
+  public void testFusedPayloadOperators() {
+    ListSink<String> sink = Sink.list();
+    Source.from(new Message<>(1).with("foo", "bar"), new Message<>(2), new Message<>(3), new Message<>(4))
+      .fused()
+      .mapPayload(i -> i * 10)
+      .filterPayload(i -> i > 10)
+      .filterNotPayload(i -> i == 30)
+      .mapPayload(i -> Integer.toString(i))
+      .to(sink);
+
+    assertThat(sink.values()).containsExactly("20", "40");
+
+    sink = Sink.list();
+    Source<Integer> source = Source.from(1, 2, 3).fused();
+    assertThat(source.attr(DefaultSource.FUSED_ATTRIBUTE)).isNotEmpty();
+    source.filterPayload(i -> i != 2).named("fused").mapPayload(i -> Integer.toString(i)).to(sink);
+    assertThat(sink.values()).containsExactly("1", "3");
+  }
+
+  @Test
+  public void testFusedPayloadOperatorsKeepTheHeadersAndTheEnvelope() {
+    Message<Integer> message = new Message<>(1).with("foo", "bar");
+    ListSink<Integer> sink = Sink.list();
+    Source.just(message).fused()
+      .filterPayload(i -> i > 0)
+      .filterNotPayload(i -> i > 10)
+      .to(sink);
+    assertThat(sink.data()).hasSize(1);
+    assertThat(sink.data().get(0)).isSameAs(message);
+
+    ListSink<String> mapped = Sink.list();
+    Source.just(message).fused().mapPayload(i -> "v" + i).mapPayload(String::toUpperCase).to(mapped);
+    assertThat(mapped.values()).containsExactly("V1");
+    assertThat((String) mapped.data().get(0).get("foo")).isEqualTo("bar");
+  }
+
+  @Test
+  public void testFusedPayloadOperatorsPropagateFailures() {
+    List<Throwable> errors = new ArrayList<>();
+    Source.from(1, 2, 3).fused()
+      .mapPayload(i -> {
+        if (i == 2) {
+          throw new IllegalArgumentException("boom");
+        }
+        return i;
+      })
+      .asFlowable()
+      .subscribe(x -> { }, errors::add);
+    assertThat(errors).hasSize(1);
+    assertThat(errors.get(0)).hasMessage("boom");
+  }
+
+  @Test
+  public void testFusedPlanWithMessageOperatorsAndBarriers() {
+    ListSink<Integer> sink = Sink.list();
+    Source.from(1, 2, 3, 4, 5, 6).fused()
+      .map(m -> m.with("seen", true))
+      .filter(m -> m.get("seen") != null)
+      .filterNot(m -> m.payload() == 6)
+      .flatMapPayload(i -> Flowable.just(i, i))
+      .filterPayload(i -> i % 2 == 1)
+      .scanPayloads(0, (acc, i) -> acc + i)
+      .mapPayload(i -> i * 10)
+      .concatMap(m -> Flowable.just(m))
+      .named("planned")
+      .to(sink);
+
+    assertThat(sink.values()).containsExactly(0, 10, 20, 50, 80, 130, 180);
+  }
+
+  @Test
+  public void testFusedPlanIsCompiledOnce() {
+    Source<String> source = Source.from(1, 2, 3).fused()
+      .mapPayload(i -> i + 1)
+      .mapPayload(i -> Integer.toString(i));
+
+    ListSink<String> first = Sink.list();
+    ListSink<String> second = Sink.list();
+    source.to(first);
+    source.to(second);
+    assertThat(first.values()).containsExactly("2", "3", "4");
+    assertThat(second.values()).containsExactly("2", "3", "4");
+  }
+
+  @Test
+  public void testDispatchOn() {
+    ListSink<String> sink = Sink.list();
+    Source.from(1, 2, 3)
+      .dispatchOn(Schedulers.single())
+      .mapPayload(i -> Thread.currentThread().getName())
+      .to(sink);
+
+    await().until(() -> sink.values().size() == 3);
+    assertThat(sink.values()).allSatisfy(name -> assertThat(name).startsWith("RxSingleScheduler"));
+  }
+
+  @Test
+  public void testEmitOnNamedExecutor() {
+    ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "my-executor"));
+    FluidRegistry.register("my-executor", Schedulers.from(executor));
+    try {
+      ListSink<String> sink = Sink.list();
+      Source.from(1, 2, 3)
+        .emitOn("my-executor")
+        .mapPayload(i -> i + "@" + Thread.currentThread().getName())
+        .to(sink);
+
+      await().until(() -> sink.values().size() == 3);
+      assertThat(sink.values()).containsExactly("1@my-executor", "2@my-executor", "3@my-executor");
+    } finally {
+      FluidRegistry.unregisterScheduler("my-executor");
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDispatchOnUnknownExecutor() {
+    Source.from(1, 2, 3).dispatchOn("missing");
+  }
 
   private static Message<Double> random() {
     return new Message<>(Math.random()).with("X-Timestamp", System.currentTimeMillis()).with("Random", true);
@@ -0,0 +1,110 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.subjects.CompletableSubject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks the behavior of {@link Source#to(Sink, DispatchOptions)}.
+ */
+public class DispatchOptionsTest {
+
+  @Test
+  public void testMaxInFlight() {
+    PendingSink<Integer> sink = new PendingSink<>();
+    DispatchOptions options = new DispatchOptions().setMaxInFlight(5);
+    Source.fromPayloads(Flowable.range(0, 100)).to(sink, options);
+
+    assertThat(sink.pending).hasSize(5);
+    assertThat(options.metrics().inFlight()).isEqualTo(5);
+
+    sink.pending.get(0).onComplete();
+    assertThat(sink.pending).hasSize(6);
+    assertThat(options.metrics().inFlight()).isEqualTo(5);
+    assertThat(options.metrics().completed()).isEqualTo(1);
+
+    while (options.metrics().inFlight() > 0) {
+      sink.pending.forEach(CompletableSubject::onComplete);
+    }
+    assertThat(sink.pending).hasSize(100);
+    assertThat(options.metrics().completed()).isEqualTo(100);
+    assertThat(options.metrics().peakInFlight()).isEqualTo(5);
+  }
+
+  @Test
+  public void testOrderedCompletions() {
+    PendingSink<Integer> sink = new PendingSink<>();
+    DispatchOptions options = new DispatchOptions().setMaxInFlight(3).setOrdered(true);
+    Source.from(1, 2, 3, 4).to(sink, options);
+
+    assertThat(sink.pending).hasSize(3);
+    // The second and third dispatches complete before the first one, they stay in-flight.
+    sink.pending.get(2).onComplete();
+    sink.pending.get(1).onComplete();
+    assertThat(options.metrics().completed()).isEqualTo(0);
+    assertThat(options.metrics().inFlight()).isEqualTo(3);
+    assertThat(sink.pending).hasSize(3);
+
+    sink.pending.get(0).onComplete();
+    assertThat(options.metrics().completed()).isEqualTo(3);
+    assertThat(sink.pending).hasSize(4);
+    sink.pending.get(3).onComplete();
+    assertThat(options.metrics().completed()).isEqualTo(4);
+    assertThat(options.metrics().inFlight()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFailuresAreCounted() {
+    DispatchOptions options = new DispatchOptions().setMaxInFlight(1);
+    Source.from(1, 2, 3).to(m -> Completable.error(new Exception("boom")), options);
+    assertThat(options.metrics().failed()).isEqualTo(1);
+    assertThat(options.metrics().inFlight()).isEqualTo(0);
+  }
+
+  @Test
+  public void testInvalidMaxInFlight() {
+    assertThatThrownBy(() -> Source.from(1).to(Sink.discard(), 0)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testDefaultDispatchIsBoundedByTheSink() {
+    PendingSink<Integer> sink = new PendingSink<>(4);
+    Source.fromPayloads(Flowable.range(0, 100)).to(sink);
+    assertThat(sink.pending).hasSize(4);
+
+    sink.pending.get(0).onComplete();
+    assertThat(sink.pending).hasSize(5);
+  }
+
+  private static class PendingSink<T> implements Sink<T> {
+    private final List<CompletableSubject> pending = new CopyOnWriteArrayList<>();
+    private final int maxInFlight;
+
+    private PendingSink() {
+      this(Integer.MAX_VALUE);
+    }
+
+    private PendingSink(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public Completable dispatch(Message<T> message) {
+      CompletableSubject subject = CompletableSubject.create();
+      pending.add(subject);
+      return subject;
+    }
+
+    @Override
+    public int maxInFlight() {
+      return maxInFlight;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import me.escoffier.fluid.impl.ListSink;
+import me.escoffier.fluid.registry.FluidRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks the per-message failure handling configured by {@link Source#onErrorRetry(Backoff)},
+ * {@link Source#onErrorSkip()} and {@link Source#onErrorDeadLetter(String)}.
+ */
+public class FailurePolicyTest {
+
+  @After
+  public void tearDown() {
+    FluidRegistry.reset();
+  }
+
+  @Test
+  public void testFailFastByDefault() {
+    TestSubscriber<Integer> subscriber = Flowable.fromPublisher(
+      Source.from(1, 2, 3).mapPayload(this::failOnTwo))
+      .map(Message::payload)
+      .test();
+
+    subscriber.assertError(IllegalArgumentException.class);
+    subscriber.assertValues(1);
+  }
+
+  @Test
+  public void testSkip() {
+    Source<Integer> source = Source.from(1, 2, 3).onErrorSkip();
+    List<Integer> list = Flowable.fromPublisher(source.mapPayload(this::failOnTwo))
+      .map(Message::payload)
+      .toList()
+      .blockingGet();
+
+    assertThat(list).containsExactly(1, 3);
+    assertThat(source.failures().failures()).isEqualTo(1);
+    assertThat(source.failures().skipped()).isEqualTo(1);
+    assertThat(source.failures().retries()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRetry() {
+    AtomicInteger attempts = new AtomicInteger();
+    Source<Integer> source = Source.from(1, 2, 3)
+      .onErrorRetry(Backoff.exponential(10, 100, TimeUnit.MILLISECONDS, 3));
+    List<Integer> list = Flowable.fromPublisher(source.mapPayload(i -> {
+      if (i == 2 && attempts.incrementAndGet() < 3) {
+        throw new IllegalStateException("Transient failure");
+      }
+      return i;
+    }))
+      .map(Message::payload)
+      .toList()
+      .blockingGet();
+
+    assertThat(list).containsExactly(1, 2, 3);
+    assertThat(attempts.get()).isEqualTo(3);
+    assertThat(source.failures().retries()).isEqualTo(2);
+    assertThat(source.failures().skipped()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRetryInFusedMode() {
+    AtomicInteger attempts = new AtomicInteger();
+    Source<Integer> source = Source.from(1, 2, 3).fused()
+      .mapPayload(i -> i * 10)
+      .onErrorRetry(Backoff.fixed(1, TimeUnit.MILLISECONDS, 3));
+    List<Integer> list = Flowable.fromPublisher(source.mapPayload(i -> {
+      if (i == 20 && attempts.incrementAndGet() < 3) {
+        throw new IllegalStateException("Transient failure");
+      }
+      return i;
+    }))
+      .map(Message::payload)
+      .toList()
+      .blockingGet();
+
+    assertThat(list).containsExactly(10, 20, 30);
+    assertThat(source.failures().retries()).isEqualTo(2);
+  }
+
+  @Test
+  public void testRetryThenSkip() {
+    AtomicInteger attempts = new AtomicInteger();
+    Source<Integer> source = Source.from(1, 2, 3)
+      .onErrorRetry(Backoff.fixed(1, TimeUnit.MILLISECONDS, 2))
+      .onErrorSkip();
+    List<Integer> list = Flowable.fromPublisher(source.mapPayload(i -> {
+      if (i == 2) {
+        attempts.incrementAndGet();
+      }
+      return failOnTwo(i);
+    }))
+      .map(Message::payload)
+      .toList()
+      .blockingGet();
+
+    assertThat(list).containsExactly(1, 3);
+    assertThat(attempts.get()).isEqualTo(3);
+    assertThat(source.failures().retries()).isEqualTo(2);
+    assertThat(source.failures().skipped()).isEqualTo(1);
+  }
+
+  @Test
+  public void testDeadLetter() {
+    ListSink<Integer> dlq = new ListSink<>();
+    FluidRegistry.register("dlq", dlq);
+
+    ListSink<Integer> sink = new ListSink<>();
+    Source<Integer> source = Source.from(1, 2, 3).onErrorDeadLetter("dlq");
+    source.mapPayload(this::failOnTwo).to(sink);
+
+    await().until(() -> sink.values().size() == 2);
+    assertThat(sink.values()).containsExactly(1, 3);
+    assertThat(dlq.values()).containsExactly(2);
+    assertThat(dlq.data().get(0).<Throwable>get(FailurePolicy.FAILURE_HEADER))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThat(source.failures().deadLettered()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSinkFailureSkipped() {
+    Source<Integer> source = Source.from(1, 2, 3).onErrorSkip();
+    AtomicInteger dispatched = new AtomicInteger();
+    source.to(Sink.forEachPayload(i -> {
+      failOnTwo(i);
+      dispatched.incrementAndGet();
+    }));
+
+    await().until(() -> dispatched.get() == 2);
+    assertThat(source.failures().skipped()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFilterFailureSkipped() {
+    Source<Integer> source = Source.from(1, 2, 3, 4).onErrorSkip();
+    List<Integer> list = Flowable.fromPublisher(source.filterPayload(i -> failOnTwo(i) != 3))
+      .map(Message::payload)
+      .toList()
+      .blockingGet();
+
+    assertThat(list).containsExactly(1, 4);
+    assertThat(source.failures().skipped()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFilterNotFailureDeadLettered() {
+    ListSink<Integer> dlq = new ListSink<>();
+    FluidRegistry.register("dlq", dlq);
+
+    ListSink<Integer> sink = new ListSink<>();
+    Source<Integer> source = Source.from(1, 2, 3, 4).onErrorDeadLetter("dlq");
+    source.filterNot(m -> failOnTwo(m.payload()) == 3).to(sink);
+
+    await().until(() -> sink.values().size() == 2);
+    assertThat(sink.values()).containsExactly(1, 4);
+    assertThat(dlq.values()).containsExactly(2);
+    assertThat(source.failures().deadLettered()).isEqualTo(1);
+  }
+
+  @Test
+  public void testScanFailureSkipped() {
+    Source<Integer> source = Source.from(1, 2, 3).onErrorSkip();
+    List<Integer> list = Flowable.fromPublisher(source.scanPayloads(0, (acc, i) -> acc + failOnTwo(i)))
+      .map(Message::payload)
+      .toList()
+      .blockingGet();
+
+    // The failed message leaves the accumulated value unchanged.
+    assertThat(list).containsExactly(0, 1, 4);
+    assertThat(source.failures().skipped()).isEqualTo(1);
+  }
+
+  @Test
+  public void testScanRetried() {
+    AtomicInteger attempts = new AtomicInteger();
+    Source<Integer> source = Source.from(1, 2, 3).onErrorRetry(Backoff.fixed(1, TimeUnit.MILLISECONDS, 3));
+    List<Integer> list = Flowable.fromPublisher(source.scan(new Message<>(0), (acc, m) -> {
+      if (m.payload() == 2 && attempts.incrementAndGet() < 3) {
+        throw new IllegalStateException("Transient failure");
+      }
+      return acc.with(acc.payload() + m.payload());
+    }))
+      .map(Message::payload)
+      .toList()
+      .blockingGet();
+
+    assertThat(list).containsExactly(0, 1, 3, 6);
+    assertThat(source.failures().retries()).isEqualTo(2);
+  }
+
+  private int failOnTwo(int i) {
+    if (i == 2) {
+      throw new IllegalArgumentException("Boom");
+    }
+    return i;
+  }
+
+}
@@ -0,0 +1,79 @@
+package me.escoffier.fluid.models;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Checks the behavior of the persistent {@link Headers} map.
+ */
+public class HeadersTest {
+
+  @Test
+  public void testAddAndRemoveInArrayMode() {
+    Headers headers = Headers.EMPTY.plus("a", 1).plus("b", 2).plus("c", null);
+    assertThat(headers).hasSize(3).containsExactly(entry("a", 1), entry("b", 2), entry("c", null));
+    assertThat(headers.containsKey("c")).isTrue();
+
+    Headers updated = headers.plus("b", 3);
+    assertThat(updated).containsExactly(entry("a", 1), entry("b", 3), entry("c", null));
+    assertThat(headers.get("b")).isEqualTo(2);
+
+    Headers removed = updated.minus("a");
+    assertThat(removed).containsExactly(entry("b", 3), entry("c", null));
+    assertThat(updated).hasSize(3);
+    assertThat(removed.minus("missing")).isSameAs(removed);
+  }
+
+  @Test
+  public void testAddAndRemoveInTrieMode() {
+    Map<String, Object> reference = new HashMap<>();
+    Headers headers = Headers.EMPTY;
+    for (int i = 0; i < 1000; i++) {
+      headers = headers.plus("key-" + i, i);
+      reference.put("key-" + i, i);
+    }
+    assertThat(headers).hasSize(1000).isEqualTo(reference);
+
+    for (int i = 0; i < 1000; i += 2) {
+      headers = headers.minus("key-" + i);
+      reference.remove("key-" + i);
+    }
+    assertThat(headers).hasSize(500).isEqualTo(reference);
+    assertThat(headers.get("key-1")).isEqualTo(1);
+    assertThat(headers.get("key-2")).isNull();
+  }
+
+  @Test
+  public void testHashCollisions() {
+    // "Aa" and "BB" have the same hash code.
+    Headers headers = Headers.EMPTY;
+    for (int i = 0; i < Headers.ARRAY_THRESHOLD; i++) {
+      headers = headers.plus("filler-" + i, i);
+    }
+    headers = headers.plus("Aa", "first").plus("BB", "second").plus("AaAa", 1).plus("BBBB", 2);
+    assertThat(headers).hasSize(Headers.ARRAY_THRESHOLD + 4)
+      .contains(entry("Aa", "first"), entry("BB", "second"), entry("AaAa", 1), entry("BBBB", 2));
+
+    headers = headers.minus("Aa");
+    assertThat(headers).doesNotContainKey("Aa").contains(entry("BB", "second"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testImmutability() {
+    Headers.EMPTY.plus("a", 1).put("b", 2);
+  }
+
+  @Test
+  public void testHeadersAreSharedBetweenMessages() {
+    Message<String> message = new Message<>("hello").with("a", 1).with("b", 2);
+    Message<Integer> derived = message.with(1);
+    assertThat(derived.headers()).isSameAs(message.headers());
+    assertThat(new Message<>("foo", message.headers()).headers()).isSameAs(message.headers());
+  }
+
+}
@@ -0,0 +1,123 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks the behavior of {@link Source#parallel(int)} and {@link Source#parallelByKey(int)}.
+ */
+public class ParallelSourceTest {
+
+  @Test
+  public void testParallelRails() {
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    List<Integer> results = Flowable.fromPublisher(
+      Source.fromPayloads(Flowable.range(0, 10000))
+        .parallel(4)
+        .mapPayload(i -> {
+          threads.add(Thread.currentThread().getName());
+          return i * 2;
+        })
+        .filterPayload(i -> i % 4 == 0)
+        .sequential())
+      .map(Message::payload)
+      .toList()
+      .blockingGet();
+
+    assertThat(results).hasSize(5000).doesNotHaveDuplicates().allMatch(i -> i % 4 == 0);
+    assertThat(threads).isNotEmpty().allMatch(name -> name.startsWith("RxComputation"));
+  }
+
+  @Test
+  public void testHeadersAreKept() {
+    List<Message<String>> results = Flowable.fromPublisher(
+      Source.from(Flowable.range(0, 100).map(i -> new Message<>(i).with("index", i)))
+        .parallel(3)
+        .mapPayload(Object::toString)
+        .sequential())
+      .toList()
+      .blockingGet();
+
+    assertThat(results).hasSize(100)
+      .allMatch(m -> m.payload().equals(m.get("index").toString()));
+  }
+
+  @Test
+  public void testPerKeyOrder() {
+    int keys = 10;
+    List<Message<Integer>> messages = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      messages.add(new Message<>(i).with(CommonHeaders.KEY, "key-" + (i % keys)));
+    }
+
+    Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+    List<Message<Integer>> results = Flowable.fromPublisher(
+      Source.from(Flowable.fromIterable(messages))
+        .parallelByKey(4)
+        .map(m -> {
+          threads.computeIfAbsent(CommonHeaders.key(m), k -> ConcurrentHashMap.newKeySet())
+            .add(Thread.currentThread().getName());
+          return m;
+        })
+        .sequential())
+      .toList()
+      .blockingGet();
+
+    assertThat(results).hasSize(messages.size());
+    Map<String, Integer> last = new HashMap<>();
+    for (Message<Integer> message : results) {
+      Integer previous = last.put(CommonHeaders.key(message), message.payload());
+      if (previous != null) {
+        assertThat(message.payload()).isGreaterThan(previous);
+      }
+    }
+    // Each key is processed by a single rail.
+    assertThat(threads).hasSize(keys);
+    assertThat(threads.values()).allMatch(set -> set.size() == 1);
+  }
+
+  @Test
+  public void testMessagesWithoutKeyAreSpread() {
+    long count = Flowable.fromPublisher(
+      Source.fromPayloads(Flowable.range(0, 1000))
+        .parallelByKey(2)
+        .sequential())
+      .count()
+      .blockingGet();
+    assertThat(count).isEqualTo(1000);
+  }
+
+  @Test
+  public void testFailureIsPropagated() {
+    Flowable.fromPublisher(
+      Source.fromPayloads(Flowable.range(0, 100))
+        .parallelByKey(2)
+        .mapPayload(i -> {
+          if (i == 50) {
+            throw new IllegalStateException("boom");
+          }
+          return i;
+        })
+        .sequential())
+      .test()
+      .awaitDone(5, TimeUnit.SECONDS)
+      .assertError(IllegalStateException.class);
+  }
+
+  @Test
+  public void testInvalidParallelism() {
+    assertThatThrownBy(() -> Source.from(1, 2, 3).parallel(0)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> Source.from(1, 2, 3).parallelByKey(-1)).isInstanceOf(IllegalArgumentException.class);
+  }
+}
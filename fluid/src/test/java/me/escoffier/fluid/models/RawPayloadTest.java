@@ -0,0 +1,61 @@
+package me.escoffier.fluid.models;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of {@link RawPayload} and {@link Message#payloadAs(Class)}.
+ */
+public class RawPayloadTest {
+
+  private final AtomicInteger decodings = new AtomicInteger();
+
+  private final byte[] bytes = "hello".getBytes(StandardCharsets.UTF_8);
+
+  private final RawPayload payload = new RawPayload(bytes, b -> {
+    decodings.incrementAndGet();
+    return new String(b, StandardCharsets.UTF_8);
+  });
+
+  @Test
+  public void testTheBytesAreNotCopied() {
+    Message<RawPayload> message = new Message<>(payload);
+    assertThat(message.payloadAs(byte[].class)).isSameAs(bytes);
+    assertThat(message.payloadAs(ByteBuffer.class).isReadOnly()).isTrue();
+    assertThat(message.payloadAs(ByteBuffer.class).remaining()).isEqualTo(5);
+    assertThat(message.payloadAs(RawPayload.class)).isSameAs(payload);
+    assertThat(decodings).hasValue(0);
+  }
+
+  @Test
+  public void testDecodingIsLazyAndCached() {
+    Message<RawPayload> message = new Message<>(payload).with("foo", "bar");
+    assertThat(decodings).hasValue(0);
+    assertThat(message.payloadAs(String.class)).isEqualTo("hello");
+    assertThat(message.with("baz", 1).payloadAs(String.class)).isEqualTo("hello");
+    assertThat(message.payloadAs(CharSequence.class)).isEqualTo("hello");
+    assertThat(decodings).hasValue(1);
+  }
+
+  @Test(expected = ClassCastException.class)
+  public void testDecodingToAnotherType() {
+    new Message<>(payload).payloadAs(Integer.class);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDecodingWithoutDecoder() {
+    new Message<>(new RawPayload(bytes)).payloadAs(String.class);
+  }
+
+  @Test
+  public void testPayloadAsWithoutRawPayload() {
+    Message<String> message = new Message<>("hello");
+    assertThat(message.payloadAs(CharSequence.class)).isEqualTo("hello");
+  }
+
+}
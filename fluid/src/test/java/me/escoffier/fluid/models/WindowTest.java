@@ -0,0 +1,237 @@
+package me.escoffier.fluid.models;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import me.escoffier.fluid.impl.ListSink;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks the behavior of {@link Source#window(Window)}.
+ */
+public class WindowTest {
+
+  @Test
+  public void testTumblingCountWindows() {
+    ListSink<List<Integer>> sink = Sink.list();
+    Source.from(1, 2, 3, 4, 5, 6, 7).window(Window.tumbling(3)).to(sink);
+    assertThat(sink.values()).containsExactly(list(1, 2, 3), list(4, 5, 6), list(7));
+  }
+
+  @Test
+  public void testSlidingCountWindows() {
+    ListSink<List<Integer>> sink = Sink.list();
+    Source.from(1, 2, 3, 4, 5).window(Window.sliding(3, 2)).to(sink);
+    assertThat(sink.values()).containsExactly(list(1, 2, 3), list(3, 4, 5), list(5));
+  }
+
+  @Test
+  public void testWindowsKeepTheHeaders() {
+    List<Message<List<String>>> windows = new ArrayList<>();
+    Source.from(new Message<>("a").with("k", 1), new Message<>("b").with("k", 2), new Message<>("c").with("k", 3))
+      .window(Window.tumbling(2))
+      .to(Sink.forEach(windows::add));
+
+    assertThat(windows).hasSize(2);
+    assertThat(windows.get(0).payload()).containsExactly("a", "b");
+    assertThat(windows.get(0).<Integer>get("k")).isEqualTo(2);
+    assertThat(windows.get(1).payload()).containsExactly("c");
+    assertThat(windows.get(1).<Integer>get("k")).isEqualTo(3);
+  }
+
+  @Test
+  public void testTumblingTimeWindows() {
+    ListSink<List<Long>> sink = Sink.list();
+    Source.fromPayloads(Flowable.interval(10, TimeUnit.MILLISECONDS).take(30).concatWith(Flowable.never()))
+      .window(Window.tumbling(100, TimeUnit.MILLISECONDS))
+      .to(sink);
+
+    // Windows are emitted by the timers as the source never completes.
+    await().until(() -> sink.values().stream().mapToInt(List::size).sum() == 30);
+    List<Long> all = new ArrayList<>();
+    sink.values().forEach(all::addAll);
+    assertThat(all).isSorted().hasSize(30);
+    assertThat(sink.values()).allSatisfy(window -> assertThat(window).isNotEmpty());
+  }
+
+  @Test
+  public void testSlidingTimeWindows() {
+    ListSink<List<Long>> sink = Sink.list();
+    Source.fromPayloads(Flowable.interval(10, TimeUnit.MILLISECONDS).take(20))
+      .window(Window.sliding(100, 50, TimeUnit.MILLISECONDS))
+      .to(sink);
+
+    await().until(() -> sink.values().stream().anyMatch(w -> w.contains(19L)));
+    // Each payload belongs to two windows.
+    await().until(() -> sink.values().stream().mapToInt(List::size).sum() == 40);
+  }
+
+  @Test
+  public void testSessionWindows() {
+    ListSink<List<Integer>> sink = Sink.list();
+    Source.fromPayloads(Flowable.just(1, 2, 3)
+      .concatWith(Flowable.just(4, 5).delay(400, TimeUnit.MILLISECONDS))
+      .concatWith(Flowable.never()))
+      .window(Window.session(100, TimeUnit.MILLISECONDS))
+      .to(sink);
+
+    await().until(() -> sink.values().size() == 2);
+    assertThat(sink.values()).containsExactly(list(1, 2, 3), list(4, 5));
+  }
+
+  @Test
+  public void testWindowsRespectBackPressure() {
+    TestSubscriber<Message<List<Integer>>> subscriber = new TestSubscriber<>(1);
+    Source.fromPayloads(Flowable.range(0, 1000)).window(Window.tumbling(10)).subscribe(subscriber);
+
+    subscriber.assertValueCount(1);
+    subscriber.request(2);
+    subscriber.assertValueCount(3);
+    subscriber.request(Long.MAX_VALUE);
+    subscriber.assertValueCount(100).assertComplete();
+  }
+
+  @Test
+  public void testWindowsPropagateFailures() {
+    TestSubscriber<Message<List<Integer>>> subscriber = new TestSubscriber<>();
+    Source.fromPayloads(Flowable.just(1, 2, 3).concatWith(Flowable.error(new Exception("boom"))))
+      .window(Window.tumbling(2))
+      .subscribe(subscriber);
+
+    subscriber.assertError(Exception.class).assertErrorMessage("boom");
+  }
+
+  @Test
+  public void testEventTimeWindows() {
+    Pair<Source<List<String>>, Source<String>> pair = Source.from(
+      event("a", 1), event("b", 5), event("c", 12), event("d", 8), event("e", 25), event("f", 2))
+      .window(Window.tumbling(10, TimeUnit.MILLISECONDS), EventTime.of(m -> m.get("ts")));
+
+    ListSink<List<String>> windows = Sink.list();
+    ListSink<String> late = Sink.list();
+    pair.right().to(late);
+    pair.left().to(windows);
+
+    assertThat(windows.values()).containsExactly(list("a", "b"), list("c"), list("e"));
+    assertThat(late.values()).containsExactly("d", "f");
+  }
+
+  @Test
+  public void testEventTimeWindowsWithAllowedLateness() {
+    Pair<Source<List<String>>, Source<String>> pair = Source.from(
+      event("a", 1), event("b", 5), event("c", 12), event("d", 8), event("e", 25), event("f", 2))
+      .window(Window.tumbling(10, TimeUnit.MILLISECONDS), EventTime.<String>of(m -> m.get("ts"))
+        .withAllowedLateness(5, TimeUnit.MILLISECONDS));
+
+    ListSink<List<String>> windows = Sink.list();
+    ListSink<String> late = Sink.list();
+    pair.right().to(late);
+    pair.left().to(windows);
+
+    assertThat(windows.values()).containsExactly(list("a", "b"), list("a", "b", "d"), list("c"), list("e"));
+    assertThat(late.values()).containsExactly("f");
+  }
+
+  @Test
+  public void testEventTimeWatermarksArePerPartition() {
+    Pair<Source<List<String>>, Source<String>> pair = Source.from(
+      event("a", 1).with(CommonHeaders.PARTITION, 0),
+      event("b", 2).with(CommonHeaders.PARTITION, 1),
+      event("c", 15).with(CommonHeaders.PARTITION, 0),
+      // Partition 1 is behind, so the first window is still open.
+      event("d", 9).with(CommonHeaders.PARTITION, 1),
+      event("e", 14).with(CommonHeaders.PARTITION, 1),
+      event("f", 3).with(CommonHeaders.PARTITION, 0))
+      .window(Window.tumbling(10, TimeUnit.MILLISECONDS), EventTime.of(m -> m.get("ts")));
+
+    ListSink<List<String>> windows = Sink.list();
+    ListSink<String> late = Sink.list();
+    pair.right().to(late);
+    pair.left().to(windows);
+
+    assertThat(windows.values()).containsExactly(list("a", "b", "d"), list("c", "e"));
+    assertThat(late.values()).containsExactly("f");
+  }
+
+  @Test
+  public void testEventTimeIgnoresNonNumericPartitions() {
+    Pair<Source<List<String>>, Source<String>> pair = Source.from(
+      event("a", 1).with(CommonHeaders.PARTITION, "x"),
+      event("b", 12).with(CommonHeaders.PARTITION, "y"))
+      .window(Window.tumbling(10, TimeUnit.MILLISECONDS), EventTime.of(m -> m.get("ts")));
+
+    ListSink<List<String>> windows = Sink.list();
+    pair.left().to(windows);
+
+    assertThat(windows.values()).containsExactly(list("a"), list("b"));
+  }
+
+  @Test
+  public void testSlidingEventTimeWindows() {
+    Pair<Source<List<String>>, Source<String>> pair = Source.from(
+      event("a", 1), event("b", 6), event("c", 11), event("d", 30))
+      .window(Window.sliding(10, 5, TimeUnit.MILLISECONDS), EventTime.of(m -> m.get("ts")));
+
+    ListSink<List<String>> windows = Sink.list();
+    ListSink<String> late = Sink.list();
+    pair.right().to(late);
+    pair.left().to(windows);
+
+    // Windows: [-5, 5), [0, 10), [5, 15), [10, 20), [25, 35), [30, 40)
+    assertThat(windows.values())
+      .containsExactly(list("a"), list("a", "b"), list("b", "c"), list("c"), list("d"), list("d"));
+    assertThat(late.values()).isEmpty();
+  }
+
+  @Test
+  public void testEventTimeWindowsDoNotWaitForTheLateMessagesSubscriber() {
+    Pair<Source<List<String>>, Source<String>> pair = Source.from(
+      event("a", 1), event("b", 5), event("c", 12), event("d", 8), event("e", 25))
+      .window(Window.tumbling(10, TimeUnit.MILLISECONDS), EventTime.of(m -> m.get("ts")));
+
+    ListSink<List<String>> windows = Sink.list();
+    pair.left().to(windows);
+
+    assertThat(windows.values()).containsExactly(list("a", "b"), list("c"), list("e"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidWindow() {
+    Window.tumbling(0);
+  }
+
+  @Test
+  public void testTimerWheel() throws InterruptedException {
+    TimerWheel wheel = new TimerWheel(5, 64);
+    CountDownLatch latch = new CountDownLatch(10000);
+    for (int i = 0; i < 10000; i++) {
+      wheel.schedule(latch::countDown, i % 500);
+    }
+    TimerWheel.Timeout cancelled = wheel.schedule(() -> {
+      throw new AssertionError("Cancelled task executed");
+    }, 10);
+    cancelled.cancel();
+    assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private static Message<String> event(String payload, long timestamp) {
+    return new Message<>(payload).with("ts", timestamp);
+  }
+
+  @SafeVarargs
+  private static <T> List<T> list(T... values) {
+    List<T> list = new ArrayList<>();
+    for (T value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+}
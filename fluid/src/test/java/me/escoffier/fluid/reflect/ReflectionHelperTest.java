@@ -1,18 +1,34 @@
 package me.escoffier.fluid.reflect;
 
+import io.reactivex.Flowable;
 import me.escoffier.fluid.annotations.Function;
+import me.escoffier.fluid.annotations.Inbound;
+import me.escoffier.fluid.annotations.OnError;
+import me.escoffier.fluid.annotations.Outbound;
 import me.escoffier.fluid.annotations.Transformation;
+import me.escoffier.fluid.impl.ListSink;
+import me.escoffier.fluid.models.Acknowledgement;
+import me.escoffier.fluid.models.DefaultSource;
+import me.escoffier.fluid.models.Message;
+import me.escoffier.fluid.models.PartitionedSource;
 import me.escoffier.fluid.models.Sink;
 import me.escoffier.fluid.models.Source;
 import me.escoffier.fluid.registry.FluidRegistry;
 import org.junit.After;
 import org.junit.Test;
 
+import org.reactivestreams.Publisher;
+
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
+import static org.awaitility.Awaitility.await;
 
 /**
  * Checks the internal behavior of the {@link ReflectionHelper} class.
@@ -112,4 +128,184 @@ public class ReflectionHelperTest {
       // OK
     }
   }
+
+  public static class PartitionedMediator {
+    private final Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+
+    @Function
+    public void function(@Inbound("my-source") Message<Integer> message) {
+      received.computeIfAbsent(message.get("partition"), k -> new CopyOnWriteArrayList<>()).add(message.payload());
+    }
+  }
+
+  @Test
+  public void testFunctionConsumingAPartitionedSource() throws NoSuchMethodException {
+    FluidRegistry.register("my-source", new Partitioned());
+    PartitionedMediator mediator = new PartitionedMediator();
+    Method method = mediator.getClass().getMethod("function", Message.class);
+    ReflectionHelper.invokeFunction(mediator, method);
+
+    await().until(() -> mediator.received.values().stream().mapToInt(List::size).sum() == 200);
+    assertThat(mediator.received).containsOnlyKeys("a", "b");
+    // The messages of a partition are processed in order.
+    assertThat(mediator.received.get("a")).isSorted().hasSize(100);
+    assertThat(mediator.received.get("b")).isSorted().hasSize(100);
+  }
+
+  private static class Partitioned extends DefaultSource<Integer> implements PartitionedSource<Integer> {
+    private Partitioned() {
+      super(Flowable.empty(), "my-source", null);
+    }
+
+    @Override
+    public boolean isPartitioned() {
+      return true;
+    }
+
+    @Override
+    public Publisher<Source<Integer>> partitions() {
+      return Flowable.just(partition("a"), partition("b"));
+    }
+
+    private static Source<Integer> partition(String name) {
+      return Source.from(Flowable.range(0, 100).map(i -> new Message<>(i).with("partition", name)));
+    }
+  }
+
+  public static class PayloadMediator {
+    @Function(outbound = "my-sink")
+    public String function(@Inbound("my-source") Integer payload) {
+      return Integer.toString(payload);
+    }
+
+    @Transformation
+    @Outbound("my-sink")
+    public Flowable<String> transformation(@Inbound("my-source") Flowable<Integer> payloads) {
+      return payloads.map(i -> Integer.toString(i));
+    }
+  }
+
+  @Test
+  public void testFunctionReceivingPayloadsAcknowledgesTheMessages() throws NoSuchMethodException {
+    List<String> acked = new CopyOnWriteArrayList<>();
+    ListSink<String> sink = new ListSink<>();
+    FluidRegistry.register("my-source", Source.from(messages(acked, 1, 2, 3)));
+    FluidRegistry.register("my-sink", sink);
+    PayloadMediator mediator = new PayloadMediator();
+    ReflectionHelper.invokeFunction(mediator, mediator.getClass().getMethod("function", Integer.class));
+
+    await().until(() -> acked.size() == 3);
+    assertThat(sink.values()).containsExactly("1", "2", "3");
+    assertThat(acked).containsExactly("1", "2", "3");
+  }
+
+  @Test
+  public void testTransformationReceivingPayloadsAcknowledgesTheMessages() throws NoSuchMethodException {
+    List<String> acked = new CopyOnWriteArrayList<>();
+    ListSink<String> sink = new ListSink<>();
+    FluidRegistry.register("my-source", Source.from(messages(acked, 1, 2, 3)));
+    FluidRegistry.register("my-sink", sink);
+    PayloadMediator mediator = new PayloadMediator();
+    ReflectionHelper.invokeTransformationMethod(mediator,
+      mediator.getClass().getMethod("transformation", Flowable.class));
+
+    await().until(() -> acked.size() == 3);
+    assertThat(sink.values()).containsExactly("1", "2", "3");
+    assertThat(acked).containsExactly("1", "2", "3");
+  }
+
+  public static class FailingMediator {
+    @Function(outbound = "my-sink")
+    @OnError
+    public String skipping(@Inbound("my-source") Integer payload) {
+      return convert(payload);
+    }
+
+    @Function(outbound = "my-sink")
+    @OnError(deadLetter = "my-dead-letter")
+    public String deadLettering(@Inbound("my-source") Integer payload) {
+      return convert(payload);
+    }
+
+    @Function(outbound = "my-sink")
+    public String failing(@Inbound("my-source") Integer payload) {
+      return convert(payload);
+    }
+
+    private static String convert(Integer payload) {
+      if (payload == 2) {
+        throw new IllegalArgumentException("boom");
+      }
+      return Integer.toString(payload);
+    }
+  }
+
+  @Test
+  public void testSkippedPayloadsAreAcknowledged() throws NoSuchMethodException {
+    List<String> acked = new CopyOnWriteArrayList<>();
+    ListSink<String> sink = new ListSink<>();
+    FluidRegistry.register("my-source", Source.from(messages(acked, 1, 2, 3)));
+    FluidRegistry.register("my-sink", sink);
+    FailingMediator mediator = new FailingMediator();
+    ReflectionHelper.invokeFunction(mediator, mediator.getClass().getMethod("skipping", Integer.class));
+
+    await().until(() -> acked.size() == 3);
+    assertThat(sink.values()).containsExactly("1", "3");
+    assertThat(acked).containsExactly("1", "2", "3");
+  }
+
+  @Test
+  public void testDeadLettersKeepTheHeadersOfTheReceivedMessages() throws NoSuchMethodException {
+    List<String> acked = new CopyOnWriteArrayList<>();
+    ListSink<String> sink = new ListSink<>();
+    ListSink<Object> deadLetters = new ListSink<>();
+    FluidRegistry.register("my-source", Source.from(messages(acked, 1, 2, 3).map(m -> m.with("origin", "test"))));
+    FluidRegistry.register("my-sink", sink);
+    FluidRegistry.register("my-dead-letter", deadLetters);
+    try {
+      FailingMediator mediator = new FailingMediator();
+      ReflectionHelper.invokeFunction(mediator, mediator.getClass().getMethod("deadLettering", Integer.class));
+
+      await().until(() -> acked.size() == 3);
+      assertThat(deadLetters.data()).hasSize(1);
+      assertThat(deadLetters.data().get(0).payload()).isEqualTo(2);
+      assertThat((String) deadLetters.data().get(0).get("origin")).isEqualTo("test");
+    } finally {
+      FluidRegistry.unregisterSink("my-dead-letter");
+    }
+  }
+
+  @Test
+  public void testFailedPayloadsAreNacked() throws NoSuchMethodException {
+    List<String> acked = new CopyOnWriteArrayList<>();
+    List<String> nacked = new CopyOnWriteArrayList<>();
+    ListSink<String> sink = new ListSink<>();
+    FluidRegistry.register("my-source", Source.from(messages(acked, nacked, 1, 2, 3)));
+    FluidRegistry.register("my-sink", sink);
+    FailingMediator mediator = new FailingMediator();
+    ReflectionHelper.invokeFunction(mediator, mediator.getClass().getMethod("failing", Integer.class));
+
+    await().until(() -> nacked.size() == 1);
+    assertThat(nacked).containsExactly("2");
+    assertThat(acked).containsExactly("1");
+  }
+
+  private static Flowable<Message<Integer>> messages(List<String> acked, Integer... payloads) {
+    return messages(acked, new CopyOnWriteArrayList<>(), payloads);
+  }
+
+  private static Flowable<Message<Integer>> messages(List<String> acked, List<String> nacked, Integer... payloads) {
+    return Flowable.fromArray(payloads)
+      .map(i -> new Message<>(i).withAcknowledgement(new Acknowledgement() {
+        @Override
+        public void ack() {
+          acked.add(Integer.toString(i));
+        }
+
+        @Override
+        public void nack(Throwable reason) {
+          nacked.add(Integer.toString(i));
+        }
+      }));
+  }
 }
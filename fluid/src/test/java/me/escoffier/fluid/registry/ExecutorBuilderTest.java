@@ -0,0 +1,69 @@
+package me.escoffier.fluid.registry;
+
+import io.reactivex.schedulers.Schedulers;
+import me.escoffier.fluid.framework.Fluid;
+import me.escoffier.fluid.impl.ListSink;
+import me.escoffier.fluid.models.Sink;
+import me.escoffier.fluid.models.Source;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks that executors can be created from the configuration.
+ */
+public class ExecutorBuilderTest {
+
+  private Fluid fluid;
+
+  @Before
+  public void setup() {
+    System.setProperty("fluid-config", "src/test/resources/config/executors.yml");
+    FluidRegistry.reset();
+    fluid = Fluid.create();
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty("fluid-config");
+    FluidRegistry.reset();
+    fluid.close();
+  }
+
+  @Test
+  public void loadExecutorsTest() {
+    Map<String, ExecutorService> executors = ExecutorBuilder.createExecutorsFromConfiguration(fluid.getConfig());
+    assertThat(executors).containsOnlyKeys("cpu", "blocking", "per-task");
+    executors.values().forEach(ExecutorService::shutdown);
+  }
+
+  @Test
+  public void testDispatchOnConfiguredExecutor() {
+    assertThat(FluidRegistry.scheduler("cpu")).isNotNull();
+    assertThat(FluidRegistry.scheduler("blocking")).isNotNull();
+    assertThat(FluidRegistry.scheduler("per-task")).isNotNull();
+    assertThat(FluidRegistry.scheduler("missing")).isNull();
+
+    ListSink<String> sink = Sink.list();
+    Source.from(1, 2, 3)
+      .dispatchOn("cpu")
+      .mapPayload(i -> Thread.currentThread().getName())
+      .to(sink);
+
+    await().until(() -> sink.values().size() == 3);
+    assertThat(sink.values()).allSatisfy(name -> assertThat(name).startsWith("fluid-cpu-"));
+  }
+
+  @Test
+  public void testDefaultSchedulers() {
+    assertThat(FluidRegistry.scheduler("compute")).isSameAs(Schedulers.computation());
+    assertThat(FluidRegistry.scheduler("io")).isSameAs(Schedulers.io());
+  }
+
+}
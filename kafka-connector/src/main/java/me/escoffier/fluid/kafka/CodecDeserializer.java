@@ -0,0 +1,30 @@
+package me.escoffier.fluid.kafka;
+
+import me.escoffier.fluid.spi.Codec;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.util.Map;
+
+/**
+ * A Kafka {@link Deserializer} delegating to the {@link Codec} selected by the {@code codec} option. The
+ * {@link KafkaSource} uses it as {@code value.deserializer} when {@code codec} is set.
+ */
+public class CodecDeserializer implements Deserializer<Object> {
+
+  private Codec codec;
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    codec = CodecSerializer.codec(configs);
+  }
+
+  @Override
+  public Object deserialize(String topic, byte[] data) {
+    return data == null ? null : codec.decode(data);
+  }
+
+  @Override
+  public void close() {
+    // Nothing to close.
+  }
+}
@@ -0,0 +1,41 @@
+package me.escoffier.fluid.kafka;
+
+import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.config.FluidConfig;
+import me.escoffier.fluid.impl.Codecs;
+import me.escoffier.fluid.spi.Codec;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * A Kafka {@link Serializer} delegating to the {@link Codec} selected by the {@code codec} option. The
+ * {@link KafkaSink} uses it as {@code value.serializer} when {@code codec} is set.
+ */
+public class CodecSerializer implements Serializer<Object> {
+
+  private Codec codec;
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    codec = codec(configs);
+  }
+
+  static Codec codec(Map<String, ?> configs) {
+    Object name = configs.get("codec");
+    if (name == null) {
+      throw new IllegalArgumentException("The `codec` must be set");
+    }
+    return Codecs.codec(name.toString(), new Config(FluidConfig.mapper().valueToTree(configs)));
+  }
+
+  @Override
+  public byte[] serialize(String topic, Object data) {
+    return data == null ? null : codec.encode(data);
+  }
+
+  @Override
+  public void close() {
+    // Nothing to close.
+  }
+}
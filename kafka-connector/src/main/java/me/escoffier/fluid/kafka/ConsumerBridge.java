@@ -0,0 +1,296 @@
+package me.escoffier.fluid.kafka;
+
+import io.reactivex.internal.subscriptions.EmptySubscription;
+import io.reactivex.plugins.RxJavaPlugins;
+import org.apache.kafka.common.TopicPartition;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bridges the records pushed by a Kafka consumer to a Reactive Streams subscriber, using the pause and resume
+ * operations of the consumer to propagate the backpressure.
+ * <p>
+ * The records are queued until they are requested by the subscriber. When {@code prefetch} records of a partition are
+ * queued, the partition is paused, and it is resumed once the subscriber has consumed half of them. So, whatever the
+ * speed of the subscriber, at most {@code prefetch} records are queued per partition, plus the records already
+ * fetched by the consumer when a partition is paused.
+ * <p>
+ * The bridge accepts a single subscriber. The consumer is connected (i.e. its handlers are set) when the subscriber
+ * subscribes, and disconnected when it cancels.
+ *
+ * @param <R> the type of record
+ */
+final class ConsumerBridge<R> implements Publisher<R>, Subscription {
+
+  private final int prefetch;
+
+  private final int resumeThreshold;
+
+  private final Function<R, TopicPartition> partitionOf;
+
+  private final Consumer<TopicPartition> pause;
+
+  private final Consumer<TopicPartition> resume;
+
+  private final ConsumerMetrics metrics;
+
+  private final Consumer<ConsumerBridge<R>> connect;
+
+  private final Runnable disconnect;
+
+  private final Queue<R> queue = new ConcurrentLinkedQueue<>();
+
+  /**
+   * The number of queued records per partition. Guarded by {@code this}.
+   */
+  private final Map<TopicPartition, Integer> depths = new HashMap<>();
+
+  /**
+   * Guarded by {@code this}.
+   */
+  private final Set<TopicPartition> paused = new HashSet<>();
+
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  private final AtomicLong requested = new AtomicLong();
+
+  private final AtomicInteger wip = new AtomicInteger();
+
+  private volatile Subscriber<? super R> downstream;
+
+  private volatile boolean cancelled;
+
+  private volatile boolean done;
+
+  private volatile Throwable error;
+
+  /**
+   * Creates a new {@link ConsumerBridge}.
+   *
+   * @param prefetch    the maximum number of records queued per partition, must be strictly positive
+   * @param partitionOf the function extracting the partition of a record
+   * @param pause       the function pausing a partition
+   * @param resume      the function resuming a partition
+   * @param metrics     the metrics to update
+   * @param connect     the function connecting the consumer to the bridge
+   * @param disconnect  the function disconnecting the consumer
+   */
+  ConsumerBridge(int prefetch, Function<R, TopicPartition> partitionOf, Consumer<TopicPartition> pause,
+                 Consumer<TopicPartition> resume, ConsumerMetrics metrics, Consumer<ConsumerBridge<R>> connect,
+                 Runnable disconnect) {
+    if (prefetch <= 0) {
+      throw new IllegalArgumentException("The prefetch must be strictly positive");
+    }
+    this.prefetch = prefetch;
+    this.resumeThreshold = prefetch / 2;
+    this.partitionOf = partitionOf;
+    this.pause = pause;
+    this.resume = resume;
+    this.metrics = metrics;
+    this.connect = connect;
+    this.disconnect = disconnect;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super R> subscriber) {
+    if (!subscribed.compareAndSet(false, true)) {
+      EmptySubscription.error(new IllegalStateException("The Kafka consumer accepts a single subscriber"), subscriber);
+      return;
+    }
+    downstream = subscriber;
+    subscriber.onSubscribe(this);
+    connect.accept(this);
+  }
+
+  /**
+   * Receives a record from the consumer.
+   *
+   * @param record the record
+   */
+  void onRecord(R record) {
+    if (done || cancelled) {
+      return;
+    }
+    TopicPartition tp = partitionOf.apply(record);
+    boolean pauseIt;
+    synchronized (this) {
+      int depth = depths.merge(tp, 1, Integer::sum);
+      pauseIt = depth >= prefetch && paused.add(tp);
+    }
+    queue.offer(record);
+    metrics.onEnqueued();
+    if (pauseIt) {
+      metrics.onPaused();
+      pause.accept(tp);
+    }
+    drain();
+  }
+
+  /**
+   * Receives a failure from the consumer. The failure is propagated once the queued records have been consumed.
+   *
+   * @param failure the failure
+   */
+  void onError(Throwable failure) {
+    if (done) {
+      RxJavaPlugins.onError(failure);
+      return;
+    }
+    error = failure;
+    done = true;
+    drain();
+  }
+
+  /**
+   * Receives the end of the stream from the consumer.
+   */
+  void onComplete() {
+    done = true;
+    drain();
+  }
+
+  /**
+   * Forgets the pause state of the revoked partitions, as the consumer resets it when the partitions are reassigned.
+   *
+   * @param revoked the revoked partitions
+   */
+  void revoked(Collection<TopicPartition> revoked) {
+    int count = 0;
+    synchronized (this) {
+      for (TopicPartition tp : revoked) {
+        if (paused.remove(tp)) {
+          count++;
+        }
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      metrics.onResumed();
+    }
+  }
+
+  private void onEmitted(R record) {
+    TopicPartition tp = partitionOf.apply(record);
+    boolean resumeIt = false;
+    synchronized (this) {
+      Integer depth = depths.get(tp);
+      if (depth != null) {
+        if (depth == 1) {
+          depths.remove(tp);
+        } else {
+          depths.put(tp, depth - 1);
+        }
+        resumeIt = depth - 1 <= resumeThreshold && paused.remove(tp);
+      }
+    }
+    metrics.onDequeued(1);
+    if (resumeIt) {
+      metrics.onResumed();
+      resume.accept(tp);
+    }
+  }
+
+  @Override
+  public void request(long n) {
+    if (n <= 0) {
+      RxJavaPlugins.onError(new IllegalArgumentException("The number of requested items must be positive, got " + n));
+      return;
+    }
+    long current;
+    long next;
+    do {
+      current = requested.get();
+      next = current + n < 0 ? Long.MAX_VALUE : current + n;
+    } while (!requested.compareAndSet(current, next));
+    drain();
+  }
+
+  @Override
+  public void cancel() {
+    if (!cancelled) {
+      cancelled = true;
+      disconnect.run();
+      if (wip.getAndIncrement() == 0) {
+        clear();
+      }
+    }
+  }
+
+  private void clear() {
+    long count = 0;
+    while (queue.poll() != null) {
+      count++;
+    }
+    metrics.onDequeued(count);
+  }
+
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    for (; ; ) {
+      Subscriber<? super R> subscriber = downstream;
+      if (subscriber != null) {
+        long r = requested.get();
+        long e = 0;
+        while (e != r) {
+          if (cancelled) {
+            clear();
+            return;
+          }
+          boolean d = done;
+          R record = queue.poll();
+          if (record == null) {
+            if (d) {
+              terminate(subscriber);
+              return;
+            }
+            break;
+          }
+          onEmitted(record);
+          subscriber.onNext(record);
+          e++;
+        }
+        if (cancelled) {
+          clear();
+          return;
+        }
+        if (done && queue.isEmpty()) {
+          terminate(subscriber);
+          return;
+        }
+        if (e != 0 && r != Long.MAX_VALUE) {
+          requested.addAndGet(-e);
+        }
+      }
+      missed = wip.addAndGet(-missed);
+      if (missed == 0) {
+        break;
+      }
+    }
+  }
+
+  private void terminate(Subscriber<? super R> subscriber) {
+    cancelled = true;
+    Throwable failure = error;
+    if (failure != null) {
+      subscriber.onError(failure);
+    } else {
+      subscriber.onComplete();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package me.escoffier.fluid.kafka;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics about the records buffered by a {@link KafkaSource} and the partitions paused because the downstream
+ * processing is slower than the consumer.
+ */
+public class ConsumerMetrics {
+
+  private final AtomicLong depth = new AtomicLong();
+  private final AtomicLong maxDepth = new AtomicLong();
+  private final AtomicInteger paused = new AtomicInteger();
+  private final LongAdder pauses = new LongAdder();
+
+  /**
+   * @return the number of records received from Kafka and not yet requested by the downstream processing.
+   */
+  public long queueDepth() {
+    return depth.get();
+  }
+
+  /**
+   * @return the highest queue depth observed so far.
+   */
+  public long maxQueueDepth() {
+    return maxDepth.get();
+  }
+
+  /**
+   * @return the number of partitions currently paused.
+   */
+  public int pausedPartitions() {
+    return paused.get();
+  }
+
+  /**
+   * @return the number of times a partition has been paused.
+   */
+  public long pauses() {
+    return pauses.sum();
+  }
+
+  void onEnqueued() {
+    long current = depth.incrementAndGet();
+    maxDepth.accumulateAndGet(current, Math::max);
+  }
+
+  void onDequeued(long count) {
+    depth.addAndGet(-count);
+  }
+
+  void onPaused() {
+    paused.incrementAndGet();
+    pauses.increment();
+  }
+
+  void onResumed() {
+    paused.decrementAndGet();
+  }
+
+  @Override
+  public String toString() {
+    return "ConsumerMetrics{queueDepth=" + queueDepth() + ", maxQueueDepth=" + maxQueueDepth() + ", pausedPartitions="
+      + pausedPartitions() + ", pauses=" + pauses() + "}";
+  }
+}
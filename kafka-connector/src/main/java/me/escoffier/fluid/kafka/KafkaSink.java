@@ -1,22 +1,84 @@
 package me.escoffier.fluid.kafka;
 
 import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
 import io.vertx.core.Future;
 import io.vertx.kafka.client.producer.KafkaWriteStream;
 import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.core.impl.AsyncResultCompletable;
 import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.impl.DataExpressionFactories;
+import me.escoffier.fluid.models.CommonHeaders;
 import me.escoffier.fluid.models.Message;
+import me.escoffier.fluid.models.RawPayload;
 import me.escoffier.fluid.models.Sink;
 import me.escoffier.fluid.spi.DataExpression;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.Utils;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static me.escoffier.fluid.impl.DataExpressionFactories.requiredEventExpression;
+import static me.escoffier.fluid.models.CommonHeaders.addressOpt;
 
 /**
+ * A {@link Sink} writing the messages to a Kafka topic.
+ * <p>
+ * The partition of each record is selected as follows:
+ * <ul>
+ * <li>if {@code partition.expression} is set, by evaluating this {@link DataExpression} on the message (a
+ * {@code null} result lets the producer pick the partition),</li>
+ * <li>if {@code partition} is set, this partition is used for all the records,</li>
+ * <li>otherwise, by the partitioner of the producer ({@code partitioner.class}). The default partitioner uses the hash
+ * of the key computed by the {@code key} expression, and spreads the records without key over the partitions.</li>
+ * </ul>
+ * <p>
+ * When {@code header.routing} is {@code true}, the {@link CommonHeaders#ADDRESS}, {@link CommonHeaders#PARTITION} and
+ * {@link CommonHeaders#KEY} headers of the message, when set, override the topic, the partition and the key of the
+ * record. So a single sink can write to many topics and partitions. This is disabled by default because the messages
+ * created by a {@link KafkaSource} carry the topic and the partition of the record they come from.
+ * <p>
+ * The producer is tuned using the Kafka producer properties, and two shortcuts:
+ * <ul>
+ * <li>{@code profile: throughput} lets the producer group the records in larger, compressed, batches:
+ * {@code linger.ms=20}, {@code batch.size=131072} and {@code compression.type=lz4}, unless they are set
+ * explicitly,</li>
+ * <li>{@code idempotent: true} enables the idempotent producer ({@code enable.idempotence=true},
+ * {@code acks=all}). The records are written exactly once per partition and in order, even with up to 5 in-flight
+ * requests per connection (the default in this mode) and retries.</li>
+ * </ul>
+ * <p>
+ * When the write queue of the producer is full ({@code write.queue.size}, in bytes for {@code String} and
+ * {@code byte[]} payloads, in records otherwise), the dispatch waits until it is drained. So the backpressure is
+ * propagated to the sources writing to this sink. When a source is connected with
+ * {@link me.escoffier.fluid.models.Source#to(Sink)}, at most {@code max.in.flight.dispatches} messages (1024 by
+ * default) wait for the queue or for the acknowledgement of their record, so the source is not consumed faster than
+ * the records are written.
+ * <p>
+ * When {@code transactional.id} is set, the sink writes the records in Kafka transactions, and commits, in the same
+ * transactions, the offsets of the records consumed by the transactional {@link KafkaSource} named by
+ * {@code transaction.source} (see {@link KafkaTransactions}). A transaction is committed every
+ * {@code transaction.size} records (5000 by default) and every {@code transaction.interval.ms} milliseconds (1000 by
+ * default). This mode implies the idempotent producer. The consumers of the topic should use
+ * {@code isolation.level=read_committed} to ignore the records of the aborted transactions.
+ * <p>
+ * In the raw mode ({@code raw=true}), the producer writes {@code byte[]} values. The {@link RawPayload}s, such as the
+ * payloads of a raw {@link KafkaSource}, and the {@code byte[]} and {@link ByteBuffer} payloads are written as they
+ * are, without serialization. The other payloads are serialized with the configured {@code value.serializer}.
+ * <p>
+ * When {@code codec} is set, the payloads are encoded by this {@link me.escoffier.fluid.spi.Codec} (see
+ * {@link CodecSerializer}) instead of the configured {@code value.serializer}. In the raw mode, the raw payloads are
+ * still written as they are, so they must have been encoded with the same codec.
+ *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class KafkaSink<T> implements Sink<T> {
@@ -24,20 +86,72 @@ public class KafkaSink<T> implements Sink<T> {
   private final KafkaWriteStream<String, T> stream;
   private final String topic;
   private final Integer partition;
+  private final DataExpression partitionExpression;
+  private final boolean headerRouting;
   private final DataExpression key;
   private final String name;
   private final String brokers;
   private Long timestamp;
 
+  /**
+   * The serializer of the payloads that are not raw in the raw mode, {@code null} if the raw mode is disabled or no
+   * {@code value.serializer} is configured.
+   */
+  private final Serializer<Object> encoder;
+
+  private final boolean raw;
+
+  private final int maxInFlight;
+
+  /**
+   * The transactions grouping the writes, {@code null} if the sink is not transactional.
+   */
+  private final KafkaTransactions transactions;
+
+  /**
+   * The dispatches waiting for the write queue, in the order of the dispatches.
+   */
+  private final Queue<CompletableEmitter> waiting = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger wip = new AtomicInteger();
+
   public KafkaSink(Vertx vertx, String name, Config config) {
     Map<String, Object> map = toMap(config);
+    configureProducer(map);
+    raw = config.getBoolean("raw", false);
+    encoder = raw ? valueSerializer(map) : null;
     stream = KafkaWriteStream.create(vertx.getDelegate(), map);
+    config.getInt("write.queue.size").ifPresent(stream::setWriteQueueMaxSize);
     topic = config.getString("topic", name);
-    partition = config.getInt("partition", 0);
+    partition = config.getInt("partition").orElse(null);
+    partitionExpression = config.getString("partition.expression")
+      .map(DataExpressionFactories::requiredEventExpression)
+      .orElse(null);
+    headerRouting = config.getBoolean("header.routing", false);
+    maxInFlight = config.getInt("max.in.flight.dispatches", 1024);
     timestamp = config.getLong("timestamp").orElse(null);
     key = requiredEventExpression(config.getString("key", null));
     brokers = map.get("bootstrap.servers").toString();
     this.name = name;
+    if (map.get("transactional.id") != null) {
+      String source = config.getString("transaction.source").orElseThrow(() ->
+        new IllegalArgumentException("The transactional sink " + name + " requires a `transaction.source`"));
+      transactions = new KafkaTransactions(vertx, stream.unwrap(), name, source,
+        config.getInt("transaction.size", 5000), config.getLong("transaction.interval.ms", 1000L));
+    } else {
+      transactions = null;
+    }
+  }
+
+  /**
+   * Closes the sink: stops the periodic commits of the transactions, and closes the producer. The records of a
+   * transaction that is not committed yet are not delivered to the {@code read_committed} consumers.
+   */
+  public void close() {
+    if (transactions != null) {
+      transactions.close();
+    }
+    stream.close();
   }
 
   public String topic() {
@@ -58,13 +172,111 @@ public class KafkaSink<T> implements Sink<T> {
     return map;
   }
 
+  /**
+   * Completes the producer configuration according to the {@code profile}, {@code idempotent},
+   * {@code transactional.id} and {@code codec} options.
+   */
+  private static void configureProducer(Map<String, Object> map) {
+    if (map.get("codec") != null) {
+      map.put("value.serializer", CodecSerializer.class.getName());
+    }
+    if ("throughput".equalsIgnoreCase(String.valueOf(map.get("profile")))) {
+      map.putIfAbsent("linger.ms", "20");
+      map.putIfAbsent("batch.size", "131072");
+      map.putIfAbsent("compression.type", "lz4");
+    }
+    if ("true".equalsIgnoreCase(String.valueOf(map.get("idempotent"))) || map.get("transactional.id") != null) {
+      map.put("enable.idempotence", "true");
+      map.put("acks", "all");
+      map.putIfAbsent("max.in.flight.requests.per.connection", "5");
+    }
+  }
+
+  /**
+   * Replaces the configured {@code value.serializer} by a {@link ByteArraySerializer}.
+   *
+   * @return the configured {@code value.serializer}, used to serialize the payloads that are not raw, {@code null} if
+   * none is configured
+   */
+  @SuppressWarnings("unchecked")
+  private static Serializer<Object> valueSerializer(Map<String, Object> map) {
+    Object className = map.put("value.serializer", ByteArraySerializer.class.getName());
+    if (className == null) {
+      return null;
+    }
+    try {
+      Serializer<Object> serializer = Utils.newInstance(className.toString(), Serializer.class);
+      serializer.configure(map, false);
+      return serializer;
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("Unable to load the `value.serializer` " + className, e);
+    }
+  }
+
+  /**
+   * @return a {@link Completable} completed when the write queue is not full, and the previous dispatches have
+   * written their records, so the records are written in the order of the dispatches.
+   */
+  private Completable whenWritable() {
+    return Completable.create(emitter -> {
+      waiting.offer(emitter);
+      drainWaiting();
+    });
+  }
+
+  private void drainWaiting() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    for (; ; ) {
+      while (!waiting.isEmpty()) {
+        if (stream.writeQueueFull()) {
+          stream.drainHandler(x -> drainWaiting());
+          // The queue may have been drained before the handler was set.
+          if (stream.writeQueueFull()) {
+            break;
+          }
+        }
+        // Writes the record synchronously, before the next dispatch is released.
+        waiting.poll().onComplete();
+      }
+      missed = wip.addAndGet(-missed);
+      if (missed == 0) {
+        return;
+      }
+    }
+  }
 
   @Override
   public Completable dispatch(Message<T> message) {
-    // TODO Override publication configuration using headers
     // TODO Modify the evaluation to support Data<T>
+    String target = topic;
+    Integer targetPartition = partition(message);
+    Object targetKey = key.evaluate(message);
+    if (headerRouting) {
+      target = addressOpt(message).orElse(target);
+      // The header may have been set to a String, e.g. by a configured expression.
+      Integer overriddenPartition = toPartition(message.get(CommonHeaders.PARTITION));
+      if (overriddenPartition != null) {
+        targetPartition = overriddenPartition;
+      }
+      String overriddenKey = CommonHeaders.key(message);
+      if (overriddenKey != null) {
+        targetKey = overriddenKey;
+      }
+    }
+    Object value = raw ? encode(target, message.payload()) : message.payload();
     ProducerRecord<String, T> record
-      = new ProducerRecord(topic, partition, timestamp, key.evaluate(message), message.payload());
+      = new ProducerRecord(target, targetPartition, timestamp, targetKey, value);
+    Completable writable = whenWritable();
+    if (transactions == null) {
+      return writable.andThen(write(record));
+    }
+    return writable.andThen(transactions.write(() -> write(record)));
+  }
+
+  private Completable write(ProducerRecord<String, T> record) {
     return new AsyncResultCompletable(
       handler ->
         stream.write(record, x -> {
@@ -76,8 +288,65 @@ public class KafkaSink<T> implements Sink<T> {
         }));
   }
 
+  /**
+   * @return the bytes of the payload in the raw mode, serialized only if the payload is not raw.
+   */
+  private byte[] encode(String target, Object payload) {
+    if (payload instanceof RawPayload) {
+      return ((RawPayload) payload).bytes();
+    } else if (payload instanceof byte[]) {
+      return (byte[]) payload;
+    } else if (payload instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer) payload).duplicate();
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    } else if (encoder == null) {
+      throw new IllegalArgumentException("The sink " + name + " cannot write a " + payload.getClass().getName()
+        + " payload, configure a `value.serializer`");
+    }
+    return encoder.serialize(target, payload);
+  }
+
+  /**
+   * @return the partition configured for the message, {@code null} to let the producer select it.
+   */
+  private Integer partition(Message<T> message) {
+    if (partitionExpression == null) {
+      return partition;
+    }
+    return toPartition(partitionExpression.evaluate(message));
+  }
+
+  /**
+   * @return the partition denoted by the given number or string, {@code null} if {@code value} is {@code null}.
+   */
+  private static Integer toPartition(Object value) {
+    if (value == null) {
+      return null;
+    } else if (value instanceof Number) {
+      return ((Number) value).intValue();
+    } else {
+      return Integer.valueOf(value.toString().trim());
+    }
+  }
+
+  /**
+   * Writes all the records of the batch without waiting for the acknowledgement of the previous ones, so the producer
+   * can group them into a single request.
+   */
+  @Override
+  public Completable dispatchBatch(List<Message<T>> messages) {
+    return Completable.merge(messages.stream().map(this::dispatch).collect(Collectors.toList()));
+  }
+
   @Override
   public String name() {
     return name;
   }
+
+  @Override
+  public int maxInFlight() {
+    return maxInFlight;
+  }
 }
@@ -1,30 +1,68 @@
 package me.escoffier.fluid.kafka;
 
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+import io.vertx.core.Future;
 import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.impl.AsyncResultCompletable;
 import io.vertx.reactivex.kafka.client.consumer.KafkaConsumer;
 import io.vertx.reactivex.kafka.client.consumer.KafkaConsumerRecord;
 import me.escoffier.fluid.config.Config;
 import me.escoffier.fluid.models.DefaultSource;
 import me.escoffier.fluid.models.Message;
+import me.escoffier.fluid.models.PartitionedSource;
+import me.escoffier.fluid.models.RawPayload;
 import me.escoffier.fluid.models.Source;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.utils.Utils;
+import org.reactivestreams.Publisher;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static me.escoffier.fluid.models.CommonHeaders.*;
 
 /**
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
-public class KafkaSource<T> extends DefaultSource<T> implements Source<T> {
+public class KafkaSource<T> extends DefaultSource<T> implements PartitionedSource<T> {
+
+  private static final int DEFAULT_PREFETCH = 256;
+
+  private final ConsumerMetrics metrics;
+
+  /**
+   * The partitions, {@code null} if the partitioned mode is disabled.
+   */
+  private final Flowable<Source<T>> partitions;
+
+  /**
+   * The offsets committed by the transactions of a {@link KafkaSink}, {@code null} if the source is not
+   * transactional.
+   */
+  private final TransactionalOffsets transactionalOffsets;
 
   KafkaSource(Vertx vertx, String name, Config config) {
-    super(KafkaConsumer.<String, T>create(vertx, toMap(config))
-      .subscribe(config.getString("topic", name))
-      .toFlowable()
-      .map(KafkaSource::createDataFromRecord)
+    this(vertx, name, config, new ConsumerMetrics());
+  }
+
+  private KafkaSource(Vertx vertx, String name, Config config, ConsumerMetrics metrics) {
+    this(name, config, metrics,
+      streams(vertx, KafkaConsumer.<String, T>create(vertx, consumerConfig(config)), name, config, metrics));
+  }
+
+  private KafkaSource(String name, Config config, ConsumerMetrics metrics, Streams<T> streams) {
+    super(streams.messages
       .compose(upstream -> {
         int size = config.getInt("multicast.buffer.size", 0);
         if (size > 0) {
@@ -39,6 +77,222 @@ public class KafkaSource<T> extends DefaultSource<T> implements Source<T> {
         return upstream;
       }
     ),name, getAttributes(config));
+    this.metrics = metrics;
+    this.partitions = streams.partitions;
+    this.transactionalOffsets = streams.transactionalOffsets;
+  }
+
+  /**
+   * @return the metrics about the records buffered by this source and the paused partitions.
+   */
+  public ConsumerMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the offsets to commit with the transactions of a {@link KafkaSink}, {@code null} if the source is not
+   * transactional.
+   */
+  TransactionalOffsets transactionalOffsets() {
+    return transactionalOffsets;
+  }
+
+  @Override
+  public boolean isPartitioned() {
+    return partitions != null;
+  }
+
+  /**
+   * Gets the stream of the assigned partitions. Each partition is a {@link Source} having the {@code kafka-partition}
+   * attribute, and completing when the partition is revoked. The multicast options do not apply to the partitions.
+   * <p>
+   * The stream of partitions accepts a single subscriber, and cannot be consumed with the messages of this source:
+   * the subscriptions made after the first one, to the partitions or to the messages, fail with an
+   * {@link IllegalStateException}.
+   *
+   * @return the stream of partitions
+   * @throws IllegalStateException if the partitioned mode is not enabled ({@code partitioned=true})
+   */
+  @Override
+  public Publisher<Source<T>> partitions() {
+    if (partitions == null) {
+      throw new IllegalStateException("The partitioned mode is not enabled on the source " + name()
+        + ", set `partitioned` to `true`");
+    }
+    return partitions;
+  }
+
+  /**
+   * Creates the stream of messages from the records.
+   * <p>
+   * The records are consumed according to the downstream demand: the partitions for which {@code prefetch} records
+   * (256 by default) are waiting to be requested are paused, and resumed once half of them have been consumed (see
+   * {@link ConsumerBridge}). So the number of records held in memory is bounded by {@code prefetch} times the number of
+   * assigned partitions, plus {@code max.poll.records}.
+   * <p>
+   * In the partitioned mode ({@code partitioned=true}), the records are split into one stream per partition, each
+   * with its own demand (see {@link PartitionedConsumerBridge}), and the messages of the source are the merged
+   * messages of the partitions. The messages and the partitions are mutually exclusive (see {@link #partitions()}).
+   * <p>
+   * When the automatic commit is disabled ({@code enable.auto.commit=false}), each message gets an acknowledgement,
+   * and the offsets of the acknowledged records are committed by an {@link OffsetTracker}:
+   * <ul>
+   * <li>every {@code commit.batch.size} acknowledged records (100 by default),</li>
+   * <li>every {@code commit.interval.ms} milliseconds (5000 by default),</li>
+   * <li>when partitions are revoked, for these partitions,</li>
+   * <li>when the stream terminates.</li>
+   * </ul>
+   * <p>
+   * In the transactional mode ({@code transactional=true}, which requires {@code enable.auto.commit=false}), the
+   * offsets of the acknowledged records are not committed by the consumer, but by the transactions of a
+   * {@link KafkaSink} configured with {@code transaction.source} (see {@link TransactionalOffsets}).
+   * <p>
+   * In the raw mode ({@code raw=true}), the values are not deserialized when received: the payloads are
+   * {@link RawPayload}s wrapping the bytes of the records. The configured {@code value.deserializer} is only called
+   * when the payload is read with {@link Message#payloadAs(Class)}, so filters discarding most of the records, and
+   * pipelines forwarding the records to a raw {@link KafkaSink}, skip the deserialization.
+   * <p>
+   * When {@code codec} is set, the values are decoded by this {@link me.escoffier.fluid.spi.Codec} (see
+   * {@link CodecDeserializer}) instead of the configured {@code value.deserializer}, eagerly, or lazily in the raw
+   * mode.
+   */
+  private static <T> Streams<T> streams(Vertx vertx, KafkaConsumer<String, T> consumer, String name, Config config,
+                                        ConsumerMetrics metrics) {
+    int prefetch = config.getInt("prefetch", DEFAULT_PREFETCH);
+    // The rx wrapper does not accept a null handler.
+    Runnable disconnect = () -> consumer.getDelegate().handler(null);
+    TransactionalOffsets transactionalOffsets = null;
+    OffsetTracker tracker;
+    if (config.getBoolean("transactional", false)) {
+      if (!"false".equalsIgnoreCase(toMap(config).get("enable.auto.commit"))) {
+        throw new IllegalArgumentException("The transactional source " + name + " requires `enable.auto.commit` to "
+          + "be `false`");
+      }
+      transactionalOffsets = new TransactionalOffsets(toMap(config).get("group.id"),
+        config.getInt("commit.batch.size", 100));
+      tracker = transactionalOffsets.tracker();
+    } else {
+      tracker = createOffsetTracker(consumer, config);
+    }
+    Deserializer<?> decoder = config.getBoolean("raw", false) ? valueDeserializer(config) : null;
+    Function<KafkaConsumerRecord<String, T>, Message<T>> toMessage;
+    if (tracker == null) {
+      toMessage = record -> createDataFromRecord(record, decoder);
+    } else {
+      toMessage = record -> createDataFromRecord(record, decoder)
+        .withAcknowledgement(tracker.track(record.topic(), record.partition(), record.offset()));
+    }
+    consumer.subscribe(config.getString("topic", name));
+
+    if (!config.getBoolean("partitioned", false)) {
+      ConsumerBridge<KafkaConsumerRecord<String, T>> bridge = new ConsumerBridge<>(prefetch,
+        record -> new TopicPartition(record.topic(), record.partition()),
+        tp -> consumer.pause(toVertx(tp)), tp -> consumer.resume(toVertx(tp)), metrics,
+        b -> consumer.exceptionHandler(b::onError).endHandler(x -> b.onComplete()).handler(b::onRecord),
+        disconnect);
+      onRevoked(consumer, bridge::revoked, tracker);
+      return new Streams<>(committing(vertx, config, tracker, Flowable.fromPublisher(bridge).map(toMessage)), null,
+        transactionalOffsets);
+    }
+
+    PartitionedConsumerBridge<KafkaConsumerRecord<String, T>> bridge = new PartitionedConsumerBridge<>(prefetch,
+      record -> new TopicPartition(record.topic(), record.partition()),
+      tp -> consumer.pause(toVertx(tp)), tp -> consumer.resume(toVertx(tp)), metrics,
+      b -> consumer.exceptionHandler(b::onError).endHandler(x -> b.onComplete()).handler(b::onRecord),
+      disconnect);
+    onRevoked(consumer, bridge::revoked, tracker);
+    Map<String, Object> attributes = getAttributes(config);
+    Flowable<Source<T>> partitions = committing(vertx, config, tracker, bridge.partitions())
+      .map(partition -> {
+        Map<String, Object> attr = new HashMap<>(attributes);
+        attr.put("kafka-partition", partition.left().partition());
+        return new DefaultSource<>(partition.right().map(toMessage), name, attr);
+      });
+    // The bridge accepts a single subscriber, and the streams of the partitions too, so the messages and the
+    // partitions cannot both be consumed.
+    AtomicBoolean consumed = new AtomicBoolean();
+    return new Streams<>(exclusive(consumed, name, partitions.flatMap(partition -> partition, Integer.MAX_VALUE)),
+      exclusive(consumed, name, partitions), transactionalOffsets);
+  }
+
+  /**
+   * Fails the subscriptions to the given stream once the stream of partitions has been consumed.
+   */
+  private static <X> Flowable<X> exclusive(AtomicBoolean consumed, String name, Flowable<X> stream) {
+    return Flowable.defer(() -> {
+      if (!consumed.compareAndSet(false, true)) {
+        return Flowable.error(new IllegalStateException("The partitions of the source " + name + " are already "
+          + "consumed, the messages and the partitions of a partitioned source cannot be consumed together"));
+      }
+      return stream;
+    });
+  }
+
+  /**
+   * @return the {@link OffsetTracker} committing the offsets of the acknowledged records, {@code null} if the
+   * automatic commit is enabled.
+   */
+  private static <T> OffsetTracker createOffsetTracker(KafkaConsumer<String, T> consumer, Config config) {
+    if (!"false".equalsIgnoreCase(toMap(config).get("enable.auto.commit"))) {
+      return null;
+    }
+    io.vertx.kafka.client.consumer.KafkaConsumer<String, T> delegate = consumer.getDelegate();
+    return new OffsetTracker(config.getInt("commit.batch.size", 100),
+      offsets -> new AsyncResultCompletable(handler ->
+        delegate.commit(toVertx(offsets), ar -> {
+          if (ar.succeeded()) {
+            handler.handle(Future.succeededFuture());
+          } else {
+            handler.handle(Future.failedFuture(ar.cause()));
+          }
+        })));
+  }
+
+  private static <T> void onRevoked(KafkaConsumer<String, T> consumer, Consumer<Collection<TopicPartition>> bridge,
+                                    OffsetTracker tracker) {
+    // The handler is called asynchronously, so the commit of the revoked partitions is a best effort. The records
+    // that are not committed are redelivered to the new owner of the partition.
+    consumer.partitionsRevokedHandler(partitions -> {
+      List<TopicPartition> revoked = partitions.stream()
+        .map(tp -> new TopicPartition(tp.getTopic(), tp.getPartition()))
+        .collect(Collectors.toList());
+      bridge.accept(revoked);
+      if (tracker != null) {
+        tracker.revoked(revoked);
+      }
+    });
+  }
+
+  // The Vert.x TopicPartition does not implement equals and hashCode, so the partitions are tracked with the Kafka
+  // types, converted when calling the consumer.
+  private static io.vertx.kafka.client.common.TopicPartition toVertx(TopicPartition tp) {
+    return new io.vertx.kafka.client.common.TopicPartition(tp.topic(), tp.partition());
+  }
+
+  private static Map<io.vertx.kafka.client.common.TopicPartition, io.vertx.kafka.client.consumer.OffsetAndMetadata>
+  toVertx(Map<TopicPartition, OffsetAndMetadata> offsets) {
+    Map<io.vertx.kafka.client.common.TopicPartition, io.vertx.kafka.client.consumer.OffsetAndMetadata> result
+      = new HashMap<>();
+    offsets.forEach((tp, offset) -> result.put(toVertx(tp),
+      new io.vertx.kafka.client.consumer.OffsetAndMetadata(offset.offset(), offset.metadata())));
+    return result;
+  }
+
+  /**
+   * Commits the offsets periodically while the given stream is consumed, and when it terminates.
+   */
+  private static <X> Flowable<X> committing(Vertx vertx, Config config, OffsetTracker tracker, Flowable<X> stream) {
+    if (tracker == null) {
+      return stream;
+    }
+    long interval = config.getLong("commit.interval.ms", 5000L);
+    return Flowable.defer(() -> {
+      long timer = vertx.setPeriodic(interval, id -> tracker.commit());
+      return stream.doFinally(() -> {
+        vertx.cancelTimer(timer);
+        tracker.commit();
+      });
+    });
   }
 
   private static Map<String, Object> getAttributes(Config config) {
@@ -49,16 +303,70 @@ public class KafkaSource<T> extends DefaultSource<T> implements Source<T> {
     return map;
   }
 
-  private static <T> Message<T> createDataFromRecord(KafkaConsumerRecord<String, T> record) {
+  /**
+   * @param decoder the deserializer of the raw payloads, {@code null} if the raw mode is disabled
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> Message<T> createDataFromRecord(KafkaConsumerRecord<String, T> record, Deserializer<?> decoder) {
+    T payload = record.value();
+    if (decoder != null) {
+      // In the raw mode, the consumer uses a ByteArrayDeserializer.
+      String topic = record.topic();
+      payload = (T) new RawPayload((byte[]) payload, bytes -> decoder.deserialize(topic, bytes));
+    }
+    // Headers are only computed if the downstream processing reads them.
+    return Message.lazy(payload, record, KafkaSource::headers);
+  }
+
+  private static <T> Map<String, Object> headers(KafkaConsumerRecord<String, T> record) {
     Map<String, Object> headers = new HashMap<>();
-    headers.put("timestamp", record.timestamp());
+    headers.put(TIMESTAMP, record.timestamp());
     headers.put("timestamp-type", record.timestampType());
     headers.put(ORIGINAL, record);
-    headers.put("partition", record.partition());
-    headers.put("checksum", record.checksum());
+    headers.put(PARTITION, record.partition());
+    headers.put(CHECKSUM, record.checksum());
     headers.put(KEY, record.key());
     headers.put(ADDRESS, record.topic());
-    return new Message<>(record.value(), headers);
+    return headers;
+  }
+
+  /**
+   * @return the configuration of the consumer, receiving the values as {@code byte[]} in the raw mode.
+   */
+  private static Map<String, String> consumerConfig(Config config) {
+    Map<String, String> map = withCodec(toMap(config));
+    if (config.getBoolean("raw", false)) {
+      map.put("value.deserializer", ByteArrayDeserializer.class.getName());
+    }
+    return map;
+  }
+
+  /**
+   * @return the configured {@code value.deserializer}, used to decode the raw payloads.
+   */
+  private static Deserializer<?> valueDeserializer(Config config) {
+    Map<String, String> map = withCodec(toMap(config));
+    String className = map.get("value.deserializer");
+    if (className == null) {
+      throw new IllegalArgumentException("The raw mode requires a `value.deserializer` to decode the payloads");
+    }
+    try {
+      Deserializer<?> deserializer = Utils.newInstance(className, Deserializer.class);
+      deserializer.configure(map, false);
+      return deserializer;
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException("Unable to load the `value.deserializer` " + className, e);
+    }
+  }
+
+  /**
+   * Replaces the {@code value.deserializer} by a {@link CodecDeserializer} when a {@code codec} is set.
+   */
+  private static Map<String, String> withCodec(Map<String, String> map) {
+    if (map.get("codec") != null) {
+      map.put("value.deserializer", CodecDeserializer.class.getName());
+    }
+    return map;
   }
 
   private static Map<String, String> toMap(Config config) {
@@ -72,4 +380,17 @@ public class KafkaSource<T> extends DefaultSource<T> implements Source<T> {
     return map;
   }
 
+  private static final class Streams<T> {
+    private final Flowable<Message<T>> messages;
+    private final Flowable<Source<T>> partitions;
+    private final TransactionalOffsets transactionalOffsets;
+
+    private Streams(Flowable<Message<T>> messages, Flowable<Source<T>> partitions,
+                    TransactionalOffsets transactionalOffsets) {
+      this.messages = messages;
+      this.partitions = partitions;
+      this.transactionalOffsets = transactionalOffsets;
+    }
+  }
+
 }
@@ -0,0 +1,255 @@
+package me.escoffier.fluid.kafka;
+
+import io.reactivex.Completable;
+import io.reactivex.subjects.CompletableSubject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.impl.AsyncResultCompletable;
+import me.escoffier.fluid.models.Source;
+import me.escoffier.fluid.registry.FluidRegistry;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Groups the records written by a transactional {@link KafkaSink} and the offsets of the records consumed by a
+ * transactional {@link KafkaSource} into Kafka transactions, so each consumed record produces its results exactly
+ * once.
+ * <p>
+ * A transaction is opened by the first write, and committed once {@code size} records have been written, or
+ * periodically. To commit, the new writes are suspended until the in-flight writes complete. Then the offsets of the
+ * records acknowledged so far are added to the transaction, and the transaction is committed. As the messages are
+ * acknowledged once written, the committed offsets cover all the records whose results are part of the transaction,
+ * provided the records reach the sink in order.
+ * <p>
+ * If a transaction cannot be committed, it is aborted and the following writes fail. Once restarted, the source
+ * consumes the records again from the offsets committed by the last transaction. The offsets of the partitions
+ * revoked from the source are committed with the next transaction, so a rebalance may lead to records being
+ * processed twice.
+ */
+class KafkaTransactions {
+
+  private static final Logger logger = LogManager.getLogger(KafkaTransactions.class);
+
+  private final Vertx vertx;
+
+  private final Producer<?, ?> producer;
+
+  private final String sink;
+
+  private final String source;
+
+  private final int size;
+
+  private final Completable initialized;
+
+  /**
+   * The id of the timer committing the transactions periodically.
+   */
+  private final long timer;
+
+  private volatile TransactionalOffsets offsets;
+
+  /**
+   * Whether a transaction is open. Guarded by {@code this}.
+   */
+  private boolean open;
+
+  /**
+   * The number of records written in the current transaction. Guarded by {@code this}.
+   */
+  private int written;
+
+  /**
+   * The number of writes not completed yet. Guarded by {@code this}.
+   */
+  private int inflight;
+
+  /**
+   * Completed when the current commit completes, {@code null} if no commit is requested. Guarded by {@code this}.
+   */
+  private CompletableSubject committing;
+
+  /**
+   * Whether the requested commit has started. Guarded by {@code this}.
+   */
+  private boolean started;
+
+  /**
+   * The failure of the last commit, if any. Guarded by {@code this}.
+   */
+  private Throwable failure;
+
+  /**
+   * Creates a new {@link KafkaTransactions}.
+   *
+   * @param vertx    the Vert.x instance
+   * @param producer the transactional producer
+   * @param sink     the name of the sink
+   * @param source   the name of the transactional source whose offsets are committed
+   * @param size     the number of records written after which the transaction is committed
+   * @param interval the period of the commits, in milliseconds
+   */
+  KafkaTransactions(Vertx vertx, Producer<?, ?> producer, String sink, String source, int size, long interval) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("The transaction size must be strictly positive");
+    }
+    this.vertx = vertx;
+    this.producer = producer;
+    this.sink = sink;
+    this.source = source;
+    this.size = size;
+    this.initialized = blocking(producer::initTransactions).cache();
+    this.timer = vertx.setPeriodic(interval, id -> commit());
+  }
+
+  /**
+   * Stops the periodic commits. The transaction in progress, if any, is not committed.
+   */
+  void close() {
+    vertx.cancelTimer(timer);
+  }
+
+  /**
+   * Executes a write in the current transaction, opening it if needed. If a commit is in progress, the write is
+   * executed once it completes, in the next transaction.
+   *
+   * @param write the write
+   * @return a {@link Completable} completed when the write is completed
+   */
+  Completable write(Supplier<Completable> write) {
+    return initialized.andThen(Completable.defer(() -> {
+      Completable gate;
+      synchronized (this) {
+        if (failure != null) {
+          return Completable.error(new IllegalStateException("The sink " + sink + " has failed to commit a "
+            + "transaction", failure));
+        }
+        gate = committing;
+        if (gate == null) {
+          if (!open) {
+            producer.beginTransaction();
+            open = true;
+          }
+          inflight++;
+        }
+      }
+      if (gate != null) {
+        return gate.onErrorComplete().andThen(write(write));
+      }
+      // Called once the downstream has been notified, so after the acknowledgement of the message.
+      return write.get().doFinally(this::written);
+    }));
+  }
+
+  private void written() {
+    boolean commit;
+    synchronized (this) {
+      inflight--;
+      written++;
+      commit = committing != null || written >= size;
+    }
+    if (commit) {
+      commit();
+    }
+  }
+
+  /**
+   * Requests the commit of the current transaction. The commit starts once the in-flight writes are completed.
+   */
+  void commit() {
+    boolean wasOpen;
+    synchronized (this) {
+      if (failure != null || started) {
+        return;
+      }
+      if (committing == null) {
+        committing = CompletableSubject.create();
+      }
+      if (inflight > 0) {
+        // Started by the last in-flight write.
+        return;
+      }
+      started = true;
+      wasOpen = open;
+    }
+
+    initialized.andThen(Completable.defer(() -> {
+      // Before the first write, the source may not be registered yet.
+      TransactionalOffsets transactional = offsets(wasOpen);
+      Map<TopicPartition, OffsetAndMetadata> consumed = transactional == null ? Collections.emptyMap()
+        : transactional.take();
+      if (!wasOpen && consumed.isEmpty()) {
+        // Nothing to commit.
+        return Completable.complete();
+      }
+      if (!wasOpen) {
+        // The consumed records have not produced any result, but their offsets still need to be committed.
+        producer.beginTransaction();
+      }
+      return blocking(() -> {
+        if (!consumed.isEmpty()) {
+          producer.sendOffsetsToTransaction(consumed, transactional.groupId());
+        }
+        producer.commitTransaction();
+      });
+    })).subscribe(() -> completed(null), this::completed);
+  }
+
+  private void completed(Throwable error) {
+    CompletableSubject gate;
+    synchronized (this) {
+      gate = committing;
+      committing = null;
+      started = false;
+      open = false;
+      written = 0;
+      if (error != null) {
+        failure = error;
+      }
+    }
+    if (error == null) {
+      gate.onComplete();
+      return;
+    }
+    logger.error("Unable to commit the transaction of the sink " + sink + ", the transaction is aborted", error);
+    blocking(producer::abortTransaction)
+      .subscribe(() -> {
+      }, abortFailure -> logger.warn("Unable to abort the transaction of the sink " + sink, abortFailure));
+    gate.onError(error);
+  }
+
+  /**
+   * @param required whether a missing source is an error
+   * @return the offsets of the transactional source, {@code null} if the source is not registered and not required
+   */
+  private TransactionalOffsets offsets(boolean required) {
+    TransactionalOffsets current = offsets;
+    if (current == null) {
+      Source<Object> found = FluidRegistry.source(source);
+      if (found == null && !required) {
+        return null;
+      }
+      if (!(found instanceof KafkaSource) || ((KafkaSource) found).transactionalOffsets() == null) {
+        throw new IllegalStateException("The source " + source + " used by the transactional sink " + sink
+          + " must be a transactional Kafka source");
+      }
+      current = ((KafkaSource) found).transactionalOffsets();
+      offsets = current;
+    }
+    return current;
+  }
+
+  private Completable blocking(Runnable action) {
+    return new AsyncResultCompletable(handler ->
+      vertx.getDelegate().<Void>executeBlocking(future -> {
+        action.run();
+        future.complete();
+      }, handler));
+  }
+}
@@ -0,0 +1,286 @@
+package me.escoffier.fluid.kafka;
+
+import io.reactivex.Completable;
+import me.escoffier.fluid.models.Acknowledgement;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Tracks the acknowledgement of the records received by a {@link KafkaSource} and commits their offsets.
+ * <p>
+ * For each partition, the offset committed is the offset following the highest contiguous acknowledged record, so a
+ * record is never committed before it has been processed, even if several records of the partition are processed
+ * concurrently and acknowledged out of order. The acknowledgements received out of order are recorded in a bitmap
+ * starting at the first record not yet acknowledged, so tracking a record costs a bit, and the contiguous offset moves
+ * forward in amortized constant time. The offsets missing from the partition (such as the offsets removed by the
+ * compaction, or used by transaction markers) are considered acknowledged.
+ * <p>
+ * The offsets are committed asynchronously once {@code batchSize} records have been acknowledged since the last
+ * commit, and when {@link #commit()} is called (periodically, and when the stream terminates). The offsets of the
+ * revoked partitions are committed by {@link #revoked(Collection)}.
+ * <p>
+ * A record whose processing has failed (nack) is never acknowledged, so the offsets of the partition are not
+ * committed past it anymore. It is redelivered when the consumer restarts or the partition is reassigned.
+ */
+class OffsetTracker {
+
+  private static final Logger logger = LogManager.getLogger(OffsetTracker.class);
+
+  private final int batchSize;
+
+  private final Function<Map<TopicPartition, OffsetAndMetadata>, Completable> committer;
+
+  /**
+   * Guarded by {@code this}.
+   */
+  private final Map<TopicPartition, PartitionOffsets> partitions = new HashMap<>();
+
+  /**
+   * The number of records acknowledged since the last commit. Guarded by {@code this}.
+   */
+  private int acknowledged;
+
+  /**
+   * Creates a new {@link OffsetTracker}.
+   *
+   * @param batchSize the number of acknowledged records triggering a commit, must be strictly positive
+   * @param committer the function committing the offsets
+   */
+  OffsetTracker(int batchSize, Function<Map<TopicPartition, OffsetAndMetadata>, Completable> committer) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("The commit batch size must be strictly positive");
+    }
+    this.batchSize = batchSize;
+    this.committer = committer;
+  }
+
+  /**
+   * Registers a received record.
+   *
+   * @param topic     the topic of the record
+   * @param partition the partition of the record
+   * @param offset    the offset of the record
+   * @return the acknowledgement to attach to the message created from the record
+   */
+  synchronized Acknowledgement track(String topic, int partition, long offset) {
+    TopicPartition tp = new TopicPartition(topic, partition);
+    PartitionOffsets current = partitions.get(tp);
+    if (current == null || offset < current.next) {
+      // New assignment, or the consumer has been moved backward: the acknowledgements of the records received
+      // before are ignored.
+      current = new PartitionOffsets(offset);
+      partitions.put(tp, current);
+    }
+    current.received(offset);
+    PartitionOffsets offsets = current;
+    return new Acknowledgement() {
+      @Override
+      public void ack() {
+        acknowledged(offsets, offset);
+      }
+
+      @Override
+      public void nack(Throwable reason) {
+        logger.warn("The processing of the record " + offset + " from " + tp
+          + " has failed, the offsets of the partition are not committed past this record", reason);
+      }
+    };
+  }
+
+  private void acknowledged(PartitionOffsets offsets, long offset) {
+    synchronized (this) {
+      if (!offsets.acknowledged(offset)) {
+        return;
+      }
+      acknowledged++;
+      if (acknowledged < batchSize) {
+        return;
+      }
+    }
+    commit();
+  }
+
+  /**
+   * Commits the offsets of the acknowledged records, if any.
+   *
+   * @return a {@link Completable} completed when the offsets have been committed
+   */
+  Completable commit() {
+    Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+    synchronized (this) {
+      acknowledged = 0;
+      partitions.forEach((tp, offsets) -> collect(commits, tp, offsets));
+    }
+    return send(commits);
+  }
+
+  /**
+   * Commits the offsets of the acknowledged records of the given partitions, and stops tracking them. The
+   * acknowledgements of the records received from these partitions are ignored.
+   *
+   * @param revoked the revoked partitions
+   * @return a {@link Completable} completed when the offsets have been committed
+   */
+  Completable revoked(Collection<TopicPartition> revoked) {
+    Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+    synchronized (this) {
+      for (TopicPartition tp : revoked) {
+        PartitionOffsets offsets = partitions.remove(tp);
+        if (offsets != null) {
+          collect(commits, tp, offsets);
+        }
+      }
+    }
+    return send(commits);
+  }
+
+  private static void collect(Map<TopicPartition, OffsetAndMetadata> commits, TopicPartition tp,
+                              PartitionOffsets offsets) {
+    long offset = offsets.base;
+    if (offset > offsets.committed) {
+      offsets.committed = offset;
+      commits.put(tp, new OffsetAndMetadata(offset, null));
+    }
+  }
+
+  private Completable send(Map<TopicPartition, OffsetAndMetadata> commits) {
+    if (commits.isEmpty()) {
+      return Completable.complete();
+    }
+    Completable completable = committer.apply(commits)
+      .doOnError(failure -> logger.warn("Unable to commit the offsets " + commits, failure))
+      .onErrorComplete()
+      .cache();
+    completable.subscribe();
+    return completable;
+  }
+
+  /**
+   * The offsets of a partition. Guarded by the tracker.
+   * <p>
+   * The acknowledgements are stored in a ring of 64-bit words. The bit {@code i} of the ring (starting from the word
+   * {@code first}) represents the offset {@code origin + i}. The words preceding the word containing {@code base} are
+   * released as {@code base} moves forward.
+   */
+  private static final class PartitionOffsets {
+    private long[] words = new long[4];
+
+    /**
+     * The index of the first word of the ring.
+     */
+    private int first;
+
+    /**
+     * The number of words in use.
+     */
+    private int count;
+
+    /**
+     * The offset represented by the first bit of the ring, moved forward by 64 when the first word is released.
+     */
+    private long origin;
+
+    /**
+     * The offset of the first record not acknowledged, i.e. the offset to commit.
+     */
+    private long base;
+
+    /**
+     * The offset following the last received record.
+     */
+    private long next;
+
+    /**
+     * The last committed offset.
+     */
+    private long committed;
+
+    private PartitionOffsets(long offset) {
+      origin = offset;
+      base = offset;
+      next = offset;
+      committed = offset;
+    }
+
+    private void received(long offset) {
+      if (base == next && offset > next) {
+        // All the received records are acknowledged, restart the ring at the new offset.
+        Arrays.fill(words, 0);
+        first = 0;
+        count = 0;
+        origin = offset;
+        base = offset;
+        next = offset;
+      }
+      ensureCapacity(offset);
+      // The offsets skipped by the partition never get a record, so they are acknowledged.
+      for (long skipped = next; skipped < offset; skipped++) {
+        set(skipped);
+      }
+      next = offset + 1;
+      advance();
+    }
+
+    /**
+     * @return {@code true} if the offset was not acknowledged yet
+     */
+    private boolean acknowledged(long offset) {
+      if (offset < base || offset >= next || isSet(offset)) {
+        return false;
+      }
+      set(offset);
+      advance();
+      return true;
+    }
+
+    private void advance() {
+      while (base < next && isSet(base)) {
+        base++;
+      }
+      // Release the words entirely before the base.
+      while (base - origin >= Long.SIZE) {
+        words[first] = 0;
+        first = (first + 1) % words.length;
+        count--;
+        origin += Long.SIZE;
+      }
+    }
+
+    private void ensureCapacity(long offset) {
+      int needed = (int) ((offset - origin) >>> 6) + 1;
+      if (needed > words.length) {
+        int length = words.length;
+        while (length < needed) {
+          length <<= 1;
+        }
+        long[] copy = new long[length];
+        for (int i = 0; i < count; i++) {
+          copy[i] = words[(first + i) % words.length];
+        }
+        words = copy;
+        first = 0;
+      }
+      count = Math.max(count, needed);
+    }
+
+    private int index(long offset) {
+      return (first + (int) ((offset - origin) >>> 6)) % words.length;
+    }
+
+    private boolean isSet(long offset) {
+      return (words[index(offset)] & (1L << ((offset - origin) & 63))) != 0;
+    }
+
+    private void set(long offset) {
+      words[index(offset)] |= 1L << ((offset - origin) & 63);
+    }
+  }
+}
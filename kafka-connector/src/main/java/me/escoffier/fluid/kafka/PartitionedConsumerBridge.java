@@ -0,0 +1,228 @@
+package me.escoffier.fluid.kafka;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.UnicastProcessor;
+import me.escoffier.fluid.models.Pair;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Splits the records pushed by a Kafka consumer into one stream per partition, each stream having its own demand.
+ * <p>
+ * A stream is emitted when the first record of a partition is received, and completes when the partition is revoked.
+ * If the partition is assigned again later, a new stream is emitted. As in {@link ConsumerBridge}, a partition is
+ * paused once {@code prefetch} of its records are waiting to be consumed, and resumed once half of them have been
+ * consumed. Because the backpressure is applied per partition, a slow partition does not hold back the others.
+ * <p>
+ * The stream of partitions accepts a single subscriber. The consumer is connected when it subscribes, and
+ * disconnected when it cancels.
+ *
+ * @param <R> the type of record
+ */
+final class PartitionedConsumerBridge<R> {
+
+  private final int prefetch;
+
+  private final int resumeThreshold;
+
+  private final Function<R, TopicPartition> partitionOf;
+
+  private final Consumer<TopicPartition> pause;
+
+  private final Consumer<TopicPartition> resume;
+
+  private final ConsumerMetrics metrics;
+
+  private final UnicastProcessor<Pair<TopicPartition, Flowable<R>>> main = UnicastProcessor.create();
+
+  private final Flowable<Pair<TopicPartition, Flowable<R>>> partitions;
+
+  /**
+   * The partitions receiving records. Guarded by {@code this}.
+   */
+  private final Map<TopicPartition, Partition> open = new HashMap<>();
+
+  /**
+   * Guarded by {@code this}.
+   */
+  private boolean done;
+
+  /**
+   * Creates a new {@link PartitionedConsumerBridge}.
+   *
+   * @param prefetch    the maximum number of records queued per partition, must be strictly positive
+   * @param partitionOf the function extracting the partition of a record
+   * @param pause       the function pausing a partition
+   * @param resume      the function resuming a partition
+   * @param metrics     the metrics to update
+   * @param connect     the function connecting the consumer to the bridge
+   * @param disconnect  the function disconnecting the consumer
+   */
+  PartitionedConsumerBridge(int prefetch, Function<R, TopicPartition> partitionOf, Consumer<TopicPartition> pause,
+                            Consumer<TopicPartition> resume, ConsumerMetrics metrics,
+                            Consumer<PartitionedConsumerBridge<R>> connect, Runnable disconnect) {
+    if (prefetch <= 0) {
+      throw new IllegalArgumentException("The prefetch must be strictly positive");
+    }
+    this.prefetch = prefetch;
+    this.resumeThreshold = prefetch / 2;
+    this.partitionOf = partitionOf;
+    this.pause = pause;
+    this.resume = resume;
+    this.metrics = metrics;
+    this.partitions = main
+      .doOnSubscribe(s -> connect.accept(this))
+      .doOnCancel(disconnect::run);
+  }
+
+  /**
+   * @return the stream of partitions, accepting a single subscriber.
+   */
+  Flowable<Pair<TopicPartition, Flowable<R>>> partitions() {
+    return partitions;
+  }
+
+  /**
+   * Receives a record from the consumer.
+   *
+   * @param record the record
+   */
+  void onRecord(R record) {
+    TopicPartition tp = partitionOf.apply(record);
+    Partition partition;
+    boolean created = false;
+    boolean pauseIt;
+    synchronized (this) {
+      if (done) {
+        return;
+      }
+      partition = open.get(tp);
+      if (partition == null) {
+        partition = new Partition(tp);
+        open.put(tp, partition);
+        created = true;
+      }
+      partition.depth++;
+      pauseIt = partition.depth >= prefetch && !partition.paused;
+      if (pauseIt) {
+        partition.paused = true;
+      }
+    }
+    if (created) {
+      main.onNext(Pair.pair(tp, partition.stream));
+    }
+    metrics.onEnqueued();
+    partition.records.onNext(record);
+    if (pauseIt) {
+      metrics.onPaused();
+      pause.accept(tp);
+    }
+  }
+
+  /**
+   * Receives a failure from the consumer. The streams of the partitions complete, and the stream of partitions fails.
+   *
+   * @param failure the failure
+   */
+  void onError(Throwable failure) {
+    for (Partition partition : close()) {
+      partition.records.onComplete();
+    }
+    main.onError(failure);
+  }
+
+  /**
+   * Receives the end of the stream from the consumer.
+   */
+  void onComplete() {
+    for (Partition partition : close()) {
+      partition.records.onComplete();
+    }
+    main.onComplete();
+  }
+
+  /**
+   * Completes the streams of the revoked partitions, once their queued records have been consumed.
+   *
+   * @param revoked the revoked partitions
+   */
+  void revoked(Collection<TopicPartition> revoked) {
+    List<Partition> closed = new ArrayList<>();
+    synchronized (this) {
+      for (TopicPartition tp : revoked) {
+        Partition partition = open.remove(tp);
+        if (partition != null) {
+          closed.add(partition);
+        }
+      }
+    }
+    for (Partition partition : closed) {
+      if (partition.unpause()) {
+        metrics.onResumed();
+      }
+      partition.records.onComplete();
+    }
+  }
+
+  private synchronized List<Partition> close() {
+    done = true;
+    List<Partition> closed = new ArrayList<>(open.values());
+    open.clear();
+    return closed;
+  }
+
+  private void onEmitted(Partition partition) {
+    boolean resumeIt;
+    synchronized (this) {
+      partition.depth--;
+      // The revoked partitions are not resumed, the consumer resets their state when they are reassigned.
+      resumeIt = partition.paused && partition.depth <= resumeThreshold && open.get(partition.tp) == partition;
+      if (resumeIt) {
+        partition.paused = false;
+      }
+    }
+    metrics.onDequeued(1);
+    if (resumeIt) {
+      metrics.onResumed();
+      resume.accept(partition.tp);
+    }
+  }
+
+  private final class Partition {
+    private final TopicPartition tp;
+
+    private final UnicastProcessor<R> records = UnicastProcessor.create();
+
+    private final Flowable<R> stream;
+
+    /**
+     * The number of records queued. Guarded by the bridge.
+     */
+    private int depth;
+
+    /**
+     * Guarded by the bridge.
+     */
+    private boolean paused;
+
+    private Partition(TopicPartition tp) {
+      this.tp = tp;
+      this.stream = records.doOnNext(record -> onEmitted(this));
+    }
+
+    private boolean unpause() {
+      synchronized (PartitionedConsumerBridge.this) {
+        boolean wasPaused = paused;
+        paused = false;
+        return wasPaused;
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package me.escoffier.fluid.kafka;
+
+import io.reactivex.Completable;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The offsets of the records consumed by a transactional {@link KafkaSource}. They are not committed by the consumer,
+ * but by the transactions of a {@link KafkaSink}, together with the records written during the transactions.
+ * <p>
+ * The offsets of the acknowledged records are tracked by an {@link OffsetTracker}, and accumulated until they are
+ * taken by the next transaction.
+ */
+class TransactionalOffsets {
+
+  private final String groupId;
+
+  private final OffsetTracker tracker;
+
+  /**
+   * Guarded by {@code this}.
+   */
+  private Map<TopicPartition, OffsetAndMetadata> pending = new HashMap<>();
+
+  /**
+   * Creates a new {@link TransactionalOffsets}.
+   *
+   * @param groupId   the consumer group, must not be {@code null}
+   * @param batchSize the number of acknowledged records after which the offsets are moved to the pending offsets
+   */
+  TransactionalOffsets(String groupId, int batchSize) {
+    if (groupId == null) {
+      throw new IllegalArgumentException("A transactional source requires a `group.id`");
+    }
+    this.groupId = groupId;
+    this.tracker = new OffsetTracker(batchSize, this::add);
+  }
+
+  /**
+   * @return the tracker whose acknowledgements are attached to the consumed messages.
+   */
+  OffsetTracker tracker() {
+    return tracker;
+  }
+
+  /**
+   * @return the consumer group, to which the offsets are committed.
+   */
+  String groupId() {
+    return groupId;
+  }
+
+  private synchronized Completable add(Map<TopicPartition, OffsetAndMetadata> offsets) {
+    // The offsets only move forward, so the latest offsets replace the previous ones.
+    pending.putAll(offsets);
+    return Completable.complete();
+  }
+
+  /**
+   * Takes the offsets to commit with the current transaction, i.e. the offsets of the records acknowledged so far and
+   * not yet committed.
+   *
+   * @return the offsets, empty if there is nothing to commit
+   */
+  Map<TopicPartition, OffsetAndMetadata> take() {
+    tracker.commit();
+    Map<TopicPartition, OffsetAndMetadata> offsets;
+    synchronized (this) {
+      offsets = pending;
+      pending = new HashMap<>();
+    }
+    return offsets;
+  }
+}
@@ -0,0 +1,125 @@
+package me.escoffier.fluid.kafka;
+
+import io.reactivex.subscribers.TestSubscriber;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of the {@link ConsumerBridge}.
+ */
+public class ConsumerBridgeTest {
+
+  private static final TopicPartition P0 = new TopicPartition("topic", 0);
+  private static final TopicPartition P1 = new TopicPartition("topic", 1);
+
+  private final List<TopicPartition> paused = new ArrayList<>();
+  private final List<TopicPartition> resumed = new ArrayList<>();
+  private final ConsumerMetrics metrics = new ConsumerMetrics();
+
+  private boolean connected;
+  private boolean disconnected;
+
+  /**
+   * The records are the partition numbers.
+   */
+  private final ConsumerBridge<Integer> bridge = new ConsumerBridge<>(4,
+    record -> new TopicPartition("topic", record),
+    paused::add, resumed::add, metrics,
+    b -> connected = true,
+    () -> disconnected = true);
+
+  @Test
+  public void testPauseAndResume() {
+    TestSubscriber<Integer> subscriber = new TestSubscriber<>(0);
+    bridge.subscribe(subscriber);
+    assertThat(connected).isTrue();
+
+    for (int i = 0; i < 4; i++) {
+      bridge.onRecord(0);
+    }
+    bridge.onRecord(1);
+    assertThat(paused).containsExactly(P0);
+    assertThat(metrics.queueDepth()).isEqualTo(5);
+    assertThat(metrics.pausedPartitions()).isEqualTo(1);
+
+    // The partition is resumed once half of its records have been consumed.
+    subscriber.request(1);
+    assertThat(resumed).isEmpty();
+    subscriber.request(1);
+    assertThat(resumed).containsExactly(P0);
+    assertThat(metrics.queueDepth()).isEqualTo(3);
+    assertThat(metrics.pausedPartitions()).isEqualTo(0);
+    assertThat(metrics.pauses()).isEqualTo(1);
+    assertThat(metrics.maxQueueDepth()).isEqualTo(5);
+
+    subscriber.request(10);
+    subscriber.assertValues(0, 0, 0, 0, 1);
+    assertThat(metrics.queueDepth()).isEqualTo(0);
+  }
+
+  @Test
+  public void testNoPauseWhenTheDemandIsSufficient() {
+    TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+    bridge.subscribe(subscriber);
+    for (int i = 0; i < 100; i++) {
+      bridge.onRecord(i % 2);
+    }
+    subscriber.assertValueCount(100);
+    assertThat(paused).isEmpty();
+    assertThat(metrics.maxQueueDepth()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRevocationForgetsThePauseState() {
+    TestSubscriber<Integer> subscriber = new TestSubscriber<>(0);
+    bridge.subscribe(subscriber);
+    for (int i = 0; i < 4; i++) {
+      bridge.onRecord(1);
+    }
+    assertThat(paused).containsExactly(P1);
+
+    bridge.revoked(Collections.singleton(P1));
+    assertThat(metrics.pausedPartitions()).isEqualTo(0);
+    subscriber.request(4);
+    assertThat(resumed).isEmpty();
+  }
+
+  @Test
+  public void testErrorIsDeliveredAfterTheQueuedRecords() {
+    TestSubscriber<Integer> subscriber = new TestSubscriber<>(0);
+    bridge.subscribe(subscriber);
+    bridge.onRecord(0);
+    bridge.onError(new Exception("boom"));
+    subscriber.assertNoErrors();
+
+    subscriber.request(1);
+    subscriber.assertValues(0);
+    subscriber.assertErrorMessage("boom");
+  }
+
+  @Test
+  public void testCancellation() {
+    TestSubscriber<Integer> subscriber = new TestSubscriber<>(0);
+    bridge.subscribe(subscriber);
+    bridge.onRecord(0);
+    bridge.onRecord(0);
+    subscriber.cancel();
+    assertThat(disconnected).isTrue();
+    assertThat(metrics.queueDepth()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSingleSubscriber() {
+    bridge.subscribe(new TestSubscriber<>());
+    TestSubscriber<Integer> second = new TestSubscriber<>();
+    bridge.subscribe(second);
+    second.assertError(IllegalStateException.class);
+  }
+
+}
@@ -5,6 +5,7 @@ import io.debezium.util.Testing;
 import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.core.Vertx;
 import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.models.CommonHeaders;
 import me.escoffier.fluid.models.Source;
 import org.apache.kafka.common.serialization.IntegerDeserializer;
 import org.apache.kafka.common.serialization.IntegerSerializer;
@@ -15,9 +16,12 @@ import org.junit.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -118,6 +122,164 @@ public class KafkaSinkTest {
     assertThat(latch.await(1, TimeUnit.MINUTES)).isTrue();
   }
 
+  @Test
+  public void testDefaultPartitionerSpreadsTheKeys() throws InterruptedException, IOException {
+    KafkaUsage usage = new KafkaUsage();
+    String topic = UUID.randomUUID().toString();
+    usage.createTopic(topic, 3);
+    CountDownLatch latch = new CountDownLatch(1);
+    Map<String, Set<Integer>> partitions = new ConcurrentHashMap<>();
+    AtomicInteger count = new AtomicInteger();
+    usage.consumeIntegers(() -> count.get() < 30, latch::countDown, Collections.singletonList(topic), record -> {
+      partitions.computeIfAbsent(record.key(), k -> ConcurrentHashMap.newKeySet()).add(record.partition());
+      count.incrementAndGet();
+    });
+
+    KafkaSink<Integer> sink = new KafkaSink<>(vertx,
+      "my-kafka-sink",
+      new Config(
+        getKafkaConfig()
+          .put("topic", topic)
+          .put("header.routing", true)
+          .put("value.serializer", IntegerSerializer.class.getName())
+      ));
+
+    Source.fromPayloads(IntStream.range(0, 30).boxed())
+      .map(m -> m.with(CommonHeaders.KEY, "key-" + (m.payload() % 10)))
+      .to(sink);
+
+    assertThat(latch.await(1, TimeUnit.MINUTES)).isTrue();
+    assertThat(partitions).hasSize(10);
+    // The records with the same key are written to the same partition, and the keys are spread over the partitions.
+    assertThat(partitions.values()).allMatch(set -> set.size() == 1);
+    assertThat(partitions.values().stream().flatMap(Set::stream).distinct().count()).isGreaterThan(1);
+  }
+
+  @Test
+  public void testPartitionExpression() throws InterruptedException, IOException {
+    KafkaUsage usage = new KafkaUsage();
+    String topic = UUID.randomUUID().toString();
+    usage.createTopic(topic, 3);
+    CountDownLatch latch = new CountDownLatch(1);
+    List<Integer> partitions = new CopyOnWriteArrayList<>();
+    usage.consumeIntegers(() -> partitions.size() < 10, latch::countDown, Collections.singletonList(topic),
+      record -> partitions.add(record.partition()));
+
+    KafkaSink<Integer> sink = new KafkaSink<>(vertx,
+      "my-kafka-sink",
+      new Config(
+        getKafkaConfig()
+          .put("topic", topic)
+          .put("partition.expression", "2")
+          .put("value.serializer", IntegerSerializer.class.getName())
+      ));
+
+    Source.fromPayloads(IntStream.range(0, 10).boxed()).to(sink);
+
+    assertThat(latch.await(1, TimeUnit.MINUTES)).isTrue();
+    assertThat(partitions).hasSize(10).containsOnly(2);
+  }
+
+  @Test
+  public void testHeaderRouting() throws InterruptedException, IOException {
+    KafkaUsage usage = new KafkaUsage();
+    String even = UUID.randomUUID().toString();
+    String odd = UUID.randomUUID().toString();
+    usage.createTopic(even, 1);
+    usage.createTopic(odd, 1);
+    CountDownLatch latch = new CountDownLatch(1);
+    Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+    AtomicInteger count = new AtomicInteger();
+    usage.consumeIntegers(() -> count.get() < 10, latch::countDown, Arrays.asList(even, odd), record -> {
+      received.computeIfAbsent(record.topic(), k -> new CopyOnWriteArrayList<>()).add(record.value());
+      count.incrementAndGet();
+    });
+
+    KafkaSink<Integer> sink = new KafkaSink<>(vertx,
+      "my-kafka-sink",
+      new Config(
+        getKafkaConfig()
+          .put("topic", even)
+          .put("header.routing", true)
+          .put("value.serializer", IntegerSerializer.class.getName())
+      ));
+
+    Source.fromPayloads(IntStream.range(0, 10).boxed())
+      .map(m -> m.payload() % 2 == 0 ? m : m.with(CommonHeaders.ADDRESS, odd))
+      .to(sink);
+
+    assertThat(latch.await(1, TimeUnit.MINUTES)).isTrue();
+    assertThat(received.get(even)).containsExactly(0, 2, 4, 6, 8);
+    assertThat(received.get(odd)).containsExactly(1, 3, 5, 7, 9);
+  }
+
+  @Test
+  public void testHeaderRoutingWithAStringPartition() throws InterruptedException, IOException {
+    KafkaUsage usage = new KafkaUsage();
+    String topic = UUID.randomUUID().toString();
+    usage.createTopic(topic, 2);
+    CountDownLatch latch = new CountDownLatch(1);
+    List<Integer> partitions = new CopyOnWriteArrayList<>();
+    usage.consumeIntegers(() -> partitions.size() < 10, latch::countDown, Collections.singletonList(topic),
+      record -> partitions.add(record.partition()));
+
+    KafkaSink<Integer> sink = new KafkaSink<>(vertx,
+      "my-kafka-sink",
+      new Config(
+        getKafkaConfig()
+          .put("topic", topic)
+          .put("header.routing", true)
+          .put("value.serializer", IntegerSerializer.class.getName())
+      ));
+
+    Source.fromPayloads(IntStream.range(0, 10).boxed())
+      .map(m -> m.with(CommonHeaders.PARTITION, "1"))
+      .to(sink);
+
+    assertThat(latch.await(1, TimeUnit.MINUTES)).isTrue();
+    assertThat(partitions).hasSize(10).containsOnly(1);
+  }
+
+  @Test
+  public void testThroughputProfileWithIdempotentProducer() throws InterruptedException, IOException {
+    int count = 20_000;
+    char[] padding = new char[1024];
+    Arrays.fill(padding, 'x');
+    String suffix = ":" + new String(padding);
+
+    KafkaUsage usage = new KafkaUsage();
+    String topic = UUID.randomUUID().toString();
+    usage.createTopic(topic, 1);
+    CountDownLatch latch = new CountDownLatch(1);
+    AtomicInteger expected = new AtomicInteger();
+    AtomicInteger outOfOrder = new AtomicInteger();
+    usage.consumeStrings(() -> expected.get() < count, latch::countDown, Collections.singletonList(topic), record -> {
+      int index = Integer.parseInt(record.value().substring(0, record.value().indexOf(':')));
+      if (index != expected.getAndIncrement()) {
+        outOfOrder.incrementAndGet();
+      }
+    });
+
+    KafkaSink<String> sink = new KafkaSink<>(vertx,
+      "my-kafka-sink",
+      new Config(
+        getKafkaConfig()
+          .put("topic", topic)
+          .put("profile", "throughput")
+          .put("idempotent", true)
+          // Small write queue, so the dispatch waits for the queue to be drained.
+          .put("write.queue.size", 64 * 1024)
+          .put("value.serializer", StringSerializer.class.getName())
+      ));
+
+    // The default dispatch is bounded by the sink.
+    assertThat(sink.maxInFlight()).isEqualTo(1024);
+    Source.fromPayloads(IntStream.range(0, count).mapToObj(i -> i + suffix))
+      .to(sink);
+
+    assertThat(latch.await(2, TimeUnit.MINUTES)).isTrue();
+    assertThat(outOfOrder.get()).isEqualTo(0);
+  }
 
   private JsonObject getKafkaConfig() {
     return new JsonObject()
@@ -75,4 +75,19 @@ public class KafkaSourceConfig {
     return this;
   }
 
+  public KafkaSourceConfig prefetch(int prefetch) {
+    config.put("prefetch", prefetch);
+    return this;
+  }
+
+  public KafkaSourceConfig partitioned(boolean partitioned) {
+    config.put("partitioned", partitioned);
+    return this;
+  }
+
+  public KafkaSourceConfig transactional(boolean transactional) {
+    config.put("transactional", transactional);
+    return this;
+  }
+
 }
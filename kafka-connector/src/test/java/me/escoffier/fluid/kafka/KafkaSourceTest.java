@@ -2,6 +2,7 @@ package me.escoffier.fluid.kafka;
 
 import io.debezium.kafka.KafkaCluster;
 import io.debezium.util.Testing;
+import io.reactivex.Flowable;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -9,11 +10,13 @@ import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.kafka.client.consumer.KafkaConsumerRecord;
 import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.models.RawPayload;
 import me.escoffier.fluid.models.Sink;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.serialization.IntegerDeserializer;
 import org.apache.kafka.common.serialization.IntegerSerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.junit.*;
 import org.junit.runner.RunWith;
 
@@ -23,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -125,6 +129,41 @@ public class KafkaSourceTest {
       () -> new ProducerRecord<>(topic, "key", 1));
   }
 
+  @Test
+  public void testRawPassThrough() throws IOException {
+    KafkaUsage usage = new KafkaUsage();
+    String topic = UUID.randomUUID().toString();
+    String output = UUID.randomUUID().toString();
+
+    KafkaSource<RawPayload> source = new KafkaSource<>(vertx,
+      "my-kafka",
+      new Config(
+        getKafkaConfig()
+          .put("topic", topic)
+          .put("value.deserializer", IntegerDeserializer.class.getName())
+          .put("raw", true)
+      ));
+    KafkaSink<RawPayload> sink = new KafkaSink<>(vertx, "raw-sink", new Config(new JsonObject()
+      .put("bootstrap.servers", "localhost:9092")
+      .put("key.serializer", StringSerializer.class.getName())
+      .put("value.serializer", IntegerSerializer.class.getName())
+      .put("topic", output)
+      .put("raw", true)));
+
+    // Only the filter decodes the payloads, the sink writes the bytes of the records.
+    source
+      .filter(message -> message.payloadAs(Integer.class) % 2 == 0)
+      .to(sink);
+
+    AtomicInteger counter = new AtomicInteger();
+    usage.produceIntegers(10, null, () -> new ProducerRecord<>(topic, counter.getAndIncrement()));
+
+    List<Integer> results = new CopyOnWriteArrayList<>();
+    usage.consumeIntegers(output, 5, 1, TimeUnit.MINUTES, null, (k, v) -> results.add(v));
+    await().atMost(1, TimeUnit.MINUTES).until(() -> results.size() >= 5);
+    assertThat(results).containsExactly(0, 2, 4, 6, 8);
+  }
+
   @Test
   public void testMulticastWithBufferSize() throws IOException {
     KafkaUsage usage = new KafkaUsage();
@@ -185,6 +224,39 @@ public class KafkaSourceTest {
 
   }
 
+  @Test
+  public void testPartitionsAndMessagesAreMutuallyExclusive() throws IOException {
+    KafkaUsage usage = new KafkaUsage();
+    String topic = UUID.randomUUID().toString();
+    List<Integer> results = new CopyOnWriteArrayList<>();
+
+    KafkaSource<Integer> source = new KafkaSource<>(vertx,
+      "my-kafka",
+      new Config(
+        getKafkaConfig()
+          .put("topic", topic)
+          .put("value.serializer", IntegerSerializer.class.getName())
+          .put("value.deserializer", IntegerDeserializer.class.getName())
+          .put("partitioned", true)
+      ));
+    Flowable.fromPublisher(source.partitions())
+      .flatMap(partition -> partition)
+      .subscribe(message -> results.add(message.payload()));
+
+    source.asFlowable().test()
+      .assertError(IllegalStateException.class);
+    Flowable.fromPublisher(source.partitions()).test()
+      .assertError(IllegalStateException.class);
+
+    AtomicInteger counter = new AtomicInteger();
+    new Thread(() ->
+      usage.produceIntegers(10, null,
+        () -> new ProducerRecord<>(topic, counter.getAndIncrement()))).start();
+
+    await().atMost(2, TimeUnit.MINUTES).until(() -> results.size() >= 10);
+    assertThat(results).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+  }
+
   private JsonObject getKafkaConfig() {
     String randomId = UUID.randomUUID().toString();
     return kafkaSourceConfig("name").
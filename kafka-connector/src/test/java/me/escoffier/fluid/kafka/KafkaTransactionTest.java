@@ -0,0 +1,155 @@
+package me.escoffier.fluid.kafka;
+
+import io.debezium.kafka.KafkaCluster;
+import io.debezium.util.Testing;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.registry.FluidRegistry;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.IntegerDeserializer;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static me.escoffier.fluid.kafka.KafkaSourceConfig.kafkaSourceConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Checks the transactional mode of the {@link KafkaSink}, committing the offsets of a {@link KafkaSource}.
+ */
+public class KafkaTransactionTest {
+
+  private static KafkaCluster kafka;
+
+  private Vertx vertx;
+
+  @BeforeClass
+  public static void beforeClass() throws IOException {
+    Properties props = new Properties();
+    props.setProperty("zookeeper.connection.timeout.ms", "10000");
+    // A single broker hosts the transaction log and the offsets.
+    props.setProperty("transaction.state.log.replication.factor", "1");
+    props.setProperty("transaction.state.log.min.isr", "1");
+    props.setProperty("offsets.topic.replication.factor", "1");
+    File directory = Testing.Files.createTestingDirectory(System.getProperty("java.io.tmpdir"), true);
+    kafka = new KafkaCluster().withPorts(2182, 9092).addBrokers(1)
+      .usingDirectory(directory)
+      .deleteDataUponShutdown(true)
+      .withKafkaConfiguration(props)
+      .deleteDataPriorToStartup(true)
+      .startup();
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    kafka.shutdown();
+  }
+
+  @Before
+  public void setup() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() {
+    FluidRegistry.reset();
+    vertx.close();
+  }
+
+  @Test
+  public void testConsumeTransformProduce() throws IOException {
+    KafkaUsage usage = new KafkaUsage();
+    String input = UUID.randomUUID().toString();
+    String output = UUID.randomUUID().toString();
+    String group = UUID.randomUUID().toString();
+
+    KafkaSource<Integer> source = new KafkaSource<>(vertx, "tx-source", new Config(
+      kafkaSourceConfig("tx-source")
+        .bootstrapServers("localhost:9092")
+        .groupId(group)
+        .enableAutoCommit(false)
+        .autoOffsetReset("earliest")
+        .keyDeserializer(StringDeserializer.class)
+        .valueDeserializer(IntegerDeserializer.class)
+        .topic(input)
+        .transactional(true)
+        .build()));
+    FluidRegistry.register("tx-source", source);
+
+    KafkaSink<Integer> sink = new KafkaSink<>(vertx, "tx-sink", new Config(new JsonObject()
+      .put("bootstrap.servers", "localhost:9092")
+      .put("key.serializer", StringSerializer.class.getName())
+      .put("value.serializer", IntegerSerializer.class.getName())
+      .put("topic", output)
+      .put("transactional.id", UUID.randomUUID().toString())
+      .put("transaction.source", "tx-source")
+      .put("transaction.size", 10)));
+
+    source.mapPayload(i -> i + 1).to(sink);
+
+    AtomicInteger counter = new AtomicInteger();
+    usage.produceIntegers(100, null, () -> new ProducerRecord<>(input, counter.getAndIncrement()));
+
+    List<Integer> results = new CopyOnWriteArrayList<>();
+    usage.consumeIntegers(output, 100, 1, TimeUnit.MINUTES, null, (k, v) -> results.add(v));
+    await().atMost(1, TimeUnit.MINUTES).until(() -> results.size() >= 100);
+    assertThat(results).contains(1, 50, 100);
+
+    // The offsets are committed by the transactions of the sink.
+    try (KafkaConsumer<String, Integer> consumer = new KafkaConsumer<>(
+      usage.getConsumerProperties(group, null, null), new StringDeserializer(), new IntegerDeserializer())) {
+      TopicPartition partition = new TopicPartition(input, 0);
+      await().atMost(1, TimeUnit.MINUTES).until(() -> {
+        OffsetAndMetadata committed = consumer.committed(partition);
+        return committed != null && committed.offset() == 100;
+      });
+    }
+    sink.close();
+  }
+
+  @Test
+  public void testCloseStopsThePeriodicCommits() throws InterruptedException {
+    AtomicInteger commits = new AtomicInteger();
+    KafkaTransactions transactions = new KafkaTransactions(vertx, new MockProducer<>(true, null, null), "tx-sink",
+      "tx-source", 10, 10) {
+      @Override
+      void commit() {
+        commits.incrementAndGet();
+      }
+    };
+    await().atMost(1, TimeUnit.MINUTES).until(() -> commits.get() > 0);
+
+    transactions.close();
+    // Lets a commit fired before the cancellation complete.
+    Thread.sleep(50);
+    int count = commits.get();
+    Thread.sleep(200);
+    assertThat(commits.get()).isEqualTo(count);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTransactionalSinkRequiresASource() throws IOException {
+    new KafkaSink<>(vertx, "tx-sink", new Config(new JsonObject()
+      .put("bootstrap.servers", "localhost:9092")
+      .put("key.serializer", StringSerializer.class.getName())
+      .put("value.serializer", IntegerSerializer.class.getName())
+      .put("transactional.id", UUID.randomUUID().toString())));
+  }
+
+}
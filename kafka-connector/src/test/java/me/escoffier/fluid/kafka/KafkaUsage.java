@@ -1,5 +1,7 @@
 package me.escoffier.fluid.kafka;
 
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.OffsetCommitCallback;
@@ -11,6 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiPredicate;
@@ -66,6 +69,25 @@ public class KafkaUsage {
         return props;
     }
 
+    /**
+     * Creates a topic and waits until it is created.
+     *
+     * @param topic      the name of the topic; may not be null
+     * @param partitions the number of partitions; must be positive
+     */
+    public void createTopic(String topic, int partitions) {
+        Properties props = new Properties();
+        props.setProperty("bootstrap.servers", brokers);
+        try (AdminClient admin = AdminClient.create(props)) {
+            admin.createTopics(Collections.singleton(new NewTopic(topic, partitions, (short) 1))).all().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating the topic " + topic, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to create the topic " + topic, e.getCause());
+        }
+    }
+
     /**
      * Use the supplied function to asynchronously produce messages and write them to the cluster.
      *
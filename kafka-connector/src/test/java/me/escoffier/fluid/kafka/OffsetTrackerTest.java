@@ -0,0 +1,152 @@
+package me.escoffier.fluid.kafka;
+
+import io.reactivex.Completable;
+import me.escoffier.fluid.models.Acknowledgement;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of the {@link OffsetTracker}.
+ */
+public class OffsetTrackerTest {
+
+  private final List<Map<TopicPartition, OffsetAndMetadata>> commits = new ArrayList<>();
+
+  private final OffsetTracker tracker = new OffsetTracker(2, offsets -> {
+    commits.add(offsets);
+    return Completable.complete();
+  });
+
+  @Test
+  public void testCommitInBatches() {
+    Acknowledgement a0 = tracker.track("topic", 0, 0);
+    Acknowledgement a1 = tracker.track("topic", 0, 1);
+    Acknowledgement a2 = tracker.track("topic", 0, 2);
+
+    a0.ack();
+    assertThat(commits).isEmpty();
+    a1.ack();
+    assertThat(commits).hasSize(1);
+    assertThat(commits.get(0).get(new TopicPartition("topic", 0)).offset()).isEqualTo(2);
+
+    a2.ack();
+    tracker.commit();
+    assertThat(commits).hasSize(2);
+    assertThat(commits.get(1).get(new TopicPartition("topic", 0)).offset()).isEqualTo(3);
+  }
+
+  @Test
+  public void testOutOfOrderAcknowledgement() {
+    Acknowledgement a0 = tracker.track("topic", 0, 0);
+    Acknowledgement a1 = tracker.track("topic", 0, 1);
+    Acknowledgement a2 = tracker.track("topic", 0, 2);
+    Acknowledgement b0 = tracker.track("topic", 1, 10);
+
+    // The record 0 is not acknowledged, nothing can be committed for the partition 0.
+    a2.ack();
+    a1.ack();
+    assertThat(commits).isEmpty();
+
+    b0.ack();
+    a0.ack();
+    assertThat(commits).hasSize(1);
+    assertThat(commits.get(0).get(new TopicPartition("topic", 0)).offset()).isEqualTo(3);
+    assertThat(commits.get(0).get(new TopicPartition("topic", 1)).offset()).isEqualTo(11);
+  }
+
+  @Test
+  public void testNackBlocksTheCommits() {
+    Acknowledgement a0 = tracker.track("topic", 0, 0);
+    Acknowledgement a1 = tracker.track("topic", 0, 1);
+    Acknowledgement a2 = tracker.track("topic", 0, 2);
+
+    a0.nack(new Exception("boom"));
+    a1.ack();
+    a2.ack();
+    assertThat(commits).isEmpty();
+  }
+
+  @Test
+  public void testDuplicatedAcknowledgementsAreIgnored() {
+    Acknowledgement a0 = tracker.track("topic", 0, 0);
+    tracker.track("topic", 0, 1);
+
+    a0.ack();
+    a0.ack();
+    assertThat(commits).isEmpty();
+  }
+
+  @Test
+  public void testOutOfOrderAcknowledgementOverManyWords() {
+    OffsetTracker unbounded = new OffsetTracker(Integer.MAX_VALUE, offsets -> {
+      commits.add(offsets);
+      return Completable.complete();
+    });
+    List<Acknowledgement> acknowledgements = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      acknowledgements.add(unbounded.track("topic", 0, 5000 + i));
+    }
+    // Acknowledge all the records but the first one, in reverse order.
+    for (int i = 999; i > 0; i--) {
+      acknowledgements.get(i).ack();
+    }
+    unbounded.commit();
+    assertThat(commits).isEmpty();
+
+    acknowledgements.get(0).ack();
+    unbounded.commit();
+    assertThat(commits).hasSize(1);
+    assertThat(commits.get(0).get(new TopicPartition("topic", 0)).offset()).isEqualTo(6000);
+
+    // The tracking continues after the release of the words.
+    Acknowledgement next = unbounded.track("topic", 0, 6000);
+    next.ack();
+    unbounded.commit();
+    assertThat(commits.get(1).get(new TopicPartition("topic", 0)).offset()).isEqualTo(6001);
+  }
+
+  @Test
+  public void testMissingOffsetsAreSkipped() {
+    Acknowledgement a0 = tracker.track("topic", 0, 0);
+    // The offsets 1 to 9 have been removed by the compaction.
+    Acknowledgement a10 = tracker.track("topic", 0, 10);
+    Acknowledgement a11 = tracker.track("topic", 0, 11);
+
+    a0.ack();
+    a11.ack();
+    assertThat(commits).hasSize(1);
+    assertThat(commits.get(0).get(new TopicPartition("topic", 0)).offset()).isEqualTo(10);
+
+    a10.ack();
+    tracker.commit();
+    assertThat(commits.get(1).get(new TopicPartition("topic", 0)).offset()).isEqualTo(12);
+  }
+
+  @Test
+  public void testRevocation() {
+    Acknowledgement a0 = tracker.track("topic", 0, 0);
+    Acknowledgement a1 = tracker.track("topic", 0, 1);
+    tracker.track("topic", 1, 0);
+    a0.ack();
+    assertThat(commits).isEmpty();
+
+    tracker.revoked(Collections.singleton(new TopicPartition("topic", 0)));
+    assertThat(commits).hasSize(1);
+    assertThat(commits.get(0)).containsOnlyKeys(new TopicPartition("topic", 0));
+    assertThat(commits.get(0).get(new TopicPartition("topic", 0)).offset()).isEqualTo(1);
+
+    // The acknowledgements of the revoked partitions are ignored.
+    a1.ack();
+    tracker.commit();
+    assertThat(commits).hasSize(1);
+  }
+
+}
@@ -0,0 +1,110 @@
+package me.escoffier.fluid.kafka;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import me.escoffier.fluid.models.Pair;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the behavior of the {@link PartitionedConsumerBridge}.
+ */
+public class PartitionedConsumerBridgeTest {
+
+  private static final TopicPartition P0 = new TopicPartition("topic", 0);
+  private static final TopicPartition P1 = new TopicPartition("topic", 1);
+
+  private final List<TopicPartition> paused = new ArrayList<>();
+  private final List<TopicPartition> resumed = new ArrayList<>();
+  private final ConsumerMetrics metrics = new ConsumerMetrics();
+
+  private boolean connected;
+  private boolean disconnected;
+
+  /**
+   * The records are the partition numbers.
+   */
+  private final PartitionedConsumerBridge<Integer> bridge = new PartitionedConsumerBridge<>(4,
+    record -> new TopicPartition("topic", record),
+    paused::add, resumed::add, metrics,
+    b -> connected = true,
+    () -> disconnected = true);
+
+  private final List<Pair<TopicPartition, Flowable<Integer>>> partitions = new ArrayList<>();
+
+  @Test
+  public void testOneStreamPerPartition() {
+    bridge.partitions().subscribe(partitions::add);
+    assertThat(connected).isTrue();
+
+    bridge.onRecord(0);
+    bridge.onRecord(1);
+    bridge.onRecord(0);
+    assertThat(partitions).extracting(Pair::left).containsExactly(P0, P1);
+
+    partitions.get(0).right().test().assertValues(0, 0);
+    partitions.get(1).right().test().assertValues(1);
+    assertThat(metrics.queueDepth()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSlowPartitionDoesNotHoldBackTheOthers() {
+    bridge.partitions().subscribe(partitions::add);
+    bridge.onRecord(0);
+    bridge.onRecord(1);
+    TestSubscriber<Integer> slow = partitions.get(0).right().test(0);
+    TestSubscriber<Integer> fast = partitions.get(1).right().test();
+
+    for (int i = 0; i < 10; i++) {
+      bridge.onRecord(0);
+      bridge.onRecord(1);
+    }
+    assertThat(paused).containsExactly(P0);
+    fast.assertValueCount(11);
+    assertThat(metrics.queueDepth()).isEqualTo(11);
+
+    // The partition is resumed once half of its records have been consumed.
+    slow.request(8);
+    assertThat(resumed).isEmpty();
+    slow.request(1);
+    assertThat(resumed).containsExactly(P0);
+    assertThat(metrics.pausedPartitions()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRevocationCompletesThePartition() {
+    bridge.partitions().subscribe(partitions::add);
+    bridge.onRecord(0);
+    TestSubscriber<Integer> first = partitions.get(0).right().test();
+
+    bridge.revoked(Collections.singleton(P0));
+    first.assertValues(0).assertComplete();
+
+    // A new stream is emitted when the partition is assigned again.
+    bridge.onRecord(0);
+    assertThat(partitions).hasSize(2);
+    partitions.get(1).right().test().assertValues(0);
+  }
+
+  @Test
+  public void testCancellation() {
+    bridge.partitions().subscribe(partitions::add).dispose();
+    assertThat(disconnected).isTrue();
+  }
+
+  @Test
+  public void testCompletion() {
+    TestSubscriber<Pair<TopicPartition, Flowable<Integer>>> subscriber = bridge.partitions().test();
+    bridge.onRecord(0);
+    bridge.onComplete();
+    subscriber.assertValueCount(1).assertComplete();
+    subscriber.values().get(0).right().test().assertValues(0).assertComplete();
+  }
+
+}
@@ -5,11 +5,15 @@ import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.core.eventbus.EventBus;
 import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.impl.Codecs;
 import me.escoffier.fluid.models.Message;
 import me.escoffier.fluid.models.Sink;
+import me.escoffier.fluid.spi.Codec;
 
 /**
  * A sink dispatching messages to the Vert.x event bus.
+ * <p>
+ * When {@code codec} is set, the payloads are encoded by this {@link Codec}, and sent as {@code byte[]}.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
@@ -18,6 +22,7 @@ public class EventBusSink<T> implements Sink<T> {
   private final String address;
   private final EventBus eventBus;
   private final Boolean publish;
+  private final Codec codec;
 
   public EventBusSink(Vertx vertx, Config config) {
     name = config.getString("name").orElse(null);
@@ -28,6 +33,7 @@ public class EventBusSink<T> implements Sink<T> {
     }
 
     publish = config.getBoolean("publish", true);
+    codec = Codecs.codec(config).orElse(null);
 
     eventBus = vertx.eventBus();
   }
@@ -37,10 +43,11 @@ public class EventBusSink<T> implements Sink<T> {
     DeliveryOptions options = new DeliveryOptions();
     message.headers().forEach((k, v) -> options.addHeader(k, v.toString()));
 
+    Object body = codec == null ? message.payload() : codec.encode(message.payload());
     if (publish) {
-      eventBus.publish(address, message.payload(), options);
+      eventBus.publish(address, body, options);
     } else {
-      eventBus.send(address, message, options);
+      eventBus.send(address, body, options);
     }
     return Completable.complete();
   }
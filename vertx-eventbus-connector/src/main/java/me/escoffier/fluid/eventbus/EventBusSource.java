@@ -1,25 +1,38 @@
 package me.escoffier.fluid.eventbus;
 
+import io.reactivex.Flowable;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.reactivex.core.Vertx;
 import me.escoffier.fluid.config.Config;
+import me.escoffier.fluid.impl.Codecs;
 import me.escoffier.fluid.models.CommonHeaders;
 import me.escoffier.fluid.models.DefaultSource;
 import me.escoffier.fluid.models.Message;
+import me.escoffier.fluid.spi.Codec;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * A source receiving the messages sent to an address of the Vert.x event bus.
+ * <p>
+ * When {@code codec} is set, the bodies are {@code byte[]} (or {@link Buffer}) decoded by this {@link Codec}.
+ *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class EventBusSource<T> extends DefaultSource<T> {
 
   public EventBusSource(Vertx vertx, String name, String address, Config config) {
-    super(vertx.eventBus()
+    super(messages(vertx, address, config), name, null);
+  }
+
+  private static <T> Flowable<Message<T>> messages(Vertx vertx, String address, Config config) {
+    Codec codec = Codecs.codec(config).orElse(null);
+    return vertx.eventBus()
       .<T>consumer(address)
       .toFlowable()
-      .map(EventBusSource::createData)
+      .map(msg -> EventBusSource.<T>createData(msg, codec))
       .compose(upstream -> {
         int size = config.getInt("multicast.buffer.size", -1);
         if (size != -1) {
@@ -32,13 +45,24 @@ public class EventBusSource<T> extends DefaultSource<T> {
         }
 
         return upstream;
-      }), name, null);
+      });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Message<T> createData(io.vertx.reactivex.core.eventbus.Message<T> msg, Codec codec) {
+    T payload = msg.body();
+    if (codec != null) {
+      Object body = payload;
+      payload = (T) codec.decode(body instanceof Buffer ? ((Buffer) body).getBytes() : (byte[]) body);
+    }
+    // Headers are only computed if the downstream processing reads them.
+    return Message.lazy(payload, msg, EventBusSource::headers);
   }
 
-  private static <T> Message<T> createData(io.vertx.reactivex.core.eventbus.Message<T> msg) {
+  private static <T> Map<String, Object> headers(io.vertx.reactivex.core.eventbus.Message<T> msg) {
     Map<String, Object> map = new HashMap<>();
     msg.headers().names().forEach(s -> map.put(s, msg.headers().get(s)));
     map.put(CommonHeaders.ORIGINAL, msg);
-    return new Message<>(msg.body(), map);
+    return map;
   }
 }
@@ -64,6 +64,33 @@ public class EventBusSourceTest {
 
   }
 
+  @Test
+  public void testSourceAndSinkWithBinaryCodec() throws IOException {
+    String topic = UUID.randomUUID().toString();
+    JsonObject config = new JsonObject().put("address", topic).put("codec", "binary");
+
+    EventBusSource<JsonObject> source = new EventBusSource<>(vertx, null, topic, new Config(config));
+    List<JsonObject> results = new ArrayList<>();
+    source.to(Sink.forEachPayload(results::add));
+
+    List<byte[]> bodies = new ArrayList<>();
+    vertx.eventBus().<byte[]>consumer(topic).handler(message -> bodies.add(message.body()));
+
+    EventBusSink<JsonObject> sink = new EventBusSink<>(vertx, new Config(config));
+    Source.from(1, 2, 3)
+      .mapPayload(i -> new JsonObject().put("id", i).put("name", "movie-" + i))
+      .to(sink);
+
+    await().atMost(1, TimeUnit.MINUTES).until(() -> results.size() >= 3);
+    assertThat(results).containsExactly(
+      new JsonObject().put("id", 1).put("name", "movie-1"),
+      new JsonObject().put("id", 2).put("name", "movie-2"),
+      new JsonObject().put("id", 3).put("name", "movie-3"));
+    // The bodies only contain the schema id and the values.
+    assertThat(bodies).allSatisfy(body -> assertThat(body.length).isLessThan(
+      new JsonObject().put("id", 1).put("name", "movie-1").encode().length()));
+  }
+
   @Test
   public void testMulticastWithBufferSize() throws IOException {
     String topic = UUID.randomUUID().toString();